@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 统计一段时间内所有线程分配的堆内存。
+ * <p>
+ * 通过{@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}定期采样所有存活线程的累计分配量，
+ * 结束时累加每个线程从开始到最后一次采样的增量。执行器的线程可能在两次采样之间结束，这部分线程最后一个采样周期内的分配量会被漏掉，
+ * 因此结果是一个略偏小的下界。当前JVM不支持时，结果为-1。
+ * 
+ * @author Hu Ruomin
+ */
+final class AllocationSampler implements Runnable {
+
+	/**
+	 * 采样间隔，单位：毫秒
+	 */
+	private static final long INTERVAL_MILLIS = 20;
+
+	/**
+	 * 线程管理接口，当前JVM不支持统计线程分配量时为null
+	 */
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * 开始时各线程的累计分配量
+	 */
+	private final Map<Long, Long> baseline = new HashMap<Long, Long>();
+
+	/**
+	 * 最近一次采样时各线程的累计分配量
+	 */
+	private final Map<Long, Long> latest = new HashMap<Long, Long>();
+
+	/**
+	 * 采样线程
+	 */
+	private Thread thread;
+
+	/**
+	 * 是否停止采样
+	 */
+	private volatile boolean isStopped = false;
+
+	/**
+	 * 构造函数。
+	 */
+	AllocationSampler() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean)
+						.isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean) bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threadBean = null;
+		}
+	}
+
+	/**
+	 * 开始采样。
+	 */
+	void start() {
+		if (null == threadBean) {
+			return;
+		}
+		sample(baseline);
+		thread = new Thread(this, "allocation-sampler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 停止采样。
+	 * 
+	 * @return 开始采样以来所有线程分配的字节数，当前JVM不支持时为-1
+	 * @throws InterruptedException
+	 *             等待采样线程结束时被中断
+	 */
+	long stop() throws InterruptedException {
+		if (null == threadBean) {
+			return -1;
+		}
+		isStopped = true;
+		thread.join();
+		sample(latest);
+		long total = 0;
+		for (Map.Entry<Long, Long> entry : latest.entrySet()) {
+			Long base = baseline.get(entry.getKey());
+			total += entry.getValue() - (null == base ? 0 : base);
+		}
+		return total;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		while (!isStopped) {
+			sample(latest);
+			try {
+				Thread.sleep(INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 采样所有存活线程的累计分配量，采样线程自身除外。
+	 * 
+	 * @param result
+	 *            保存采样结果
+	 */
+	private void sample(Map<Long, Long> result) {
+		long[] ids = threadBean.getAllThreadIds();
+		long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+		long self = Thread.currentThread() == thread ? thread.getId() : -1;
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] != self && bytes[i] >= 0) {
+				result.put(ids[i], bytes[i]);
+			}
+		}
+	}
+}
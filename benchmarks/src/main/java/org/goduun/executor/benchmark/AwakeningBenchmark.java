@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.AbstractTaskConverter;
+import org.goduun.executor.AbstractTaskProcessor;
+import org.goduun.executor.ConvertingExecutor;
+import org.goduun.executor.ExecutorFactory;
+import org.goduun.executor.ProcessingExecutor;
+import org.goduun.executor.Task;
+import org.goduun.executor.TaskList;
+import org.goduun.executor.TaskPipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 一棵任务树从放入顶层任务到顶层任务被唤醒的耗时，覆盖执行后（doAfterExecuted）与唤醒后（doAfterAwaked）的全部计数及唤醒检查。
+ * <p>
+ * 每一层由一个常驻转换器处理，每个任务生成指定数量的下一层子任务，最底层由一个常驻执行器处理，其消费者唤醒顶层任务。任务树共有
+ * fanout<sup>depth-1</sup>个叶子任务。分为单棵任务树及{@value #CONTENDED_THREADS}棵任务树并发两个版本，后者以Contended结尾，
+ * 并发的任务树共用各层执行器的调度线程及消费者线程；也可以通过JMH的-t参数统一指定并发的任务树数。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class AwakeningBenchmark {
+
+	/**
+	 * 竞争版本并发的任务树数
+	 */
+	static final int CONTENDED_THREADS = 4;
+
+	/**
+	 * 消费者每次可处理的最大任务数
+	 */
+	@Param({ "1", "16" })
+	public int batchCapacity;
+
+	/**
+	 * 任务树的层数
+	 */
+	@Param({ "2", "3", "5" })
+	public int depth;
+
+	/**
+	 * 每个任务生成的子任务数
+	 */
+	@Param({ "4", "16" })
+	public int fanout;
+
+	/**
+	 * 各层的转换器
+	 */
+	private final List<ConvertingExecutor<TreeTask, TreeTask>> converters = new ArrayList<ConvertingExecutor<TreeTask, TreeTask>>();
+
+	/**
+	 * 最底层的执行器
+	 */
+	private ProcessingExecutor<TreeTask> leafExecutor;
+
+	/**
+	 * 顶层转换器的任务传送管道
+	 */
+	private TaskPipe<TreeTask> pipe;
+
+	/**
+	 * 搭建并启动各层执行器。常驻执行器无法终止，随测试进程一起退出。
+	 * 
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Setup
+	public void setup() throws InterruptedException {
+		if (depth < 2 || depth > TreeTask.MAX_DEPTH) {
+			throw new IllegalArgumentException();
+		}
+		for (int level = 0; level < depth - 1; level++) {
+			ConvertingExecutor<TreeTask, TreeTask> converter = ExecutorFactory
+					.<TreeTask, TreeTask> newResidentConverter("level-"
+							+ level, AwakeningBenchmark.class, 1, 4);
+			converter.setLoggingTask(false);
+			converter.setLoggingExecution(false);
+			AbstractTaskConverter<TreeTask, TreeTask> consumer = new AbstractTaskConverter<TreeTask, TreeTask>() {
+				@Override
+				protected void execute(TaskList<TreeTask> tasks,
+						TaskPipe<TreeTask> pipe) {
+					for (TreeTask task : tasks) {
+						List<TreeTask> children = new ArrayList<TreeTask>(
+								fanout);
+						for (int i = 0; i < fanout; i++) {
+							children.add(TreeTask.create(task.getLevel() + 1,
+									task));
+						}
+						try {
+							pipe.putAll(children);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			};
+			consumer.setCapacity(batchCapacity);
+			converter.setConsumer(consumer);
+			if (!converters.isEmpty()) {
+				converter.follow(converters.get(converters.size() - 1));
+			}
+			converters.add(converter);
+		}
+
+		leafExecutor = ExecutorFactory.<TreeTask> newResidentExecutor(
+				"level-" + (depth - 1), AwakeningBenchmark.class, 1, 4);
+		leafExecutor.setLoggingTask(false);
+		leafExecutor.setLoggingExecution(false);
+		AbstractTaskProcessor<TreeTask> consumer = new AbstractTaskProcessor<TreeTask>() {
+			{
+				addAwakableClass(TreeTask.classOf(0));
+			}
+
+			@Override
+			public void execute(TaskList<TreeTask> tasks) {
+				// 叶子任务无需处理，只需通过执行及唤醒环节
+				tasks.toList();
+			}
+
+			@Override
+			protected void awake(Task ancestor) {
+				((TreeTask) ancestor).complete();
+			}
+		};
+		consumer.setCapacity(batchCapacity);
+		leafExecutor.setConsumer(consumer);
+		leafExecutor.follow(converters.get(converters.size() - 1));
+
+		leafExecutor.execute();
+		for (int i = converters.size() - 1; i > 0; i--) {
+			converters.get(i).execute();
+		}
+		pipe = BenchmarkSupport.executeAndCapturePipe(converters.get(0));
+	}
+
+	/**
+	 * 放入一个顶层任务，并等待其被唤醒。
+	 * 
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	public void awakeTree() throws InterruptedException {
+		TreeTask root = TreeTask.create(0, null);
+		pipe.put(root);
+		root.awaitCompletion();
+	}
+
+	/**
+	 * 多个线程各自放入一个顶层任务，并等待其被唤醒。
+	 * 
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Threads(CONTENDED_THREADS)
+	public void awakeTreeContended() throws InterruptedException {
+		awakeTree();
+	}
+}
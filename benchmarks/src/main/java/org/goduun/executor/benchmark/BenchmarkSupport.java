@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.goduun.executor.AbstractTaskProducer;
+import org.goduun.executor.Executor;
+import org.goduun.executor.ProducingErrorPipe;
+import org.goduun.executor.Task;
+import org.goduun.executor.TaskPipe;
+
+/**
+ * 基准测试的工具方法。
+ * 
+ * @author Hu Ruomin
+ */
+final class BenchmarkSupport {
+
+	/**
+	 * 构造函数。
+	 */
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * 启动执行器，并获取其任务传送管道，之后可在基准测试线程中直接向执行器放入任务。
+	 * <p>
+	 * 通过一个立即返回的生产者获取任务传送管道，执行器应为常驻执行器，否则生产者返回后执行器可能会终止。
+	 * 
+	 * @param executor
+	 *            尚未启动的执行器
+	 * @return 执行器的任务传送管道
+	 * @throws InterruptedException
+	 *             等待过程中线程被中断
+	 */
+	static <T extends Task> TaskPipe<T> executeAndCapturePipe(
+			Executor<T> executor) throws InterruptedException {
+		final AtomicReference<TaskPipe<T>> captured = new AtomicReference<TaskPipe<T>>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.addProducer(new AbstractTaskProducer<T>() {
+			@Override
+			public void execute(TaskPipe<T> pipe, ProducingErrorPipe errorPipe) {
+				captured.set(pipe);
+				latch.countDown();
+			}
+		});
+		executor.execute();
+		if (!latch.await(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("producer was not started");
+		}
+		return captured.get();
+	}
+}
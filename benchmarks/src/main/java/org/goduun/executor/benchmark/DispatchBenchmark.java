@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.goduun.executor.AbstractTask;
+import org.goduun.executor.AbstractTaskProcessor;
+import org.goduun.executor.DispatchMode;
+import org.goduun.executor.ExecutorFactory;
+import org.goduun.executor.ProcessingExecutor;
+import org.goduun.executor.TaskList;
+import org.goduun.executor.TaskPipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 任务从放入任务队列到被消费者处理完的延迟，即调度线程（或直接调度模式下的消费者线程）取出任务、组批并交给消费者执行的开销。
+ * <p>
+ * 每次操作放入一批任务，并等待这批任务全部被处理完。分为单个放入线程及{@value #CONTENDED_THREADS}个放入线程两个版本，后者以Contended结尾，
+ * 用于观察调度线程在多个生产者同时放入时的表现；也可以通过JMH的-t参数统一指定放入线程数。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class DispatchBenchmark {
+
+	/**
+	 * 竞争版本的放入线程数
+	 */
+	static final int CONTENDED_THREADS = 4;
+
+	/**
+	 * 每次放入的任务数，也是消费者每次可处理的最大任务数
+	 */
+	@Param({ "1", "16", "128" })
+	public int batchCapacity;
+
+	/**
+	 * 消费者线程数上限
+	 */
+	@Param({ "1", "4" })
+	public int consumerThreads;
+
+	/**
+	 * 调度模式
+	 */
+	@Param({ "BOSS", "DIRECT" })
+	public DispatchMode dispatchMode;
+
+	/**
+	 * 被测执行器
+	 */
+	private ProcessingExecutor<Probe> executor;
+
+	/**
+	 * 执行器的任务传送管道
+	 */
+	private TaskPipe<Probe> pipe;
+
+	/**
+	 * 启动常驻执行器。常驻执行器无法终止，随测试进程一起退出。
+	 * 
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Setup
+	public void setup() throws InterruptedException {
+		executor = ExecutorFactory.<Probe> newResidentExecutor(
+				"dispatch-benchmark", DispatchBenchmark.class, 1,
+				consumerThreads);
+		executor.setLoggingTask(false);
+		executor.setLoggingExecution(false);
+		executor.setDispatchMode(dispatchMode);
+		AbstractTaskProcessor<Probe> consumer = new AbstractTaskProcessor<Probe>() {
+			@Override
+			public void execute(TaskList<Probe> tasks) {
+				for (Probe probe : tasks) {
+					probe.waiter.arrive();
+				}
+			}
+		};
+		consumer.setCapacity(batchCapacity);
+		executor.setConsumer(consumer);
+		pipe = BenchmarkSupport.executeAndCapturePipe(executor);
+	}
+
+	/**
+	 * 放入一批任务，并等待其全部被处理完。
+	 * 
+	 * @param batch
+	 *            线程私有的任务
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	public void dispatch(Batch batch) throws InterruptedException {
+		List<Probe> probes = batch.get(batchCapacity);
+		batch.waiter.reset(probes.size());
+		pipe.putAll(probes);
+		batch.waiter.await();
+	}
+
+	/**
+	 * 多个线程同时放入一批任务，并各自等待其全部被处理完。
+	 * 
+	 * @param batch
+	 *            线程私有的任务
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Threads(CONTENDED_THREADS)
+	public void dispatchContended(Batch batch) throws InterruptedException {
+		dispatch(batch);
+	}
+
+	/**
+	 * 线程私有的任务，任务对象重复使用。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	@State(Scope.Thread)
+	public static class Batch {
+
+		/**
+		 * 任务
+		 */
+		private List<Probe> probes;
+
+		/**
+		 * 等待任务处理完的信号
+		 */
+		private final Waiter waiter = new Waiter();
+
+		/**
+		 * 获取任务，首次调用时创建。
+		 * 
+		 * @param size
+		 *            任务数
+		 * @return 任务
+		 */
+		private List<Probe> get(int size) {
+			if (null == probes) {
+				probes = new ArrayList<Probe>(size);
+				for (int i = 0; i < size; i++) {
+					probes.add(new Probe(waiter));
+				}
+			}
+			return probes;
+		}
+	}
+
+	/**
+	 * 探测任务，被处理时通知等待的线程。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	public static class Probe extends AbstractTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = -1442218929457924713L;
+
+		/**
+		 * 等待任务处理完的信号
+		 */
+		private final transient Waiter waiter;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param waiter
+		 *            等待任务处理完的信号
+		 */
+		Probe(Waiter waiter) {
+			this.waiter = waiter;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getId() {
+			return "probe";
+		}
+	}
+
+	/**
+	 * 等待一批任务处理完的信号。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	static final class Waiter {
+
+		/**
+		 * 尚未处理完的任务数
+		 */
+		private final AtomicInteger remaining = new AtomicInteger();
+
+		/**
+		 * 等待的线程
+		 */
+		private volatile Thread thread;
+
+		/**
+		 * 一个任务处理完，全部处理完时唤醒等待的线程。
+		 */
+		void arrive() {
+			if (0 == remaining.decrementAndGet()) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		/**
+		 * 等待全部任务处理完。
+		 * 
+		 * @throws InterruptedException
+		 *             线程被中断
+		 */
+		void await() throws InterruptedException {
+			while (0 < remaining.get()) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+
+		/**
+		 * 重置为等待指定数量的任务。
+		 * 
+		 * @param count
+		 *            任务数
+		 */
+		void reset(int count) {
+			thread = Thread.currentThread();
+			remaining.set(count);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.AbstractTask;
+import org.goduun.executor.LocalTaskQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link LocalTaskQueue}放入与取出任务的吞吐量。
+ * <p>
+ * 放入端与取出端各为一个线程组，线程数通过JMH的-tg参数调整，例如“-tg 4,4”为4个放入线程、4个取出线程。
+ * 为避免迭代结束时线程永久阻塞，放入与取出均使用带超时的阻塞方法。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalTaskQueueBenchmark {
+
+	/**
+	 * 阻塞等待的超时时长，单位：毫秒
+	 */
+	private static final long TIMEOUT_MILLIS = 10;
+
+	/**
+	 * 取出端每次批量取出的最大任务数
+	 */
+	@Param({ "1", "16", "128" })
+	public int batchCapacity;
+
+	/**
+	 * 队列容量
+	 */
+	@Param({ "5000" })
+	public int capacity;
+
+	/**
+	 * 放入的任务，所有放入操作共用同一个任务对象
+	 */
+	private final SimpleTask task = new SimpleTask();
+
+	/**
+	 * 被测队列
+	 */
+	private LocalTaskQueue<SimpleTask> queue;
+
+	/**
+	 * 创建队列。
+	 */
+	@Setup
+	public void setup() {
+		queue = new LocalTaskQueue<SimpleTask>(capacity);
+	}
+
+	/**
+	 * 放入一个任务。
+	 * 
+	 * @return 是否放入成功
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public boolean put() throws InterruptedException {
+		return queue.offer(task, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 取出一个任务。
+	 * 
+	 * @return 取出的任务
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Group("putTake")
+	@GroupThreads(1)
+	public SimpleTask take() throws InterruptedException {
+		return queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 放入一个任务，与{@link #drain(Drainer)}配对。
+	 * 
+	 * @return 是否放入成功
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Group("putDrain")
+	@GroupThreads(1)
+	public boolean putForDrain() throws InterruptedException {
+		return queue.offer(task, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 批量取出任务，队列为空时等待一个任务。
+	 * 
+	 * @param drainer
+	 *            取出线程私有的任务列表
+	 * @return 取出的任务数
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Group("putDrain")
+	@GroupThreads(1)
+	public int drain(Drainer drainer) throws InterruptedException {
+		drainer.tasks.clear();
+		int drained = queue.drainTo(drainer.tasks, batchCapacity);
+		if (0 == drained
+				&& null != queue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+			drained = 1;
+		}
+		return drained;
+	}
+
+	/**
+	 * 取出线程私有的任务列表。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	@State(Scope.Thread)
+	public static class Drainer {
+
+		/**
+		 * 任务列表
+		 */
+		private final List<SimpleTask> tasks = new ArrayList<SimpleTask>();
+	}
+
+	/**
+	 * 空任务。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	public static class SimpleTask extends AbstractTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 4049129286049410829L;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getId() {
+			return "simple";
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 端到端的流水线压测，测量真实拓扑下的持续吞吐量、任务从放入到处理完毕的延迟分布以及内存分配速率。
+ * <p>
+ * 与JMH基准测试不同，压测以普通的main方法运行，不依赖图形界面或交互，适合在单台Linux机器上用脚本反复执行，例如：
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar org.goduun.executor.benchmark.PipelineHarness \
+ *     --label=1.0.6 --converters=3 --workload=sleep --work-micros=200 --output=results.json
+ * </pre>
+ * 
+ * 每轮压测都重新搭建流水线，预热轮的结果不输出。测量结果每轮一条，追加到结果文件中，附带全部参数及运行环境，便于比较不同的调优参数与版本；
+ * 进度信息输出到标准错误，不影响输出到标准输出的结果。参数说明见{@link PipelineOptions#USAGE}。
+ * 
+ * @author Hu Ruomin
+ */
+public final class PipelineHarness {
+
+	/**
+	 * csv表头是否已输出
+	 */
+	private static boolean hasHeader = false;
+
+	/**
+	 * 构造函数。
+	 */
+	private PipelineHarness() {
+	}
+
+	/**
+	 * 执行压测。
+	 * 
+	 * @param args
+	 *            形如--name=value的参数
+	 * @throws Exception
+	 *             压测失败
+	 */
+	public static void main(String[] args) throws Exception {
+		PipelineOptions options;
+		try {
+			options = PipelineOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("invalid argument: " + e.getMessage());
+			System.err.println(PipelineOptions.USAGE);
+			System.exit(2);
+			return;
+		}
+
+		boolean isComplete = true;
+		PrintWriter out = open(options);
+		try {
+			for (int i = 0; i < options.warmup + options.iterations; i++) {
+				boolean isWarmup = i < options.warmup;
+				PipelineResult measured = new PipelineTopology(options).run();
+				if (!measured.get("completedTasks").equals(
+						measured.get("expectedTasks"))) {
+					isComplete = false;
+				}
+				System.err.println((isWarmup ? "warmup " : "iteration ")
+						+ (isWarmup ? i + 1 : i - options.warmup + 1) + ": "
+						+ measured.get("tasksPerSecond") + " tasks/s, p99 "
+						+ measured.get("latencyP99Micros") + " us");
+				if (isWarmup) {
+					continue;
+				}
+				PipelineResult result = new PipelineResult();
+				result.put("timestamp", timestamp());
+				result.put("iteration", i - options.warmup + 1);
+				result.putAll(options.describe());
+				result.put("javaVersion", System.getProperty("java.version"));
+				result.put("availableProcessors", Runtime.getRuntime()
+						.availableProcessors());
+				result.put("osName", System.getProperty("os.name"));
+				result.putAll(measured);
+				write(out, options, result);
+			}
+		} finally {
+			if (null != options.output) {
+				out.close();
+			} else {
+				out.flush();
+			}
+		}
+		// 执行器线程可能仍在退出过程中，不等待其结束
+		System.exit(isComplete ? 0 : 1);
+	}
+
+	/**
+	 * 打开结果输出。
+	 * 
+	 * @param options
+	 *            压测参数
+	 * @return 结果输出
+	 * @throws IOException
+	 *             无法打开结果文件
+	 */
+	private static PrintWriter open(PipelineOptions options)
+			throws IOException {
+		if (null == options.output) {
+			return new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+		}
+		return new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+				options.output, true), "UTF-8"));
+	}
+
+	/**
+	 * 输出一轮结果，csv格式在结果文件为空时先输出表头。
+	 * 
+	 * @param out
+	 *            结果输出
+	 * @param options
+	 *            压测参数
+	 * @param result
+	 *            本轮结果
+	 */
+	private static void write(PrintWriter out, PipelineOptions options,
+			PipelineResult result) {
+		if (!options.csv) {
+			out.println(result.toJson());
+		} else {
+			if (!hasHeader && (null == options.output
+					|| 0 == new File(options.output).length())) {
+				out.println(result.toCsvHeader());
+			}
+			hasHeader = true;
+			out.println(result.toCsv());
+		}
+		out.flush();
+	}
+
+	/**
+	 * 获取当前时间的ISO 8601表示。
+	 * 
+	 * @return 当前时间
+	 */
+	private static String timestamp() {
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date());
+	}
+}
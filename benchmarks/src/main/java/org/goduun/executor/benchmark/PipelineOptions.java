@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.goduun.executor.DispatchMode;
+import org.goduun.executor.ThreadingMode;
+
+/**
+ * 流水线压测的参数，通过形如--name=value的命令行参数指定，未指定的参数取默认值。
+ * 
+ * @author Hu Ruomin
+ */
+final class PipelineOptions {
+
+	/**
+	 * 参数说明
+	 */
+	static final String USAGE = "usage: PipelineHarness [--name=value ...]\n"
+			+ "  --label=<text>            free text stored with every result, e.g. a release or tuning name\n"
+			+ "  --converters=<0..5>       converting executors in front of the processing executor (default 0)\n"
+			+ "  --fanout=<n>              children generated by each converter per task (default 1)\n"
+			+ "  --tasks=<n>               top level tasks per iteration (default 200000)\n"
+			+ "  --rate=<n>                top level tasks per second, 0 = as fast as possible (default 0)\n"
+			+ "  --workload=<none|cpu|sleep>  work done by every consumer per task (default cpu)\n"
+			+ "  --work-micros=<n>         duration of the work per task (default 10)\n"
+			+ "  --consumer-threads=<n>    consumer threads of every executor (default cpu count)\n"
+			+ "  --batch-capacity=<n>      tasks handed to a consumer per call (default 16)\n"
+			+ "  --queue=<local|ring>      task queue of every executor (default local)\n"
+			+ "  --queue-capacity=<n>      task queue capacity of every executor (default 10000)\n"
+			+ "  --dispatch-mode=<BOSS|DIRECT>     (default BOSS)\n"
+			+ "  --threading-mode=<PLATFORM|VIRTUAL>  (default PLATFORM)\n"
+			+ "  --warmup=<n>              warmup iterations, not reported (default 1)\n"
+			+ "  --iterations=<n>          measured iterations (default 3)\n"
+			+ "  --format=<json|csv>       json writes one object per line (default json)\n"
+			+ "  --output=<file>           results are appended to the file, default stdout";
+
+	/**
+	 * 结果附带的标签
+	 */
+	String label = "";
+
+	/**
+	 * 处理执行器之前的转换器个数
+	 */
+	int converters = 0;
+
+	/**
+	 * 每个转换器为每个任务生成的子任务数
+	 */
+	int fanout = 1;
+
+	/**
+	 * 每轮放入的顶层任务数
+	 */
+	int tasks = 200000;
+
+	/**
+	 * 每秒放入的顶层任务数，0表示不限速
+	 */
+	int rate = 0;
+
+	/**
+	 * 消费者对每个任务执行的负载
+	 */
+	Workload workload = Workload.CPU;
+
+	/**
+	 * 每个任务的负载时长，单位：微秒
+	 */
+	int workMicros = 10;
+
+	/**
+	 * 每个执行器的消费者线程数
+	 */
+	int consumerThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 消费者每次处理的任务数上限
+	 */
+	int batchCapacity = 16;
+
+	/**
+	 * 是否使用无锁任务队列
+	 */
+	boolean ringQueue = false;
+
+	/**
+	 * 每个执行器的任务队列容量
+	 */
+	int queueCapacity = 10000;
+
+	/**
+	 * 任务调度模式
+	 */
+	DispatchMode dispatchMode = DispatchMode.BOSS;
+
+	/**
+	 * 消费者线程模式
+	 */
+	ThreadingMode threadingMode = ThreadingMode.PLATFORM;
+
+	/**
+	 * 预热轮数
+	 */
+	int warmup = 1;
+
+	/**
+	 * 测量轮数
+	 */
+	int iterations = 3;
+
+	/**
+	 * 是否输出csv格式
+	 */
+	boolean csv = false;
+
+	/**
+	 * 结果文件，null表示标准输出
+	 */
+	String output;
+
+	/**
+	 * 解析命令行参数。
+	 * 
+	 * @param args
+	 *            命令行参数
+	 * @return 压测参数
+	 * @throws IllegalArgumentException
+	 *             参数格式错误、参数名未知或参数值超出范围
+	 */
+	static PipelineOptions parse(String[] args) {
+		PipelineOptions options = new PipelineOptions();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException(arg);
+			}
+			options.set(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		options.check();
+		return options;
+	}
+
+	/**
+	 * 获取影响测量结果的参数，按固定顺序排列，随每轮结果一起输出。
+	 * 
+	 * @return 参数名与参数值
+	 */
+	Map<String, Object> describe() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("label", label);
+		map.put("converters", converters);
+		map.put("fanout", fanout);
+		map.put("tasks", tasks);
+		map.put("rate", rate);
+		map.put("workload", workload.name().toLowerCase());
+		map.put("workMicros", workMicros);
+		map.put("consumerThreads", consumerThreads);
+		map.put("batchCapacity", batchCapacity);
+		map.put("queue", ringQueue ? "ring" : "local");
+		map.put("queueCapacity", queueCapacity);
+		map.put("dispatchMode", dispatchMode.name());
+		map.put("threadingMode", threadingMode.name());
+		return map;
+	}
+
+	/**
+	 * 获取每轮处理执行器需要处理的任务数。
+	 * 
+	 * @return 处理执行器需要处理的任务数
+	 */
+	long leafTasks() {
+		long count = tasks;
+		for (int i = 0; i < converters && count <= Integer.MAX_VALUE; i++) {
+			count *= fanout;
+		}
+		return count;
+	}
+
+	/**
+	 * 设置一个参数。
+	 * 
+	 * @param name
+	 *            参数名
+	 * @param value
+	 *            参数值
+	 * @throws IllegalArgumentException
+	 *             参数名未知或参数值格式错误
+	 */
+	private void set(String name, String value) {
+		if ("label".equals(name)) {
+			label = value;
+		} else if ("converters".equals(name)) {
+			converters = Integer.parseInt(value);
+		} else if ("fanout".equals(name)) {
+			fanout = Integer.parseInt(value);
+		} else if ("tasks".equals(name)) {
+			tasks = Integer.parseInt(value);
+		} else if ("rate".equals(name)) {
+			rate = Integer.parseInt(value);
+		} else if ("workload".equals(name)) {
+			workload = Workload.valueOf(value.toUpperCase());
+		} else if ("work-micros".equals(name)) {
+			workMicros = Integer.parseInt(value);
+		} else if ("consumer-threads".equals(name)) {
+			consumerThreads = Integer.parseInt(value);
+		} else if ("batch-capacity".equals(name)) {
+			batchCapacity = Integer.parseInt(value);
+		} else if ("queue".equals(name)) {
+			if (!"local".equals(value) && !"ring".equals(value)) {
+				throw new IllegalArgumentException(value);
+			}
+			ringQueue = "ring".equals(value);
+		} else if ("queue-capacity".equals(name)) {
+			queueCapacity = Integer.parseInt(value);
+		} else if ("dispatch-mode".equals(name)) {
+			dispatchMode = DispatchMode.valueOf(value.toUpperCase());
+		} else if ("threading-mode".equals(name)) {
+			threadingMode = ThreadingMode.valueOf(value.toUpperCase());
+		} else if ("warmup".equals(name)) {
+			warmup = Integer.parseInt(value);
+		} else if ("iterations".equals(name)) {
+			iterations = Integer.parseInt(value);
+		} else if ("format".equals(name)) {
+			if (!"json".equals(value) && !"csv".equals(value)) {
+				throw new IllegalArgumentException(value);
+			}
+			csv = "csv".equals(value);
+		} else if ("output".equals(name)) {
+			output = value;
+		} else {
+			throw new IllegalArgumentException(name);
+		}
+	}
+
+	/**
+	 * 检查参数范围。
+	 * 
+	 * @throws IllegalArgumentException
+	 *             参数值超出范围
+	 */
+	private void check() {
+		if (converters < 0 || converters >= TreeTask.MAX_DEPTH || fanout < 1
+				|| tasks < 1 || rate < 0 || workMicros < 0
+				|| consumerThreads < 1 || batchCapacity < 1
+				|| queueCapacity < 1 || warmup < 0 || iterations < 1) {
+			throw new IllegalArgumentException();
+		}
+		// 每个任务的延迟都需要保存下来计算百分位数
+		if (leafTasks() > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("too many tasks per iteration");
+		}
+	}
+}
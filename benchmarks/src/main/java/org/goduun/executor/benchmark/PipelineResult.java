@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 流水线压测一轮的结果，保持字段的加入顺序，可输出为一行json或一行csv。
+ * 
+ * @author Hu Ruomin
+ */
+final class PipelineResult {
+
+	/**
+	 * 字段名与字段值
+	 */
+	private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+	/**
+	 * 加入一个字段。
+	 * 
+	 * @param name
+	 *            字段名
+	 * @param value
+	 *            字段值，数值或字符串
+	 */
+	void put(String name, Object value) {
+		values.put(name, value);
+	}
+
+	/**
+	 * 加入多个字段。
+	 * 
+	 * @param map
+	 *            字段名与字段值
+	 */
+	void putAll(Map<String, Object> map) {
+		values.putAll(map);
+	}
+
+	/**
+	 * 加入另一个结果的全部字段。
+	 * 
+	 * @param other
+	 *            另一个结果
+	 */
+	void putAll(PipelineResult other) {
+		values.putAll(other.values);
+	}
+
+	/**
+	 * 获取字段值。
+	 * 
+	 * @param name
+	 *            字段名
+	 * @return 字段值，不存在时为null
+	 */
+	Object get(String name) {
+		return values.get(name);
+	}
+
+	/**
+	 * 输出为一行json对象。
+	 * 
+	 * @return json对象
+	 */
+	String toJson() {
+		StringBuilder sb = new StringBuilder("{");
+		Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Object> entry = it.next();
+			sb.append('"').append(entry.getKey()).append("\":");
+			Object value = entry.getValue();
+			if (value instanceof Number || value instanceof Boolean) {
+				sb.append(value);
+			} else {
+				appendJsonString(sb, String.valueOf(value));
+			}
+			if (it.hasNext()) {
+				sb.append(',');
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * 输出csv的表头。
+	 * 
+	 * @return csv表头
+	 */
+	String toCsvHeader() {
+		StringBuilder sb = new StringBuilder();
+		for (String name : values.keySet()) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 输出为一行csv记录，字段顺序与{@link #toCsvHeader()}一致。
+	 * 
+	 * @return csv记录
+	 */
+	String toCsv() {
+		StringBuilder sb = new StringBuilder();
+		boolean isFirst = true;
+		for (Object value : values.values()) {
+			if (!isFirst) {
+				sb.append(',');
+			}
+			isFirst = false;
+			String text = String.valueOf(value);
+			if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0
+					|| text.indexOf('\n') >= 0) {
+				sb.append('"').append(text.replace("\"", "\"\"")).append('"');
+			} else {
+				sb.append(text);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 追加json字符串，并转义特殊字符。
+	 * 
+	 * @param sb
+	 *            输出
+	 * @param text
+	 *            字符串
+	 */
+	private static void appendJsonString(StringBuilder sb, String text) {
+		sb.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if ('"' == c || '\\' == c) {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+}
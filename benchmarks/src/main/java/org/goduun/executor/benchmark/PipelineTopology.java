@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.goduun.executor.AbstractExecutor;
+import org.goduun.executor.AbstractTaskConverter;
+import org.goduun.executor.AbstractTaskProcessor;
+import org.goduun.executor.AbstractTaskProducer;
+import org.goduun.executor.ConvertingExecutor;
+import org.goduun.executor.ExecutorFactory;
+import org.goduun.executor.LocalTaskQueue;
+import org.goduun.executor.ProcessingExecutor;
+import org.goduun.executor.ProducingErrorPipe;
+import org.goduun.executor.RingTaskQueue;
+import org.goduun.executor.TaskList;
+import org.goduun.executor.TaskPipe;
+import org.goduun.executor.TaskQueue;
+
+/**
+ * 流水线压测的一轮：用{@link ExecutorFactory}搭建由若干个转换器和一个处理执行器串联而成的流水线，放入指定数量的顶层任务，
+ * 等待流水线执行完毕后统计结果。
+ * <p>
+ * 第i个转换器处理第i层任务，为每个任务生成fanout个第i+1层子任务；处理执行器处理最底层任务，并记录每个最底层任务从其顶层任务放入流水线到
+ * 处理完毕的延迟。限速放入时，延迟从顶层任务计划放入的时间算起，避免放入受阻时漏记排队时间。
+ * 
+ * @author Hu Ruomin
+ */
+final class PipelineTopology {
+
+	/**
+	 * 压测参数
+	 */
+	private final PipelineOptions options;
+
+	/**
+	 * 每个任务的负载时长，单位：纳秒
+	 */
+	private final long workNanos;
+
+	/**
+	 * 各转换器，按流水线顺序排列
+	 */
+	private final List<ConvertingExecutor<TreeTask, TreeTask>> converters = new ArrayList<ConvertingExecutor<TreeTask, TreeTask>>();
+
+	/**
+	 * 处理执行器
+	 */
+	private final ProcessingExecutor<TreeTask> processor;
+
+	/**
+	 * 最底层任务的延迟，单位：纳秒
+	 */
+	private final long[] latencies;
+
+	/**
+	 * 已记录延迟的最底层任务数
+	 */
+	private final AtomicInteger completed = new AtomicInteger();
+
+	/**
+	 * 最后一个最底层任务处理完毕的时间，单位：纳秒
+	 */
+	private final AtomicLong lastCompletion = new AtomicLong();
+
+	/**
+	 * 构造函数，搭建流水线。
+	 * 
+	 * @param options
+	 *            压测参数
+	 */
+	PipelineTopology(PipelineOptions options) {
+		this.options = options;
+		this.workNanos = TimeUnit.MICROSECONDS.toNanos(options.workMicros);
+		this.latencies = new long[(int) options.leafTasks()];
+
+		for (int level = 0; level < options.converters; level++) {
+			ConvertingExecutor<TreeTask, TreeTask> converter = ExecutorFactory
+					.<TreeTask, TreeTask> newConverter("converter-" + level,
+							PipelineHarness.class, 1,
+							options.consumerThreads, this.<TreeTask> newQueue());
+			configure(converter);
+			final int childLevel = level + 1;
+			AbstractTaskConverter<TreeTask, TreeTask> consumer = new AbstractTaskConverter<TreeTask, TreeTask>() {
+				@Override
+				protected void execute(TaskList<TreeTask> tasks,
+						TaskPipe<TreeTask> pipe) {
+					List<TreeTask> children = new ArrayList<TreeTask>();
+					for (TreeTask task : tasks) {
+						PipelineTopology.this.options.workload
+								.perform(workNanos);
+						for (int i = 0; i < PipelineTopology.this.options.fanout; i++) {
+							children.add(TreeTask.create(childLevel, task));
+						}
+					}
+					try {
+						pipe.putAll(children);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			consumer.setCapacity(options.batchCapacity);
+			converter.setConsumer(consumer);
+			if (!converters.isEmpty()) {
+				converter.follow(converters.get(converters.size() - 1));
+			}
+			converters.add(converter);
+		}
+
+		processor = ExecutorFactory.<TreeTask> newExecutor("processor",
+				PipelineHarness.class, 1, options.consumerThreads,
+				this.<TreeTask> newQueue());
+		configure(processor);
+		AbstractTaskProcessor<TreeTask> consumer = new AbstractTaskProcessor<TreeTask>() {
+			@Override
+			public void execute(TaskList<TreeTask> tasks) {
+				for (TreeTask task : tasks) {
+					PipelineTopology.this.options.workload.perform(workNanos);
+					long now = System.nanoTime();
+					latencies[completed.getAndIncrement()] = now
+							- task.getRoot().getQueuedNanos();
+					long last = lastCompletion.get();
+					while (now - last > 0
+							&& !lastCompletion.compareAndSet(last, now)) {
+						last = lastCompletion.get();
+					}
+				}
+			}
+		};
+		consumer.setCapacity(options.batchCapacity);
+		processor.setConsumer(consumer);
+		if (!converters.isEmpty()) {
+			processor.follow(converters.get(converters.size() - 1));
+		}
+	}
+
+	/**
+	 * 执行一轮压测，阻塞直到流水线执行完毕。
+	 * 
+	 * @return 本轮结果
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	PipelineResult run() throws InterruptedException {
+		final int tasks = options.tasks;
+		final long period = 0 == options.rate ? 0 : TimeUnit.SECONDS
+				.toNanos(1) / options.rate;
+		final long start = System.nanoTime();
+		AbstractTaskProducer<TreeTask> producer = new AbstractTaskProducer<TreeTask>() {
+			@Override
+			public void execute(TaskPipe<TreeTask> pipe,
+					ProducingErrorPipe errorPipe) {
+				try {
+					for (int i = 0; i < tasks; i++) {
+						TreeTask task = TreeTask.create(0, null);
+						if (0 == period) {
+							task.setQueuedNanos(System.nanoTime());
+						} else {
+							long intended = start + i * period;
+							long delay = intended - System.nanoTime();
+							if (delay > 0) {
+								LockSupport.parkNanos(delay);
+							}
+							task.setQueuedNanos(intended);
+						}
+						pipe.put(task);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		AllocationSampler sampler = new AllocationSampler();
+		sampler.start();
+		if (converters.isEmpty()) {
+			processor.addProducer(producer);
+		} else {
+			converters.get(0).addProducer(producer);
+		}
+		// 先启动下游，再启动上游；先终止上游，再终止下游
+		processor.execute();
+		for (int i = converters.size() - 1; i >= 0; i--) {
+			converters.get(i).execute();
+		}
+		for (ConvertingExecutor<TreeTask, TreeTask> converter : converters) {
+			converter.terminate();
+		}
+		processor.terminate();
+		for (ConvertingExecutor<TreeTask, TreeTask> converter : converters) {
+			converter.terminateAndAwait();
+		}
+		processor.terminateAndAwait();
+		long allocated = sampler.stop();
+
+		int count = completed.get();
+		long elapsed = (count > 0 ? lastCompletion.get() : System.nanoTime())
+				- start;
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		double seconds = elapsed / 1e9;
+
+		PipelineResult result = new PipelineResult();
+		result.put("completedTasks", count);
+		result.put("expectedTasks", latencies.length);
+		result.put("elapsedMillis", round(elapsed / 1e6));
+		result.put("tasksPerSecond", round(count / seconds));
+		result.put("rootTasksPerSecond", round(options.tasks / seconds));
+		result.put("latencyMeanMicros", round(mean(sorted) / 1e3));
+		result.put("latencyP50Micros", round(percentile(sorted, 0.50) / 1e3));
+		result.put("latencyP99Micros", round(percentile(sorted, 0.99) / 1e3));
+		result.put("latencyP999Micros", round(percentile(sorted, 0.999) / 1e3));
+		result.put("latencyMaxMicros",
+				round((0 == count ? 0 : sorted[count - 1]) / 1e3));
+		result.put("allocatedBytes", allocated);
+		result.put("allocationMBPerSecond", allocated < 0 ? -1
+				: round(allocated / seconds / (1024 * 1024)));
+		result.put("allocatedBytesPerTask", allocated < 0 || 0 == count ? -1
+				: round((double) allocated / count));
+		return result;
+	}
+
+	/**
+	 * 按参数设置执行器。
+	 * 
+	 * @param executor
+	 *            执行器
+	 */
+	private void configure(AbstractExecutor<TreeTask> executor) {
+		executor.setLoggingTask(false);
+		executor.setLoggingExecution(false);
+		executor.setDispatchMode(options.dispatchMode);
+		executor.setThreadingMode(options.threadingMode);
+	}
+
+	/**
+	 * 按参数创建任务队列。
+	 * 
+	 * @return 任务队列
+	 */
+	private <T extends TreeTask> TaskQueue<T> newQueue() {
+		return options.ringQueue ? new RingTaskQueue<T>(options.queueCapacity)
+				: new LocalTaskQueue<T>(options.queueCapacity);
+	}
+
+	/**
+	 * 计算有序数组的百分位数，采用最近秩法。
+	 * 
+	 * @param sorted
+	 *            升序排列的数组
+	 * @param quantile
+	 *            分位点，0至1之间
+	 * @return 百分位数，数组为空时为0
+	 */
+	private static long percentile(long[] sorted, double quantile) {
+		if (0 == sorted.length) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(quantile * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * 计算数组的平均值。
+	 * 
+	 * @param values
+	 *            数组
+	 * @return 平均值，数组为空时为0
+	 */
+	private static double mean(long[] values) {
+		if (0 == values.length) {
+			return 0;
+		}
+		double sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	/**
+	 * 保留三位小数。
+	 * 
+	 * @param value
+	 *            数值
+	 * @return 保留三位小数后的数值
+	 */
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
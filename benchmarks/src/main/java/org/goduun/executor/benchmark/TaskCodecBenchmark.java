@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.AbstractTask;
+import org.goduun.executor.Task;
+import org.goduun.executor.TaskCodec;
+import org.goduun.executor.TaskCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 任务编解码器的基准测试，对比紧凑编码与Java序列化对一个典型的“编号+少量数据”任务的编解码耗时。
+ * <p>
+ * 两种编码都经过{@link TaskCodecs}，与任务队列的实际用法一致：{@link SampleTask}登记了紧凑编解码器，
+ * {@link SerializedSampleTask}没有登记，采用Java序列化。编码结果的大小（含类型编号）在{@link #setup()}中输出。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskCodecBenchmark {
+
+	/**
+	 * {@link SampleTask}的类型编号
+	 */
+	private static final int SAMPLE_TYPE_ID = 1;
+
+	static {
+		TaskCodecs.register(SampleTask.class, SAMPLE_TYPE_ID,
+				new CompactCodec());
+	}
+
+	/**
+	 * 任务数据的长度
+	 */
+	@Param({ "16", "256" })
+	public int payloadSize;
+
+	/**
+	 * 编码缓冲区
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * 紧凑编码的结果
+	 */
+	private ByteBuffer compactEncoded;
+
+	/**
+	 * 父任务
+	 */
+	private SampleTask parent;
+
+	/**
+	 * Java序列化编码的结果
+	 */
+	private ByteBuffer serializingEncoded;
+
+	/**
+	 * 采用Java序列化编码的任务
+	 */
+	private SampleTask serializedTask;
+
+	/**
+	 * 采用紧凑编码的任务
+	 */
+	private SampleTask task;
+
+	/**
+	 * 准备任务及编码结果。
+	 */
+	@Setup
+	public void setup() {
+		byte[] payload = new byte[payloadSize];
+		for (int i = 0; i < payloadSize; i++) {
+			payload[i] = (byte) i;
+		}
+		parent = new SampleTask(null, 1L, new byte[0]);
+		task = new SampleTask(parent, 123456789L, payload);
+		serializedTask = new SerializedSampleTask(parent, 123456789L, payload);
+		buffer = ByteBuffer.allocate(64 * 1024);
+		compactEncoded = encode(task);
+		serializingEncoded = encode(serializedTask);
+		System.out.println("encoded bytes: compact=" + compactEncoded.remaining()
+				+ ", serializing=" + serializingEncoded.remaining());
+	}
+
+	/**
+	 * 紧凑解码。
+	 * 
+	 * @return 解码出的任务
+	 */
+	@Benchmark
+	public Task compactDecode() {
+		compactEncoded.rewind();
+		return TaskCodecs.decode(compactEncoded, parent);
+	}
+
+	/**
+	 * 紧凑编码。
+	 * 
+	 * @return 编码结果的大小
+	 */
+	@Benchmark
+	public int compactEncode() {
+		buffer.clear();
+		return TaskCodecs.encode(task, buffer).position();
+	}
+
+	/**
+	 * Java序列化解码。
+	 * 
+	 * @return 解码出的任务
+	 */
+	@Benchmark
+	public Task serializingDecode() {
+		serializingEncoded.rewind();
+		return TaskCodecs.decode(serializingEncoded, parent);
+	}
+
+	/**
+	 * Java序列化编码。
+	 * 
+	 * @return 编码结果的大小
+	 */
+	@Benchmark
+	public int serializingEncode() {
+		buffer.clear();
+		return TaskCodecs.encode(serializedTask, buffer).position();
+	}
+
+	/**
+	 * 通过登记处编码指定任务。
+	 * 
+	 * @param sample
+	 *            待编码的任务
+	 * @return 编码结果
+	 */
+	private ByteBuffer encode(SampleTask sample) {
+		buffer.clear();
+		buffer = TaskCodecs.encode(sample, buffer);
+		buffer.flip();
+		ByteBuffer encoded = ByteBuffer.allocate(buffer.remaining());
+		encoded.put(buffer);
+		encoded.flip();
+		return encoded;
+	}
+
+	/**
+	 * 只编码编号及数据的紧凑编解码器。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class CompactCodec implements TaskCodec<SampleTask> {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public SampleTask decode(ByteBuffer buffer, Task parent) {
+			long id = buffer.getLong();
+			byte[] payload = new byte[buffer.getInt()];
+			buffer.get(payload);
+			return new SampleTask(parent, id, payload);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void encode(SampleTask task, ByteBuffer buffer) {
+			buffer.putLong(task.id);
+			buffer.putInt(task.payload.length);
+			buffer.put(task.payload);
+		}
+	}
+
+	/**
+	 * 典型的“编号+少量数据”任务。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	public static class SampleTask extends AbstractTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = -2305994021858093514L;
+
+		/**
+		 * 编号
+		 */
+		private final long id;
+
+		/**
+		 * 数据
+		 */
+		private final byte[] payload;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param parent
+		 *            父任务
+		 * @param id
+		 *            编号
+		 * @param payload
+		 *            数据
+		 */
+		public SampleTask(Task parent, long id, byte[] payload) {
+			super(parent);
+			this.id = id;
+			this.payload = payload;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getId() {
+			return String.valueOf(id);
+		}
+	}
+
+	/**
+	 * 没有登记编解码器、采用Java序列化的同一种任务。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	public static class SerializedSampleTask extends SampleTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 4467931258170682135L;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param parent
+		 *            父任务
+		 * @param id
+		 *            编号
+		 * @param payload
+		 *            数据
+		 */
+		public SerializedSampleTask(Task parent, long id, byte[] payload) {
+			super(parent, id, payload);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.ExecutorFactory;
+import org.goduun.executor.ProcessingExecutor;
+import org.goduun.executor.TaskList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 消费者遍历{@link TaskList}的耗时，包括逐个遍历（每个任务记录开始、结束时间）与一次性获取两种方式。
+ * <p>
+ * 每次操作都新建任务列表，与执行器为每批任务新建任务列表的情况一致。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskListBenchmark {
+
+	/**
+	 * 任务列表的任务数，即消费者每次可处理的最大任务数
+	 */
+	@Param({ "1", "16", "128", "1024" })
+	public int batchCapacity;
+
+	/**
+	 * 任务列表所属的执行器
+	 */
+	private ProcessingExecutor<TreeTask> executor;
+
+	/**
+	 * 任务
+	 */
+	private List<TreeTask> tasks;
+
+	/**
+	 * 创建任务及执行器，执行器不启动，只用于输出日志的判断。
+	 */
+	@Setup
+	public void setup() {
+		executor = ExecutorFactory.<TreeTask> newExecutor(
+				"list-benchmark", TaskListBenchmark.class);
+		executor.setLoggingTask(false);
+		executor.setLoggingExecution(false);
+		tasks = new ArrayList<TreeTask>(batchCapacity);
+		for (int i = 0; i < batchCapacity; i++) {
+			tasks.add(TreeTask.create(0, null));
+		}
+	}
+
+	/**
+	 * 逐个遍历任务。
+	 * 
+	 * @param blackhole
+	 *            Blackhole
+	 */
+	@Benchmark
+	public void iterate(Blackhole blackhole) {
+		for (TreeTask task : new TaskList<TreeTask>(tasks, executor)) {
+			blackhole.consume(task);
+		}
+	}
+
+	/**
+	 * 一次性获取全部任务后遍历。
+	 * 
+	 * @param blackhole
+	 *            Blackhole
+	 */
+	@Benchmark
+	public void toList(Blackhole blackhole) {
+		for (TreeTask task : new TaskList<TreeTask>(tasks, executor).toList()) {
+			blackhole.consume(task);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.ExecutorFactory;
+import org.goduun.executor.LocalTaskQueue;
+import org.goduun.executor.ProcessingExecutor;
+import org.goduun.executor.Task;
+import org.goduun.executor.TaskPipe;
+import org.goduun.executor.TaskState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link TaskPipe}放入任务的耗时，包括任务类型关系登记、任务状态创建，以及所有祖先任务的子任务计数。
+ * <p>
+ * 所有线程向同一组祖先任务放入子任务，每次放入后立即从队列中取出，使队列始终不满。每种放入方式分为单线程及{@value #CONTENDED_THREADS}个线程竞争两个版本，
+ * 后者以Contended结尾；也可以通过JMH的-t参数统一指定线程数。
+ * 
+ * @author Hu Ruomin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class TaskPipeBenchmark {
+
+	/**
+	 * 竞争版本的线程数
+	 */
+	static final int CONTENDED_THREADS = 4;
+
+	/**
+	 * 每次批量放入的任务数
+	 */
+	@Param({ "1", "16", "128" })
+	public int batchCapacity;
+
+	/**
+	 * 子任务的祖先层数
+	 */
+	@Param({ "1", "3" })
+	public int depth;
+
+	/**
+	 * 子任务的直接父任务
+	 */
+	private Task parent;
+
+	/**
+	 * 被测管道
+	 */
+	private TaskPipe<TreeTask> pipe;
+
+	/**
+	 * 管道的目标队列
+	 */
+	private LocalTaskQueue<TreeTask> queue;
+
+	/**
+	 * 创建管道及祖先任务，祖先任务均已设置任务状态，与执行器中的情况一致。
+	 */
+	@Setup
+	public void setup() {
+		queue = new LocalTaskQueue<TreeTask>(64 * 1024);
+		ProcessingExecutor<TreeTask> executor = ExecutorFactory
+				.<TreeTask> newExecutor("pipe-benchmark",
+						TaskPipeBenchmark.class, 1, 1, queue);
+		executor.setLoggingTask(false);
+		executor.setLoggingExecution(false);
+		pipe = new TaskPipe<TreeTask>(queue, executor);
+		Task ancestor = null;
+		for (int level = 0; level < depth; level++) {
+			Task task = TreeTask.create(level, ancestor);
+			TaskState.setTaskClassRelation(task.getClass(),
+					null == ancestor ? null : ancestor.getClass());
+			task.setTaskState(new TaskState(task));
+			ancestor = task;
+		}
+		parent = ancestor;
+	}
+
+	/**
+	 * 逐个放入一批子任务。
+	 * 
+	 * @param children
+	 *            线程私有的子任务
+	 * @return 取出的任务数
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	public int put(Children children) throws InterruptedException {
+		List<TreeTask> tasks = children.get(this);
+		for (int i = 0; i < tasks.size(); i++) {
+			pipe.put(tasks.get(i));
+		}
+		return drain(children);
+	}
+
+	/**
+	 * 批量放入一批子任务。
+	 * 
+	 * @param children
+	 *            线程私有的子任务
+	 * @return 取出的任务数
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	public int putAll(Children children) throws InterruptedException {
+		pipe.putAll(children.get(this));
+		return drain(children);
+	}
+
+	/**
+	 * 多个线程同时批量放入子任务。
+	 * 
+	 * @param children
+	 *            线程私有的子任务
+	 * @return 取出的任务数
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Threads(CONTENDED_THREADS)
+	public int putAllContended(Children children) throws InterruptedException {
+		return putAll(children);
+	}
+
+	/**
+	 * 多个线程同时逐个放入子任务。
+	 * 
+	 * @param children
+	 *            线程私有的子任务
+	 * @return 取出的任务数
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	@Benchmark
+	@Threads(CONTENDED_THREADS)
+	public int putContended(Children children) throws InterruptedException {
+		return put(children);
+	}
+
+	/**
+	 * 从队列中取出任务，取出的任务可能是其他线程放入的。
+	 * 
+	 * @param children
+	 *            线程私有的子任务
+	 * @return 取出的任务数
+	 */
+	private int drain(Children children) {
+		children.sink.clear();
+		return queue.drainTo(children.sink, batchCapacity);
+	}
+
+	/**
+	 * 线程私有的子任务，子任务对象重复使用，每次放入时管道会为其创建新的任务状态。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	@State(Scope.Thread)
+	public static class Children {
+
+		/**
+		 * 取出的任务
+		 */
+		private final List<TreeTask> sink = new ArrayList<TreeTask>();
+
+		/**
+		 * 子任务
+		 */
+		private List<TreeTask> tasks;
+
+		/**
+		 * 获取子任务，首次调用时创建。
+		 * 
+		 * @param benchmark
+		 *            基准测试状态
+		 * @return 子任务
+		 */
+		private List<TreeTask> get(TaskPipeBenchmark benchmark) {
+			if (null == tasks) {
+				tasks = new ArrayList<TreeTask>(benchmark.batchCapacity);
+				for (int i = 0; i < benchmark.batchCapacity; i++) {
+					tasks.add(TreeTask.create(benchmark.depth,
+							benchmark.parent));
+				}
+			}
+			return tasks;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.goduun.executor.AbstractTask;
+import org.goduun.executor.Task;
+
+/**
+ * 任务树中的任务，每一层使用一个不同的任务类型，以便执行器建立任务类型的父子关系。
+ * <p>
+ * 顶层任务被唤醒时通过{@link #complete()}通知等待的基准测试线程。
+ * 
+ * @author Hu Ruomin
+ */
+abstract class TreeTask extends AbstractTask {
+
+	/**
+	 * 支持的最大层数
+	 */
+	static final int MAX_DEPTH = 6;
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -6526914301227216404L;
+
+	/**
+	 * 顶层任务被唤醒的信号，非顶层任务为null
+	 */
+	private final transient CountDownLatch completion;
+
+	/**
+	 * 所在层，顶层为0
+	 */
+	private final int level;
+
+	/**
+	 * 顶层任务放入执行器的时间，单位：纳秒
+	 */
+	private volatile long queuedNanos;
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param parent
+	 *            父任务，顶层任务为null
+	 * @param level
+	 *            所在层
+	 */
+	TreeTask(Task parent, int level) {
+		super(parent);
+		this.level = level;
+		this.completion = null == parent ? new CountDownLatch(1) : null;
+	}
+
+	/**
+	 * 创建指定层的任务。
+	 * 
+	 * @param level
+	 *            所在层，从0开始，小于{@link #MAX_DEPTH}
+	 * @param parent
+	 *            父任务，顶层任务为null
+	 * @return 任务
+	 * @throws IllegalArgumentException
+	 *             level超出范围
+	 */
+	static TreeTask create(int level, Task parent) {
+		switch (level) {
+		case 0:
+			return new Level0(parent);
+		case 1:
+			return new Level1(parent);
+		case 2:
+			return new Level2(parent);
+		case 3:
+			return new Level3(parent);
+		case 4:
+			return new Level4(parent);
+		case 5:
+			return new Level5(parent);
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * 获取指定层的任务类型。
+	 * 
+	 * @param level
+	 *            所在层
+	 * @return 任务类型
+	 */
+	static Class<? extends TreeTask> classOf(int level) {
+		return create(level, null).getClass();
+	}
+
+	/**
+	 * 通知顶层任务已被唤醒。
+	 */
+	void complete() {
+		completion.countDown();
+	}
+
+	/**
+	 * 等待顶层任务被唤醒。
+	 * 
+	 * @throws InterruptedException
+	 *             线程被中断
+	 */
+	void awaitCompletion() throws InterruptedException {
+		completion.await();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getId() {
+		return String.valueOf(level);
+	}
+
+	/**
+	 * 获取所在任务树的顶层任务。
+	 * 
+	 * @return 顶层任务
+	 */
+	TreeTask getRoot() {
+		Task task = this;
+		while (null != task.getParent()) {
+			task = task.getParent();
+		}
+		return (TreeTask) task;
+	}
+
+	/**
+	 * 获取顶层任务放入执行器的时间。
+	 * 
+	 * @return 放入执行器的时间，单位：纳秒
+	 */
+	long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * 设置顶层任务放入执行器的时间。
+	 * 
+	 * @param queuedNanos
+	 *            放入执行器的时间，单位：纳秒
+	 */
+	void setQueuedNanos(long queuedNanos) {
+		this.queuedNanos = queuedNanos;
+	}
+
+	/**
+	 * 获取所在层。
+	 * 
+	 * @return 所在层，顶层为0
+	 */
+	int getLevel() {
+		return level;
+	}
+
+	/**
+	 * 第0层任务。
+	 */
+	static final class Level0 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level0(Task parent) {
+			super(parent, 0);
+		}
+	}
+
+	/**
+	 * 第1层任务。
+	 */
+	static final class Level1 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level1(Task parent) {
+			super(parent, 1);
+		}
+	}
+
+	/**
+	 * 第2层任务。
+	 */
+	static final class Level2 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level2(Task parent) {
+			super(parent, 2);
+		}
+	}
+
+	/**
+	 * 第3层任务。
+	 */
+	static final class Level3 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level3(Task parent) {
+			super(parent, 3);
+		}
+	}
+
+	/**
+	 * 第4层任务。
+	 */
+	static final class Level4 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level4(Task parent) {
+			super(parent, 4);
+		}
+	}
+
+	/**
+	 * 第5层任务。
+	 */
+	static final class Level5 extends TreeTask {
+
+		private static final long serialVersionUID = 1L;
+
+		Level5(Task parent) {
+			super(parent, 5);
+		}
+	}
+}
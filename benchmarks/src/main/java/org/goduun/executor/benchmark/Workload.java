@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor.benchmark;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 流水线压测中消费者对每个任务执行的模拟负载。
+ * 
+ * @author Hu Ruomin
+ */
+enum Workload {
+
+	/**
+	 * 无负载，只测量执行器自身的开销
+	 */
+	NONE {
+		@Override
+		void perform(long nanos) {
+			return;
+		}
+	},
+
+	/**
+	 * cpu密集型负载，忙计算指定时长
+	 */
+	CPU {
+		@Override
+		void perform(long nanos) {
+			long deadline = System.nanoTime() + nanos;
+			long x = nanos | 1L;
+			do {
+				for (int i = 0; i < 64; i++) {
+					x ^= x << 13;
+					x ^= x >>> 7;
+					x ^= x << 17;
+				}
+			} while (System.nanoTime() - deadline < 0);
+			sink = x;
+		}
+	},
+
+	/**
+	 * io等待型负载，休眠指定时长，模拟访问数据库或远程服务
+	 */
+	SLEEP {
+		@Override
+		void perform(long nanos) {
+			long deadline = System.nanoTime() + nanos;
+			long remaining = nanos;
+			while (remaining > 0) {
+				LockSupport.parkNanos(remaining);
+				remaining = deadline - System.nanoTime();
+			}
+		}
+	};
+
+	/**
+	 * 防止计算结果被即时编译器优化掉
+	 */
+	static volatile long sink;
+
+	/**
+	 * 执行一次负载。
+	 * 
+	 * @param nanos
+	 *            负载时长，单位：纳秒
+	 */
+	abstract void perform(long nanos);
+}
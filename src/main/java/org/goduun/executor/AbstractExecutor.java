@@ -15,22 +15,26 @@
  */
 package org.goduun.executor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
 import org.goduun.executor.datasource.DataSource;
 import org.goduun.executor.datasource.DynamicDataSourceHolder;
 import org.slf4j.Logger;
@@ -60,11 +64,26 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	private Thread bossThread;
 
+	/**
+	 * 正在执行的消费者线程数
+	 */
+	private final AtomicInteger activeConsumerCount = new AtomicInteger();
+
 	/**
 	 * 已消费完成的任务总数
 	 */
 	private final AtomicLong completedTaskCount = new AtomicLong();
 
+	/**
+	 * 消费者已执行完成的任务批次总数
+	 */
+	private final AtomicLong completedConsumerCount = new AtomicLong();
+
+	/**
+	 * 因已过截止时间而未交给消费者处理的任务总数
+	 */
+	private final AtomicLong expiredTaskCount = new AtomicLong();
+
 	/**
 	 * 执行器控制日志操作对象
 	 */
@@ -73,7 +92,33 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	/**
 	 * 任务消费者线程池
 	 */
-	private final ThreadPoolExecutor consumerPool;
+	private volatile RunnerPool consumerPool;
+
+	/**
+	 * 直接调度模式下存活的消费者线程数
+	 */
+	private final AtomicInteger directRunnerCount = new AtomicInteger();
+
+	/**
+	 * 任务调度模式
+	 */
+	private volatile DispatchMode dispatchMode = DispatchMode.BOSS;
+
+	/**
+	 * 各数据源的并发批次上限
+	 */
+	private final DataSourceLimits dataSourceLimits = new DataSourceLimits();
+
+	/**
+	 * 调度策略
+	 */
+	private volatile DispatchPolicy dispatchPolicy = DispatchPolicies
+			.largestBacklog();
+
+	/**
+	 * 运行生产者与消费者所使用的线程类型
+	 */
+	private volatile ThreadingMode threadingMode = ThreadingMode.PLATFORM;
 
 	/**
 	 * 任务生产者与执行器之间的错误交互管道
@@ -91,6 +136,11 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	private volatile boolean isBossThreadHoldingTasks = false;
 
+	/**
+	 * 挂接执行运行时后，由执行运行时的调度线程驱动的调度器
+	 */
+	private BossRunner sharedBossRunner;
+
 	/**
 	 * 是否已启动过
 	 */
@@ -99,18 +149,73 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	/**
 	 * 是否针对每次生产消费的执行过程输出日志
 	 */
-	private boolean isLoggingExecution = false;
+	private volatile boolean isLoggingExecution = false;
 
 	/**
 	 * 是否针对每个任务的生命周期輸出任务日志
 	 */
-	private boolean isLoggingTask = true;
+	private volatile boolean isLoggingTask = true;
+
+	/**
+	 * 是否记录任务各环节的时间并统计耗时分布
+	 */
+	private volatile boolean isRecordingLatency = true;
+
+	/**
+	 * 消费者线程是否尽量保持所绑定的数据源
+	 */
+	private volatile boolean isDataSourceAffinity = false;
+
+	/**
+	 * 批次未满时调度器继续等待任务的最长时长，单位：纳秒，为0表示不等待
+	 */
+	private volatile long lingerNanos = 0;
+
+	/**
+	 * 按每批任务的执行耗时预算自动调整的消费者批量
+	 */
+	private final AdaptiveCapacity adaptiveCapacity = new AdaptiveCapacity();
 
 	/**
 	 * 是否常驻执行的执行器，常驻执行器不会被关闭
 	 */
 	private final boolean isResident;
 
+	/**
+	 * 各任务类型在各环节的耗时直方图
+	 */
+	private final TaskLatencies latencies = new TaskLatencies();
+
+	/**
+	 * 各数据源在调度缓存中积压的任务数
+	 */
+	private final DataSourceCounters cachedTaskCounts = new DataSourceCounters();
+
+	/**
+	 * 当前执行器注册到平台MBeanServer所用的ObjectName，未注册或已注销时为null
+	 */
+	private final AtomicReference<ObjectName> objectName = new AtomicReference<ObjectName>();
+
+	/**
+	 * 是否已完成终止后的清理
+	 */
+	private final AtomicBoolean isTerminationCompleted = new AtomicBoolean();
+
+	/**
+	 * 连接到当前执行器（作为转换器）的执行器，当前执行器终止后，它们可能随之终止
+	 */
+	private final List<AbstractExecutor<?>> followers = new CopyOnWriteArrayList<AbstractExecutor<?>>();
+
+	/**
+	 * 生产者、消费者线程池中的线程退出后的回调，最后一个线程退出时完成终止
+	 */
+	private final Runnable runnerExitListener = new Runnable() {
+		@Override
+		public void run() {
+			completeTermination();
+		}
+	};
+
 	/**
 	 * 是否正在终止
 	 */
@@ -139,7 +244,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	/**
 	 * 任务生产者线程池
 	 */
-	private final ThreadPoolExecutor producerPool;
+	private volatile RunnerPool producerPool;
 
 	/**
 	 * 任务生产者列表
@@ -151,6 +256,11 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	private Thread producingLoggerThread;
 
+	/**
+	 * 当前执行器挂接的执行运行时，未挂接时为null
+	 */
+	private volatile ExecutingRuntime runtime;
+
 	/**
 	 * 任务生产者向当前执行器传输任务的传送管道
 	 */
@@ -175,7 +285,9 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 * @param maxConsumerPoolSize
 	 *            消费者线程池的最大线程数，如小于1，将默认为当前可用的cpu个数
 	 * @param taskQueue
-	 *            任务队列，如果为null，将默认使用 {@link LocalTaskQueue}，默认容量为：5000
+	 *            任务队列，如果为null，将默认使用 {@link LocalTaskQueue}，默认容量为：5000；
+	 *            生产者较多、竞争激烈时，可使用无锁的{@link RingTaskQueue}；
+	 *            紧急任务不应排在大量普通任务之后时，可使用{@link PriorityTaskQueue}
 	 */
 	protected AbstractExecutor(String name, Class<?> consoleClass,
 			boolean isResident, int maxProducerPoolSize,
@@ -195,12 +307,10 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 				: maxProducerPoolSize;
 		this.maxConsumerPoolSize = (maxConsumerPoolSize < 1) ? this.maxConsumerPoolSize
 				: maxConsumerPoolSize;
-		producerPool = new ThreadPoolExecutor(this.maxProducerPoolSize,
-				this.maxProducerPoolSize, 0L, TimeUnit.MILLISECONDS,
-				new LinkedBlockingQueue<Runnable>());
-		consumerPool = new ThreadPoolExecutor(this.maxConsumerPoolSize,
-				this.maxConsumerPoolSize, 0L, TimeUnit.MILLISECONDS,
-				new SynchronousQueue<Runnable>());
+		producerPool = new PlatformRunnerPool(this.maxProducerPoolSize, true,
+				1L, runnerExitListener);
+		consumerPool = new PlatformRunnerPool(this.maxConsumerPoolSize,
+				false, 1000L, runnerExitListener);
 
 		// 初始化任务队列
 		if (null == taskQueue) {
@@ -257,6 +367,8 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 *             如果当前执行器正在终止或已终止
 	 * @throws IllegalStateException
 	 *             如果当前执行器没有设置消费者
+	 * @throws IllegalStateException
+	 *             如果当前执行器挂接的执行运行时已关闭
 	 */
 	@Override
 	public void execute() {
@@ -271,20 +383,52 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			throw new IllegalStateException(
 					"at least one cunsumer should be setted before execute");
 		}
+		if (null != runtime && runtime.isShutdown()) {
+			throw new IllegalStateException(
+					"executor cannot execute after its runtime has been shut down");
+		}
 		lock.lock();
 		try {
 			isExecuted = true;
-			// 初始化生产者日志器线程
-			producingLoggerThread = new Thread(new ProducingLoggerRunner());
-			producingLoggerThread.setName("producingLogger-" + name);
-			producingLoggerThread.setDaemon(true);
-			producingLoggerThread.start();
-
-			// 初始化调度器线程
-			bossThread = new Thread(new BossRunner(getConsumer()));
-			bossThread.setName("boss-" + name);
-			bossThread.setDaemon(true);
-			bossThread.start();
+			// 初始化生产者日志器线程，挂接了执行运行时的，由执行运行时统一输出
+			if (null == runtime) {
+				producingLoggerThread = new Thread(new ProducingLoggerRunner());
+				producingLoggerThread.setName("producingLogger-" + name);
+				producingLoggerThread.setDaemon(true);
+				producingLoggerThread.start();
+			}
+
+			// 初始化调度器线程，直接调度模式下改为启动消费者线程，挂接了执行运行时的，由执行运行时的调度线程统一调度
+			if (DispatchMode.DIRECT == dispatchMode) {
+				startDirectRunners(getConsumer());
+			} else if (null != runtime) {
+				sharedBossRunner = new BossRunner(getConsumer());
+				bossThread = runtime.getDispatcherThread();
+			} else {
+				bossThread = new Thread(new BossRunner(getConsumer()));
+				bossThread.setName("boss-" + name);
+				bossThread.setDaemon(true);
+				bossThread.start();
+			}
+
+			if (null != runtime) {
+				runtime.register(this);
+			}
+
+			// 注册JMX管理对象，终止后注销
+			objectName.set(ExecutorManagement.register(this));
+
+			// 可恢复的任务队列中尚未处理完的任务，由一个内部生产者重新放入任务队列
+			if (taskQueue instanceof RecoverableTaskQueue) {
+				List<T> recovered = ((RecoverableTaskQueue<T>) taskQueue)
+						.recover();
+				if (!recovered.isEmpty()) {
+					if (null == producers) {
+						producers = new LinkedList<TaskProducer<T>>();
+					}
+					producers.add(new RecoveringProducer(recovered));
+				}
+			}
 
 			// 启动生产者线程
 			if (null != producers) {
@@ -350,6 +494,9 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		lock.lock();
 		try {
 			converter.convertTaskTo(taskPipe);
+			if (converter instanceof AbstractExecutor) {
+				((AbstractExecutor<?>) converter).followers.add(this);
+			}
 			if (null == followedConverters) {
 				followedConverters = new LinkedList<Converter<? extends Task, T>>();
 			}
@@ -359,6 +506,15 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		}
 	}
 
+	/**
+	 * 获取各数据源在调度缓存中积压的任务数，即已从任务队列中取出、尚未交给消费者的任务数。
+	 * 
+	 * @return 按数据源键排序的积压任务数，没有数据源的任务以空字符串为键
+	 */
+	public Map<String, Integer> getCachedTaskCounts() {
+		return cachedTaskCounts.snapshot();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -367,6 +523,16 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		return completedTaskCount.get();
 	}
 
+	/**
+	 * 获取从执行器启动开始到当前为止，因已过截止时间而未交给消费者处理的任务总数。
+	 * 
+	 * @return 已过截止时间的任务总数
+	 * @see DeadlineTask
+	 */
+	public long getExpiredTaskCount() {
+		return expiredTaskCount.get();
+	}
+
 	/**
 	 * 获取当前执行器的消费者。
 	 * 
@@ -379,7 +545,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	@Override
 	public int getConsumerThreadActiveCount() {
-		return consumerPool.getActiveCount();
+		return activeConsumerCount.get();
 	}
 
 	/**
@@ -387,7 +553,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	@Override
 	public long getConsumerThreadCompletedCount() {
-		return consumerPool.getCompletedTaskCount();
+		return completedConsumerCount.get();
 	}
 
 	/**
@@ -398,6 +564,112 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		return maxConsumerPoolSize;
 	}
 
+	/**
+	 * 获取从执行器启动开始到当前为止，各任务类型在各环节的累计耗时分布。
+	 * 
+	 * @return 按任务类型名称排序的耗时分布，参数说明：String - 任务类型名称，TaskStage - 任务环节
+	 * @see TaskStage
+	 */
+	public Map<String, Map<TaskStage, LatencySnapshot>> getLatencySnapshots() {
+		return latencies.snapshot();
+	}
+
+	/**
+	 * 获取各数据源在调度缓存中积压的任务计数器组，供指标导出直接读取。
+	 * 
+	 * @return 各数据源的积压任务计数器组
+	 */
+	DataSourceCounters getCachedTaskCounters() {
+		return cachedTaskCounts;
+	}
+
+	/**
+	 * 获取各数据源正在处理的批次计数器组，供指标导出直接读取。
+	 * 
+	 * @return 各数据源正在处理的批次计数器组
+	 */
+	DataSourceCounters getInFlightBatchCounters() {
+		return dataSourceLimits.getInFlightCounters();
+	}
+
+	/**
+	 * 获取各任务类型在各环节的耗时直方图，供指标导出直接读取。
+	 * 
+	 * @return 耗时直方图
+	 */
+	TaskLatencies getTaskLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * 获取当前执行器的名称。
+	 * 
+	 * @return 当前执行器的名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 获取当前执行器的任务调度模式。
+	 * 
+	 * @return 当前执行器的任务调度模式
+	 */
+	public DispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+
+	/**
+	 * 获取指定数据源的并发批次上限。
+	 * 
+	 * @param dataSourceKey
+	 *            数据源的键，没有数据源时为空字符串
+	 * @return 并发批次上限，为0表示不限制
+	 * @see #setDataSourceLimit(String, int)
+	 */
+	public int getDataSourceLimit(String dataSourceKey) {
+		return dataSourceLimits.getLimit(null == dataSourceKey ? ""
+				: dataSourceKey);
+	}
+
+	/**
+	 * 获取没有单独设定并发批次上限的数据源的上限。
+	 * 
+	 * @return 并发批次上限，为0表示不限制
+	 * @see #setDefaultDataSourceLimit(int)
+	 */
+	public int getDefaultDataSourceLimit() {
+		return dataSourceLimits.getDefaultLimit();
+	}
+
+	/**
+	 * 获取各数据源正在由消费者处理的批次数。
+	 * 
+	 * @return 按数据源键排序的批次数，没有数据源的批次以空字符串为键
+	 */
+	public Map<String, Integer> getInFlightBatchCounts() {
+		return dataSourceLimits.getInFlightCounts();
+	}
+
+	/**
+	 * 获取当前执行器的调度策略。
+	 * 
+	 * @return 调度策略
+	 * @see DispatchPolicies
+	 */
+	public DispatchPolicy getDispatchPolicy() {
+		return dispatchPolicy;
+	}
+
+	/**
+	 * 获取当前执行器运行生产者与消费者所使用的线程类型。
+	 * 
+	 * @return 当前执行器运行生产者与消费者所使用的线程类型
+	 */
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -446,6 +718,16 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		return taskQueue.size();
 	}
 
+	/**
+	 * 判断消费者线程是否尽量保持所绑定的数据源。
+	 * 
+	 * @return 是否保持数据源绑定，默认为false
+	 * @see #setDataSourceAffinity(boolean)
+	 */
+	public boolean isDataSourceAffinity() {
+		return isDataSourceAffinity;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -470,6 +752,47 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		return isLoggingTask;
 	}
 
+	/**
+	 * 获取每批任务的执行耗时预算。
+	 * 
+	 * @return 执行耗时预算，单位：毫秒，为0表示不自动调整批量
+	 * @see #setBatchLatencyBudget(long)
+	 */
+	public long getBatchLatencyBudget() {
+		return TimeUnit.NANOSECONDS.toMillis(adaptiveCapacity.getBudgetNanos());
+	}
+
+	/**
+	 * 获取消费者当前每批处理的任务数上限，未设定执行耗时预算时即为消费者的{@link TaskProcessor#getCapacity()}。
+	 * 
+	 * @return 消费者当前每批处理的任务数上限
+	 * @see #setBatchLatencyBudget(long)
+	 */
+	public int getEffectiveConsumerCapacity() {
+		TaskProcessor<T> consumer = getConsumer();
+		return null == consumer ? 0 : consumerCapacity(consumer);
+	}
+
+	/**
+	 * 获取批次未满时调度器继续等待任务的最长时长。
+	 * 
+	 * @return 最长等待时长，单位：毫秒，为0表示不等待
+	 * @see #setLinger(long)
+	 */
+	public long getLinger() {
+		return TimeUnit.NANOSECONDS.toMillis(lingerNanos);
+	}
+
+	/**
+	 * 判断当前执行器是否记录任务各环节的时间并统计耗时分布。
+	 * 
+	 * @return 是否记录耗时，默认为true
+	 * @see #getLatencySnapshots()
+	 */
+	public boolean isRecordingLatency() {
+		return isRecordingLatency;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -484,22 +807,11 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	 */
 	@Override
 	public boolean isTerminated() {
-		if (!isTerminating()) {
+		if (!isDrained()) {
 			return false;
 		}
-
-		int producerSum = null == producers ? 0 : producers.size();
-		if (producerSum > producerPool.getCompletedTaskCount()) {
-			return false;
-		} else if (taskQueue.size() > 0 || consumerPool.getPoolSize() > 0
-				|| isBossThreadHoldingTasks) {
+		if (0 != consumerPool.getPoolSize() || isBossThreadHoldingTasks) {
 			return false;
-		} else if (null != followedConverters) {
-			for (Converter<? extends Task, T> followedExecutor : followedConverters) {
-				if (!followedExecutor.isTerminated()) {
-					return false;
-				}
-			}
 		}
 		return true;
 	}
@@ -623,70 +935,131 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	public void setConsumerThreadMaxSize(int size) {
 		if (0 < size) {
 			maxConsumerPoolSize = size;
-			consumerPool.setCorePoolSize(maxConsumerPoolSize);
-			consumerPool.setMaximumPoolSize(maxConsumerPoolSize);
+			consumerPool.setMaxSize(maxConsumerPoolSize);
+			if (null != runtime) {
+				runtime.updateMaxPoolSize();
+			}
+			// 直接调度模式下，线程数调大时需补充消费者线程，调小时多余的线程会自行退出
+			if (DispatchMode.DIRECT == dispatchMode && isExecuted()) {
+				startDirectRunners(getConsumer());
+			}
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * 设置每批任务的执行耗时预算，设定后执行器将根据每批任务实际的执行耗时及任务队列的深度，在运行时自动调整消费者每批处理的任务数，
+	 * 以消费者的{@link TaskProcessor#getCapacity()}为上限。
+	 * <p>
+	 * 批量过小时，每批都要切换数据源、往返数据库；批量过大时，尾延迟失控，且任务在消费者线程之间分配不均，预算应设为单批任务可接受的执行耗时。
+	 * 
+	 * @param batchLatencyBudget
+	 *            执行耗时预算，单位：毫秒，不大于0表示不自动调整批量，始终使用消费者的{@link TaskProcessor#getCapacity()}
+	 * @see AdaptiveCapacity
 	 */
-	@Override
-	public void setLoggingExecution(boolean isLoggingEnable) {
-		isLoggingExecution = isLoggingEnable;
+	public void setBatchLatencyBudget(long batchLatencyBudget) {
+		adaptiveCapacity.setBudgetNanos(TimeUnit.MILLISECONDS
+				.toNanos(batchLatencyBudget));
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * 设置当前执行器的任务调度模式，只能在执行器启动之前设置。
+	 * 
+	 * @param dispatchMode
+	 *            任务调度模式
+	 * @throws IllegalArgumentException
+	 *             dispatchMode为null
+	 * @throws IllegalStateException
+	 *             当前执行器已启动
+	 * @see DispatchMode
 	 */
-	@Override
-	public void setLoggingTask(boolean isLoggingEnable) {
-		isLoggingTask = isLoggingEnable;
+	public void setDispatchMode(DispatchMode dispatchMode) {
+		if (null == dispatchMode) {
+			throw new IllegalArgumentException();
+		}
+		lock.lock();
+		try {
+			if (isExecuted()) {
+				throw new IllegalStateException(
+						"dispatch mode cannot be changed after execution");
+			}
+			this.dispatchMode = dispatchMode;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * 单独设定指定数据源的并发批次上限，即同时由消费者处理的该数据源的批次数上限，可在运行时调整。
+	 * <p>
+	 * 消费者线程数远多于某个数据源的连接数时，多余的线程会阻塞在该数据源的连接池上。设定上限后，该数据源的名额用尽时，其任务留在调度缓存中，
+	 * 调度器转而调度其他数据源的任务；所有缓存了任务的数据源的名额都用尽时，调度器等待消费者释放名额。
+	 * 
+	 * @param dataSourceKey
+	 *            数据源的键，没有数据源时为空字符串
+	 * @param limit
+	 *            并发批次上限，不大于0表示取消单独设定的上限，改用{@link #setDefaultDataSourceLimit(int)}设定的上限
+	 * @throws IllegalArgumentException
+	 *             dataSourceKey为null
 	 */
-	@Override
-	public void setProducerThreadMaxSize(int size) {
-		if (0 < size) {
-			maxProducerPoolSize = size;
-			producerPool.setCorePoolSize(maxProducerPoolSize);
-			producerPool.setMaximumPoolSize(maxProducerPoolSize);
+	public void setDataSourceLimit(String dataSourceKey, int limit) {
+		if (null == dataSourceKey) {
+			throw new IllegalArgumentException();
 		}
+		dataSourceLimits.setLimit(dataSourceKey, limit);
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * 设置消费者线程是否尽量保持所绑定的数据源，可在运行时调整。
+	 * <p>
+	 * 默认情况下，消费者每处理一批任务、每唤醒一个祖先任务都要切换一次当前线程的数据源，基于线程变量路由的数据源代理每次切换都可能要归还并重新获取连接。
+	 * 设置后：
+	 * <ol>
+	 * <li>当前线程已绑定目标数据源时不再切换，只在数据源确实发生变化时切换。</li>
+	 * <li>{@link DispatchMode#DIRECT}模式下，每个消费者线程优先处理自己所绑定数据源的任务，只在该数据源没有缓存的任务、名额已用尽，
+	 * 或者其缓存不足一批而其他数据源已凑满一批时才转而处理其他数据源的任务，各消费者线程因此大致按数据源分组，连续多批任务沿用同一数据源。</li>
+	 * </ol>
+	 * 判断是否已绑定依赖{@link DynamicDataSourceHolder#getCurrent()}如实返回当前线程的数据源。
 	 * 
+	 * @param isDataSourceAffinity
+	 *            是否保持数据源绑定
+	 */
+	public void setDataSourceAffinity(boolean isDataSourceAffinity) {
+		this.isDataSourceAffinity = isDataSourceAffinity;
+	}
+
+	/**
+	 * 设定没有单独设定并发批次上限的数据源的上限，可在运行时调整。
+	 * 
+	 * @param limit
+	 *            并发批次上限，不大于0表示不限制，默认不限制
+	 * @see #setDataSourceLimit(String, int)
+	 */
+	public void setDefaultDataSourceLimit(int limit) {
+		dataSourceLimits.setDefaultLimit(limit);
+	}
+
+	/**
+	 * 设置当前执行器的调度策略，即按什么顺序调度各数据源缓存的任务，只能在执行器启动之前设置。
+	 * 
+	 * @param dispatchPolicy
+	 *            调度策略，默认为{@link DispatchPolicies#largestBacklog()}
+	 * @throws IllegalArgumentException
+	 *             dispatchPolicy为null
 	 * @throws IllegalStateException
-	 *             当前执行器是常驻执行器
-	 * @throws IllegalStateException
-	 *             至少有一个与当前执行器直接或间接连接的转换器未处于正在终止或以终止状态
+	 *             当前执行器已启动
+	 * @see DispatchPolicies
 	 */
-	@Override
-	public void terminate() {
-		if (isTerminating) {
-			return;
-		}
-		if (isResident()) {
-			throw new IllegalStateException(
-					"resident executor cannot be terminated");
+	public void setDispatchPolicy(DispatchPolicy dispatchPolicy) {
+		if (null == dispatchPolicy) {
+			throw new IllegalArgumentException();
 		}
 		lock.lock();
 		try {
-			if (null != followedConverters) {
-				for (Converter<? extends Task, T> followedExecutor : followedConverters) {
-					if (!followedExecutor.isTerminating()) {
-						throw new IllegalStateException();
-					}
-				}
+			if (isExecuted()) {
+				throw new IllegalStateException(
+						"dispatch policy cannot be changed after execution");
 			}
-			isTerminating = true;
-			producerPool.setKeepAliveTime(1L, TimeUnit.MILLISECONDS);
-			consumerPool.setKeepAliveTime(1L, TimeUnit.SECONDS);
-			producerPool.allowCoreThreadTimeOut(true);
-			consumerPool.allowCoreThreadTimeOut(true);
+			this.dispatchPolicy = dispatchPolicy;
 		} finally {
 			lock.unlock();
 		}
@@ -694,26 +1067,188 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 
 	/**
 	 * {@inheritDoc}
-	 * 
-	 * @throws IllegalStateException
-	 *             当前执行器是常驻执行器
-	 * @throws IllegalStateException
-	 *             至少有一个与当前执行器直接或间接连接的转换器未处于正在终止或以终止状态
-	 * @throws InterruptedException
-	 *             阻塞过程中当前线程被中断
 	 */
 	@Override
-	public void terminateAndAwait() throws InterruptedException {
-		terminate();
-		while (!isTerminated()) {
-			TimeUnit.SECONDS.sleep(1);
-		}
+	public void setLoggingExecution(boolean isLoggingEnable) {
+		isLoggingExecution = isLoggingEnable;
 	}
 
 	/**
 	 * {@inheritDoc}
-	 * 
-	 * @throws IllegalStateException
+	 */
+	@Override
+	public void setLoggingTask(boolean isLoggingEnable) {
+		isLoggingTask = isLoggingEnable;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setProducerThreadMaxSize(int size) {
+		if (0 < size) {
+			maxProducerPoolSize = size;
+			producerPool.setMaxSize(maxProducerPoolSize);
+			if (null != runtime) {
+				runtime.updateMaxPoolSize();
+			}
+		}
+	}
+
+	/**
+	 * 设置批次未满时调度器继续等待任务的最长时长。
+	 * <p>
+	 * 默认情况下，调度器一有任务就立即提交消费者，负载较低时每批往往只有一个任务，批量写库的消费者每个任务都要往返一次数据库。
+	 * 设置后，批次未满时调度器从选中数据源的第一个缓存任务开始最多再等待该时长，批次凑满或等待超时后才提交消费者：负载较低时以不超过该时长的延迟换取批量处理的效率，
+	 * 负载较高时批次很快凑满，不受影响。执行器终止过程中不再等待。
+	 * 
+	 * @param linger
+	 *            最长等待时长，单位：毫秒，不大于0表示不等待
+	 */
+	public void setLinger(long linger) {
+		lingerNanos = linger > 0 ? TimeUnit.MILLISECONDS.toNanos(linger) : 0;
+	}
+
+	/**
+	 * 设置当前执行器是否记录任务各环节的时间并统计耗时分布。记录耗时每批任务需额外调用几次System.nanoTime()，
+	 * 每个任务需额外做几次原子加法，对延迟极为敏感的执行器可以关闭。
+	 * 
+	 * @param isRecordingLatency
+	 *            是否记录耗时
+	 */
+	public void setRecordingLatency(boolean isRecordingLatency) {
+		this.isRecordingLatency = isRecordingLatency;
+	}
+
+	/**
+	 * 设置当前执行器运行生产者与消费者所使用的线程类型，只能在执行器启动之前设置。
+	 * <p>
+	 * 设置为{@link ThreadingMode#VIRTUAL}后，生产者与消费者线程数上限将作为同时运行的生产者与消费者数上限。
+	 * 
+	 * @param threadingMode
+	 *            线程类型
+	 * @throws IllegalArgumentException
+	 *             threadingMode为null
+	 * @throws IllegalStateException
+	 *             当前执行器已启动
+	 * @see ThreadingMode
+	 */
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		if (null == threadingMode) {
+			throw new IllegalArgumentException();
+		}
+		lock.lock();
+		try {
+			if (isExecuted()) {
+				throw new IllegalStateException(
+						"threading mode cannot be changed after execution");
+			}
+			if (null != runtime) {
+				throw new IllegalStateException(
+						"threading mode cannot be changed after attached to runtime");
+			}
+			if (this.threadingMode == threadingMode) {
+				return;
+			}
+			if (ThreadingMode.VIRTUAL == threadingMode) {
+				if (!VirtualThreadLauncher.isVirtualThreadSupported()) {
+					logException(
+							"virtual thread is not supported by current runtime, fall back to platform thread",
+							null);
+				}
+				producerPool = new BoundedRunnerPool(
+						new VirtualThreadLauncher(), maxProducerPoolSize, true,
+						runnerExitListener);
+				consumerPool = new BoundedRunnerPool(
+						new VirtualThreadLauncher(), maxConsumerPoolSize, false,
+						runnerExitListener);
+			} else {
+				producerPool = new PlatformRunnerPool(maxProducerPoolSize,
+						true, 1L, runnerExitListener);
+				consumerPool = new PlatformRunnerPool(maxConsumerPoolSize,
+						false, 1000L, runnerExitListener);
+			}
+			this.threadingMode = threadingMode;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException
+	 *             当前执行器是常驻执行器
+	 * @throws IllegalStateException
+	 *             至少有一个与当前执行器直接或间接连接的转换器未处于正在终止或以终止状态
+	 */
+	@Override
+	public void terminate() {
+		if (isTerminating) {
+			return;
+		}
+		if (isResident()) {
+			throw new IllegalStateException(
+					"resident executor cannot be terminated");
+		}
+		lock.lock();
+		try {
+			if (null != followedConverters) {
+				for (Converter<? extends Task, T> followedExecutor : followedConverters) {
+					if (!followedExecutor.isTerminating()) {
+						throw new IllegalStateException();
+					}
+				}
+			}
+			isTerminating = true;
+			producerPool.terminate();
+			consumerPool.terminate();
+		} finally {
+			lock.unlock();
+		}
+		// 没有线程在运行时，不会再有线程退出，直接完成终止
+		completeTermination();
+	}
+
+	/**
+	 * 当前执行器已终止时，完成终止后的清理，只执行一次：注销JMX管理对象，并使连接到当前执行器的执行器检查自己是否随之终止。
+	 * <p>
+	 * 终止只会在生产者、消费者线程池中的最后一个线程退出，或所连接的转换器终止时达成，因此由线程退出的回调、
+	 * {@link #terminate()}以及所连接的转换器调用。
+	 */
+	private void completeTermination() {
+		if (isTerminationCompleted.get() || !isTerminated()
+				|| !isTerminationCompleted.compareAndSet(false, true)) {
+			return;
+		}
+		ExecutorManagement.unregister(this, objectName.getAndSet(null));
+		for (AbstractExecutor<?> follower : followers) {
+			follower.completeTermination();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException
+	 *             当前执行器是常驻执行器
+	 * @throws IllegalStateException
+	 *             至少有一个与当前执行器直接或间接连接的转换器未处于正在终止或以终止状态
+	 * @throws InterruptedException
+	 *             阻塞过程中当前线程被中断
+	 */
+	@Override
+	public void terminateAndAwait() throws InterruptedException {
+		terminate();
+		while (!isTerminated()) {
+			TimeUnit.SECONDS.sleep(1);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalStateException
 	 *             当前执行器是常驻执行器
 	 * @throws IllegalStateException
 	 *             至少有一个与当前执行器直接或间接连接的转换器未处于正在终止或以终止状态
@@ -764,6 +1299,188 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		}
 	}
 
+	/**
+	 * 获取消费者的最大处理能力，设定了执行耗时预算时为自动调整后的批量
+	 * 
+	 * @param consumer
+	 *            消费者对象
+	 * @return 消费者的最大处理能力
+	 */
+	private int consumerCapacity(TaskProcessor<T> consumer) {
+		return adaptiveCapacity.get(staticCapacity(consumer));
+	}
+
+	/**
+	 * 获取消费者自身设定的最大处理能力
+	 * 
+	 * @param consumer
+	 *            消费者对象
+	 * @return 消费者自身设定的最大处理能力
+	 */
+	private int staticCapacity(TaskProcessor<T> consumer) {
+		try {
+			return consumer.getCapacity() > 0 ? consumer.getCapacity() : 1;
+		} catch (Exception e) {
+			logException(null, e);
+			return 1;
+		}
+	}
+
+	/**
+	 * 计算选中数据源的批次未满时还需等待的时长，从该数据源的缓存由空变为非空时开始计时。
+	 * <p>
+	 * 已有数据源凑满一批时不再等待，以免选中数据源的等待拖慢其他数据源。
+	 * 
+	 * @param cache
+	 *            任务缓存
+	 * @param dataSource
+	 *            选中的数据源
+	 * @param capacity
+	 *            消费者的最大处理能力
+	 * @return 还需等待的时长，单位：纳秒，不大于0表示应立即提交
+	 */
+	private long lingerRemainingNanos(TaskCache<T> cache,
+			DataSource dataSource, int capacity) {
+		long linger = lingerNanos;
+		if (0 == linger || cache.size(dataSource) >= capacity
+				|| cache.getMaxCachedSize() >= capacity || isTerminating()) {
+			return 0;
+		}
+		long cachedNanos = cache.getCachedNanos(dataSource);
+		if (0 == cachedNanos) {
+			return 0;
+		}
+		return cachedNanos + linger - System.nanoTime();
+	}
+
+	/**
+	 * 如果缓存不足，尝试从任务队列中批量取任务塞缓存，直到任务队列取尽，或者某个数据源的缓存充足。
+	 * 
+	 * @param cache
+	 *            任务缓存
+	 * @param drainedTasks
+	 *            用于暂存从任务队列中批量取出的任务，方法返回时已清空
+	 * @param capacity
+	 *            消费者的最大处理能力
+	 * @return 按调度策略选出的下一批任务的数据源，所有缓存了任务的数据源的并发批次名额都已用尽时，返回的数据源无法占用名额
+	 */
+	private DataSource fillCache(TaskCache<T> cache, List<T> drainedTasks,
+			int capacity) {
+		int maxCachedSize = cache.getMaxCachedSize();
+		while (maxCachedSize < capacity) {
+			int drainedSize = TaskQueues.drainTo(taskQueue, drainedTasks,
+					capacity - maxCachedSize);
+			long dispatchedNanos = 0 == drainedSize ? 0 : latencyNanos();
+			for (T task : drainedTasks) {
+				markDispatched(task, dispatchedNanos);
+				int thisCachedSize = cache.add(task);
+				if (thisCachedSize > maxCachedSize) {
+					maxCachedSize = thisCachedSize;
+				}
+			}
+			drainedTasks.clear();
+			if (0 == drainedSize) {
+				break;
+			}
+		}
+		DataSource dataSource = cache.select(dataSourceLimits);
+
+		// 所有缓存了任务的数据源的名额都已用尽时，再从任务队列取一批任务，看有没有其他数据源的任务，缓存的任务数不超过所有消费者线程各一批
+		if (dataSourceLimits.isLimited()
+				&& dataSourceLimits.isSaturated(dataSource)
+				&& cache.size() < (long) capacity * maxConsumerPoolSize) {
+			if (0 < drainToCache(cache, drainedTasks, capacity)) {
+				dataSource = cache.select(dataSourceLimits);
+			}
+		}
+		return dataSource;
+	}
+
+	/**
+	 * 从任务队列中非阻塞地批量取出任务并缓存。
+	 * 
+	 * @param cache
+	 *            任务缓存
+	 * @param drainedTasks
+	 *            用于暂存取出任务的列表，使用完后清空
+	 * @param maxSize
+	 *            最多取出的任务数
+	 * @return 实际取出的任务数
+	 */
+	private int drainToCache(TaskCache<T> cache, List<T> drainedTasks,
+			int maxSize) {
+		int drainedSize = TaskQueues.drainTo(taskQueue, drainedTasks,
+				maxSize);
+		long dispatchedNanos = 0 == drainedSize ? 0 : latencyNanos();
+		for (T task : drainedTasks) {
+			markDispatched(task, dispatchedNanos);
+			cache.add(task);
+		}
+		drainedTasks.clear();
+		return drainedSize;
+	}
+
+	/**
+	 * 为从调度缓存中剔除的已过截止时间的任务创建结算线程，并清空暂存的任务。
+	 * 
+	 * @param consumer
+	 *            消费者对象
+	 * @param expiredTasks
+	 *            暂存的已过截止时间的任务，方法返回时已清空
+	 * @return 结算线程，没有已过截止时间的任务时返回null
+	 */
+	private ExpiredTaskRunner newExpiredTaskRunner(TaskProcessor<T> consumer,
+			TaskBatch<T> expiredTasks) {
+		int size = expiredTasks.size();
+		if (0 == size) {
+			return null;
+		}
+		TaskBatch<T> tasks = new TaskBatch<T>(size);
+		for (int i = 0; i < size; i++) {
+			tasks.add(expiredTasks.get(i));
+		}
+		expiredTasks.clear();
+		return new ExpiredTaskRunner(consumer, tasks);
+	}
+
+	/**
+	 * 切换当前线程的数据源，保持数据源绑定时，如果当前线程已绑定该数据源，不再切换。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 */
+	private void changeDataSource(DataSource dataSource) {
+		if (isDataSourceAffinity && null != dataSource
+				&& dataSource.equals(DynamicDataSourceHolder.getCurrent())) {
+			return;
+		}
+		DynamicDataSourceHolder.change(dataSource);
+	}
+
+	/**
+	 * 获取用于记录耗时的当前时间。
+	 * 
+	 * @return 当前时间，不记录耗时时为0
+	 */
+	private long latencyNanos() {
+		return isRecordingLatency ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * 记录任务从任务队列中被取出的时间。
+	 * 
+	 * @param task
+	 *            被取出的任务
+	 * @param nanos
+	 *            取出的时间，为0时不记录
+	 */
+	private void markDispatched(T task, long nanos) {
+		TaskState state = task.getTaskState();
+		if (0 != nanos && null != state) {
+			state.setDispatchedNanos(nanos);
+		}
+	}
+
 	private TaskState getTaskState(Task task) {
 		if (null == task) {
 			return null;
@@ -772,6 +1489,56 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		return task.getTaskState();
 	}
 
+	/**
+	 * 判断当前执行器是否已不会再有新的任务进入任务队列，且任务队列已取尽，即：正在终止、所有生产者已执行完、所连接的转换器均已终止、任务队列为空。
+	 * 
+	 * @return 是否已不会再有新的任务可消费
+	 */
+	private boolean isDrained() {
+		if (!isTerminating()) {
+			return false;
+		}
+
+		int producerSum = null == producers ? 0 : producers.size();
+		if (producerSum > producerPool.getCompletedTaskCount()) {
+			return false;
+		} else if (taskQueue.size() > 0) {
+			return false;
+		} else if (null != followedConverters) {
+			for (Converter<? extends Task, T> followedExecutor : followedConverters) {
+				if (!followedExecutor.isTerminated()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 直接调度模式下，补充消费者线程，直到消费者线程数达到上限为止。<br>
+	 * 如果线程池暂时无法接收新线程（例如退役的线程尚未归还线程池），放弃本次补充，由其他消费者线程在空闲时再次补充。
+	 * 
+	 * @param consumer
+	 *            消费者对象
+	 */
+	private void startDirectRunners(TaskProcessor<T> consumer) {
+		while (true) {
+			int count = directRunnerCount.get();
+			if (count >= maxConsumerPoolSize || isDrained()) {
+				return;
+			}
+			if (!directRunnerCount.compareAndSet(count, count + 1)) {
+				continue;
+			}
+			try {
+				consumerPool.execute(new DirectRunner(consumer));
+			} catch (RejectedExecutionException e) {
+				directRunnerCount.decrementAndGet();
+				return;
+			}
+		}
+	}
+
 	/**
 	 * 将生产者提交至线程池执行，如果当前执行器已终止或正在终止，该操作将不被允许，如果当前执行器被强制只消费，该操作不起任何作用
 	 * 
@@ -795,6 +1562,98 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		producerPool.execute(new ProducerRunner(producer));
 	}
 
+	/**
+	 * 将当前执行器挂接到指定的执行运行时，生产者与消费者改为在执行运行时的共享线程池中运行，线程数上限即在共享线程池中的配额。
+	 * 
+	 * @param runtime
+	 *            执行运行时
+	 * @throws IllegalStateException
+	 *             当前执行器已启动，或已挂接过执行运行时，或使用了{@link ThreadingMode#VIRTUAL}
+	 * @see ExecutingRuntime#attach(AbstractExecutor)
+	 */
+	void attachTo(ExecutingRuntime runtime) {
+		lock.lock();
+		try {
+			if (isExecuted()) {
+				throw new IllegalStateException(
+						"executor cannot be attached to runtime after execution");
+			}
+			if (null != this.runtime) {
+				throw new IllegalStateException(
+						"executor is already attached to another runtime");
+			}
+			if (ThreadingMode.VIRTUAL == threadingMode) {
+				throw new IllegalStateException(
+						"executor using virtual thread cannot be attached to runtime");
+			}
+			producerPool = runtime.newRunnerPool(maxProducerPoolSize, true,
+					runnerExitListener);
+			consumerPool = runtime.newRunnerPool(maxConsumerPoolSize, false,
+					runnerExitListener);
+			this.runtime = runtime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 由执行运行时的调度线程调用，非阻塞地为当前执行器调度一次任务。
+	 * 
+	 * @return 是否向消费者提交了一批任务
+	 */
+	boolean dispatch() {
+		BossRunner bossRunner = sharedBossRunner;
+		return null != bossRunner && bossRunner.dispatchOnce();
+	}
+
+	/**
+	 * 由执行运行时的调度线程在一轮调度都未能提交消费者时调用，获取当前执行器最迟需在多久之后再调度一次。
+	 * 
+	 * @return 凑批还需等待的时长，单位：纳秒，不大于0表示只需等待新任务入队或消费者完成的通知
+	 */
+	long getDispatchDelayNanos() {
+		BossRunner bossRunner = sharedBossRunner;
+		return null == bossRunner ? 0 : bossRunner.lingerDelayNanos;
+	}
+
+	/**
+	 * 由任务管道在任务放入任务队列后调用，挂接了执行运行时的，通知调度线程有新任务可调度。
+	 */
+	void signalTaskQueued() {
+		ExecutingRuntime attachedRuntime = runtime;
+		if (null != attachedRuntime) {
+			attachedRuntime.signal();
+		}
+	}
+
+	/**
+	 * 由执行运行时的日志线程调用，非阻塞地输出当前执行器已积累的生产错误日志。
+	 * 
+	 * @return 输出的生产错误数
+	 */
+	int logProducingErrors() {
+		int logged = 0;
+		ProducingError error;
+		while (null != (error = errorPipe.poll())) {
+			logProducingError(error);
+			logged++;
+		}
+		return logged;
+	}
+
+	/**
+	 * 输出生产错误日志。
+	 * 
+	 * @param error
+	 *            生产错误
+	 */
+	private void logProducingError(ProducingError error) {
+		if (isLoggingTask()) {
+			Logger log = LoggerFactory.getLogger(error.getClass());
+			log.error(error.getMessage(), error.getCause());
+		}
+	}
+
 	/**
 	 * 获取当前执行器用于同步控制的锁。
 	 * 
@@ -805,50 +1664,355 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 	}
 
 	/**
-	 * 消费者线程调度类，主要的工作分为两步，第一步取任务，第二步把任务交给消费者，向线程池提交消费者线程。 总体原则是：
+	 * 消费者线程调度类，主要的工作分为两步，第一步取任务，第二步把任务交给消费者，向线程池提交消费者线程。 总体原则是：
+	 * <ol>
+	 * <li>交给消费者的整批任务必须是同一数据源</li>
+	 * <li>尽可能的满足消费者的最大处理能力</li>
+	 * <li>如果满足不了，也不能让消费者线程等太久</li>
+	 * </ol>
+	 * 
+	 * 为满足整批任务同数据源的要求，为每个数据源设置一个任务缓存池，用于积累同数据源的任务。<br>
+	 * 主要的逻辑在取任务上，详细步骤如下：
+	 * <ol>
+	 * <li>取任务前，先判断是否有缓存，如果有缓存，进入步骤2；如果没有缓存，采用阻塞的方法从任务队列取任务，取到后缓存该任务，进入步骤2</li>
+	 * <li>判断是否有某个数据源的任务缓存数达到了消费者的最大处理能力，如果有，进入步骤4，如果没有，进入步骤3</li>
+	 * <li>采用非阻塞的方式从任务队列中批量取任务并缓存，直到以下任一条件满足：
+	 * <ol>
+	 * <li>任务队列被取尽</li>
+	 * <li>有某个数据源的缓存队列任务数达到了消费者的最大处理能力</li>
+	 * </ol>
+	 * </li>
+	 * <li>从最大的缓存队列中，取足够(或取尽、或数量达到消费者的最大处理能力)的任务交给消费者，提交消费者线程</li>
+	 * </ol>
+	 * 
+	 * 注意：这不是个线程安全的类<br>
+	 * 注意：缓存使用了无界队列，如果数据源多的离谱，并且消费者的处理能力很大，会导致内存占用过高
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class BossRunner implements Runnable {
+
+		/**
+		 * 当调度线程无法向线程池提交任务时，等待的时长，单位：纳秒
+		 */
+		private static final long PARK_NANOS = 1000 * 100;
+
+		/**
+		 * 用于缓存多数据源的情况下各数据源的任务
+		 */
+		private final TaskCache<T> cache = new TaskCache<T>(cachedTaskCounts,
+				dispatchPolicy.newSelector());
+
+		/**
+		 * 消费者对象
+		 */
+		private final TaskProcessor<T> consumer;
+
+		/**
+		 * 从任务队列中批量取出、尚未缓存的任务，每次缓存完后清空，循环使用
+		 */
+		private final List<T> drainedTasks = new ArrayList<T>();
+
+		/**
+		 * 从缓存中取出任务时剔除的已过截止时间的任务，每次交给结算线程后清空，循环使用
+		 */
+		private final TaskBatch<T> expiredTasks = new TaskBatch<T>(1);
+
+		/**
+		 * 非阻塞调度时，因配额用尽而未能提交的消费者，下次调度时优先提交
+		 */
+		private ConsumerRunner pendingRunner;
+
+		/**
+		 * 非阻塞调度时，因配额用尽而未能提交的已过截止时间任务的结算线程，下次调度时优先提交
+		 */
+		private ExpiredTaskRunner pendingExpiredRunner;
+
+		/**
+		 * 非阻塞调度时，上次调度因等待凑批而未提交消费者的剩余等待时长，单位：纳秒，为0表示未在等待凑批
+		 */
+		private long lingerDelayNanos;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param consumer
+		 *            消费者对象
+		 * @throws IllegalArgumentException
+		 *             consumer为null
+		 */
+		public BossRunner(TaskProcessor<T> consumer) {
+			if (null == consumer) {
+				throw new IllegalArgumentException();
+			}
+			this.consumer = consumer;
+		}
+
+		/**
+		 * 执行调度
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				// 如果有缓存
+				if (!cache.isEmpty()) {
+					int capacity = consumerCapacity(consumer);
+					DataSource dataSource = fillCache(cache, drainedTasks,
+							capacity);
+
+					// 批次未满时，在等待时限内继续从任务队列取任务
+					long remainingNanos = lingerRemainingNanos(cache,
+							dataSource, capacity);
+					if (remainingNanos > 0) {
+						isBossThreadHoldingTasks = true;
+						T task;
+						try {
+							task = taskQueue.poll(remainingNanos,
+									TimeUnit.NANOSECONDS);
+						} catch (InterruptedException e) {
+							logException(null, e);
+							return;
+						}
+						if (null != task) {
+							markDispatched(task, latencyNanos());
+							cache.add(task);
+						}
+						continue;
+					}
+
+					/*
+					 * 此时，以下3个条件必然有一个已满足： 1.缓存充足 2.缓存不充足但队列取尽 3.等待凑批超时，因此，提交消费者线程
+					 */
+					try {
+						if (!submitConsumerThread(dataSource)) {
+							// 名额已用尽，等待消费者释放名额，消费者完成时会唤醒调度线程
+							isBossThreadHoldingTasks = true;
+							LockSupport.parkNanos(PARK_NANOS);
+							if (Thread.interrupted()) {
+								throw new InterruptedException();
+							}
+						}
+					} catch (InterruptedException e) {
+						logException(null, e);
+						return;
+					}
+
+					// 如果没缓存,用阻塞的方式取任务，取到任务后，结束本次循环，下一次循环会解决问题
+				} else {
+					T task;
+					try {
+						task = taskQueue.take();
+					} catch (InterruptedException e) {
+						logException(null, e);
+						return;
+					}
+					markDispatched(task, latencyNanos());
+					cache.add(task);
+				}
+			}
+		}
+
+		/**
+		 * 非阻塞地调度一次，供执行运行时的调度线程轮流调度多个执行器：
+		 * <ol>
+		 * <li>如果上次有未能提交的消费者或结算线程，先尝试提交</li>
+		 * <li>否则，缓存为空时尝试从任务队列取一个任务，取不到直接返回；再按与{@link #run()}相同的规则凑齐一批任务，尝试提交消费者，
+		 * 取出时剔除的已过截止时间的任务交给结算线程</li>
+		 * <li>线程池满时不休眠重试，留到下次调度时再提交</li>
+		 * </ol>
+		 * 
+		 * @return 是否向线程池提交了消费者或结算线程
+		 */
+		boolean dispatchOnce() {
+			isBossThreadHoldingTasks = true;
+			lingerDelayNanos = 0;
+			try {
+				if (null == pendingRunner && null == pendingExpiredRunner) {
+					if (cache.isEmpty()) {
+						T task = taskQueue.poll();
+						if (null == task) {
+							return false;
+						}
+						markDispatched(task, latencyNanos());
+						cache.add(task);
+					}
+					int capacity = consumerCapacity(consumer);
+					DataSource dataSource = fillCache(cache, drainedTasks,
+							capacity);
+					// 批次未满且未到等待时限，留到下次调度时再凑批
+					long remainingNanos = lingerRemainingNanos(cache,
+							dataSource, capacity);
+					if (remainingNanos > 0) {
+						lingerDelayNanos = remainingNanos;
+						return false;
+					}
+					// 名额已用尽，留到下次调度时再提交
+					if (!dataSourceLimits.tryAcquire(dataSource)) {
+						return false;
+					}
+					TaskBatch<T> tasks = new TaskBatch<T>(Math.min(capacity,
+							cache.size(dataSource)));
+					cache.moveTo(dataSource, tasks, capacity, expiredTasks);
+					pendingExpiredRunner = newExpiredTaskRunner(consumer,
+							expiredTasks);
+					// 整批任务均已过截止时间时，归还名额
+					if (0 == tasks.size()) {
+						dataSourceLimits.release(dataSource);
+					} else {
+						pendingRunner = new ConsumerRunner(consumer, tasks,
+								dataSource);
+					}
+				}
+				boolean isSubmitted = false;
+				try {
+					if (null != pendingRunner) {
+						consumerPool.execute(pendingRunner);
+						pendingRunner = null;
+						isSubmitted = true;
+					}
+					if (null != pendingExpiredRunner) {
+						consumerPool.execute(pendingExpiredRunner);
+						pendingExpiredRunner = null;
+						isSubmitted = true;
+					}
+					return isSubmitted;
+				} catch (RejectedExecutionException e) {
+					// 线程池满，留到下次调度时再提交
+					return isSubmitted;
+				}
+			} finally {
+				isBossThreadHoldingTasks = null != pendingRunner
+						|| null != pendingExpiredRunner || !cache.isEmpty();
+			}
+		}
+
+		/**
+		 * 把消费者提交到线程池执行，如果线程池满，休眠当前线程，待唤醒后，继续尝试提交，直到提交成功为止。<br>
+		 * 如果参数非法，该方法不起任何作用
+		 * 
+		 * @param fromWhichDataSourceEnum
+		 *            从哪个数据源的缓存取任务提交
+		 * @return 该数据源的并发批次名额已用尽时返回false，否则返回true
+		 * @throws InterruptedException
+		 *             当阻塞时线程被中断
+		 */
+		private boolean submitConsumerThread(DataSource fromWhichDataSourceEnum)
+				throws InterruptedException {
+			// 如果没有任务可提交消费者线程池，直接返回
+			if (0 == cache.size(fromWhichDataSourceEnum)) {
+				return true;
+			}
+			if (!dataSourceLimits.tryAcquire(fromWhichDataSourceEnum)) {
+				return false;
+			}
+
+			// 取指定数据源的任务并提交线程池
+			isBossThreadHoldingTasks = true;
+			try {
+				int batchSize = Math.min(consumerCapacity(consumer),
+						cache.size(fromWhichDataSourceEnum));
+				TaskBatch<T> tasks = new TaskBatch<T>(batchSize);
+				cache.moveTo(fromWhichDataSourceEnum, tasks, batchSize,
+						expiredTasks);
+				ExpiredTaskRunner expiredRunner = newExpiredTaskRunner(
+						consumer, expiredTasks);
+				// 整批任务均已过截止时间时，归还名额
+				if (0 == tasks.size()) {
+					dataSourceLimits.release(fromWhichDataSourceEnum);
+				} else {
+					submit(new ConsumerRunner(consumer, tasks,
+							fromWhichDataSourceEnum));
+				}
+				if (null != expiredRunner) {
+					submit(expiredRunner);
+				}
+			} finally {
+				isBossThreadHoldingTasks = false;
+			}
+			return true;
+		}
+
+		/**
+		 * 把线程提交到线程池执行，如果线程池满，休眠当前线程，待唤醒后，继续尝试提交，直到提交成功为止。
+		 * 
+		 * @param runner
+		 *            消费者或结算线程
+		 * @throws InterruptedException
+		 *             当阻塞时线程被中断
+		 */
+		private void submit(Runnable runner) throws InterruptedException {
+			while (true) {
+				try {
+					consumerPool.execute(runner);
+					return;
+				} catch (RejectedExecutionException e) {
+					LockSupport.parkNanos(PARK_NANOS);
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * 直接调度模式下的消费者线程类，不经过调度线程，由消费者线程自己从任务队列中取任务并执行。
+	 * <p>
+	 * 每个消费者线程都有自己的任务缓存，取任务和凑批的规则与{@link BossRunner}相同：
 	 * <ol>
-	 * <li>交给消费者的整批任务必须是同一数据源</li>
-	 * <li>尽可能的满足消费者的最大处理能力</li>
-	 * <li>如果满足不了，也不能让消费者线程等太久</li>
+	 * <li>缓存为空时，采用限时阻塞的方式从任务队列取任务，超时后检查一下是否需要退出</li>
+	 * <li>缓存不空时，采用非阻塞的方式从任务队列中批量取任务并缓存，直到任务队列被取尽，或有某个数据源的缓存达到消费者的最大处理能力</li>
+	 * <li>从最大的缓存队列中取一批任务，在当前线程中直接交给消费者执行</li>
 	 * </ol>
-	 * 
-	 * 为满足整批任务同数据源的要求，为每个数据源设置一个任务缓存池，用于积累同数据源的任务。<br>
-	 * 主要的逻辑在取任务上，详细步骤如下：
-	 * <ol>
-	 * <li>取任务前，先判断是否有缓存，如果有缓存，进入步骤2；如果没有缓存，采用阻塞的方法从任务队列取任务，取到后缓存该任务，进入步骤2</li>
-	 * <li>判断是否有某个数据源的任务缓存数达到了消费者的最大处理能力，如果有，进入步骤4，如果没有，进入步骤3</li>
-	 * <li>采用非阻塞的方式不断从任务队列中取任务并缓存，直到以下任一条件满足：
+	 * 以下情况消费者线程会在缓存清空后退出：
 	 * <ol>
-	 * <li>任务队列被取尽</li>
-	 * <li>有某个数据源的缓存队列任务数达到了消费者的最大处理能力</li>
-	 * </ol>
-	 * </li>
-	 * <li>从最大的缓存队列中，取足够(或取尽、或数量达到消费者的最大处理能力)的任务交给消费者，提交消费者线程</li>
+	 * <li>消费者线程数超过了当前的上限（调小上限时）</li>
+	 * <li>执行器正在终止，且已不会再有新的任务进入任务队列</li>
 	 * </ol>
 	 * 
-	 * 注意：这不是个线程安全的类<br>
-	 * 注意：缓存使用了无界队列，如果数据源多的离谱，并且消费者的处理能力很大，会导致内存占用过高
+	 * 注意：这不是个线程安全的类
 	 * 
 	 * @author Hu Ruomin
 	 */
-	private class BossRunner implements Runnable {
+	private class DirectRunner implements Runnable {
 
 		/**
-		 * 当调度线程无法向线程池提交任务时，等待的时长，单位：纳秒
+		 * 缓存为空时，从任务队列获取任务的最长阻塞时长，单位：毫秒
 		 */
-		private static final long PARK_NANOS = 1000 * 100;
+		private static final long IDLE_MILLIS = 100;
 
 		/**
-		 * 用于缓存多数据源的情况下各数据源的任务<br>
-		 * 注意：缓存使用了无界队列，如果数据源多的离谱，并且消费者的处理能力很大，可能导致内存占用过高
+		 * 数据源的名额用尽时，等待其他消费者释放名额的时长，单位：纳秒
 		 */
-		private final Map<DataSource, LinkedList<T>> cachedTaskMap = new HashMap<DataSource, LinkedList<T>>();
+		private static final long SATURATED_NANOS = 1000 * 100;
+
+		/**
+		 * 当前线程的任务缓存
+		 */
+		private final TaskCache<T> cache = new TaskCache<T>(cachedTaskCounts,
+				dispatchPolicy.newSelector());
 
 		/**
 		 * 消费者对象
 		 */
 		private final TaskProcessor<T> consumer;
 
+		/**
+		 * 从任务队列中批量取出、尚未缓存的任务，每次缓存完后清空，循环使用
+		 */
+		private final List<T> drainedTasks = new ArrayList<T>();
+
+		/**
+		 * 从缓存中取出任务时剔除的已过截止时间的任务，每次交给结算线程后清空，循环使用
+		 */
+		private final TaskBatch<T> expiredTasks = new TaskBatch<T>(1);
+
+		/**
+		 * 当前线程上一批任务所使用的数据源
+		 */
+		private DataSource boundDataSource;
+
 		/**
 		 * 构造函数
 		 * 
@@ -857,7 +2021,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 * @throws IllegalArgumentException
 		 *             consumer为null
 		 */
-		public BossRunner(TaskProcessor<T> consumer) {
+		public DirectRunner(TaskProcessor<T> consumer) {
 			if (null == consumer) {
 				throw new IllegalArgumentException();
 			}
@@ -865,156 +2029,135 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		}
 
 		/**
-		 * 执行调度
+		 * 取任务并执行，直到需要退出为止
 		 */
 		@Override
 		public void run() {
-			while (true) {
-				DataSource maxCachedDataSourceEnum = getMaxCachedDataSourceEnum();
-				// 如果有缓存
-				if (null != cachedTaskMap.get(maxCachedDataSourceEnum)
-						&& 0 < cachedTaskMap.get(maxCachedDataSourceEnum)
-								.size()) {
-					int maxCachedSize = cachedTaskMap.get(
-							maxCachedDataSourceEnum).size();
-
-					// 如果缓存不足，尝试从任务队列中取任务塞缓存，直到任务队列取尽，或者缓存充足
-					if (maxCachedSize < consumerCapacity()) {
-						T task;
-						do {
-							task = taskQueue.poll();
-							if (null != task) {
-								int thisCachedSize = cacheTask(task);
-								if (thisCachedSize > maxCachedSize) {
-									maxCachedSize = thisCachedSize;
-									maxCachedDataSourceEnum = task
-											.getDefaultDataSource();
-								}
-							}
-						} while (null != task
-								&& maxCachedSize < consumerCapacity());
+			boolean isRetired = false;
+			try {
+				while (true) {
+					if (cache.isEmpty()) {
+						if (retire()) {
+							isRetired = true;
+							return;
+						}
+						if (isDrained()) {
+							return;
+						}
+						startDirectRunners(consumer);
+						T task = taskQueue.poll(IDLE_MILLIS,
+								TimeUnit.MILLISECONDS);
+						if (null == task) {
+							continue;
+						}
+						markDispatched(task, latencyNanos());
+						cache.add(task);
 					}
 
-					/*
-					 * 此时，以下2个条件必然有一个已满足： 1.缓存充足 2.缓存不充足但队列取尽，因此，提交消费者线程
-					 */
-					try {
-						submitConsumerThread(maxCachedDataSourceEnum);
-					} catch (InterruptedException e) {
-						logException(null, e);
-						return;
+					int capacity = consumerCapacity(consumer);
+					DataSource dataSource = stick(fillCache(cache,
+							drainedTasks, capacity), capacity);
+
+					// 批次未满时，在等待时限内继续从任务队列取任务
+					long remainingNanos = lingerRemainingNanos(cache,
+							dataSource, capacity);
+					if (remainingNanos > 0) {
+						T task = taskQueue.poll(remainingNanos,
+								TimeUnit.NANOSECONDS);
+						if (null != task) {
+							markDispatched(task, latencyNanos());
+							cache.add(task);
+						}
+						continue;
 					}
 
-					// 如果没缓存,用阻塞的方式取任务，取到任务后，结束本次循环，下一次循环会解决问题
-				} else {
-					T task;
-					try {
-						task = taskQueue.take();
-					} catch (InterruptedException e) {
-						logException(null, e);
-						return;
+					// 名额已用尽，等待其他消费者释放名额，缓存未满时继续从任务队列取任务
+					if (!dataSourceLimits.tryAcquire(dataSource)) {
+						if (cache.size() >= (long) capacity
+								* maxConsumerPoolSize) {
+							TimeUnit.NANOSECONDS.sleep(SATURATED_NANOS);
+							continue;
+						}
+						T task = taskQueue.poll(SATURATED_NANOS,
+								TimeUnit.NANOSECONDS);
+						if (null != task) {
+							markDispatched(task, latencyNanos());
+							cache.add(task);
+						}
+						continue;
+					}
+					// 每批任务都使用新的任务批次，消费者保留的任务列表不会被下一批覆盖
+					TaskBatch<T> tasks = new TaskBatch<T>(Math.min(capacity,
+							cache.size(dataSource)));
+					cache.moveTo(dataSource, tasks, capacity, expiredTasks);
+					ExpiredTaskRunner expiredRunner = newExpiredTaskRunner(
+							consumer, expiredTasks);
+					// 整批任务均已过截止时间时，归还名额
+					if (0 == tasks.size()) {
+						dataSourceLimits.release(dataSource);
+					} else {
+						boundDataSource = dataSource;
+						new ConsumerRunner(consumer, tasks, dataSource).run();
+					}
+					// 归还名额后，在当前线程中结算已过截止时间的任务
+					if (null != expiredRunner) {
+						expiredRunner.run();
 					}
-					cacheTask(task);
 				}
-			}
-		}
-
-		/**
-		 * 缓存任务
-		 * 
-		 * @param task
-		 *            需缓存的任务
-		 * @return 该任务被缓存后，对应缓存队列的大小，task为null时返回0
-		 */
-		private int cacheTask(T task) {
-			if (null != task) {
-				DataSource dataSource = task.getDefaultDataSource();
-				LinkedList<T> cacheList = cachedTaskMap.get(dataSource);
-				if (null == cacheList) {
-					cacheList = new LinkedList<T>();
-					cachedTaskMap.put(dataSource, cacheList);
+			} catch (InterruptedException e) {
+				logException(null, e);
+			} finally {
+				if (!isRetired) {
+					directRunnerCount.decrementAndGet();
 				}
-				cacheList.add(task);
-				return cacheList.size();
 			}
-			return 0;
 		}
 
 		/**
-		 * 获取消费者的最大处理能力
+		 * 保持数据源绑定时，如果当前线程所绑定的数据源名额未用尽，优先沿用该数据源：
+		 * <ol>
+		 * <li>所绑定数据源的缓存不足一批时，继续从任务队列取任务，缓存的任务总数不超过所有消费者线程各一批</li>
+		 * <li>所绑定数据源有缓存的任务时沿用该数据源，除非其缓存不足一批而其他数据源已凑满一批</li>
+		 * </ol>
 		 * 
-		 * @return 消费者的最大处理能力
+		 * @param selected
+		 *            按调度策略选出的数据源
+		 * @param capacity
+		 *            消费者每批最多处理的任务数
+		 * @return 本批任务所使用的数据源
 		 */
-		private int consumerCapacity() {
-			try {
-				return consumer.getCapacity() > 0 ? consumer.getCapacity() : 1;
-			} catch (Exception e) {
-				logException(null, e);
-				return 1;
+		private DataSource stick(DataSource selected, int capacity) {
+			if (!isDataSourceAffinity || selected == boundDataSource) {
+				return selected;
 			}
-		}
-
-		/**
-		 * 获取当前缓存了任务数最多的数据源<br>
-		 * 
-		 * @return 当前缓存了任务数最多的数据源
-		 */
-		private DataSource getMaxCachedDataSourceEnum() {
-			DataSource maxDataSourceEnum = null;
-			int max = 0;
-			for (Map.Entry<DataSource, LinkedList<T>> entry : cachedTaskMap
-					.entrySet()) {
-				if (null != entry.getValue() && entry.getValue().size() > max) {
-					max = entry.getValue().size();
-					maxDataSourceEnum = entry.getKey();
-				}
+			if (dataSourceLimits.isSaturated(boundDataSource)) {
+				return selected;
+			}
+			int boundSize = cache.size(boundDataSource);
+			while (boundSize < capacity
+					&& cache.size() < (long) capacity * maxConsumerPoolSize
+					&& 0 < drainToCache(cache, drainedTasks, capacity)) {
+				boundSize = cache.size(boundDataSource);
 			}
-			return maxDataSourceEnum;
+			if (0 == boundSize) {
+				return selected;
+			}
+			if (boundSize >= capacity || cache.getMaxCachedSize() < capacity) {
+				return boundDataSource;
+			}
+			return selected;
 		}
 
 		/**
-		 * 把消费者提交到线程池执行，如果线程池满，休眠当前线程，待唤醒后，继续尝试提交，直到提交成功为止。<br>
-		 * 如果参数非法，该方法不起任何作用
+		 * 如果消费者线程数超过了当前的上限，使当前线程退役
 		 * 
-		 * @param fromWhichDataSourceEnum
-		 *            从哪个数据源的缓存取任务提交
-		 * @throws InterruptedException
-		 *             当阻塞时线程被中断
+		 * @return 当前线程是否已退役
 		 */
-		private void submitConsumerThread(DataSource fromWhichDataSourceEnum)
-				throws InterruptedException {
-			// 如果没有任务可提交消费者线程池，直接返回
-			if (null == cachedTaskMap.get(fromWhichDataSourceEnum)
-					|| 0 == cachedTaskMap.get(fromWhichDataSourceEnum).size()) {
-				return;
-			}
-
-			// 取指定数据源的任务并提交线程池
-			isBossThreadHoldingTasks = true;
-			try {
-				LinkedList<T> from = cachedTaskMap.get(fromWhichDataSourceEnum);
-				int fromSize = from.size();
-				List<T> tasks = new LinkedList<T>();
-				for (int i = 0; i < consumerCapacity() && i < fromSize; i++) {
-					tasks.add(from.removeFirst());
-				}
-				while (true) {
-					try {
-						consumerPool.execute(new ConsumerRunner(consumer,
-								tasks, fromWhichDataSourceEnum));
-						break;
-					} catch (RejectedExecutionException e) {
-						LockSupport.parkNanos(PARK_NANOS);
-					}
-					if (Thread.interrupted()) {
-						throw new InterruptedException();
-					}
-				}
-			} finally {
-				isBossThreadHoldingTasks = false;
-			}
+		private boolean retire() {
+			int count = directRunnerCount.get();
+			return count > maxConsumerPoolSize
+					&& directRunnerCount.compareAndSet(count, count - 1);
 		}
-
 	}
 
 	/**
@@ -1047,7 +2190,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		/**
 		 * 待消费者处理的任务
 		 */
-		private final List<T> tasks;
+		final TaskBatch<T> tasks;
 
 		/**
 		 * 构造函数
@@ -1063,7 +2206,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 * @throws IllegalArgumentException
 		 *             tasks.size() <= 0
 		 */
-		public ConsumerRunner(TaskProcessor<T> consumer, List<T> tasks,
+		public ConsumerRunner(TaskProcessor<T> consumer, TaskBatch<T> tasks,
 				DataSource defaultDataSource) {
 			if (null == consumer || null == tasks) {
 				throw new IllegalArgumentException();
@@ -1072,8 +2215,8 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			}
 			this.consumer = consumer;
 			this.tasks = tasks;
-			for (T task : tasks) {
-				task.getTaskState().setExecutedConsumer(consumer);
+			for (int i = 0; i < tasks.size(); i++) {
+				tasks.get(i).getTaskState().setExecutedConsumer(consumer);
 			}
 			this.taskList = new TaskList<T>(tasks, AbstractExecutor.this);
 			this.defaultDataSource = defaultDataSource;
@@ -1084,42 +2227,75 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 */
 		@Override
 		public void run() {
+			activeConsumerCount.incrementAndGet();
 			try {
 				setThreadName();
-				DynamicDataSourceHolder.change(defaultDataSource);
-				// 执行消费，输出日志
-				try {
-					stopwatch.start();
-					consumer.execute(taskList);
-					stopwatch.stop();
-					logExecutingSuccess(LogFormator
-							.formatConsumingSuccessedInfo(consumer.getClass(),
-									stopwatch.elapsedMillis()));
-				} catch (Exception e) {
-					stopwatch.stop();
-					logExecutingFail(
-							LogFormator.formatConsumingFailedInfo(
-									consumer.getClass(),
-									stopwatch.elapsedMillis()), e);
-				}
+				consume();
 
 				try {
-					// 根据需要输出任务完成日志
-					logTasksCompletion(tasks);
 					// 处理唤醒
 					handleAwaking(tasks);
+					// 确认任务已处理完
+					if (taskQueue instanceof RecoverableTaskQueue) {
+						((RecoverableTaskQueue<T>) taskQueue)
+								.acknowledge(tasks.asList());
+					}
 				} catch (Exception e) {
 					logException(null, e);
 				}
 
 				// 增加已完成的任务总数
-				completedTaskCount.addAndGet(taskList.size());
+				completedTaskCount.addAndGet(tasks.size());
 			} finally {
 				stopwatch.reset();
+				dataSourceLimits.release(defaultDataSource);
+				activeConsumerCount.decrementAndGet();
+				completedConsumerCount.incrementAndGet();
 				LockSupport.unpark(bossThread);
 			}
 		}
 
+		/**
+		 * 将任务交给消费者执行，输出日志，并记录耗时。
+		 */
+		private void consume() {
+			changeDataSource(defaultDataSource);
+			// 执行消费，输出日志
+			long startedNanos = latencyNanos();
+			try {
+				stopwatch.start();
+				consumer.execute(taskList);
+				stopwatch.stop();
+				logExecutingSuccess(LogFormator.formatConsumingSuccessedInfo(
+						consumer.getClass(), stopwatch.elapsedMillis()));
+			} catch (Exception e) {
+				stopwatch.stop();
+				logExecutingFail(
+						LogFormator.formatConsumingFailedInfo(
+								consumer.getClass(), stopwatch.elapsedMillis()),
+						e);
+			} finally {
+				// 消费者中途退出迭代或抛出异常时，结束最后一个被获取的任务
+				taskList.finish();
+			}
+
+			try {
+				// 记录各环节耗时，须在唤醒之前，唤醒时要用到执行完成的时间
+				long elapsedNanos = stopwatch.elapsedTime(TimeUnit.NANOSECONDS);
+				if (0 != startedNanos) {
+					recordLatencies(startedNanos, startedNanos + elapsedNanos);
+				}
+				// 根据本批的执行耗时调整批量
+				adaptiveCapacity.record(tasks.size(), elapsedNanos,
+						taskQueue.size(), maxConsumerPoolSize,
+						staticCapacity(consumer));
+				// 根据需要输出任务完成日志
+				logTasksCompletion(tasks);
+			} catch (Exception e) {
+				logException(null, e);
+			}
+		}
+
 		/**
 		 * 判断指定祖先任务是否完成了指定任务类型的子任务生产
 		 * 
@@ -1175,7 +2351,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 * <p>
 		 * 1.使当前任务所有祖先针对当前类型的未过唤醒环节子任务数-1。
 		 * <p>
-		 * 2.任务通过执行和唤醒环节后，就不会再产生儿子类型的子任务，因此，如果儿子类型不为null，需设置当前任务已完成儿子类型子任务的生产。
+		 * 2.任务通过执行和唤醒环节后，就不会再产生儿子类型的子任务，因此，需针对每个儿子类型（可能有多个），设置当前任务已完成该儿子类型子任务的生产。
 		 * <p>
 		 * 3.再递归检查当前任务的所有祖先是否已完成儿子类型子任务生产。
 		 * <p>
@@ -1204,17 +2380,45 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			// 当前任务所有祖先针对当前类型的未过唤醒环节的子任务数-1
 			decreaseAncestorUnAwakedSubtask(task);
 
-			// 儿子类型
-			Class<? extends Task> sonClass = TaskState.getSubClass(task
-					.getClass());
-			if (null == sonClass) {
+			// 儿子类型，可能有多个
+			List<Class<? extends Task>> sonClasses = TaskState
+					.getSubClasses(task.getClass());
+			if (sonClasses.isEmpty()) {
 				return;
 			}
 
 			// 这个方法内可能会触发当前任务的祖先任务被其他子任务唤醒，该变量用来存放触发的唤醒事件
 			// Map<Task, Task> - 一个唤醒事件， 其中：Task - 被唤醒的祖先任务， Task - 触发唤醒的子任务
 			List<Map<Task, Task>> awakingEvents = new LinkedList<Map<Task, Task>>();
+			for (Class<? extends Task> sonClass : sonClasses) {
+				collectAwakingEvents(task, sonClass, awakingEvents);
+			}
+
+			// 触发唤醒
+			for (Map<Task, Task> awakingEvent : awakingEvents) {
+				for (Map.Entry<Task, Task> entry : awakingEvent.entrySet()) {
+					Task sub = entry.getKey();
+					Task ancestor = entry.getValue();
+					doAwake(ancestor, sub);
+					doAfterAwaked(sub);
+				}
+			}
+		}
 
+		/**
+		 * 任务通过唤醒环节后，针对一个儿子类型，递归检查当前任务的所有祖先是否已完成该儿子类型子任务的生产，并收集由此触发的唤醒事件，
+		 * 检查的标准见{@link #doAfterAwaked(Task)}。
+		 * 
+		 * @param task
+		 *            通过唤醒环节的任务
+		 * @param sonClass
+		 *            儿子类型
+		 * @param awakingEvents
+		 *            用于存放触发的唤醒事件
+		 */
+		private void collectAwakingEvents(Task task,
+				Class<? extends Task> sonClass,
+				List<Map<Task, Task>> awakingEvents) {
 			Task parent = task;
 			TaskState parentState = getTaskState(parent);
 			while (null != parentState) {
@@ -1224,7 +2428,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 						if (!checkGeneration(sonClass, parent)) {
 							continue;
 						}
-						
+					
 						// 初始化针对该祖先通过检查的子任务类型结果
 						List<Class<? extends Task>> checkPassedResult = new LinkedList<Class<? extends Task>>();
 
@@ -1271,16 +2475,6 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 					}
 				}
 			}
-
-			// 触发唤醒
-			for (Map<Task, Task> awakingEvent : awakingEvents) {
-				for (Map.Entry<Task, Task> entry : awakingEvent.entrySet()) {
-					Task sub = entry.getKey();
-					Task ancestor = entry.getValue();
-					doAwake(ancestor, sub);
-					doAfterAwaked(sub);
-				}
-			}
 		}
 
 		/**
@@ -1321,13 +2515,13 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			// 递归找所有祖先任务
 			while (null != parentState) {
 				try {
-					// 对祖先的操作和判断均需要同步，但唤醒不能放在同步里，因为唤醒过程中可能会阻塞，从而死锁
-					synchronized (parentState) {
-						if (0L < parentState
-								.decreaseUnExecutedSubtask(taskClass)) {
-							continue;
-						}
+					// 计数本身是原子的，无需同步，只有最后一个执行完的同类子任务才需要继续做唤醒判断
+					if (0L < parentState.decreaseUnExecutedSubtask(taskClass)) {
+						continue;
+					}
 
+					// 对祖先的判断均需要同步，但唤醒不能放在同步里，因为唤醒过程中可能会阻塞，从而死锁
+					synchronized (parentState) {
 						if (!consumer.getAwakableClasses().contains(
 								parent.getClass())
 								|| parentState.isBeenAwaked(taskClass)) {
@@ -1379,8 +2573,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			stopwatch.start();
 			try {
 				if (null != ancestor.getDefaultDataSource()) {
-					DynamicDataSourceHolder.change(ancestor
-							.getDefaultDataSource());
+					changeDataSource(ancestor.getDefaultDataSource());
 				}
 				task.getTaskState().getExecutedConsumer().awake(ancestor, task);
 			} catch (Exception e) {
@@ -1389,6 +2582,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 				stopwatch.stop();
 				logTaskAwaking(ancestor, task, stopwatch.elapsedMillis());
 			}
+			recordAwaking(ancestor);
 
 			// 如果唤醒过程中抛出的异常是InterruptedException，则继续抛出
 			if (task.getFailedCauseOfAwaking() instanceof InterruptedException) {
@@ -1396,6 +2590,25 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			}
 		}
 
+		/**
+		 * 记录祖先任务被唤醒的时间，并统计其从执行完成到被唤醒的耗时。
+		 * 
+		 * @param ancestor
+		 *            被唤醒的祖先任务
+		 */
+		private void recordAwaking(Task ancestor) {
+			TaskState state = ancestor.getTaskState();
+			long awakedNanos = latencyNanos();
+			if (0 == awakedNanos || null == state) {
+				return;
+			}
+			state.setAwakedNanos(awakedNanos);
+			if (0 != state.getStoppedNanos()) {
+				latencies.get(ancestor.getClass())[TaskStage.AWAKING.ordinal()]
+						.record(awakedNanos - state.getStoppedNanos());
+			}
+		}
+
 		/**
 		 * 处理任务唤醒。
 		 * 
@@ -1404,12 +2617,14 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 * @throws InterruptedException
 		 *             如果线程休眠时被中断
 		 */
-		private void handleAwaking(List<T> tasks) throws InterruptedException {
+		void handleAwaking(TaskBatch<T> tasks)
+				throws InterruptedException {
 			if (null == tasks) {
 				return;
 			}
 
-			for (T task : tasks) {
+			for (int i = 0; i < tasks.size(); i++) {
+				T task = tasks.get(i);
 				if (null == task) {
 					continue;
 				}
@@ -1425,13 +2640,57 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 			}
 		}
 
+		/**
+		 * 记录这批任务的执行时间，并按任务类型统计各任务在任务队列中、在调度缓存中以及执行的耗时，同类的连续任务只查找一次直方图。
+		 * 
+		 * @param startedNanos
+		 *            开始执行的时间
+		 * @param stoppedNanos
+		 *            执行完成的时间
+		 */
+		private void recordLatencies(long startedNanos, long stoppedNanos) {
+			Class<? extends Task> lastClass = null;
+			LatencyHistogram[] histograms = null;
+			int sameClassCount = 0;
+			for (int i = 0; i < tasks.size(); i++) {
+				T task = tasks.get(i);
+				if (task.getClass() != lastClass) {
+					if (0 < sameClassCount) {
+						histograms[TaskStage.EXECUTING.ordinal()].record(
+								stoppedNanos - startedNanos, sameClassCount);
+					}
+					lastClass = task.getClass();
+					histograms = latencies.get(lastClass);
+					sameClassCount = 0;
+				}
+				sameClassCount++;
+
+				TaskState state = task.getTaskState();
+				state.setExecutedNanos(startedNanos, stoppedNanos);
+				long dispatchedNanos = state.getDispatchedNanos();
+				if (0 == dispatchedNanos) {
+					continue;
+				}
+				if (0 != state.getQueuedNanos()) {
+					histograms[TaskStage.QUEUEING.ordinal()].record(
+							dispatchedNanos - state.getQueuedNanos());
+				}
+				histograms[TaskStage.CACHING.ordinal()].record(startedNanos
+						- dispatchedNanos);
+			}
+			if (0 < sameClassCount) {
+				histograms[TaskStage.EXECUTING.ordinal()].record(stoppedNanos
+						- startedNanos, sameClassCount);
+			}
+		}
+
 		/**
 		 * 输出指定任务的正常结束或失败结束记录，只有当消费者使用了任务列表的一次性获取方式时，该方法才会输出日志
 		 * 
 		 * @param tasks
 		 *            待输出日志的任务
 		 */
-		private void logTasksCompletion(List<T> tasks) {
+		private void logTasksCompletion(TaskBatch<T> tasks) {
 			if (!taskList.toListInvoked()
 					|| !AbstractExecutor.this.isLoggingTask()) {
 				return;
@@ -1440,8 +2699,8 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 				return;
 			}
 
-			for (T task : tasks) {
-				logTaskCompletion(task);
+			for (int i = 0; i < tasks.size(); i++) {
+				logTaskCompletion(tasks.get(i));
 			}
 		}
 
@@ -1449,7 +2708,7 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 * 设置线程名，格式：消费者类名(yyyy-MM-dd HH:mm:ss, 待消费的任务数)<br>
 		 * 不抛出任何异常
 		 */
-		private void setThreadName() {
+		void setThreadName() {
 			try {
 				Thread.currentThread().setName(
 						consumer.getClass().getSimpleName() + "("
@@ -1462,6 +2721,70 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		}
 	}
 
+	/**
+	 * 已过截止时间的任务的结算线程类，任务在从调度缓存取出时即被剔除，不交给消费者处理。
+	 * <p>
+	 * 结算时将任务按执行失败处理并输出日志，再照常唤醒并确认，保持祖先任务的子任务计数一致。
+	 * 结算不占用数据源的并发批次名额，也不切换数据源，只有唤醒祖先任务时才切换至祖先任务的数据源。
+	 * 
+	 * @see DeadlineTask
+	 * @author Hu Ruomin
+	 */
+	private class ExpiredTaskRunner extends ConsumerRunner {
+
+		/**
+		 * 已过截止时间的任务的执行结果描述
+		 */
+		private static final String EXPIRED_MESSAGE = "deadline exceeded";
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param consumer
+		 *            本应处理这些任务的消费者对象，唤醒祖先任务时使用
+		 * @param tasks
+		 *            已过截止时间的任务
+		 * @throws IllegalArgumentException
+		 *             任一参数为null
+		 * @throws IllegalArgumentException
+		 *             tasks.size() <= 0
+		 */
+		public ExpiredTaskRunner(TaskProcessor<T> consumer, TaskBatch<T> tasks) {
+			super(consumer, tasks, null);
+		}
+
+		/**
+		 * 结算已过截止时间的任务
+		 */
+		@Override
+		public void run() {
+			try {
+				setThreadName();
+				for (int i = 0; i < tasks.size(); i++) {
+					T task = tasks.get(i);
+					if (task instanceof AbstractTask) {
+						((AbstractTask) task).fail(EXPIRED_MESSAGE);
+					} else {
+						task.setMessage(EXPIRED_MESSAGE);
+					}
+					logTaskCompletion(task);
+				}
+				// 处理唤醒
+				handleAwaking(tasks);
+				// 确认任务已处理完
+				if (taskQueue instanceof RecoverableTaskQueue) {
+					((RecoverableTaskQueue<T>) taskQueue).acknowledge(tasks
+							.asList());
+				}
+			} catch (Exception e) {
+				logException(null, e);
+			} finally {
+				expiredTaskCount.addAndGet(tasks.size());
+				LockSupport.unpark(bossThread);
+			}
+		}
+	}
+
 	/**
 	 * 任务生产者线程类，在消费者执行前，会将数据源切换至生产者{@link TaskProducer#getDefaultDataSource()}
 	 * 方法返回值所对应的数据源，如果返回null，且整个进程有默认数据源，则切换至默认数据源
@@ -1565,14 +2888,9 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 		 */
 		@Override
 		public void run() {
-			Logger log;
 			while (true) {
 				try {
-					ProducingError error = errorPipe.take();
-					if (isLoggingTask()) {
-						log = LoggerFactory.getLogger(error.getClass());
-						log.error(error.getMessage(), error.getCause());
-					}
+					logProducingError(errorPipe.take());
 				} catch (InterruptedException e) {
 					logException(null, e);
 					return;
@@ -1582,4 +2900,39 @@ public abstract class AbstractExecutor<T extends Task> implements Executor<T> {
 
 	}
 
+	/**
+	 * 恢复任务的生产者，将可恢复的任务队列中上次尚未处理完的任务重新放入任务队列。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class RecoveringProducer extends AbstractTaskProducer<T> {
+
+		/**
+		 * 待重新放入的任务
+		 */
+		private final List<T> tasks;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param tasks
+		 *            待重新放入的任务
+		 */
+		public RecoveringProducer(List<T> tasks) {
+			this.tasks = tasks;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void execute(TaskPipe<T> pipe, ProducingErrorPipe errorPipe) {
+			try {
+				pipe.putAll(tasks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 }
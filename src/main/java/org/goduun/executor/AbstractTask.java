@@ -27,17 +27,24 @@ import org.goduun.executor.datasource.DynamicDataSourceHolder;
  * <li>默认任务未被唤醒过。</li>
  * <li>默认任务唤醒结果为成功。</li>
  * <li>默认数据源为所属进程的默认数据源。</li>
+ * <li>默认优先级为0，即最低优先级。</li>
+ * <li>默认没有截止时间。</li>
  * </ol>
  * 
  * @author Hu Ruomin
  */
-public abstract class AbstractTask implements Task {
+public abstract class AbstractTask implements PrioritizedTask, DeadlineTask {
 
 	/**
 	 * serialVersionUID
 	 */
 	private static final long serialVersionUID = -8151210897952227336L;
 
+	/**
+	 * 任务截止时间，为0表示没有截止时间
+	 */
+	private long deadline = 0;
+
 	/**
 	 * 处理当前任务所使用的默认数据源
 	 */
@@ -78,6 +85,11 @@ public abstract class AbstractTask implements Task {
 	 */
 	private final Task parent;
 
+	/**
+	 * 任务优先级
+	 */
+	private int priority = 0;
+
 	/**
 	 * 任务开始时间
 	 */
@@ -89,9 +101,9 @@ public abstract class AbstractTask implements Task {
 	private long stoppedAt;
 
 	/**
-	 * 任务状态，用于唤醒同步控制
+	 * 任务状态，用于唤醒同步控制，只在当前进程内有效，不参与序列化
 	 */
-	private TaskState taskState;
+	private transient TaskState taskState;
 
 	/**
 	 * 构造函数。
@@ -218,6 +230,14 @@ public abstract class AbstractTask implements Task {
 		return null;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getDeadline() {
+		return deadline;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -289,6 +309,14 @@ public abstract class AbstractTask implements Task {
 		return parent;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPriority() {
+		return priority;
+	}
+
 	/**
 	 * 获取当前任务的开始执行时间。
 	 */
@@ -329,6 +357,22 @@ public abstract class AbstractTask implements Task {
 		return isFailedToBeAwaked;
 	}
 
+	/**
+	 * 设置当前任务的截止时间，须在任务放入任务队列之前设置。
+	 * 
+	 * @param deadline
+	 *            截止时间，即自1970-01-01 00:00:00 UTC起的毫秒数，为0表示没有截止时间
+	 * @throws IllegalArgumentException
+	 *             deadline小于0
+	 * @see DeadlineTask
+	 */
+	public void setDeadline(long deadline) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.deadline = deadline;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -360,6 +404,22 @@ public abstract class AbstractTask implements Task {
 		messageOfAwaking = message;
 	}
 
+	/**
+	 * 设置当前任务的优先级，须在任务放入任务队列之前设置。
+	 * 
+	 * @param priority
+	 *            优先级，0为最低优先级，数值越大优先级越高
+	 * @throws IllegalArgumentException
+	 *             priority小于0
+	 * @see PriorityTaskQueue
+	 */
+	public void setPriority(int priority) {
+		if (priority < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.priority = priority;
+	}
+
 	/**
 	 * 设置当前任务的开始执行时间。
 	 * 
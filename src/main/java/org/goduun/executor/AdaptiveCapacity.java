@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应的消费者批量大小。
+ * <p>
+ * 设定每批任务的执行耗时预算后，按照加性增、乘性减（AIMD）的方式，根据每批任务实际的执行耗时与任务队列的深度在运行时调整每批任务数：
+ * <ol>
+ * <li>执行耗时超出预算时，按预算与实际耗时之比成比例地缩小批量，避免尾延迟失控。</li>
+ * <li>执行耗时未超出预算、本批已满，且队列中的任务足以让每个消费者线程都分到一整批时，批量加1，以减少数据源切换及数据库往返的次数；
+ * 队列较浅时不再增大，避免大批量导致任务在线程之间分配不均。</li>
+ * </ol>
+ * 批量始终不超过消费者的{@link TaskProcessor#getCapacity()}，启用时从该值开始调整。
+ * 
+ * @author Hu Ruomin
+ */
+final class AdaptiveCapacity {
+
+	/**
+	 * 每批任务的执行耗时预算，单位：纳秒，为0表示不启用
+	 */
+	private volatile long budgetNanos;
+
+	/**
+	 * 当前批量，为0表示尚未开始调整
+	 */
+	private final AtomicInteger capacity = new AtomicInteger();
+
+	/**
+	 * 获取每批任务的执行耗时预算。
+	 * 
+	 * @return 执行耗时预算，单位：纳秒，为0表示不启用
+	 */
+	long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * 设置每批任务的执行耗时预算，并从消费者的最大处理能力开始重新调整。
+	 * 
+	 * @param budgetNanos
+	 *            执行耗时预算，单位：纳秒，不大于0表示不启用
+	 */
+	void setBudgetNanos(long budgetNanos) {
+		this.budgetNanos = budgetNanos > 0 ? budgetNanos : 0;
+		capacity.set(0);
+	}
+
+	/**
+	 * 获取当前批量。
+	 * 
+	 * @param maxCapacity
+	 *            消费者的最大处理能力
+	 * @return 当前批量，不启用时为maxCapacity
+	 */
+	int get(int maxCapacity) {
+		int current = capacity.get();
+		return 0 == budgetNanos || 0 == current || current > maxCapacity ? maxCapacity
+				: current;
+	}
+
+	/**
+	 * 根据一批任务的执行情况调整批量。
+	 * 
+	 * @param batchSize
+	 *            本批任务数
+	 * @param elapsedNanos
+	 *            本批任务的执行耗时，单位：纳秒
+	 * @param queueSize
+	 *            当前任务队列中的任务数
+	 * @param threads
+	 *            消费者线程数上限
+	 * @param maxCapacity
+	 *            消费者的最大处理能力
+	 */
+	void record(int batchSize, long elapsedNanos, int queueSize, int threads,
+			int maxCapacity) {
+		long budget = budgetNanos;
+		if (0 == budget || batchSize < 1) {
+			return;
+		}
+		while (true) {
+			int last = capacity.get();
+			int current = get(maxCapacity);
+			int next = current;
+			if (elapsedNanos > budget) {
+				next = (int) Math.max(1, Math.min(current - 1,
+						(double) batchSize * budget / elapsedNanos));
+			} else if (batchSize >= current
+					&& (long) queueSize >= (long) current * threads) {
+				next = Math.min(maxCapacity, current + 1);
+			}
+			if (next == last || capacity.compareAndSet(last, next)) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 自动伸缩的执行器状态监控实施器。
+ * <p>
+ * 根据任务队列的积压、消费速率及每批任务的执行耗时，在设定的上下限内自动调整执行器的消费者线程池及生产者线程池的最大线程数上限：
+ * <ol>
+ * <li>以积压轮数衡量消费者的压力，即任务队列中的任务数相当于所有消费者线程各取一批（线程数×每批任务数上限）的多少轮。
+ * 积压轮数不低于高积压轮数，或有界队列的占用率不低于高水位时，消费者不足，逐步增加消费者线程，减少生产者线程；
+ * 积压轮数不高于低积压轮数，且队列无界或占用率不高于低水位时反之；其余情况保持不变，形成滞回区间，避免来回振荡。
+ * 积压轮数不依赖队列容量，{@link SpillingTaskQueue}等无界队列、{@link PriorityTaskQueue}等由多个通道组成的队列同样适用。</li>
+ * <li>每次调整后，用调整后一个完整监控间隔内测得的吞吐量与调整前比较：吞吐量随线程数增长明显时加大步长继续搜索，增长不足滞回阈值，
+ * 或每批执行耗时随线程数同比上升（例如数据库已饱和，新增的线程只是在排队）时，判定已饱和，退回调整前的线程数，并在一段时间内不再超过该值；
+ * 减少线程导致吞吐量明显下降时，恢复调整前的线程数，并在一段时间内不再低于该值。</li>
+ * </ol>
+ * 生产者线程池以任务入队速率作为吞吐量，不参考执行耗时。
+ * <p>
+ * 执行状态可同时转交给另一个监控实施器保存。
+ * 
+ * @see ExecutingMonitor
+ * @author Hu Ruomin
+ */
+public class AutoScalingStateMonitor implements ExecutingStateMonitor {
+
+	/**
+	 * 默认的高水位，即队列占用率
+	 */
+	public static final float DEFAULT_HIGH_WATERMARK = 0.75f;
+
+	/**
+	 * 默认的低水位，即队列占用率
+	 */
+	public static final float DEFAULT_LOW_WATERMARK = 0.25f;
+
+	/**
+	 * 默认的高积压轮数
+	 */
+	public static final float DEFAULT_HIGH_BACKLOG_ROUNDS = 4f;
+
+	/**
+	 * 默认的低积压轮数
+	 */
+	public static final float DEFAULT_LOW_BACKLOG_ROUNDS = 1f;
+
+	/**
+	 * 默认的滞回阈值，即吞吐量的最小相对变化
+	 */
+	public static final float DEFAULT_HYSTERESIS = 0.05f;
+
+	/**
+	 * 默认的饱和上限及下限的有效间隔数，过期后将重新尝试调整线程数
+	 */
+	public static final int DEFAULT_PROBE_INTERVALS = 20;
+
+	/**
+	 * 默认的消费者线程数下限
+	 */
+	private final int minConsumerThreads;
+
+	/**
+	 * 默认的消费者线程数上限
+	 */
+	private final int maxConsumerThreads;
+
+	/**
+	 * 默认的生产者线程数下限
+	 */
+	private final int minProducerThreads;
+
+	/**
+	 * 默认的生产者线程数上限
+	 */
+	private final int maxProducerThreads;
+
+	/**
+	 * 各执行器单独设定的线程数上下限
+	 */
+	private final Map<String, int[]> bounds = new HashMap<String, int[]>();
+
+	/**
+	 * 各执行器的伸缩状态
+	 */
+	private final Map<String, Scaling> scalings = new HashMap<String, Scaling>();
+
+	/**
+	 * 转交执行状态的监控实施器，可为null
+	 */
+	private final ExecutingStateMonitor delegate;
+
+	/**
+	 * 高水位
+	 */
+	private float highWatermark = DEFAULT_HIGH_WATERMARK;
+
+	/**
+	 * 低水位
+	 */
+	private float lowWatermark = DEFAULT_LOW_WATERMARK;
+
+	/**
+	 * 高积压轮数
+	 */
+	private float highBacklogRounds = DEFAULT_HIGH_BACKLOG_ROUNDS;
+
+	/**
+	 * 低积压轮数
+	 */
+	private float lowBacklogRounds = DEFAULT_LOW_BACKLOG_ROUNDS;
+
+	/**
+	 * 滞回阈值
+	 */
+	private float hysteresis = DEFAULT_HYSTERESIS;
+
+	/**
+	 * 饱和上限及下限的有效间隔数
+	 */
+	private int probeIntervals = DEFAULT_PROBE_INTERVALS;
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param minProducerThreads
+	 *            生产者线程数下限
+	 * @param maxProducerThreads
+	 *            生产者线程数上限
+	 * @param minConsumerThreads
+	 *            消费者线程数下限
+	 * @param maxConsumerThreads
+	 *            消费者线程数上限
+	 * @throws IllegalArgumentException
+	 *             下限小于1或上限小于下限
+	 */
+	public AutoScalingStateMonitor(int minProducerThreads,
+			int maxProducerThreads, int minConsumerThreads,
+			int maxConsumerThreads) {
+		this(minProducerThreads, maxProducerThreads, minConsumerThreads,
+				maxConsumerThreads, null);
+	}
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param minProducerThreads
+	 *            生产者线程数下限
+	 * @param maxProducerThreads
+	 *            生产者线程数上限
+	 * @param minConsumerThreads
+	 *            消费者线程数下限
+	 * @param maxConsumerThreads
+	 *            消费者线程数上限
+	 * @param delegate
+	 *            转交执行状态的监控实施器，可为null
+	 * @throws IllegalArgumentException
+	 *             下限小于1或上限小于下限
+	 */
+	public AutoScalingStateMonitor(int minProducerThreads,
+			int maxProducerThreads, int minConsumerThreads,
+			int maxConsumerThreads, ExecutingStateMonitor delegate) {
+		checkBounds(minProducerThreads, maxProducerThreads);
+		checkBounds(minConsumerThreads, maxConsumerThreads);
+		this.minProducerThreads = minProducerThreads;
+		this.maxProducerThreads = maxProducerThreads;
+		this.minConsumerThreads = minConsumerThreads;
+		this.maxConsumerThreads = maxConsumerThreads;
+		this.delegate = delegate;
+	}
+
+	/**
+	 * 单独设定指定执行器的线程数上下限。
+	 * 
+	 * @param executorName
+	 *            执行器名称
+	 * @param minProducerThreads
+	 *            生产者线程数下限
+	 * @param maxProducerThreads
+	 *            生产者线程数上限
+	 * @param minConsumerThreads
+	 *            消费者线程数下限
+	 * @param maxConsumerThreads
+	 *            消费者线程数上限
+	 * @throws IllegalArgumentException
+	 *             executorName为null，或下限小于1，或上限小于下限
+	 */
+	public synchronized void setBounds(String executorName,
+			int minProducerThreads, int maxProducerThreads,
+			int minConsumerThreads, int maxConsumerThreads) {
+		if (null == executorName) {
+			throw new IllegalArgumentException();
+		}
+		checkBounds(minProducerThreads, maxProducerThreads);
+		checkBounds(minConsumerThreads, maxConsumerThreads);
+		bounds.put(executorName, new int[] { minProducerThreads,
+				maxProducerThreads, minConsumerThreads, maxConsumerThreads });
+	}
+
+	/**
+	 * 设置队列占用率的高水位及低水位，只对有界队列生效。
+	 * 
+	 * @param lowWatermark
+	 *            低水位
+	 * @param highWatermark
+	 *            高水位
+	 * @throws IllegalArgumentException
+	 *             水位不在0~1之间或低水位不小于高水位
+	 */
+	public synchronized void setWatermarks(float lowWatermark,
+			float highWatermark) {
+		if (lowWatermark < 0 || highWatermark > 1
+				|| lowWatermark >= highWatermark) {
+			throw new IllegalArgumentException();
+		}
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	/**
+	 * 设置积压轮数的高水位及低水位，积压轮数即任务队列中的任务数除以所有消费者线程各取一批的任务数。
+	 * 
+	 * @param lowBacklogRounds
+	 *            低积压轮数
+	 * @param highBacklogRounds
+	 *            高积压轮数
+	 * @throws IllegalArgumentException
+	 *             低积压轮数小于0或不小于高积压轮数
+	 */
+	public synchronized void setBacklogRounds(float lowBacklogRounds,
+			float highBacklogRounds) {
+		if (lowBacklogRounds < 0 || lowBacklogRounds >= highBacklogRounds) {
+			throw new IllegalArgumentException();
+		}
+		this.lowBacklogRounds = lowBacklogRounds;
+		this.highBacklogRounds = highBacklogRounds;
+	}
+
+	/**
+	 * 设置滞回阈值，吞吐量的相对变化小于该值时视为没有变化。
+	 * 
+	 * @param hysteresis
+	 *            滞回阈值
+	 * @throws IllegalArgumentException
+	 *             hysteresis不在0~1之间
+	 */
+	public synchronized void setHysteresis(float hysteresis) {
+		if (hysteresis < 0 || hysteresis > 1) {
+			throw new IllegalArgumentException();
+		}
+		this.hysteresis = hysteresis;
+	}
+
+	/**
+	 * 设置退回调整前的线程数后，不再越过该线程数的监控间隔数，过期后将重新尝试调整线程数。
+	 * 
+	 * @param probeIntervals
+	 *            饱和上限及下限的有效间隔数
+	 * @throws IllegalArgumentException
+	 *             probeIntervals小于1
+	 */
+	public synchronized void setProbeIntervals(int probeIntervals) {
+		if (probeIntervals < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.probeIntervals = probeIntervals;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 根据本次状态计算下一次的线程数上限，再将状态转交给构造时指定的监控实施器。
+	 */
+	@Override
+	public void saveState(ExecutingState state) {
+		if (null == state || null == state.getExecutorName()) {
+			return;
+		}
+		synchronized (this) {
+			String name = state.getExecutorName();
+			Scaling scaling = scalings.get(name);
+			if (null == scaling) {
+				scaling = new Scaling();
+				scalings.put(name, scaling);
+			}
+			int[] limits = bounds.get(name);
+			if (null == limits) {
+				limits = new int[] { minProducerThreads, maxProducerThreads,
+						minConsumerThreads, maxConsumerThreads };
+			}
+			int pressure = pressureOf(state);
+			scaling.consumer.sample(state.getConsumerThreadMaxSize(), state
+					.getConsumingRate(), executingNanos(state), pressure,
+					limits[2], limits[3]);
+			scaling.producer.sample(state.getProducerThreadMaxSize(), state
+					.getQueueingRate(), 0, -pressure, limits[0], limits[1]);
+		}
+		if (null != delegate) {
+			delegate.saveState(state);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized int newProducerThreadMaxSize(String executorName) {
+		Scaling scaling = scalings.get(executorName);
+		return null == scaling ? 0 : scaling.producer.target;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized int newConsumerThreadMaxSize(String executorName) {
+		Scaling scaling = scalings.get(executorName);
+		return null == scaling ? 0 : scaling.consumer.target;
+	}
+
+	/**
+	 * 根据积压轮数及有界队列的占用率判断消费者线程的压力。
+	 * <p>
+	 * 容量为{@link Integer#MAX_VALUE}的队列视为无界，不计算占用率；状态中没有每批任务数上限时，只按占用率判断。
+	 * 
+	 * @param state
+	 *            执行状态
+	 * @return 1表示消费者不足，-1表示消费者过剩，0表示处于滞回区间内
+	 */
+	private int pressureOf(ExecutingState state) {
+		int queueCapacity = state.getQueueCapacity();
+		boolean isBounded = queueCapacity > 0
+				&& queueCapacity < Integer.MAX_VALUE;
+		float occupancy = isBounded ? (float) state.getQueueSize()
+				/ queueCapacity : 0;
+		long roundSize = (long) state.getConsumerThreadMaxSize()
+				* state.getConsumerCapacity();
+		if (roundSize <= 0) {
+			if (!isBounded) {
+				return 0;
+			}
+			if (occupancy >= highWatermark) {
+				return 1;
+			}
+			return occupancy <= lowWatermark ? -1 : 0;
+		}
+		float rounds = (float) state.getQueueSize() / roundSize;
+		if (rounds >= highBacklogRounds
+				|| (isBounded && occupancy >= highWatermark)) {
+			return 1;
+		}
+		if (rounds <= lowBacklogRounds
+				&& (!isBounded || occupancy <= lowWatermark)) {
+			return -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * 计算监控间隔内所有任务类型每批任务的平均执行耗时。
+	 * 
+	 * @param state
+	 *            执行状态
+	 * @return 平均执行耗时，单位：纳秒，没有记录时为0
+	 */
+	private static double executingNanos(ExecutingState state) {
+		long sum = 0;
+		long count = 0;
+		for (Map<TaskStage, LatencySnapshot> stages : state.getLatencies()
+				.values()) {
+			LatencySnapshot executing = stages.get(TaskStage.EXECUTING);
+			if (null != executing) {
+				sum += executing.getSum();
+				count += executing.getCount();
+			}
+		}
+		return 0 == count ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * 检查线程数上下限。
+	 * 
+	 * @param min
+	 *            下限
+	 * @param max
+	 *            上限
+	 * @throws IllegalArgumentException
+	 *             下限小于1或上限小于下限
+	 */
+	private static void checkBounds(int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * 一个执行器的伸缩状态。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class Scaling {
+
+		/**
+		 * 消费者线程池的控制器
+		 */
+		private final Controller consumer = new Controller();
+
+		/**
+		 * 生产者线程池的控制器
+		 */
+		private final Controller producer = new Controller();
+	}
+
+	/**
+	 * 一个线程池的控制器，基于吞吐量梯度搜索线程数。
+	 * <p>
+	 * 监控器先调整线程池，再保存状态，因此状态中的速率是在上一次保存状态时的线程数下测得的，控制器据此记录每个样本所对应的线程数。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class Controller {
+
+		/**
+		 * 上一次保存状态时的线程数上限，即本次样本对应的线程数，为0表示尚无样本
+		 */
+		private int lastSize;
+
+		/**
+		 * 调整前的线程数，为0表示没有待评估的调整
+		 */
+		private int baseSize;
+
+		/**
+		 * 调整前的吞吐量
+		 */
+		private float baseThroughput;
+
+		/**
+		 * 调整前的平均执行耗时
+		 */
+		private double baseLatency;
+
+		/**
+		 * 当前步长
+		 */
+		private int step = 1;
+
+		/**
+		 * 判定饱和后的线程数上限，为0表示没有
+		 */
+		private int ceiling;
+
+		/**
+		 * 饱和上限的剩余有效间隔数
+		 */
+		private int ceilingIntervals;
+
+		/**
+		 * 减少线程损失吞吐量后的线程数下限，为0表示没有
+		 */
+		private int floor;
+
+		/**
+		 * 下限的剩余有效间隔数
+		 */
+		private int floorIntervals;
+
+		/**
+		 * 下一次的线程数上限，为0表示不调整
+		 */
+		private int target;
+
+		/**
+		 * 根据一个样本计算下一次的线程数上限。
+		 * 
+		 * @param currentSize
+		 *            当前的线程数上限
+		 * @param throughput
+		 *            监控间隔内的吞吐量
+		 * @param latency
+		 *            监控间隔内每批任务的平均执行耗时，为0表示不参考
+		 * @param pressure
+		 *            1表示需要更多线程，-1表示需要更少线程，0表示保持
+		 * @param min
+		 *            线程数下限
+		 * @param max
+		 *            线程数上限
+		 */
+		private void sample(int currentSize, float throughput, double latency,
+				int pressure, int min, int max) {
+			int size = lastSize;
+			lastSize = currentSize;
+			if (ceilingIntervals > 0 && 0 == --ceilingIntervals) {
+				ceiling = 0;
+			}
+			if (floorIntervals > 0 && 0 == --floorIntervals) {
+				floor = 0;
+			}
+			// 尚无样本，或上一次的调整还没有经过一个完整的监控间隔
+			if (0 == size || size != currentSize) {
+				target = 0;
+				return;
+			}
+
+			int next = size;
+			boolean reverted = false;
+			if (0 != baseSize) {
+				float throughputGain = baseThroughput > 0 ? (throughput - baseThroughput)
+						/ baseThroughput
+						: (throughput > 0 ? 1 : 0);
+				if (size > baseSize && pressure > 0) {
+					float sizeGain = (float) (size - baseSize) / baseSize;
+					double latencyGain = baseLatency > 0 && latency > 0 ? (latency - baseLatency)
+							/ baseLatency
+							: 0;
+					if (throughputGain < hysteresis
+							|| latencyGain >= sizeGain * (1 - hysteresis)) {
+						// 新增的线程没有带来吞吐量，已饱和
+						ceiling = baseSize;
+						ceilingIntervals = probeIntervals;
+						next = baseSize;
+						reverted = true;
+						step = 1;
+					} else if (throughputGain >= sizeGain / 2) {
+						step <<= 1;
+					} else {
+						step = 1;
+					}
+				} else if (size < baseSize && pressure >= 0
+						&& throughputGain < -hysteresis) {
+					// 减少线程损失了吞吐量
+					floor = baseSize;
+					floorIntervals = probeIntervals;
+					next = baseSize;
+					reverted = true;
+					step = 1;
+				}
+				baseSize = 0;
+			}
+
+			if (!reverted) {
+				if (pressure > 0) {
+					int limit = 0 == ceiling ? max : Math.min(max, ceiling);
+					next = Math.min(size + Math.min(step, Math.max(1, size / 2)),
+							limit);
+				} else if (pressure < 0) {
+					next = Math.max(size - 1, floor);
+					step = 1;
+				}
+			}
+			next = Math.max(min, Math.min(max, next));
+			// 退回的调整无需再评估
+			if (next != size && !reverted) {
+				baseSize = size;
+				baseThroughput = throughput;
+				baseLatency = latency;
+			}
+			target = next;
+		}
+	}
+}
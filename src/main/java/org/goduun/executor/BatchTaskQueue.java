@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 支持批量存取的任务队列。
+ * <p>
+ * 执行器与任务传送管道发现任务队列实现了该接口时，通过批量方法整批存取任务，一次同步操作即可完成整批任务的存取；
+ * 否则退回到逐个调用{@link TaskQueue}的方法，因此自定义的任务队列无需实现该接口也能照常使用。
+ * 
+ * @param <T>
+ *            任务类型
+ * @author Hu Ruomin
+ */
+public interface BatchTaskQueue<T extends Task> extends TaskQueue<T> {
+
+	/**
+	 * 从任务队列中批量获取任务，非阻塞方法，调用后立刻返回，最多获取maxTasks个任务，并按出队顺序放入指定集合。
+	 * <p>
+	 * 与循环调用{@link #poll()}相比，该方法只需一次同步操作即可取出整批任务，适合执行器批量调度任务。
+	 * 
+	 * @param c
+	 *            用于存放获取到的任务的集合
+	 * @param maxTasks
+	 *            最多获取的任务数
+	 * @return 实际获取到的任务数，如果当前队列为空或maxTasks小于1，返回0
+	 * @throws NullPointerException
+	 *             c为null
+	 * @throws IllegalArgumentException
+	 *             c为当前任务队列本身
+	 */
+	int drainTo(Collection<? super T> c, int maxTasks);
+
+	/**
+	 * 尝试将一批任务放入任务队列，非阻塞方法，调用后会立刻返回。任务按列表顺序放入，直到全部放入或队列满为止。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @return 实际放入队列的任务数，即tasks中的前若干个任务已被放入队列
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	int offerAll(List<? extends T> tasks);
+
+	/**
+	 * 将一批任务按列表顺序放入任务队列，阻塞方法，当任务队列满时，当前线程将阻塞，直到所有任务都被放入队列后，方法才会返回。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 * @throws InterruptedException
+	 *             阻塞过程中线程被中断，此时tasks中可能已有部分任务被放入队列
+	 */
+	void putAll(List<? extends T> tasks) throws InterruptedException;
+}
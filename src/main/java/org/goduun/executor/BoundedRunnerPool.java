@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限制同时运行任务数的线程池，本身不持有线程，由启动器提供运行任务的线程，同时运行的任务数由信号量控制。
+ * <p>
+ * 启动器可以是：
+ * <ol>
+ * <li>{@link VirtualThreadLauncher}：每个任务都运行在一个新的虚拟线程上，适合消费者大多阻塞在数据库等IO操作上的场景。</li>
+ * <li>{@link ExecutingRuntime}的共享线程池：多个执行器共用线程，各执行器的同时运行任务数即其配额。</li>
+ * </ol>
+ * 排队的线程池在许可不足时将任务放入等待队列，待有任务运行完成、归还许可后再启动。
+ * 
+ * @author Hu Ruomin
+ */
+final class BoundedRunnerPool implements RunnerPool {
+
+	/**
+	 * 正在运行的任务数
+	 */
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	/**
+	 * 已运行完成的任务总数
+	 */
+	private final AtomicLong completedTaskCount = new AtomicLong();
+
+	/**
+	 * 任务运行完成后的回调
+	 */
+	private final Runnable exitListener;
+
+	/**
+	 * 同时运行的任务数达到上限后，新提交的任务是否排队
+	 */
+	private final boolean isQueued;
+
+	/**
+	 * 任务启动器
+	 */
+	private final java.util.concurrent.Executor launcher;
+
+	/**
+	 * 同时运行的任务数上限
+	 */
+	private int maxSize;
+
+	/**
+	 * 等待许可的任务，只在排队的线程池中使用
+	 */
+	private final Queue<Runnable> pendingRunners = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * 运行许可，许可数即同时运行的任务数上限
+	 */
+	private final ResizableSemaphore permits;
+
+	/**
+	 * 已启动、尚未运行完成的任务数
+	 */
+	private final AtomicInteger poolSize = new AtomicInteger();
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param launcher
+	 *            任务启动器
+	 * @param size
+	 *            同时运行的任务数上限
+	 * @param isQueued
+	 *            同时运行的任务数达到上限后，新提交的任务是否排队
+	 * @param exitListener
+	 *            任务运行完成后的回调，回调时该任务已不计入{@link #getPoolSize()}
+	 * @throws IllegalArgumentException
+	 *             launcher或exitListener为null
+	 */
+	BoundedRunnerPool(java.util.concurrent.Executor launcher, int size,
+			boolean isQueued, Runnable exitListener) {
+		if (null == launcher || null == exitListener) {
+			throw new IllegalArgumentException();
+		}
+		this.launcher = launcher;
+		this.exitListener = exitListener;
+		this.maxSize = size;
+		this.isQueued = isQueued;
+		this.permits = new ResizableSemaphore(size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(Runnable runner) {
+		if (null == runner) {
+			throw new NullPointerException();
+		}
+		if (isQueued) {
+			pendingRunners.offer(runner);
+			launchPendingRunners();
+			return;
+		}
+		if (!permits.tryAcquire()) {
+			throw new RejectedExecutionException();
+		}
+		launch(runner);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCompletedTaskCount() {
+		return completedTaskCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPoolSize() {
+		return poolSize.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 调小上限时，已在运行的任务不受影响，待其运行完成、归还许可后，同时运行的任务数自然会降至新的上限。
+	 */
+	@Override
+	public synchronized void setMaxSize(int size) {
+		int delta = size - maxSize;
+		if (delta > 0) {
+			permits.release(delta);
+		} else if (delta < 0) {
+			permits.reducePermits(-delta);
+		}
+		maxSize = size;
+		if (delta > 0 && isQueued) {
+			launchPendingRunners();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 线程由启动器管理，无需额外处理。
+	 */
+	@Override
+	public void terminate() {
+		return;
+	}
+
+	/**
+	 * 启动已获取了许可的任务。
+	 * 
+	 * @param runner
+	 *            已获取了许可的任务
+	 * @throws RejectedExecutionException
+	 *             启动器无法启动任务
+	 */
+	private void launch(Runnable runner) {
+		poolSize.incrementAndGet();
+		try {
+			launcher.execute(new Worker(runner));
+		} catch (RuntimeException e) {
+			poolSize.decrementAndGet();
+			permits.release();
+			if (e instanceof RejectedExecutionException) {
+				throw e;
+			}
+			throw new RejectedExecutionException(e);
+		}
+	}
+
+	/**
+	 * 在许可充足的前提下，启动等待中的任务。
+	 */
+	private void launchPendingRunners() {
+		while (!pendingRunners.isEmpty() && permits.tryAcquire()) {
+			Runnable runner = pendingRunners.poll();
+			if (null == runner) {
+				permits.release();
+				continue;
+			}
+			launch(runner);
+		}
+	}
+
+	/**
+	 * 可调整许可总数的信号量。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ResizableSemaphore extends Semaphore {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = -3106473420283409736L;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param permits
+		 *            初始许可数
+		 */
+		ResizableSemaphore(int permits) {
+			super(permits);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+	/**
+	 * 运行任务，负责计数以及许可的归还。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private final class Worker implements Runnable {
+
+		/**
+		 * 待运行的任务
+		 */
+		private final Runnable runner;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param runner
+		 *            待运行的任务
+		 */
+		Worker(Runnable runner) {
+			this.runner = runner;
+		}
+
+		/**
+		 * 运行任务，运行完成后归还许可，并启动等待中的任务
+		 */
+		@Override
+		public void run() {
+			activeCount.incrementAndGet();
+			try {
+				runner.run();
+			} finally {
+				activeCount.decrementAndGet();
+				completedTaskCount.incrementAndGet();
+				poolSize.decrementAndGet();
+				permits.release();
+				if (isQueued) {
+					launchPendingRunners();
+				}
+				exitListener.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goduun.executor.datasource.DataSource;
+
+/**
+ * 按数据源分别计数的计数器组，线程安全。
+ * <p>
+ * 每个数据源在首次使用时分配一个计数器，之后调用者可持有该计数器直接增减，无需再次查找。
+ * 
+ * @author Hu Ruomin
+ */
+final class DataSourceCounters {
+
+	/**
+	 * 代表没有数据源的键，ConcurrentHashMap不允许null键
+	 */
+	private static final Object NO_DATA_SOURCE = new Object();
+
+	/**
+	 * 各数据源的计数器
+	 */
+	private final ConcurrentMap<Object, AtomicInteger> counters = new ConcurrentHashMap<Object, AtomicInteger>();
+
+	/**
+	 * 获取指定数据源的计数器，没有时新建。
+	 * 
+	 * @param dataSource
+	 *            数据源，可为null
+	 * @return 计数器
+	 */
+	AtomicInteger get(DataSource dataSource) {
+		Object key = null == dataSource ? NO_DATA_SOURCE : dataSource;
+		AtomicInteger counter = counters.get(key);
+		if (null != counter) {
+			return counter;
+		}
+		counter = new AtomicInteger();
+		AtomicInteger existing = counters.putIfAbsent(key, counter);
+		return null == existing ? counter : existing;
+	}
+
+	/**
+	 * 遍历各数据源当前的计数，不复制计数器。
+	 * 
+	 * @param visitor
+	 *            接收每个数据源键及其计数
+	 */
+	void forEach(Visitor visitor) {
+		for (Map.Entry<Object, AtomicInteger> entry : counters.entrySet()) {
+			visitor.visit(keyOf(entry.getKey()), entry.getValue().get());
+		}
+	}
+
+	/**
+	 * 获取各数据源当前的计数。
+	 * 
+	 * @return 按数据源键排序的计数，没有数据源的计数以空字符串为键，键相同的数据源合并计数
+	 */
+	Map<String, Integer> snapshot() {
+		Map<String, Integer> result = new TreeMap<String, Integer>();
+		for (Map.Entry<Object, AtomicInteger> entry : counters.entrySet()) {
+			String key = keyOf(entry.getKey());
+			Integer count = result.get(key);
+			result.put(key, entry.getValue().get()
+					+ (null == count ? 0 : count.intValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * 获取数据源的键。
+	 * 
+	 * @param key
+	 *            计数器表中的键
+	 * @return 数据源的键，没有数据源时为空字符串
+	 */
+	private static String keyOf(Object key) {
+		return NO_DATA_SOURCE == key ? "" : String.valueOf(((DataSource) key)
+				.getDataSourceKey());
+	}
+
+	/**
+	 * 数据源计数的遍历者。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	interface Visitor {
+
+		/**
+		 * 接收一个数据源的计数。
+		 * 
+		 * @param dataSourceKey
+		 *            数据源的键，没有数据源时为空字符串
+		 * @param count
+		 *            计数
+		 */
+		void visit(String dataSourceKey, int count);
+	}
+}
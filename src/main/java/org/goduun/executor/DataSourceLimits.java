@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goduun.executor.datasource.DataSource;
+
+/**
+ * 各数据源的并发批次上限（舱壁），线程安全。
+ * <p>
+ * 调度器在提交一批任务前为其数据源占用一个名额，消费者处理完这批任务后释放。某个数据源的名额用尽时，其任务留在调度缓存中，调度器转而调度其他数据源的任务，
+ * 避免多余的消费者线程阻塞在该数据源的连接池上。
+ * <p>
+ * 上限按数据源的键（{@link DataSource#getDataSourceKey()}）设定，没有数据源的任务，其键为空字符串；上限为0表示不限制。
+ * 
+ * @author Hu Ruomin
+ */
+final class DataSourceLimits {
+
+	/**
+	 * 各数据源正在处理的批次数
+	 */
+	private final DataSourceCounters inFlight = new DataSourceCounters();
+
+	/**
+	 * 单独设定了上限的数据源的上限
+	 */
+	private final ConcurrentMap<String, Integer> limits = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * 没有单独设定上限的数据源的上限，为0表示不限制
+	 */
+	private volatile int defaultLimit = 0;
+
+	/**
+	 * 是否有数据源受限，没有时调度器跳过所有检查
+	 */
+	private volatile boolean isLimited = false;
+
+	/**
+	 * 获取各数据源正在处理的批次计数器组，供指标导出直接读取。
+	 * 
+	 * @return 各数据源正在处理的批次计数器组
+	 */
+	DataSourceCounters getInFlightCounters() {
+		return inFlight;
+	}
+
+	/**
+	 * 获取各数据源正在处理的批次数。
+	 * 
+	 * @return 按数据源键排序的批次数，没有数据源的批次以空字符串为键
+	 */
+	Map<String, Integer> getInFlightCounts() {
+		return inFlight.snapshot();
+	}
+
+	/**
+	 * 获取指定数据源的上限。
+	 * 
+	 * @param dataSource
+	 *            数据源，可为null
+	 * @return 上限，为0表示不限制
+	 */
+	int getLimit(DataSource dataSource) {
+		if (!isLimited) {
+			return 0;
+		}
+		return getLimit(null == dataSource ? "" : dataSource
+				.getDataSourceKey());
+	}
+
+	/**
+	 * 获取指定键的数据源的上限。
+	 * 
+	 * @param dataSourceKey
+	 *            数据源的键，没有数据源时为空字符串
+	 * @return 上限，为0表示不限制
+	 */
+	int getLimit(String dataSourceKey) {
+		Integer limit = limits.get(dataSourceKey);
+		return null == limit ? defaultLimit : limit;
+	}
+
+	/**
+	 * 获取没有单独设定上限的数据源的上限。
+	 * 
+	 * @return 上限，为0表示不限制
+	 */
+	int getDefaultLimit() {
+		return defaultLimit;
+	}
+
+	/**
+	 * 判断是否有数据源受限。
+	 * 
+	 * @return 有数据源受限时返回true
+	 */
+	boolean isLimited() {
+		return isLimited;
+	}
+
+	/**
+	 * 判断指定数据源的名额是否已用尽。
+	 * 
+	 * @param dataSource
+	 *            数据源，可为null
+	 * @return 名额已用尽时返回true
+	 */
+	boolean isSaturated(DataSource dataSource) {
+		int limit = getLimit(dataSource);
+		return 0 < limit && inFlight.get(dataSource).get() >= limit;
+	}
+
+	/**
+	 * 为指定数据源的一批任务占用一个名额。
+	 * 
+	 * @param dataSource
+	 *            数据源，可为null
+	 * @return 是否占用成功，名额已用尽时返回false
+	 */
+	boolean tryAcquire(DataSource dataSource) {
+		AtomicInteger counter = inFlight.get(dataSource);
+		int limit = getLimit(dataSource);
+		while (true) {
+			int count = counter.get();
+			if (0 < limit && count >= limit) {
+				return false;
+			}
+			if (counter.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 释放指定数据源的一个名额。
+	 * 
+	 * @param dataSource
+	 *            数据源，可为null
+	 */
+	void release(DataSource dataSource) {
+		inFlight.get(dataSource).decrementAndGet();
+	}
+
+	/**
+	 * 设置没有单独设定上限的数据源的上限。
+	 * 
+	 * @param limit
+	 *            上限，不大于0表示不限制
+	 */
+	synchronized void setDefaultLimit(int limit) {
+		defaultLimit = limit > 0 ? limit : 0;
+		isLimited = 0 < defaultLimit || !limits.isEmpty();
+	}
+
+	/**
+	 * 单独设定指定数据源的上限。
+	 * 
+	 * @param dataSourceKey
+	 *            数据源的键，没有数据源时为空字符串
+	 * @param limit
+	 *            上限，不大于0表示取消单独设定的上限
+	 */
+	synchronized void setLimit(String dataSourceKey, int limit) {
+		if (limit > 0) {
+			limits.put(dataSourceKey, limit);
+		} else {
+			limits.remove(dataSourceKey);
+		}
+		isLimited = 0 < defaultLimit || !limits.isEmpty();
+	}
+}
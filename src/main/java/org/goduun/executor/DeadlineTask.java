@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 有截止时间的任务。
+ * <p>
+ * 任务交给消费者之前，执行器会检查其截止时间，已过截止时间的任务不再交给消费者处理，而是直接按执行失败处理，
+ * 照常完成唤醒等后续环节，并单独计数；配合{@link DeadlineTaskQueue}可使截止时间早的任务先被处理。
+ * 
+ * @see DeadlineTaskQueue
+ * @author Hu Ruomin
+ */
+public interface DeadlineTask extends Task {
+
+	/**
+	 * 获取当前任务的截止时间，即自1970-01-01 00:00:00 UTC起的毫秒数，与{@link System#currentTimeMillis()}一致。
+	 * 
+	 * @return 当前任务的截止时间，为0表示没有截止时间
+	 */
+	long getDeadline();
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按截止时间排序的任务队列，截止时间早的任务先被取出（Earliest Deadline First）。
+ * <p>
+ * 采用一把锁保护的二叉堆来实现，放入与取出的时间复杂度为O(log n)：
+ * <ol>
+ * <li>截止时间取自{@link DeadlineTask#getDeadline()}，未实现{@link DeadlineTask}或没有截止时间的任务排在所有有截止时间的任务之后。</li>
+ * <li>截止时间相同的任务按放入的先后顺序取出。</li>
+ * </ol>
+ * 队列只负责排序，已过截止时间的任务由执行器在交给消费者之前剔除。
+ * 任务有多个数据源时，执行器按数据源分组缓存，各数据源之间的调度顺序由调度策略决定，请配合{@link DispatchPolicies#earliestDeadline()}使用。
+ * 
+ * @param <T>
+ *            任务类型
+ * @see DeadlineTask
+ * @author Hu Ruomin
+ */
+public class DeadlineTaskQueue<T extends Task> implements BatchTaskQueue<T> {
+
+	/**
+	 * 任务队列最大容量
+	 */
+	private final int capacity;
+
+	/**
+	 * 保护队列的锁
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 队列不空的条件
+	 */
+	private final Condition notEmpty = lock.newCondition();
+
+	/**
+	 * 队列不满的条件
+	 */
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * 按截止时间排序的堆
+	 */
+	private final PriorityQueue<Entry<T>> queue;
+
+	/**
+	 * 下一个放入队列的任务的序号，用于截止时间相同的任务保持先进先出
+	 */
+	private long sequence = 0;
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param capacity
+	 *            队列的最大容量
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1
+	 */
+	public DeadlineTaskQueue(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.capacity = capacity;
+		this.queue = new PriorityQueue<Entry<T>>(Math.min(capacity, 1024));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 取出的任务按截止时间由早到晚排列。
+	 */
+	@Override
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		if (null == c) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxTasks < 1) {
+			return 0;
+		}
+		lock.lock();
+		try {
+			int n = 0;
+			while (n < maxTasks && !queue.isEmpty()) {
+				c.add(queue.poll().task);
+				n++;
+			}
+			if (0 < n) {
+				notFull.signalAll();
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task) {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		lock.lock();
+		try {
+			if (queue.size() >= capacity) {
+				return false;
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (queue.size() >= capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		checkTasks(tasks);
+		lock.lock();
+		try {
+			int offered = 0;
+			for (T task : tasks) {
+				if (queue.size() >= capacity) {
+					break;
+				}
+				enqueue(task);
+				offered++;
+			}
+			return offered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (queue.isEmpty()) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public void put(T task) throws InterruptedException {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		lock.lockInterruptibly();
+		try {
+			while (queue.size() >= capacity) {
+				notFull.await();
+			}
+			enqueue(task);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		checkTasks(tasks);
+		lock.lockInterruptibly();
+		try {
+			for (T task : tasks) {
+				while (queue.size() >= capacity) {
+					notFull.await();
+				}
+				enqueue(task);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (queue.isEmpty()) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 检查待批量放入的任务，不允许有null元素。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	private void checkTasks(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			if (null == task) {
+				throw new NullPointerException();
+			}
+		}
+	}
+
+	/**
+	 * 取出截止时间最早的任务，调用者需持有锁。
+	 * 
+	 * @return 截止时间最早的任务，队列为空时返回null
+	 */
+	private T dequeue() {
+		Entry<T> entry = queue.poll();
+		if (null == entry) {
+			return null;
+		}
+		notFull.signal();
+		return entry.task;
+	}
+
+	/**
+	 * 放入任务，调用者需持有锁，并保证队列未满。
+	 * 
+	 * @param task
+	 *            待放入的任务
+	 */
+	private void enqueue(T task) {
+		long deadline = task instanceof DeadlineTask ? ((DeadlineTask) task)
+				.getDeadline() : 0;
+		queue.offer(new Entry<T>(task, 0 < deadline ? deadline
+				: Long.MAX_VALUE, sequence++));
+		notEmpty.signal();
+	}
+
+	/**
+	 * 队列中的元素，记录任务放入时的截止时间及序号。
+	 * 
+	 * @author Hu Ruomin
+	 * @param <T>
+	 *            任务类型
+	 */
+	private static final class Entry<T> implements Comparable<Entry<T>> {
+
+		/**
+		 * 截止时间，没有截止时间时为Long.MAX_VALUE
+		 */
+		private final long deadline;
+
+		/**
+		 * 放入队列的序号
+		 */
+		private final long sequence;
+
+		/**
+		 * 任务
+		 */
+		private final T task;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param task
+		 *            任务
+		 * @param deadline
+		 *            截止时间
+		 * @param sequence
+		 *            放入队列的序号
+		 */
+		Entry(T task, long deadline, long sequence) {
+			this.task = task;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(Entry<T> other) {
+			if (deadline != other.deadline) {
+				return deadline < other.deadline ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1
+					: (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 执行器的任务调度模式，决定任务从任务队列交到消费者手中的方式。
+ * <ol>
+ * <li>{@link #BOSS}：由一个调度线程从任务队列中取任务，按数据源分组缓存后，提交消费者线程池执行。</li>
+ * <li>{@link #DIRECT}：不设调度线程，由各消费者线程直接从任务队列中批量取任务，按数据源分组后自行执行，
+ * 省去了调度线程的中转，也不会出现线程池满时反复提交、休眠重试的情况。</li>
+ * </ol>
+ * 调度模式需在执行器启动之前设置，默认为{@link #BOSS}。
+ * 
+ * @see AbstractExecutor#setDispatchMode(DispatchMode)
+ * @author Hu Ruomin
+ */
+public enum DispatchMode {
+
+	/**
+	 * 由调度线程统一取任务、分配给消费者线程
+	 */
+	BOSS,
+
+	/**
+	 * 由消费者线程直接从任务队列中取任务
+	 */
+	DIRECT
+}
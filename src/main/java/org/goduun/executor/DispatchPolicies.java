@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.goduun.executor.datasource.DataSource;
+
+/**
+ * 常用的调度策略：
+ * <ol>
+ * <li>{@link #largestBacklog()}：总是调度缓存了任务数最多的数据源，批次最满、吞吐量最高，但积压少的数据源可能长时间被积压多的数据源挡住，这是默认的策略。</li>
+ * <li>{@link #weightedRoundRobin(Map, int)}：加权轮询，各数据源按权重轮流调度，每轮中每个数据源连续调度权重个批次，按批次数公平。</li>
+ * <li>{@link #deficitRoundRobin(Map, int)}：差额轮询，各数据源按配额轮流调度，每轮中每个数据源可调度的任务数为其配额加上上一轮的差额，按任务数公平，
+ * 不受各数据源批次大小不同的影响。</li>
+ * <li>{@link #earliestDeadline()}：截止时间优先，总是调度缓存队列头部任务截止时间最早的数据源，与{@link DeadlineTaskQueue}配合使用。</li>
+ * </ol>
+ * 权重及配额按数据源的键（{@link DataSource#getDataSourceKey()}）设定，没有数据源的任务，其键为空字符串。
+ * <p>
+ * 前三种策略每次选择的均摊时间复杂度均为O(1)，截止时间优先的策略为O(log n)；缓存了任务数最多的数据源由任务缓存以堆维护，维护的时间复杂度为O(log n)，
+ * 数据源多达数百个时同样适用。
+ * 
+ * @see DispatchPolicy
+ * @author Hu Ruomin
+ */
+public final class DispatchPolicies {
+
+	/**
+	 * 积压优先的调度策略
+	 */
+	private static final DispatchPolicy LARGEST_BACKLOG = new DispatchPolicy() {
+
+		/**
+		 * 积压优先的选择器，没有状态，可共用
+		 */
+		private final DispatchSelector selector = new DispatchSelector() {
+
+			@Override
+			public void activated(DataSource dataSource, Task head) {
+			}
+
+			@Override
+			public void dispatched(DataSource dataSource, int count,
+					int backlog, Task head) {
+			}
+
+			@Override
+			public DataSource select(DataSource largest) {
+				return largest;
+			}
+		};
+
+		@Override
+		public DispatchSelector newSelector() {
+			return selector;
+		}
+	};
+
+	/**
+	 * 截止时间优先的调度策略
+	 */
+	private static final DispatchPolicy EARLIEST_DEADLINE = new DispatchPolicy() {
+		@Override
+		public DispatchSelector newSelector() {
+			return new EarliestDeadlineSelector();
+		}
+	};
+
+	/**
+	 * 构造函数。
+	 */
+	private DispatchPolicies() {
+	}
+
+	/**
+	 * 获取积压优先的调度策略，总是调度缓存了任务数最多的数据源。
+	 * 
+	 * @return 积压优先的调度策略
+	 */
+	public static DispatchPolicy largestBacklog() {
+		return LARGEST_BACKLOG;
+	}
+
+	/**
+	 * 创建加权轮询的调度策略。各数据源按缓存由空变为非空的先后排成一轮，每轮中每个数据源连续调度权重个批次后轮到下一个数据源，缓存为空的数据源退出轮询。
+	 * 
+	 * @param weights
+	 *            各数据源的权重，键为数据源的键，可为null
+	 * @param defaultWeight
+	 *            没有设定权重的数据源的权重
+	 * @return 加权轮询的调度策略
+	 * @throws IllegalArgumentException
+	 *             有小于1的权重
+	 */
+	public static DispatchPolicy weightedRoundRobin(
+			Map<String, Integer> weights, int defaultWeight) {
+		final Map<String, Integer> shares = checkShares(weights, defaultWeight);
+		final int defaultShare = defaultWeight;
+		return new DispatchPolicy() {
+			@Override
+			public DispatchSelector newSelector() {
+				return new RoundRobinSelector(shares, defaultShare, false);
+			}
+		};
+	}
+
+	/**
+	 * 创建差额轮询的调度策略。各数据源按缓存由空变为非空的先后排成一轮，每个数据源轮到时差额加上配额，差额为正时调度，每调度一批任务，差额减去该批的任务数，
+	 * 差额不再为正时轮到下一个数据源，透支的任务数计入下一轮；缓存为空的数据源退出轮询，差额清零。
+	 * <p>
+	 * 配额小于消费者的批量时，数据源每轮调度一批后会透支若干轮，各数据源长期调度的任务数之比趋于配额之比。
+	 * 
+	 * @param quanta
+	 *            各数据源的配额，单位：任务数，键为数据源的键，可为null
+	 * @param defaultQuantum
+	 *            没有设定配额的数据源的配额
+	 * @return 差额轮询的调度策略
+	 * @throws IllegalArgumentException
+	 *             有小于1的配额
+	 */
+	public static DispatchPolicy deficitRoundRobin(Map<String, Integer> quanta,
+			int defaultQuantum) {
+		final Map<String, Integer> shares = checkShares(quanta, defaultQuantum);
+		final int defaultShare = defaultQuantum;
+		return new DispatchPolicy() {
+			@Override
+			public DispatchSelector newSelector() {
+				return new RoundRobinSelector(shares, defaultShare, true);
+			}
+		};
+	}
+
+	/**
+	 * 创建截止时间优先的调度策略，总是调度缓存队列头部任务截止时间最早的数据源，使各数据源中最紧迫的任务先被处理。
+	 * <p>
+	 * 截止时间取自{@link DeadlineTask#getDeadline()}，头部任务未实现{@link DeadlineTask}或没有截止时间的数据源排在最后，截止时间相同时先缓存的数据源优先。
+	 * <p>
+	 * 该策略只比较各数据源缓存队列的头部任务，需与{@link DeadlineTaskQueue}配合使用：任务按截止时间由早到晚取出并缓存，各数据源缓存队列的头部即其截止时间最早的任务；
+	 * 配合先进先出的任务队列时，头部任务只是最早放入的任务，调度顺序不一定按截止时间。
+	 * 
+	 * @return 截止时间优先的调度策略
+	 * @see DeadlineTaskQueue
+	 */
+	public static DispatchPolicy earliestDeadline() {
+		return EARLIEST_DEADLINE;
+	}
+
+	/**
+	 * 检查并复制各数据源的权重或配额。
+	 * 
+	 * @param shares
+	 *            各数据源的权重或配额，可为null
+	 * @param defaultShare
+	 *            默认的权重或配额
+	 * @return 复制后的权重或配额
+	 * @throws IllegalArgumentException
+	 *             有小于1的权重或配额
+	 */
+	private static Map<String, Integer> checkShares(
+			Map<String, Integer> shares, int defaultShare) {
+		if (defaultShare < 1) {
+			throw new IllegalArgumentException();
+		}
+		if (null == shares) {
+			return Collections.emptyMap();
+		}
+		Map<String, Integer> copy = new HashMap<String, Integer>(shares);
+		for (Integer share : copy.values()) {
+			if (null == share || share < 1) {
+				throw new IllegalArgumentException();
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * 轮询的选择器，缓存非空的数据源排成一个环，环头即当前轮到的数据源。缓存变为空的数据源不立即从环中移除，轮到时再移除。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class RoundRobinSelector implements DispatchSelector {
+
+		/**
+		 * 各数据源的权重或配额
+		 */
+		private final Map<String, Integer> shares;
+
+		/**
+		 * 默认的权重或配额
+		 */
+		private final int defaultShare;
+
+		/**
+		 * 是否差额轮询，否则为加权轮询
+		 */
+		private final boolean isDeficit;
+
+		/**
+		 * 各数据源的轮询状态
+		 */
+		private final Map<DataSource, Slot> slots = new HashMap<DataSource, Slot>();
+
+		/**
+		 * 轮询环
+		 */
+		private final ArrayDeque<Slot> ring = new ArrayDeque<Slot>();
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param shares
+		 *            各数据源的权重或配额
+		 * @param defaultShare
+		 *            默认的权重或配额
+		 * @param isDeficit
+		 *            是否差额轮询
+		 */
+		RoundRobinSelector(Map<String, Integer> shares, int defaultShare,
+				boolean isDeficit) {
+			this.shares = shares;
+			this.defaultShare = defaultShare;
+			this.isDeficit = isDeficit;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void activated(DataSource dataSource, Task head) {
+			Slot slot = slots.get(dataSource);
+			if (null == slot) {
+				Integer share = shares.get(null == dataSource ? ""
+						: dataSource.getDataSourceKey());
+				slot = new Slot(dataSource, null == share ? defaultShare
+						: share);
+				slots.put(dataSource, slot);
+			}
+			slot.isActive = true;
+			if (!slot.isQueued) {
+				slot.isQueued = true;
+				slot.credit = 0;
+				ring.addLast(slot);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void dispatched(DataSource dataSource, int count, int backlog,
+				Task head) {
+			Slot slot = slots.get(dataSource);
+			if (null == slot) {
+				return;
+			}
+			slot.credit -= isDeficit ? count : 1;
+			if (0 == backlog) {
+				slot.isActive = false;
+				slot.credit = 0;
+			}
+			// 当前数据源的缓存已空或本轮额度已用完，轮到下一个数据源
+			if (slot == ring.peekFirst() && (!slot.isActive || slot.credit <= 0)) {
+				ring.pollFirst();
+				if (slot.isActive) {
+					ring.addLast(slot);
+				} else {
+					slot.isQueued = false;
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public DataSource select(DataSource largest) {
+			Slot slot;
+			while (null != (slot = ring.peekFirst())) {
+				if (!slot.isActive) {
+					ring.pollFirst();
+					slot.isQueued = false;
+					continue;
+				}
+				if (slot.credit > 0) {
+					return slot.dataSource;
+				}
+				// 轮到当前数据源，补充本轮额度，差额轮询中仍透支的数据源跳过本轮
+				if (isDeficit) {
+					slot.credit += slot.share;
+				} else {
+					slot.credit = slot.share;
+				}
+				if (slot.credit > 0) {
+					return slot.dataSource;
+				}
+				ring.addLast(ring.pollFirst());
+			}
+			return largest;
+		}
+	}
+
+	/**
+	 * 截止时间优先的选择器，各数据源按头部任务的截止时间组成一个小顶堆。头部任务变化时放入新的条目，旧条目不立即从堆中移除，到达堆顶时再丢弃，
+	 * 失效的条目过多时重建堆。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class EarliestDeadlineSelector implements
+			DispatchSelector {
+
+		/**
+		 * 按截止时间排序的堆，可能含有已失效的条目
+		 */
+		private final PriorityQueue<DeadlineEntry> heap = new PriorityQueue<DeadlineEntry>();
+
+		/**
+		 * 缓存非空的数据源当前有效的条目
+		 */
+		private final Map<DataSource, DeadlineEntry> entries = new HashMap<DataSource, DeadlineEntry>();
+
+		/**
+		 * 下一个条目的序号，用于截止时间相同的数据源先到先得
+		 */
+		private long sequence = 0;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void activated(DataSource dataSource, Task head) {
+			update(dataSource, head);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void dispatched(DataSource dataSource, int count, int backlog,
+				Task head) {
+			if (0 == backlog || null == head) {
+				entries.remove(dataSource);
+			} else {
+				update(dataSource, head);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public DataSource select(DataSource largest) {
+			DeadlineEntry entry;
+			while (null != (entry = heap.peek())) {
+				if (entry == entries.get(entry.dataSource)) {
+					return entry.dataSource;
+				}
+				heap.poll();
+			}
+			return largest;
+		}
+
+		/**
+		 * 按新的头部任务更新数据源的条目。
+		 * 
+		 * @param dataSource
+		 *            数据源
+		 * @param head
+		 *            缓存队列的头部任务
+		 */
+		private void update(DataSource dataSource, Task head) {
+			long deadline = head instanceof DeadlineTask ? ((DeadlineTask) head)
+					.getDeadline() : 0;
+			DeadlineEntry current = entries.get(dataSource);
+			if (null != current && current.deadline == deadline) {
+				return;
+			}
+			DeadlineEntry entry = new DeadlineEntry(dataSource, deadline,
+					sequence++);
+			entries.put(dataSource, entry);
+			heap.add(entry);
+			// 失效的条目过多时重建堆，避免截止时间晚的失效条目长期滞留
+			if (heap.size() > (entries.size() << 1) + 16) {
+				heap.clear();
+				heap.addAll(entries.values());
+			}
+		}
+	}
+
+	/**
+	 * 一个数据源在截止时间优先的堆中的条目。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class DeadlineEntry implements
+			Comparable<DeadlineEntry> {
+
+		/**
+		 * 数据源
+		 */
+		private final DataSource dataSource;
+
+		/**
+		 * 头部任务的截止时间，没有截止时间时为0
+		 */
+		private final long deadline;
+
+		/**
+		 * 条目的序号
+		 */
+		private final long sequence;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param dataSource
+		 *            数据源
+		 * @param deadline
+		 *            头部任务的截止时间
+		 * @param sequence
+		 *            条目的序号
+		 */
+		DeadlineEntry(DataSource dataSource, long deadline, long sequence) {
+			this.dataSource = dataSource;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(DeadlineEntry o) {
+			// 没有截止时间的排在最后
+			if (deadline != o.deadline) {
+				if (0 == deadline) {
+					return 1;
+				}
+				if (0 == o.deadline) {
+					return -1;
+				}
+				return deadline < o.deadline ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0
+					: 1);
+		}
+	}
+
+	/**
+	 * 一个数据源的轮询状态。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class Slot {
+
+		/**
+		 * 数据源
+		 */
+		private final DataSource dataSource;
+
+		/**
+		 * 权重或配额
+		 */
+		private final int share;
+
+		/**
+		 * 本轮剩余的额度，加权轮询中为批次数，差额轮询中为任务数
+		 */
+		private int credit;
+
+		/**
+		 * 缓存是否非空
+		 */
+		private boolean isActive;
+
+		/**
+		 * 是否在轮询环中
+		 */
+		private boolean isQueued;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param dataSource
+		 *            数据源
+		 * @param share
+		 *            权重或配额
+		 */
+		Slot(DataSource dataSource, int share) {
+			this.dataSource = dataSource;
+			this.share = share;
+		}
+	}
+}
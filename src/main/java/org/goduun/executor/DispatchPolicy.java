@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 调度策略，决定调度器按什么顺序从各数据源的任务缓存中取任务交给消费者。
+ * <p>
+ * 每个调度器（调度线程，或直接调度模式下的每个消费者线程）在启动时通过{@link #newSelector()}创建自己的选择器，选择器只被该调度器使用。
+ * 常用的策略见{@link DispatchPolicies}。
+ * 
+ * @see DispatchSelector
+ * @see DispatchPolicies
+ * @author Hu Ruomin
+ */
+public interface DispatchPolicy {
+
+	/**
+	 * 创建一个新的选择器。
+	 * 
+	 * @return 新的选择器
+	 */
+	DispatchSelector newSelector();
+}
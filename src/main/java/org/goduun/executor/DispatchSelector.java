@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import org.goduun.executor.datasource.DataSource;
+
+/**
+ * 调度选择器，由调度器的任务缓存在数据源的缓存变化时通知，并由其选出下一批任务的数据源。
+ * <p>
+ * 缓存只在数据源由空变为非空、以及取出一批任务后通知选择器，不会对每个任务都通知，选择器无需逐个任务地维护积压数。
+ * 数据源缓存队列的头部任务只在这两个时刻变化，通知时一并传入，选择器可据此排序，如按头部任务的截止时间。
+ * 没有数据源的任务，其数据源为null。
+ * <p>
+ * 注意：选择器只被一个调度器使用，无需线程安全
+ * 
+ * @see DispatchPolicy
+ * @author Hu Ruomin
+ */
+public interface DispatchSelector {
+
+	/**
+	 * 数据源的缓存由空变为非空时调用。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 * @param head
+	 *            该数据源缓存队列的头部任务
+	 */
+	void activated(DataSource dataSource, Task head);
+
+	/**
+	 * 从数据源的缓存中取出一批任务后调用。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 * @param count
+	 *            取出的任务数
+	 * @param backlog
+	 *            该数据源剩余的缓存任务数，为0时该数据源的缓存已变为空
+	 * @param head
+	 *            该数据源缓存队列新的头部任务，缓存已变为空时为null
+	 */
+	void dispatched(DataSource dataSource, int count, int backlog, Task head);
+
+	/**
+	 * 选出下一批任务的数据源，只在缓存非空时调用。返回缓存为空的数据源时，缓存将改为使用largest。
+	 * 
+	 * @param largest
+	 *            当前缓存了任务数最多的数据源
+	 * @return 下一批任务的数据源
+	 */
+	DataSource select(DataSource largest);
+}
@@ -16,8 +16,10 @@
 package org.goduun.executor;
 
 import java.lang.reflect.Field;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 import org.goduun.executor.datasource.DataSource;
@@ -55,6 +57,16 @@ public class ExecutingMonitor implements Runnable {
 	 */
 	private final Map<String, Long> lastConsumedCounts = new HashMap<String, Long>();
 
+	/**
+	 * 上一次状态记录时，各执行器因已过截止时间而未交给消费者处理的任务总数
+	 */
+	private final Map<String, Long> lastExpiredCounts = new HashMap<String, Long>();
+
+	/**
+	 * 上一次状态记录时各任务类型在各环节的累计耗时分布
+	 */
+	private final Map<String, Map<String, Map<TaskStage, LatencySnapshot>>> lastLatencies = new HashMap<String, Map<String, Map<TaskStage, LatencySnapshot>>>();
+
 	/**
 	 * 上一次状态记录时的消费者线程完成总数
 	 */
@@ -268,6 +280,35 @@ public class ExecutingMonitor implements Runnable {
 		}
 	}
 
+	/**
+	 * 计算两次状态记录之间各任务类型在各环节的耗时分布。
+	 * 
+	 * @param latencies
+	 *            本次状态记录时的累计耗时分布
+	 * @param lastLatencies
+	 *            上一次状态记录时的累计耗时分布，可为null
+	 * @return 两次状态记录之间的耗时分布
+	 */
+	private Map<String, Map<TaskStage, LatencySnapshot>> intervalLatencies(
+			Map<String, Map<TaskStage, LatencySnapshot>> latencies,
+			Map<String, Map<TaskStage, LatencySnapshot>> lastLatencies) {
+		Map<String, Map<TaskStage, LatencySnapshot>> result = new TreeMap<String, Map<TaskStage, LatencySnapshot>>();
+		for (Map.Entry<String, Map<TaskStage, LatencySnapshot>> entry : latencies
+				.entrySet()) {
+			Map<TaskStage, LatencySnapshot> last = null == lastLatencies ? null
+					: lastLatencies.get(entry.getKey());
+			Map<TaskStage, LatencySnapshot> stages = new EnumMap<TaskStage, LatencySnapshot>(
+					TaskStage.class);
+			for (Map.Entry<TaskStage, LatencySnapshot> stageEntry : entry
+					.getValue().entrySet()) {
+				stages.put(stageEntry.getKey(), stageEntry.getValue().minus(
+						null == last ? null : last.get(stageEntry.getKey())));
+			}
+			result.put(entry.getKey(), stages);
+		}
+		return result;
+	}
+
 	/**
 	 * 判断所有待监控的执行器是否已终止。
 	 * 
@@ -345,6 +386,18 @@ public class ExecutingMonitor implements Runnable {
 					/ fControllingInterval;
 			float consumingRate = (consumedCount - lastConsumedCount)
 					/ fControllingInterval;
+			// 只有AbstractExecutor统计已过截止时间的任务
+			long expiredCount = executor instanceof AbstractExecutor ? ((AbstractExecutor<?>) executor)
+					.getExpiredTaskCount() : 0;
+			long lastExpiredCount = null == lastExpiredCounts.get(name) ? 0
+					: lastExpiredCounts.get(name);
+
+			// 计算各环节的耗时分布，只有AbstractExecutor记录耗时
+			Map<String, Map<TaskStage, LatencySnapshot>> latencies = executor instanceof AbstractExecutor ? ((AbstractExecutor<?>) executor)
+					.getLatencySnapshots()
+					: new TreeMap<String, Map<TaskStage, LatencySnapshot>>();
+			Map<String, Map<TaskStage, LatencySnapshot>> intervalLatencies = intervalLatencies(
+					latencies, lastLatencies.get(name));
 
 			// 组装状态对象
 			ExecutingState state = new ExecutingState();
@@ -357,6 +410,8 @@ public class ExecutingMonitor implements Runnable {
 			state.setConsumedCount(consumedCount);
 			state.setConsumedNum(consumedCount - lastConsumedCount);
 			state.setConsumingRate(consumingRate);
+			state.setExpiredCount(expiredCount);
+			state.setExpiredNum(expiredCount - lastExpiredCount);
 			state.setProducerThreadActiveCount(executor
 					.getProducerThreadActiveCount());
 			state.setProducerThreadMaxSize(executor.getProducerThreadMaxSize());
@@ -367,10 +422,13 @@ public class ExecutingMonitor implements Runnable {
 			state.setConsumerThreadActiveCount(executor
 					.getConsumerThreadActiveCount());
 			state.setConsumerThreadMaxSize(executor.getConsumerThreadMaxSize());
+			state.setConsumerCapacity(executor instanceof AbstractExecutor ? ((AbstractExecutor<?>) executor)
+					.getEffectiveConsumerCapacity() : 0);
 			state.setConsumerThreadCompletedCount(consumerThreadCompletedCount);
 			state.setConsumerThreadCompletedNum(consumerThreadCompletedCount
 					- lastConsumerThreadCompletedCount);
 			state.setConsumerThreadRunningRate(consumerThreadRunningRate);
+			state.setLatencies(intervalLatencies);
 
 			lastProducerThreadCompletedCounts.put(name,
 					producerThreadCompletedCount);
@@ -378,6 +436,8 @@ public class ExecutingMonitor implements Runnable {
 					consumerThreadCompletedCount);
 			lastQueuedCounts.put(name, queuedCount);
 			lastConsumedCounts.put(name, consumedCount);
+			lastExpiredCounts.put(name, expiredCount);
+			lastLatencies.put(name, latencies);
 
 			// 调用监控实施器，保存状态
 			try {
@@ -0,0 +1,595 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 执行运行时，供多个执行器共用线程资源。
+ * <p>
+ * 每个执行器默认拥有自己的生产者线程池、消费者线程池、调度线程与生产错误日志线程，执行器一多，大部分线程都处于闲置状态。
+ * 挂接到同一个执行运行时的执行器改为共用以下资源：
+ * <ol>
+ * <li>一个共享线程池，运行所有挂接执行器的生产者与消费者，空闲线程可被任意执行器复用。
+ * 每个执行器同时运行的生产者数与消费者数仍受各自的线程数上限限制，即{@link Executor#getProducerThreadMaxSize()}与
+ * {@link Executor#getConsumerThreadMaxSize()}作为该执行器在共享线程池中的配额。</li>
+ * <li>一个调度线程，轮流为各执行器从任务队列中取任务、提交消费者，某个执行器的配额用尽时直接跳过，不会阻塞其他执行器。</li>
+ * <li>一个生产错误日志线程，轮流输出各执行器的生产错误日志。</li>
+ * </ol>
+ * 执行器需在启动之前挂接，可通过{@link #attach(AbstractExecutor)}或{@link ExecutorFactory}中带有执行运行时参数的方法挂接。
+ * 执行器终止后会自动从执行运行时中移除。
+ * <p>
+ * 共享线程池的最大线程数默认为已启动的挂接执行器的配额之和，也可在构造时指定。线程数已达上限时，新提交的生产者或消费者在共享线程池外排队，
+ * 待有线程运行完手头的任务后接着运行。最大线程数小于配额之和时，执行器之间可能相互等待而停滞，如上游的生产者与转换器阻塞在已满的任务队列上、占住了所有线程，
+ * 下游的消费者却排不到线程，指定最大线程数时请留足余量。
+ * <p>
+ * 执行运行时的所有线程均为守护线程，调度线程与日志线程在第一个执行器启动时才会启动。
+ * 不再使用时，可调用{@link #shutdown()}，待所有挂接执行器终止后，调度线程与日志线程退出，共享线程池随之关闭。
+ * 
+ * @see ExecutorFactory
+ * @author Hu Ruomin
+ */
+public class ExecutingRuntime {
+
+	/**
+	 * cpu个数
+	 */
+	private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 共享线程池中空闲线程的存活时长，单位：秒
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 60L;
+
+	/**
+	 * 没有可调度的任务、也没有收到通知时，调度线程的最长休眠时长，单位：纳秒，用于兜底检查执行器是否已终止
+	 */
+	private static final long DISPATCHER_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(100L);
+
+	/**
+	 * 没有生产错误可输出时，日志线程的休眠时长，单位：毫秒
+	 */
+	private static final long LOGGER_SLEEP_MILLIS = 100L;
+
+	/**
+	 * 调度线程
+	 */
+	private final Thread dispatcherThread;
+
+	/**
+	 * 已启动的挂接执行器
+	 */
+	private final List<AbstractExecutor<?>> executors = new CopyOnWriteArrayList<AbstractExecutor<?>>();
+
+	/**
+	 * 是否已调用过{@link #shutdown()}
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * 调度线程与日志线程是否已启动
+	 */
+	private boolean isStarted = false;
+
+	/**
+	 * 调度线程是否已退出或决定退出，之后不再接受执行器启动
+	 */
+	private boolean isStopped = false;
+
+	/**
+	 * 调度线程本轮调度开始后，是否收到了新任务入队的通知
+	 */
+	private volatile boolean isSignalled = false;
+
+	/**
+	 * 调度线程是否正准备休眠或已在休眠
+	 */
+	private volatile boolean isWaiting = false;
+
+	/**
+	 * 共享线程池的最大线程数，小于1时为已启动的挂接执行器的配额之和
+	 */
+	private final int maxPoolSize;
+
+	/**
+	 * 执行运行时的名称
+	 */
+	private final String name;
+
+	/**
+	 * 共享线程池的线程数已达上限时，排队等待线程的生产者或消费者
+	 */
+	private final Queue<Runnable> overflowRunners = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * 生产错误日志线程
+	 */
+	private final Thread producingLoggerThread;
+
+	/**
+	 * 共享线程池
+	 */
+	private final ThreadPoolExecutor sharedPool;
+
+	/**
+	 * 构造函数，共享线程池的常驻线程数默认为当前可用的cpu个数，最大线程数为已启动的挂接执行器的配额之和。
+	 * 
+	 * @param name
+	 *            执行运行时的名称
+	 */
+	public ExecutingRuntime(String name) {
+		this(name, 0);
+	}
+
+	/**
+	 * 构造函数，共享线程池的最大线程数为已启动的挂接执行器的配额之和。
+	 * 
+	 * @param name
+	 *            执行运行时的名称
+	 * @param corePoolSize
+	 *            共享线程池的常驻线程数，如小于1，将默认为当前可用的cpu个数；
+	 *            线程数会随各执行器配额的使用情况增长，超出常驻线程数的线程闲置一段时间后会被回收
+	 */
+	public ExecutingRuntime(String name, int corePoolSize) {
+		this(name, corePoolSize, 0);
+	}
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param name
+	 *            执行运行时的名称
+	 * @param corePoolSize
+	 *            共享线程池的常驻线程数，如小于1，将默认为当前可用的cpu个数；
+	 *            线程数会随各执行器配额的使用情况增长，超出常驻线程数的线程闲置一段时间后会被回收
+	 * @param maxPoolSize
+	 *            共享线程池的最大线程数，如小于1，将默认为已启动的挂接执行器的配额之和；常驻线程数大于该值时，常驻线程数取该值
+	 */
+	public ExecutingRuntime(String name, int corePoolSize, int maxPoolSize) {
+		this.name = null == name ? "no name" : name;
+		this.maxPoolSize = maxPoolSize;
+		int coreSize = corePoolSize < 1 ? CPUS : corePoolSize;
+		if (maxPoolSize > 0 && coreSize > maxPoolSize) {
+			coreSize = maxPoolSize;
+		}
+		this.sharedPool = new SharedThreadPool(coreSize,
+				maxPoolSize > 0 ? maxPoolSize : coreSize);
+
+		dispatcherThread = new Thread(new DispatcherRunner());
+		dispatcherThread.setName("dispatcher-" + this.name);
+		dispatcherThread.setDaemon(true);
+
+		producingLoggerThread = new Thread(new ProducingLoggerRunner());
+		producingLoggerThread.setName("producingLogger-" + this.name);
+		producingLoggerThread.setDaemon(true);
+	}
+
+	/**
+	 * 将执行器挂接到当前执行运行时，挂接后，执行器的生产者与消费者将在共享线程池中运行，调度与生产错误日志输出均由当前执行运行时负责。
+	 * <p>
+	 * 执行器只能在启动之前挂接，且只能挂接一次，挂接后的执行器不能再使用{@link ThreadingMode#VIRTUAL}。
+	 * 
+	 * @param executor
+	 *            待挂接的执行器
+	 * @throws IllegalArgumentException
+	 *             executor为null
+	 * @throws IllegalStateException
+	 *             执行器已启动，或已挂接过执行运行时，或使用了{@link ThreadingMode#VIRTUAL}，或当前执行运行时已关闭
+	 */
+	public void attach(AbstractExecutor<?> executor) {
+		if (null == executor) {
+			throw new IllegalArgumentException();
+		}
+		if (isShutdown) {
+			throw new IllegalStateException("runtime has been shut down");
+		}
+		executor.attachTo(this);
+	}
+
+	/**
+	 * 等待执行运行时关闭完成，即所有挂接执行器都已终止，调度线程与日志线程已退出，共享线程池中的线程都已结束。
+	 * 
+	 * @param timeout
+	 *            最长等待时长
+	 * @param unit
+	 *            时长单位
+	 * @return 在等待时长内关闭完成时返回true
+	 * @throws InterruptedException
+	 *             阻塞过程中当前线程被中断
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean isDispatcherStarted;
+		synchronized (this) {
+			isDispatcherStarted = isStarted;
+		}
+		if (isDispatcherStarted) {
+			long millis = TimeUnit.NANOSECONDS.toMillis(deadline
+					- System.nanoTime());
+			if (millis <= 0) {
+				return false;
+			}
+			dispatcherThread.join(millis);
+			millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (millis <= 0) {
+				return false;
+			}
+			producingLoggerThread.join(millis);
+		}
+		return sharedPool.awaitTermination(deadline - System.nanoTime(),
+				TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 获取当前已启动且尚未终止的挂接执行器数。
+	 * 
+	 * @return 当前已启动且尚未终止的挂接执行器数
+	 */
+	public int getExecutorCount() {
+		return executors.size();
+	}
+
+	/**
+	 * 获取执行运行时的名称。
+	 * 
+	 * @return 执行运行时的名称
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 获取共享线程池中正在运行生产者或消费者的线程数。
+	 * 
+	 * @return 共享线程池中正在运行生产者或消费者的线程数
+	 */
+	public int getThreadActiveCount() {
+		return sharedPool.getActiveCount();
+	}
+
+	/**
+	 * 获取共享线程池当前的线程数。
+	 * 
+	 * @return 共享线程池当前的线程数
+	 */
+	public int getThreadPoolSize() {
+		return sharedPool.getPoolSize();
+	}
+
+	/**
+	 * 获取共享线程池当前的最大线程数。
+	 * 
+	 * @return 共享线程池当前的最大线程数
+	 */
+	public int getThreadPoolMaxSize() {
+		return sharedPool.getMaximumPoolSize();
+	}
+
+	/**
+	 * 判断是否已调用过{@link #shutdown()}。
+	 * 
+	 * @return 已调用过{@link #shutdown()}时返回true
+	 */
+	public boolean isShutdown() {
+		return isShutdown;
+	}
+
+	/**
+	 * 判断执行运行时是否已关闭完成，即调用过{@link #shutdown()}，所有挂接执行器都已终止，且共享线程池中的线程都已结束。
+	 * 
+	 * @return 已关闭完成时返回true
+	 */
+	public boolean isTerminated() {
+		return sharedPool.isTerminated();
+	}
+
+	/**
+	 * 关闭执行运行时，不再接受新的挂接执行器，待已启动的挂接执行器全部终止后，调度线程与日志线程退出，并关闭共享线程池，不会主动终止挂接执行器。
+	 * <p>
+	 * 常驻执行器不会终止，挂接了常驻执行器的执行运行时不会关闭完成。已挂接、尚未启动的执行器将无法启动。
+	 * 
+	 * @see #awaitTermination(long, TimeUnit)
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (isShutdown) {
+				return;
+			}
+			isShutdown = true;
+			if (!isStarted) {
+				isStopped = true;
+				sharedPool.shutdown();
+				return;
+			}
+		}
+		LockSupport.unpark(dispatcherThread);
+	}
+
+	/**
+	 * 获取调度线程，挂接执行器的消费者执行完后，需唤醒该线程。
+	 * 
+	 * @return 调度线程
+	 */
+	Thread getDispatcherThread() {
+		return dispatcherThread;
+	}
+
+	/**
+	 * 挂接执行器有新任务进入任务队列时调用，调度线程正在休眠的，将其唤醒。
+	 * <p>
+	 * 通知方先设置通知标志再检查休眠标志，调度线程先设置休眠标志再检查通知标志，两者至少有一方能看到对方，因此通知不会丢失。
+	 */
+	void signal() {
+		if (!isSignalled) {
+			isSignalled = true;
+		}
+		if (isWaiting) {
+			LockSupport.unpark(dispatcherThread);
+		}
+	}
+
+	/**
+	 * 为挂接执行器创建在共享线程池中运行的线程池。
+	 * 
+	 * @param size
+	 *            执行器在共享线程池中的配额，即同时运行的任务数上限
+	 * @param isQueued
+	 *            配额用尽后，新提交的任务是否排队
+	 * @param exitListener
+	 *            任务运行完成后的回调
+	 * @return 在共享线程池中运行的线程池
+	 */
+	RunnerPool newRunnerPool(int size, boolean isQueued, Runnable exitListener) {
+		return new BoundedRunnerPool(sharedPool, size, isQueued, exitListener);
+	}
+
+	/**
+	 * 挂接执行器启动时调用，由当前执行运行时开始负责该执行器的调度与生产错误日志输出。
+	 * 
+	 * @param executor
+	 *            已启动的挂接执行器
+	 * @throws IllegalStateException
+	 *             执行运行时已关闭
+	 */
+	synchronized void register(AbstractExecutor<?> executor) {
+		if (isStopped) {
+			throw new IllegalStateException("runtime has been shut down");
+		}
+		executors.add(executor);
+		updateMaxPoolSize();
+		if (!isStarted) {
+			isStarted = true;
+			dispatcherThread.start();
+			producingLoggerThread.start();
+		}
+	}
+
+	/**
+	 * 未指定最大线程数时，按已启动的挂接执行器的配额之和调整共享线程池的最大线程数，挂接执行器启动、终止或调整配额时调用。
+	 */
+	synchronized void updateMaxPoolSize() {
+		if (maxPoolSize > 0) {
+			return;
+		}
+		long quota = 0;
+		for (AbstractExecutor<?> executor : executors) {
+			quota += executor.getProducerThreadMaxSize()
+					+ executor.getConsumerThreadMaxSize();
+		}
+		int size = (int) Math.min(Integer.MAX_VALUE,
+				Math.max(quota, sharedPool.getCorePoolSize()));
+		if (size != sharedPool.getMaximumPoolSize()) {
+			sharedPool.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * 由调度线程调用，已关闭且挂接执行器都已终止时，决定退出，之后不再接受执行器启动。
+	 * 
+	 * @return 调度线程是否应退出
+	 */
+	private synchronized boolean tryStop() {
+		if (isShutdown && executors.isEmpty()) {
+			isStopped = true;
+		}
+		return isStopped;
+	}
+
+	/**
+	 * 由调度线程调用，共享线程池有空闲线程或尚未达到最大线程数时，重新提交排队的生产者或消费者。
+	 * <p>
+	 * 排队的任务通常由运行完手头任务的线程接着运行，这里用于兜底：线程刚变为空闲时恰好有任务排队，该任务可能一直等到下一个任务运行完。
+	 */
+	private void launchOverflowRunners() {
+		for (int i = overflowRunners.size(); i > 0
+				&& sharedPool.getActiveCount() < sharedPool
+						.getMaximumPoolSize(); i--) {
+			Runnable runner = overflowRunners.poll();
+			if (null == runner) {
+				return;
+			}
+			sharedPool.execute(runner);
+		}
+	}
+
+	/**
+	 * 调度线程类，轮流为各挂接执行器调度一次任务，一轮下来都没有可调度的任务时，休眠调度线程，直到以下任一情况发生：
+	 * <ol>
+	 * <li>挂接执行器有新任务进入任务队列（{@link #signal()}）</li>
+	 * <li>挂接执行器的消费者执行完，释放了线程配额或数据源名额</li>
+	 * <li>某个挂接执行器等待凑批的时限已到</li>
+	 * <li>休眠超过{@link #DISPATCHER_PARK_NANOS}，兜底检查执行器是否已终止</li>
+	 * </ol>
+	 * 执行运行时已关闭且挂接执行器都已终止时，调度线程通知日志线程退出，关闭共享线程池后退出。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class DispatcherRunner implements Runnable {
+
+		/**
+		 * 执行调度
+		 */
+		@Override
+		public void run() {
+			while (!tryStop()) {
+				isSignalled = false;
+				boolean isDispatched = false;
+				long parkNanos = DISPATCHER_PARK_NANOS;
+				if (!overflowRunners.isEmpty()) {
+					launchOverflowRunners();
+				}
+				for (AbstractExecutor<?> executor : executors) {
+					try {
+						if (executor.dispatch()) {
+							isDispatched = true;
+						} else if (executor.isTerminating()
+								&& executor.isTerminated()) {
+							executors.remove(executor);
+							updateMaxPoolSize();
+						} else {
+							long delayNanos = executor.getDispatchDelayNanos();
+							if (delayNanos > 0 && delayNanos < parkNanos) {
+								parkNanos = delayNanos;
+							}
+						}
+					} catch (Exception e) {
+						executor.logException(null, e);
+					}
+				}
+				if (!isDispatched) {
+					isWaiting = true;
+					if (!isSignalled) {
+						LockSupport.parkNanos(parkNanos);
+					}
+					isWaiting = false;
+				}
+				if (Thread.interrupted()) {
+					break;
+				}
+			}
+			producingLoggerThread.interrupt();
+			sharedPool.shutdown();
+		}
+	}
+
+	/**
+	 * 共享线程池，线程数已达上限时不拒绝新提交的任务，而是放入排队队列，由运行完手头任务的线程接着运行。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class SharedThreadPool extends ThreadPoolExecutor {
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param corePoolSize
+		 *            常驻线程数
+		 * @param maximumPoolSize
+		 *            最大线程数
+		 */
+		SharedThreadPool(int corePoolSize, int maximumPoolSize) {
+			super(corePoolSize, maximumPoolSize, KEEP_ALIVE_SECONDS,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new SharedThreadFactory(), new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(Runnable runner,
+								ThreadPoolExecutor pool) {
+							if (pool.isShutdown()) {
+								throw new RejectedExecutionException();
+							}
+							overflowRunners.offer(runner);
+						}
+					});
+		}
+
+		/**
+		 * 运行完一个任务后，接着运行排队的任务
+		 */
+		@Override
+		protected void afterExecute(Runnable runner, Throwable t) {
+			Runnable next;
+			while (null == t && null != (next = overflowRunners.poll())) {
+				next.run();
+			}
+		}
+	}
+
+	/**
+	 * 生产错误日志输出线程类，轮流输出各挂接执行器的生产错误日志。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class ProducingLoggerRunner implements Runnable {
+
+		/**
+		 * 获取错误，输出日志
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				int logged = 0;
+				for (AbstractExecutor<?> executor : executors) {
+					logged += executor.logProducingErrors();
+				}
+				if (0 == logged) {
+					try {
+						TimeUnit.MILLISECONDS.sleep(LOGGER_SLEEP_MILLIS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 共享线程池的线程工厂，创建守护线程。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class SharedThreadFactory implements ThreadFactory {
+
+		/**
+		 * 线程序号
+		 */
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Thread newThread(Runnable runner) {
+			Thread thread = new Thread(runner);
+			thread.setName("runtime-" + name + "-"
+					+ threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
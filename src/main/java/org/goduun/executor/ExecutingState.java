@@ -16,7 +16,9 @@
 package org.goduun.executor;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * 执行器运行状态信息。
@@ -40,6 +42,11 @@ public class ExecutingState implements Serializable {
 	 */
 	private long consumedNum;
 
+	/**
+	 * 消费者当前每批处理的任务数上限，不可得时为0
+	 */
+	private int consumerCapacity;
+
 	/**
 	 * 当前正在执行生产的消费者线程数
 	 */
@@ -75,6 +82,22 @@ public class ExecutingState implements Serializable {
 	 */
 	private String executorName;
 
+	/**
+	 * 从执行器启动到本次状态记录时间为止，因已过截止时间而未交给消费者处理的任务总数
+	 */
+	private long expiredCount;
+
+	/**
+	 * 从上一次状态记录到本次记录时间为止，因已过截止时间而未交给消费者处理的任务数
+	 */
+	private long expiredNum;
+
+	/**
+	 * 从上一次状态记录到本次记录时间为止，各任务类型在各环节的耗时分布。参数说明：String - 任务类型名称，TaskStage - 任务环节
+	 */
+	private Map<String, Map<TaskStage, LatencySnapshot>> latencies = Collections
+			.emptyMap();
+
 	/**
 	 * 当前正在执行生产的生产者线程数
 	 */
@@ -148,6 +171,15 @@ public class ExecutingState implements Serializable {
 		return consumedNum;
 	}
 
+	/**
+	 * 获取消费者当前每批处理的任务数上限。
+	 * 
+	 * @return 消费者当前每批处理的任务数上限，不可得时为0
+	 */
+	public int getConsumerCapacity() {
+		return consumerCapacity;
+	}
+
 	/**
 	 * 获取当前正在执行生产的消费者线程数。
 	 * 
@@ -211,6 +243,50 @@ public class ExecutingState implements Serializable {
 		return executorName;
 	}
 
+	/**
+	 * 获取从执行器启动到本次状态记录时间为止，因已过截止时间而未交给消费者处理的任务总数。
+	 * 
+	 * @return 从执行器启动到本次状态记录时间为止，因已过截止时间而未交给消费者处理的任务总数
+	 */
+	public long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * 获取从上一次状态记录到本次记录时间为止，因已过截止时间而未交给消费者处理的任务数。
+	 * 
+	 * @return 从上一次状态记录到本次记录时间为止，因已过截止时间而未交给消费者处理的任务数
+	 */
+	public long getExpiredNum() {
+		return expiredNum;
+	}
+
+	/**
+	 * 获取从上一次状态记录到本次记录时间为止，各任务类型在各环节的耗时分布。
+	 * 
+	 * @return 耗时分布，参数说明：String - 任务类型名称，TaskStage - 任务环节
+	 */
+	public Map<String, Map<TaskStage, LatencySnapshot>> getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * 获取从上一次状态记录到本次记录时间为止，指定任务类型在指定环节的耗时分布。
+	 * 
+	 * @param taskClass
+	 *            任务类型
+	 * @param stage
+	 *            任务环节
+	 * @return 耗时分布，没有记录时返回{@link LatencySnapshot#EMPTY}
+	 */
+	public LatencySnapshot getLatency(Class<? extends Task> taskClass,
+			TaskStage stage) {
+		Map<TaskStage, LatencySnapshot> stages = null == taskClass ? null
+				: latencies.get(taskClass.getName());
+		LatencySnapshot snapshot = null == stages ? null : stages.get(stage);
+		return null == snapshot ? LatencySnapshot.EMPTY : snapshot;
+	}
+
 	/**
 	 * 获取当前正在执行生产的生产者线程数。
 	 * 
@@ -330,6 +406,16 @@ public class ExecutingState implements Serializable {
 		this.consumedNum = consumedNum;
 	}
 
+	/**
+	 * 设置消费者当前每批处理的任务数上限。
+	 * 
+	 * @param consumerCapacity
+	 *            消费者当前每批处理的任务数上限，不可得时为0
+	 */
+	public void setConsumerCapacity(int consumerCapacity) {
+		this.consumerCapacity = consumerCapacity;
+	}
+
 	/**
 	 * 设置当前正在执行生产的消费者线程数。
 	 * 
@@ -401,6 +487,37 @@ public class ExecutingState implements Serializable {
 		this.executorName = executorName;
 	}
 
+	/**
+	 * 设置从执行器启动到本次状态记录时间为止，因已过截止时间而未交给消费者处理的任务总数。
+	 * 
+	 * @param expiredCount
+	 *            从执行器启动到本次状态记录时间为止，因已过截止时间而未交给消费者处理的任务总数
+	 */
+	public void setExpiredCount(long expiredCount) {
+		this.expiredCount = expiredCount;
+	}
+
+	/**
+	 * 设置从上一次状态记录到本次记录时间为止，因已过截止时间而未交给消费者处理的任务数。
+	 * 
+	 * @param expiredNum
+	 *            从上一次状态记录到本次记录时间为止，因已过截止时间而未交给消费者处理的任务数
+	 */
+	public void setExpiredNum(long expiredNum) {
+		this.expiredNum = expiredNum;
+	}
+
+	/**
+	 * 设置从上一次状态记录到本次记录时间为止，各任务类型在各环节的耗时分布。
+	 * 
+	 * @param latencies
+	 *            耗时分布，参数说明：String - 任务类型名称，TaskStage - 任务环节，为null时视为空
+	 */
+	public void setLatencies(Map<String, Map<TaskStage, LatencySnapshot>> latencies) {
+		this.latencies = null == latencies ? Collections
+				.<String, Map<TaskStage, LatencySnapshot>> emptyMap() : latencies;
+	}
+
 	/**
 	 * 设置当前正在执行生产的生产者线程数。
 	 * 
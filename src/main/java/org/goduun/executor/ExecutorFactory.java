@@ -97,6 +97,40 @@ public final class ExecutorFactory {
 				maxProducerPoolSize, maxConsumerPoolSize, taskQueue);
 	}
 
+	/**
+	 * 初始化一个非常驻执行的转换执行器，并挂接至指定的执行运行时。
+	 * 
+	 * @param name
+	 *            执行器名称
+	 * @param consoleClass
+	 *            执行器宿主的类型，用于构造执行器的日志对象，输出执行日志
+	 * @param maxProducerPoolSize
+	 *            执行器的生产者线程池上限，即在执行运行时共享线程池中的生产者配额
+	 * @param maxConsumerPoolSize
+	 *            执行器的消费者线程池上限，即在执行运行时共享线程池中的消费者配额
+	 * @param taskQueue
+	 *            任务队列
+	 * @param runtime
+	 *            执行运行时
+	 * @return 执行器对象
+	 * @throws IllegalArgumentException
+	 *             runtime为null
+	 * @see ExecutingRuntime
+	 */
+	public static <C extends Task, P extends Task> ConvertingExecutor<C, P> newConverter(
+			String name, Class<?> consoleClass, int maxProducerPoolSize,
+			int maxConsumerPoolSize, TaskQueue<C> taskQueue,
+			ExecutingRuntime runtime) {
+		if (null == runtime) {
+			throw new IllegalArgumentException();
+		}
+		ConvertingExecutor<C, P> executor = new ConvertingExecutor<C, P>(name,
+				consoleClass, false, maxProducerPoolSize, maxConsumerPoolSize,
+				taskQueue);
+		runtime.attach(executor);
+		return executor;
+	}
+
 	/**
 	 * 初始化一个非常驻执行的转换执行器。
 	 * 
@@ -207,6 +241,40 @@ public final class ExecutorFactory {
 				maxProducerPoolSize, maxConsumerPoolSize, taskQueue);
 	}
 
+	/**
+	 * 初始化一个非常驻执行的基础执行器，并挂接至指定的执行运行时。
+	 * 
+	 * @param name
+	 *            执行器名称
+	 * @param consoleClass
+	 *            执行器宿主的类型，用于构造执行器的日志对象，输出执行日志
+	 * @param maxProducerPoolSize
+	 *            执行器的生产者线程池上限，即在执行运行时共享线程池中的生产者配额
+	 * @param maxConsumerPoolSize
+	 *            执行器的消费者线程池上限，即在执行运行时共享线程池中的消费者配额
+	 * @param taskQueue
+	 *            任务队列
+	 * @param runtime
+	 *            执行运行时
+	 * @return 执行器对象
+	 * @throws IllegalArgumentException
+	 *             runtime为null
+	 * @see ExecutingRuntime
+	 */
+	public static <C extends Task> ProcessingExecutor<C> newExecutor(
+			String name, Class<?> consoleClass, int maxProducerPoolSize,
+			int maxConsumerPoolSize, TaskQueue<C> taskQueue,
+			ExecutingRuntime runtime) {
+		if (null == runtime) {
+			throw new IllegalArgumentException();
+		}
+		ProcessingExecutor<C> executor = new ProcessingExecutor<C>(name,
+				consoleClass, false, maxProducerPoolSize, maxConsumerPoolSize,
+				taskQueue);
+		runtime.attach(executor);
+		return executor;
+	}
+
 	/**
 	 * 初始化一个非常驻执行的基础执行器。
 	 * 
@@ -317,6 +385,40 @@ public final class ExecutorFactory {
 				maxProducerPoolSize, maxConsumerPoolSize, taskQueue);
 	}
 
+	/**
+	 * 初始化一个常驻执行的转换执行器，并挂接至指定的执行运行时。
+	 * 
+	 * @param name
+	 *            执行器名称
+	 * @param consoleClass
+	 *            执行器宿主的类型，用于构造执行器的日志对象，输出执行日志
+	 * @param maxProducerPoolSize
+	 *            执行器的生产者线程池上限，即在执行运行时共享线程池中的生产者配额
+	 * @param maxConsumerPoolSize
+	 *            执行器的消费者线程池上限，即在执行运行时共享线程池中的消费者配额
+	 * @param taskQueue
+	 *            任务队列
+	 * @param runtime
+	 *            执行运行时
+	 * @return 执行器对象
+	 * @throws IllegalArgumentException
+	 *             runtime为null
+	 * @see ExecutingRuntime
+	 */
+	public static <C extends Task, P extends Task> ConvertingExecutor<C, P> newResidentConverter(
+			String name, Class<?> consoleClass, int maxProducerPoolSize,
+			int maxConsumerPoolSize, TaskQueue<C> taskQueue,
+			ExecutingRuntime runtime) {
+		if (null == runtime) {
+			throw new IllegalArgumentException();
+		}
+		ConvertingExecutor<C, P> executor = new ConvertingExecutor<C, P>(name,
+				consoleClass, true, maxProducerPoolSize, maxConsumerPoolSize,
+				taskQueue);
+		runtime.attach(executor);
+		return executor;
+	}
+
 	/**
 	 * 初始化一个常驻执行的转换执行器。
 	 * 
@@ -427,6 +529,40 @@ public final class ExecutorFactory {
 				maxProducerPoolSize, maxConsumerPoolSize, taskQueue);
 	}
 
+	/**
+	 * 初始化一个常驻执行的基础执行器，并挂接至指定的执行运行时。
+	 * 
+	 * @param name
+	 *            执行器名称
+	 * @param consoleClass
+	 *            执行器宿主的类型，用于构造执行器的日志对象，输出执行日志
+	 * @param maxProducerPoolSize
+	 *            执行器的生产者线程池上限，即在执行运行时共享线程池中的生产者配额
+	 * @param maxConsumerPoolSize
+	 *            执行器的消费者线程池上限，即在执行运行时共享线程池中的消费者配额
+	 * @param taskQueue
+	 *            任务队列
+	 * @param runtime
+	 *            执行运行时
+	 * @return 执行器对象
+	 * @throws IllegalArgumentException
+	 *             runtime为null
+	 * @see ExecutingRuntime
+	 */
+	public static <C extends Task> ProcessingExecutor<C> newResidentExecutor(
+			String name, Class<?> consoleClass, int maxProducerPoolSize,
+			int maxConsumerPoolSize, TaskQueue<C> taskQueue,
+			ExecutingRuntime runtime) {
+		if (null == runtime) {
+			throw new IllegalArgumentException();
+		}
+		ProcessingExecutor<C> executor = new ProcessingExecutor<C>(name,
+				consoleClass, true, maxProducerPoolSize, maxConsumerPoolSize,
+				taskQueue);
+		runtime.attach(executor);
+		return executor;
+	}
+
 	/**
 	 * 初始化一个常驻执行的基础执行器。
 	 * 
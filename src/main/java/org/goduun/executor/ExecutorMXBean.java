@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Map;
+
+/**
+ * 执行器的JMX管理接口。
+ * <p>
+ * 执行器启动时以org.goduun.executor:type=Executor,name=执行器名称注册到平台MBeanServer，终止后注销，
+ * 运维人员可通过jconsole等JMX客户端查看执行器的运行状态，并在运行时调整线程数上限、消费者处理能力及日志开关，无需重新部署。
+ * 
+ * @see AbstractExecutor
+ * @author Hu Ruomin
+ */
+public interface ExecutorMXBean {
+
+	/**
+	 * 获取每批任务的执行耗时预算，单位：毫秒，为0表示不自动调整批量。
+	 * 
+	 * @return 每批任务的执行耗时预算
+	 */
+	long getBatchLatencyBudget();
+
+	/**
+	 * 获取各数据源在调度缓存中积压的任务数，即已从任务队列中取出、尚未交给消费者的任务数。
+	 * 
+	 * @return 按数据源键排序的积压任务数，没有数据源的任务以空字符串为键
+	 */
+	Map<String, Integer> getCachedTaskCounts();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，已被消费者处理完的任务数。
+	 * 
+	 * @return 已被消费者处理完的任务数
+	 */
+	long getConsumedTaskCount();
+
+	/**
+	 * 获取消费者每次最多处理的任务数。
+	 * 
+	 * @return 消费者每次最多处理的任务数
+	 */
+	int getConsumerCapacity();
+
+	/**
+	 * 获取当前活跃的消费者线程数。
+	 * 
+	 * @return 当前活跃的消费者线程数
+	 */
+	int getConsumerThreadActiveCount();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，已执行完的消费者线程数。
+	 * 
+	 * @return 已执行完的消费者线程数
+	 */
+	long getConsumerThreadCompletedCount();
+
+	/**
+	 * 获取当前消费者线程池最大线程数上限。
+	 * 
+	 * @return 当前消费者线程池最大线程数上限
+	 */
+	int getConsumerThreadMaxSize();
+
+	/**
+	 * 获取任务调度模式。
+	 * 
+	 * @return 任务调度模式的名称
+	 * @see DispatchMode
+	 */
+	String getDispatchMode();
+
+	/**
+	 * 获取没有单独设定并发批次上限的数据源的上限，为0表示不限制。
+	 * 
+	 * @return 并发批次上限
+	 */
+	int getDefaultDataSourceLimit();
+
+	/**
+	 * 获取消费者当前每批处理的任务数上限，自动调整批量时随执行耗时变化。
+	 * 
+	 * @return 消费者当前每批处理的任务数上限
+	 */
+	int getEffectiveConsumerCapacity();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，因已过截止时间而未交给消费者处理的任务数。
+	 * 
+	 * @return 已过截止时间的任务数
+	 */
+	long getExpiredTaskCount();
+
+	/**
+	 * 获取各数据源正在由消费者处理的批次数。
+	 * 
+	 * @return 按数据源键排序的批次数，没有数据源的批次以空字符串为键
+	 */
+	Map<String, Integer> getInFlightBatchCounts();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，各任务类型在各环节的累计耗时分布，单位：纳秒。
+	 * 
+	 * @return 按任务类型名称排序的耗时分布
+	 * @see TaskStage
+	 */
+	Map<String, Map<TaskStage, LatencySnapshot>> getLatencies();
+
+	/**
+	 * 获取批次未满时调度器继续等待任务的最长时长，单位：毫秒，为0表示不等待。
+	 * 
+	 * @return 最长等待时长
+	 */
+	long getLinger();
+
+	/**
+	 * 获取执行器名称。
+	 * 
+	 * @return 执行器名称
+	 */
+	String getName();
+
+	/**
+	 * 获取当前活跃的生产者线程数。
+	 * 
+	 * @return 当前活跃的生产者线程数
+	 */
+	int getProducerThreadActiveCount();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，已执行完的生产者线程数。
+	 * 
+	 * @return 已执行完的生产者线程数
+	 */
+	long getProducerThreadCompletedCount();
+
+	/**
+	 * 获取当前生产者线程池最大线程数上限。
+	 * 
+	 * @return 当前生产者线程池最大线程数上限
+	 */
+	int getProducerThreadMaxSize();
+
+	/**
+	 * 获取从执行器启动开始到当前为止，进入任务队列的任务数。
+	 * 
+	 * @return 进入任务队列的任务数
+	 */
+	long getQueuedTaskCount();
+
+	/**
+	 * 获取任务队列容量。
+	 * 
+	 * @return 任务队列容量
+	 */
+	int getTaskQueueCapacity();
+
+	/**
+	 * 获取任务队列中的任务数。
+	 * 
+	 * @return 任务队列中的任务数
+	 */
+	int getTaskQueueSize();
+
+	/**
+	 * 获取消费者线程类型。
+	 * 
+	 * @return 消费者线程类型的名称
+	 * @see ThreadingMode
+	 */
+	String getThreadingMode();
+
+	/**
+	 * 判断消费者线程是否尽量保持所绑定的数据源。
+	 * 
+	 * @return 是否保持数据源绑定
+	 */
+	boolean isDataSourceAffinity();
+
+	/**
+	 * 判断是否针对每次生产消费的执行过程输出日志。
+	 * 
+	 * @return 是否输出执行日志
+	 */
+	boolean isLoggingExecution();
+
+	/**
+	 * 判断是否针对每个任务的生命周期输出任务日志。
+	 * 
+	 * @return 是否输出任务日志
+	 */
+	boolean isLoggingTask();
+
+	/**
+	 * 判断是否记录任务各环节的耗时。
+	 * 
+	 * @return 是否记录耗时
+	 */
+	boolean isRecordingLatency();
+
+	/**
+	 * 判断是否常驻执行器。
+	 * 
+	 * @return 是否常驻执行器
+	 */
+	boolean isResident();
+
+	/**
+	 * 判断是否已终止。
+	 * 
+	 * @return 是否已终止
+	 */
+	boolean isTerminated();
+
+	/**
+	 * 判断是否正在终止。
+	 * 
+	 * @return 是否正在终止
+	 */
+	boolean isTerminating();
+
+	/**
+	 * 设置每批任务的执行耗时预算，设定后执行器根据实际的执行耗时自动调整消费者每批处理的任务数。
+	 * 
+	 * @param batchLatencyBudget
+	 *            执行耗时预算，单位：毫秒，不大于0表示不自动调整批量
+	 */
+	void setBatchLatencyBudget(long batchLatencyBudget);
+
+	/**
+	 * 设置消费者每次最多处理的任务数，下一批任务开始生效。
+	 * 
+	 * @param capacity
+	 *            消费者每次最多处理的任务数，小于1时不做调整
+	 */
+	void setConsumerCapacity(int capacity);
+
+	/**
+	 * 设置消费者线程池最大线程数上限。
+	 * 
+	 * @param size
+	 *            最大线程数上限，小于1时不做调整
+	 */
+	void setConsumerThreadMaxSize(int size);
+
+	/**
+	 * 设置消费者线程是否尽量保持所绑定的数据源。
+	 * 
+	 * @param isDataSourceAffinity
+	 *            是否保持数据源绑定
+	 */
+	void setDataSourceAffinity(boolean isDataSourceAffinity);
+
+	/**
+	 * 单独设定指定数据源的并发批次上限。
+	 * 
+	 * @param dataSourceKey
+	 *            数据源的键，没有数据源时为空字符串
+	 * @param limit
+	 *            并发批次上限，不大于0表示取消单独设定的上限
+	 */
+	void setDataSourceLimit(String dataSourceKey, int limit);
+
+	/**
+	 * 设定没有单独设定并发批次上限的数据源的上限。
+	 * 
+	 * @param limit
+	 *            并发批次上限，不大于0表示不限制
+	 */
+	void setDefaultDataSourceLimit(int limit);
+
+	/**
+	 * 设置批次未满时调度器继续等待任务的最长时长。
+	 * 
+	 * @param linger
+	 *            最长等待时长，单位：毫秒，不大于0表示不等待
+	 */
+	void setLinger(long linger);
+
+	/**
+	 * 设置是否针对每次生产消费的执行过程输出日志。
+	 * 
+	 * @param isLoggingEnable
+	 *            是否输出执行日志
+	 */
+	void setLoggingExecution(boolean isLoggingEnable);
+
+	/**
+	 * 设置是否针对每个任务的生命周期输出任务日志。
+	 * 
+	 * @param isLoggingEnable
+	 *            是否输出任务日志
+	 */
+	void setLoggingTask(boolean isLoggingEnable);
+
+	/**
+	 * 设置生产者线程池最大线程数上限。
+	 * 
+	 * @param size
+	 *            最大线程数上限，小于1时不做调整
+	 */
+	void setProducerThreadMaxSize(int size);
+
+	/**
+	 * 设置是否记录任务各环节的耗时。
+	 * 
+	 * @param isRecordingLatency
+	 *            是否记录耗时
+	 */
+	void setRecordingLatency(boolean isRecordingLatency);
+}
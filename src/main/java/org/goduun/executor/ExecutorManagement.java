@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 执行器的JMX管理对象，将{@link ExecutorMXBean}的调用转给所管理的执行器。
+ * <p>
+ * 多个执行器同名时，后注册的执行器在ObjectName中追加id属性加以区分。注册或注销失败只记录日志，不影响执行器的运行。
+ * 
+ * @author Hu Ruomin
+ */
+final class ExecutorManagement implements ExecutorMXBean {
+
+	/**
+	 * ObjectName的域
+	 */
+	static final String DOMAIN = "org.goduun.executor";
+
+	/**
+	 * 将执行器注册到平台MBeanServer。
+	 * 
+	 * @param executor
+	 *            执行器
+	 * @return 注册所用的ObjectName，注册失败时返回null
+	 */
+	static ObjectName register(AbstractExecutor<?> executor) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ExecutorManagement management = new ExecutorManagement(executor);
+		String base = DOMAIN + ":type=Executor,name="
+				+ ObjectName.quote(String.valueOf(executor.getName()));
+		try {
+			for (int id = 1;; id++) {
+				ObjectName objectName = new ObjectName(1 == id ? base : base
+						+ ",id=" + id);
+				try {
+					server.registerMBean(management, objectName);
+					return objectName;
+				} catch (InstanceAlreadyExistsException e) {
+					continue;
+				}
+			}
+		} catch (JMException e) {
+			executor.logException("cannot register executor mbean", e);
+			return null;
+		}
+	}
+
+	/**
+	 * 从平台MBeanServer注销执行器。
+	 * 
+	 * @param executor
+	 *            执行器
+	 * @param objectName
+	 *            注册所用的ObjectName，为null时不做任何操作
+	 */
+	static void unregister(AbstractExecutor<?> executor, ObjectName objectName) {
+		if (null == objectName) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} catch (InstanceNotFoundException e) {
+			return;
+		} catch (JMException e) {
+			executor.logException("cannot unregister executor mbean", e);
+		}
+	}
+
+	/**
+	 * 所管理的执行器
+	 */
+	private final AbstractExecutor<?> executor;
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param executor
+	 *            所管理的执行器
+	 */
+	private ExecutorManagement(AbstractExecutor<?> executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBatchLatencyBudget() {
+		return executor.getBatchLatencyBudget();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Integer> getCachedTaskCounts() {
+		return executor.getCachedTaskCounts();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsumedTaskCount() {
+		return executor.getConsumedTaskCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsumerCapacity() {
+		return executor.getConsumer().getCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsumerThreadActiveCount() {
+		return executor.getConsumerThreadActiveCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConsumerThreadCompletedCount() {
+		return executor.getConsumerThreadCompletedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getConsumerThreadMaxSize() {
+		return executor.getConsumerThreadMaxSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getDispatchMode() {
+		return executor.getDispatchMode().name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getDefaultDataSourceLimit() {
+		return executor.getDefaultDataSourceLimit();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getEffectiveConsumerCapacity() {
+		return executor.getEffectiveConsumerCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getExpiredTaskCount() {
+		return executor.getExpiredTaskCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Integer> getInFlightBatchCounts() {
+		return executor.getInFlightBatchCounts();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Map<TaskStage, LatencySnapshot>> getLatencies() {
+		return executor.getLatencySnapshots();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLinger() {
+		return executor.getLinger();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		return executor.getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getProducerThreadActiveCount() {
+		return executor.getProducerThreadActiveCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getProducerThreadCompletedCount() {
+		return executor.getProducerThreadCompletedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getProducerThreadMaxSize() {
+		return executor.getProducerThreadMaxSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getQueuedTaskCount() {
+		return executor.getQueuedTaskCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTaskQueueCapacity() {
+		return executor.getTaskQueueCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTaskQueueSize() {
+		return executor.getTaskQueueSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getThreadingMode() {
+		return executor.getThreadingMode().name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isDataSourceAffinity() {
+		return executor.isDataSourceAffinity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isLoggingExecution() {
+		return executor.isLoggingExecution();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isLoggingTask() {
+		return executor.isLoggingTask();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isRecordingLatency() {
+		return executor.isRecordingLatency();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isResident() {
+		return executor.isResident();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isTerminating() {
+		return executor.isTerminating();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setBatchLatencyBudget(long batchLatencyBudget) {
+		executor.setBatchLatencyBudget(batchLatencyBudget);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setConsumerCapacity(int capacity) {
+		if (0 < capacity) {
+			executor.getConsumer().setCapacity(capacity);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setConsumerThreadMaxSize(int size) {
+		executor.setConsumerThreadMaxSize(size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setDataSourceAffinity(boolean isDataSourceAffinity) {
+		executor.setDataSourceAffinity(isDataSourceAffinity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setDataSourceLimit(String dataSourceKey, int limit) {
+		if (null != dataSourceKey) {
+			executor.setDataSourceLimit(dataSourceKey, limit);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setDefaultDataSourceLimit(int limit) {
+		executor.setDefaultDataSourceLimit(limit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setLinger(long linger) {
+		executor.setLinger(linger);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setLoggingExecution(boolean isLoggingEnable) {
+		executor.setLoggingExecution(isLoggingEnable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setLoggingTask(boolean isLoggingEnable) {
+		executor.setLoggingTask(isLoggingEnable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setProducerThreadMaxSize(int size) {
+		executor.setProducerThreadMaxSize(size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setRecordingLatency(boolean isRecordingLatency) {
+		executor.setRecordingLatency(isRecordingLatency);
+	}
+}
@@ -0,0 +1,934 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 记录任务日志的任务队列。
+ * <p>
+ * 在另一个任务队列之外记录一份预写式的任务日志，进程被杀掉后重启，可以只恢复出尚未处理完的任务，而无需重新执行整个生产过程：
+ * <ol>
+ * <li>任务放入队列前，先编码后追加写入任务日志，并在写入磁盘（fsync）后才放入实际的任务队列。</li>
+ * <li>消费者处理完任务后，执行器通过{@link #acknowledge(List)}在任务日志中追加完成标记。</li>
+ * <li>执行器启动时，通过{@link #recover()}获取任务日志中有放入记录、却没有完成标记的任务，并通过任务传送管道重新放入队列。</li>
+ * </ol>
+ * 任务日志采用组提交：同时放入任务的多个线程，其日志记录由同一次fsync写入磁盘，一个线程在执行fsync时，其他线程的记录在内存中累积，
+ * 等待下一次fsync一并写入，因此fsync的次数远小于任务数。完成标记不单独fsync，写入文件后即可在进程被杀掉时保留，只在操作系统崩溃时可能丢失，
+ * 此时对应的任务会被重新处理一次。
+ * <p>
+ * 任务日志按文件大小切分为多个文件，一个文件及其之前的所有文件中的任务都处理完后，这些文件即被删除。
+ * <p>
+ * 注意：
+ * <ol>
+ * <li>任务及其所有祖先任务通过{@link TaskCodecs}中登记的编解码器编码后写入任务日志，没有登记时采用Java序列化，任务状态不会被编码。
+ * 恢复出的任务的祖先任务是解码出的副本，不再参与唤醒，即任务的唤醒关系无法跨进程恢复。</li>
+ * <li>同一个目录只能由一个任务队列对象使用。</li>
+ * </ol>
+ * 
+ * @param <T>
+ *            任务类型
+ * @author Hu Ruomin
+ */
+public class JournaledTaskQueue<T extends Task> implements
+		RecoverableTaskQueue<T>, BatchTaskQueue<T>, Closeable {
+
+	/**
+	 * 默认的任务日志文件大小，单位：字节
+	 */
+	public static final int DEFAULT_FILE_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * 记录类型：完成标记
+	 */
+	private static final byte DONE = 2;
+
+	/**
+	 * 记录类型：放入记录
+	 */
+	private static final byte ENQUEUE = 1;
+
+	/**
+	 * 任务日志文件名前缀
+	 */
+	private static final String FILE_PREFIX = "journal-";
+
+	/**
+	 * 任务日志文件名后缀
+	 */
+	private static final String FILE_SUFFIX = ".log";
+
+	/**
+	 * 已追加到内存、尚未写入文件的记录
+	 */
+	private final ByteArrayOutputStream appending = new ByteArrayOutputStream();
+
+	/**
+	 * 已追加到内存、尚未写入文件的放入记录数
+	 */
+	private int appendingCount = 0;
+
+	/**
+	 * 已追加到内存、尚未写入文件的放入记录的最小序号
+	 */
+	private long appendingFirstSequence = Long.MAX_VALUE;
+
+	/**
+	 * 已追加到内存、尚未写入文件的放入记录的最大序号
+	 */
+	private long appendingLastSequence = -1L;
+
+	/**
+	 * 追加记录时使用的锁，保护所有以appending开头的属性以及{@link #appendedTicket}、{@link #nextSequence}
+	 */
+	private final Object appendLock = new Object();
+
+	/**
+	 * 追加记录的输出流
+	 */
+	private final DataOutputStream appendingOut = new DataOutputStream(appending);
+
+	/**
+	 * 累计追加的记录数，作为每条记录的提交凭证
+	 */
+	private long appendedTicket = 0;
+
+	/**
+	 * 当前写入的任务日志文件的通道
+	 */
+	private FileChannel channel;
+
+	/**
+	 * 写入文件时使用的锁，同一时刻只有一个线程写入文件，保护{@link #channel}、{@link #nextFileNumber}
+	 */
+	private final ReentrantLock commitLock = new ReentrantLock();
+
+	/**
+	 * 实际的任务队列
+	 */
+	private final TaskQueue<T> delegate;
+
+	/**
+	 * 任务日志所在目录
+	 */
+	private final File directory;
+
+	/**
+	 * 已写入磁盘的记录的最大提交凭证
+	 */
+	private volatile long durableTicket = 0;
+
+	/**
+	 * 任务日志文件大小，超过该大小后切换至新文件
+	 */
+	private final int fileSize;
+
+	/**
+	 * 尚未删除的任务日志文件，按写入的先后顺序排列，最后一个为当前写入的文件
+	 */
+	private final LinkedList<JournalFile> files = new LinkedList<JournalFile>();
+
+	/**
+	 * 是否已关闭
+	 */
+	private volatile boolean isClosed = false;
+
+	/**
+	 * 下一个任务日志文件的编号
+	 */
+	private long nextFileNumber = 0;
+
+	/**
+	 * 下一个放入记录的序号
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * 恢复出的任务在任务日志中的序号，这些任务重新放入队列时沿用原序号，不再重复记录
+	 */
+	private final Map<Task, Long> recoveredSequences = new IdentityHashMap<Task, Long>();
+
+	/**
+	 * 恢复出的尚未处理完的任务
+	 */
+	private List<T> recoveredTasks;
+
+	/**
+	 * 构造函数，任务日志文件大小默认为{@link #DEFAULT_FILE_SIZE}。
+	 * 
+	 * @param delegate
+	 *            实际的任务队列
+	 * @param directory
+	 *            任务日志所在目录，不存在时将自动创建
+	 * @throws IllegalArgumentException
+	 *             delegate为null
+	 * @throws IllegalArgumentException
+	 *             directory为null或无法创建
+	 * @throws IllegalStateException
+	 *             读取已有的任务日志或创建新的任务日志文件失败
+	 */
+	public JournaledTaskQueue(TaskQueue<T> delegate, File directory) {
+		this(delegate, directory, DEFAULT_FILE_SIZE);
+	}
+
+	/**
+	 * 构造函数，构造时将读取目录中已有的任务日志，恢复出尚未处理完的任务。
+	 * 
+	 * @param delegate
+	 *            实际的任务队列
+	 * @param directory
+	 *            任务日志所在目录，不存在时将自动创建
+	 * @param fileSize
+	 *            任务日志文件大小，单位：字节，超过该大小后切换至新文件
+	 * @throws IllegalArgumentException
+	 *             delegate为null
+	 * @throws IllegalArgumentException
+	 *             directory为null或无法创建
+	 * @throws IllegalArgumentException
+	 *             fileSize小于1024
+	 * @throws IllegalStateException
+	 *             读取已有的任务日志或创建新的任务日志文件失败
+	 */
+	public JournaledTaskQueue(TaskQueue<T> delegate, File directory,
+			int fileSize) {
+		if (null == delegate || null == directory || fileSize < 1024) {
+			throw new IllegalArgumentException();
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException();
+		}
+		this.delegate = delegate;
+		this.directory = directory;
+		this.fileSize = fileSize;
+		try {
+			load();
+			openFile();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		synchronized (files) {
+			deleteCompletedFiles();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 完成标记写入文件后即返回，不等待fsync。
+	 * 
+	 * @throws IllegalStateException
+	 *             写入任务日志失败
+	 */
+	@Override
+	public void acknowledge(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		appendDone(tasks, 0, tasks.size());
+		if (commitLock.tryLock()) {
+			try {
+				if (!isClosed) {
+					write(false);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				commitLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int capacity() {
+		return delegate.capacity();
+	}
+
+	/**
+	 * 将所有记录写入磁盘，并关闭任务日志，关闭后不能再放入任务。不会关闭实际的任务队列。
+	 * 
+	 * @throws IOException
+	 *             写入任务日志失败
+	 */
+	@Override
+	public void close() throws IOException {
+		commitLock.lock();
+		try {
+			if (isClosed) {
+				return;
+			}
+			write(true);
+			isClosed = true;
+			channel.close();
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		return TaskQueues.drainTo(delegate, c, maxTasks);
+	}
+
+	/**
+	 * 获取任务日志所在目录。
+	 * 
+	 * @return 任务日志所在目录
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 任务记入任务日志并写入磁盘后，才会放入实际的任务队列，放入失败时在任务日志中追加完成标记。
+	 * 
+	 * @throws IllegalArgumentException
+	 *             task尚未设置任务状态，即没有通过任务传送管道放入
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	@Override
+	public boolean offer(T task) {
+		List<T> tasks = Collections.singletonList(task);
+		journal(tasks);
+		boolean success = delegate.offer(task);
+		if (!success) {
+			appendDone(tasks, 0, 1);
+		}
+		return success;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             task尚未设置任务状态，即没有通过任务传送管道放入
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	@Override
+	public boolean offer(T task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		List<T> tasks = Collections.singletonList(task);
+		journal(tasks);
+		boolean success = false;
+		try {
+			success = delegate.offer(task, timeout, unit);
+		} finally {
+			if (!success) {
+				appendDone(tasks, 0, 1);
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 整批任务通过一次fsync记入任务日志。
+	 * 
+	 * @throws IllegalArgumentException
+	 *             tasks中有任务尚未设置任务状态，即没有通过任务传送管道放入
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		journal(tasks);
+		int offered = 0;
+		try {
+			offered = TaskQueues.offerAll(delegate, tasks);
+		} finally {
+			appendDone(tasks, offered, tasks.size());
+		}
+		return offered;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll() {
+		return delegate.poll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.poll(timeout, unit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             task尚未设置任务状态，即没有通过任务传送管道放入
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	@Override
+	public void put(T task) throws InterruptedException {
+		List<T> tasks = Collections.singletonList(task);
+		journal(tasks);
+		boolean success = false;
+		try {
+			delegate.put(task);
+			success = true;
+		} finally {
+			if (!success) {
+				appendDone(tasks, 0, 1);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 整批任务通过一次fsync记入任务日志。
+	 * 
+	 * @throws IllegalArgumentException
+	 *             tasks中有任务尚未设置任务状态，即没有通过任务传送管道放入
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		journal(tasks);
+		int size = tasks.size();
+		int offset = 0;
+		try {
+			while (offset < size) {
+				int offered = TaskQueues.offerAll(delegate,
+						tasks.subList(offset, size));
+				// 队列已满，阻塞放入一个任务，等队列腾出空位后再继续批量放入
+				if (0 == offered) {
+					delegate.put(tasks.get(offset));
+					offered = 1;
+				}
+				offset += offered;
+			}
+		} finally {
+			appendDone(tasks, offset, size);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<T> recover() {
+		synchronized (recoveredSequences) {
+			List<T> tasks = recoveredTasks;
+			recoveredTasks = null;
+			if (null == tasks) {
+				return Collections.emptyList();
+			}
+			return tasks;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return delegate.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T take() throws InterruptedException {
+		return delegate.take();
+	}
+
+	/**
+	 * 为指定范围内的任务追加完成标记，并释放其所在的任务日志文件，没有记入任务日志的任务将被忽略。
+	 * 
+	 * @param tasks
+	 *            任务列表
+	 * @param from
+	 *            第一个任务的下标（包含）
+	 * @param to
+	 *            最后一个任务的下标（不包含）
+	 */
+	private void appendDone(List<? extends T> tasks, int from, int to) {
+		if (from >= to) {
+			return;
+		}
+		long[] sequences = new long[to - from];
+		int count = 0;
+		synchronized (appendLock) {
+			try {
+				for (int i = from; i < to; i++) {
+					TaskState taskState = tasks.get(i).getTaskState();
+					long sequence = null == taskState ? -1L : taskState
+							.getJournalSequence();
+					if (sequence < 0) {
+						continue;
+					}
+					appendingOut.writeByte(DONE);
+					appendingOut.writeLong(sequence);
+					appendedTicket++;
+					sequences[count++] = sequence;
+				}
+			} catch (IOException e) {
+				// 写入内存不会失败
+				throw new IllegalStateException(e);
+			}
+		}
+		synchronized (files) {
+			for (int i = 0; i < count; i++) {
+				for (JournalFile file : files) {
+					if (file.contains(sequences[i])) {
+						file.pending--;
+						break;
+					}
+				}
+			}
+			deleteCompletedFiles();
+		}
+	}
+
+	/**
+	 * 从头开始删除已处理完的任务日志文件，当前写入的文件不会被删除。一个文件中的完成标记可能对应着之前文件中的任务，因此只能按顺序删除。调用者需持有{@link #files}的锁。
+	 */
+	private void deleteCompletedFiles() {
+		while (files.size() > 1 && 0 == files.getFirst().pending) {
+			files.removeFirst().file.delete();
+		}
+	}
+
+	/**
+	 * 将任务记入任务日志，并等待记录写入磁盘。恢复出的任务沿用原序号，不再重复记录。
+	 * 
+	 * @param tasks
+	 *            待记录的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 * @throws IllegalArgumentException
+	 *             tasks中有任务尚未设置任务状态
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	private void journal(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		if (isClosed) {
+			throw new IllegalStateException("journal is closed");
+		}
+		int size = tasks.size();
+		byte[][] records = new byte[size][];
+		for (int i = 0; i < size; i++) {
+			T task = tasks.get(i);
+			if (null == task) {
+				throw new NullPointerException();
+			}
+			if (null == task.getTaskState()) {
+				throw new IllegalArgumentException();
+			}
+			Long recovered = takeRecoveredSequence(task);
+			if (null != recovered) {
+				task.getTaskState().setJournalSequence(recovered.longValue());
+			} else {
+				records[i] = encode(task);
+			}
+		}
+
+		long ticket;
+		synchronized (appendLock) {
+			try {
+				for (int i = 0; i < size; i++) {
+					if (null == records[i]) {
+						continue;
+					}
+					long sequence = nextSequence++;
+					CRC32 crc = new CRC32();
+					crc.update(records[i]);
+					appendingOut.writeByte(ENQUEUE);
+					appendingOut.writeLong(sequence);
+					appendingOut.writeInt(records[i].length);
+					appendingOut.writeInt((int) crc.getValue());
+					appendingOut.write(records[i]);
+					appendedTicket++;
+					appendingCount++;
+					appendingFirstSequence = Math.min(appendingFirstSequence,
+							sequence);
+					appendingLastSequence = sequence;
+					tasks.get(i).getTaskState().setJournalSequence(sequence);
+				}
+			} catch (IOException e) {
+				// 写入内存不会失败
+				throw new IllegalStateException(e);
+			}
+			ticket = appendedTicket;
+		}
+		sync(ticket);
+	}
+
+	/**
+	 * 解码一个任务及其所有祖先任务。
+	 * 
+	 * @param bytes
+	 *            编码结果
+	 * @return 任务
+	 * @throws IllegalStateException
+	 *             任务无法解码
+	 */
+	@SuppressWarnings("unchecked")
+	private T decode(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int depth = buffer.getInt();
+		Task task = null;
+		for (int i = 0; i < depth; i++) {
+			task = TaskCodecs.decode(buffer, task);
+		}
+		return (T) task;
+	}
+
+	/**
+	 * 从最顶层的祖先任务开始，依次编码一个任务及其所有祖先任务，以便恢复出的任务仍能通过{@link Task#getParent()}访问祖先任务的属性。
+	 * 
+	 * @param task
+	 *            待编码的任务
+	 * @return 编码结果
+	 * @throws IllegalStateException
+	 *             任务无法编码
+	 */
+	private byte[] encode(T task) {
+		LinkedList<Task> lineage = new LinkedList<Task>();
+		for (Task t = task; null != t; t = t.getParent()) {
+			lineage.addFirst(t);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(TaskCodecs.INITIAL_BUFFER_SIZE);
+		buffer.putInt(lineage.size());
+		for (Task t : lineage) {
+			buffer = TaskCodecs.encode(t, buffer);
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * 读取目录中已有的任务日志，找出尚未处理完的任务。
+	 * 
+	 * @throws IOException
+	 *             读取任务日志失败
+	 */
+	private void load() throws IOException {
+		File[] listed = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(FILE_PREFIX)
+						&& name.endsWith(FILE_SUFFIX);
+			}
+		});
+		if (null == listed) {
+			throw new IOException("cannot list " + directory);
+		}
+		// 文件编号定长，按文件名排序即按写入的先后顺序排序
+		Arrays.sort(listed);
+
+		Map<Long, byte[]> unfinished = new LinkedHashMap<Long, byte[]>();
+		Map<Long, JournalFile> owners = new HashMap<Long, JournalFile>();
+		for (File listedFile : listed) {
+			String name = listedFile.getName();
+			long number;
+			try {
+				number = Long.parseLong(name.substring(FILE_PREFIX.length(),
+						name.length() - FILE_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			nextFileNumber = Math.max(nextFileNumber, number + 1);
+			JournalFile journalFile = new JournalFile(listedFile);
+			files.add(journalFile);
+			readFile(journalFile, unfinished, owners);
+		}
+
+		List<T> tasks = new ArrayList<T>(unfinished.size());
+		for (Map.Entry<Long, byte[]> entry : unfinished.entrySet()) {
+			long sequence = entry.getKey().longValue();
+			owners.get(entry.getKey()).add(sequence, sequence, 1);
+			T task = decode(entry.getValue());
+			recoveredSequences.put(task, entry.getKey());
+			tasks.add(task);
+		}
+		recoveredTasks = tasks;
+	}
+
+	/**
+	 * 新建一个任务日志文件，并作为当前写入的文件。调用者需持有{@link #commitLock}，或在构造函数中调用。
+	 * 
+	 * @throws IOException
+	 *             创建任务日志文件失败
+	 */
+	private void openFile() throws IOException {
+		File file = new File(directory, String.format("%s%020d%s",
+				FILE_PREFIX, nextFileNumber++, FILE_SUFFIX));
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		synchronized (files) {
+			files.add(new JournalFile(file));
+		}
+	}
+
+	/**
+	 * 读取一个任务日志文件，遇到不完整或校验失败的记录时停止读取，这样的记录只会出现在进程被杀掉时正在写入的文件末尾。
+	 * 
+	 * @param journalFile
+	 *            任务日志文件
+	 * @param unfinished
+	 *            尚未处理完的任务的编码结果，键为序号
+	 * @param owners
+	 *            尚未处理完的任务所在的任务日志文件，键为序号
+	 * @throws IOException
+	 *             读取任务日志失败
+	 */
+	private void readFile(JournalFile journalFile, Map<Long, byte[]> unfinished,
+			Map<Long, JournalFile> owners) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journalFile.file)));
+		try {
+			while (true) {
+				byte type = in.readByte();
+				Long sequence = Long.valueOf(in.readLong());
+				nextSequence = Math.max(nextSequence, sequence.longValue() + 1);
+				if (DONE == type) {
+					unfinished.remove(sequence);
+					owners.remove(sequence);
+				} else if (ENQUEUE == type) {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if (length < 0) {
+						break;
+					}
+					byte[] bytes = new byte[length];
+					in.readFully(bytes);
+					CRC32 crc = new CRC32();
+					crc.update(bytes);
+					if ((int) crc.getValue() != checksum) {
+						break;
+					}
+					unfinished.put(sequence, bytes);
+					owners.put(sequence, journalFile);
+				} else {
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			// 读到文件末尾
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 等待指定提交凭证之前的记录全部写入磁盘。
+	 * <p>
+	 * 同一时刻只有一个线程在写入，写入时把所有已追加的记录一次写入并fsync，其他线程在此期间追加的记录等待下一次写入，即组提交。
+	 * 
+	 * @param ticket
+	 *            提交凭证
+	 * @throws IllegalStateException
+	 *             写入任务日志失败，或任务日志已关闭
+	 */
+	private void sync(long ticket) {
+		if (durableTicket >= ticket) {
+			return;
+		}
+		commitLock.lock();
+		try {
+			// 等锁期间，记录可能已被其他线程写入
+			if (durableTicket >= ticket) {
+				return;
+			}
+			if (isClosed) {
+				throw new IllegalStateException("journal is closed");
+			}
+			write(true);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	/**
+	 * 如果指定任务是恢复出的任务，取出其原序号。
+	 * 
+	 * @param task
+	 *            任务
+	 * @return 原序号，不是恢复出的任务时返回null
+	 */
+	private Long takeRecoveredSequence(T task) {
+		synchronized (recoveredSequences) {
+			if (recoveredSequences.isEmpty()) {
+				return null;
+			}
+			return recoveredSequences.remove(task);
+		}
+	}
+
+	/**
+	 * 将所有已追加的记录写入当前文件，需要时fsync，fsync后文件超过大小时切换至新文件。调用者需持有{@link #commitLock}。
+	 * 
+	 * @param force
+	 *            是否fsync
+	 * @throws IOException
+	 *             写入任务日志失败
+	 */
+	private void write(boolean force) throws IOException {
+		byte[] data;
+		long ticket;
+		int count;
+		long firstSequence;
+		long lastSequence;
+		synchronized (appendLock) {
+			data = appending.toByteArray();
+			appending.reset();
+			ticket = appendedTicket;
+			count = appendingCount;
+			firstSequence = appendingFirstSequence;
+			lastSequence = appendingLastSequence;
+			appendingCount = 0;
+			appendingFirstSequence = Long.MAX_VALUE;
+			appendingLastSequence = -1L;
+		}
+		if (0 < data.length) {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (0 < count) {
+				synchronized (files) {
+					files.getLast().add(firstSequence, lastSequence, count);
+				}
+			}
+		}
+		if (!force) {
+			return;
+		}
+		channel.force(false);
+		durableTicket = ticket;
+		if (channel.size() >= fileSize) {
+			channel.close();
+			openFile();
+			synchronized (files) {
+				deleteCompletedFiles();
+			}
+		}
+	}
+
+	/**
+	 * 任务日志文件。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class JournalFile {
+
+		/**
+		 * 文件
+		 */
+		private final File file;
+
+		/**
+		 * 文件中放入记录的最小序号
+		 */
+		private long firstSequence = Long.MAX_VALUE;
+
+		/**
+		 * 文件中放入记录的最大序号
+		 */
+		private long lastSequence = -1L;
+
+		/**
+		 * 文件中尚未处理完的任务数
+		 */
+		private int pending = 0;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param file
+		 *            文件
+		 */
+		private JournalFile(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * 登记文件中新增的尚未处理完的任务。
+		 * 
+		 * @param first
+		 *            新增任务的最小序号
+		 * @param last
+		 *            新增任务的最大序号
+		 * @param count
+		 *            新增任务数
+		 */
+		private void add(long first, long last, int count) {
+			firstSequence = Math.min(firstSequence, first);
+			lastSequence = Math.max(lastSequence, last);
+			pending += count;
+		}
+
+		/**
+		 * 判断指定序号的任务是否记录在该文件中。
+		 * 
+		 * @param sequence
+		 *            序号
+		 * @return 是否记录在该文件中
+		 */
+		private boolean contains(long sequence) {
+			return firstSequence <= sequence && sequence <= lastSequence;
+		}
+	}
+}
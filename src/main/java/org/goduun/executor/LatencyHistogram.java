@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的耗时直方图，用于统计任务在各环节的耗时，单位：纳秒。
+ * <p>
+ * 采用对数-线性分桶：小于32纳秒的耗时每纳秒一个桶；之后每个2的幂区间再等分为32个桶，任一耗时的统计误差不超过其自身的1/32（约3%）。
+ * 统计上限约为2<sup>45</sup>纳秒（约9.8小时），超出的耗时计入最后一个桶。全部桶共占用约10KB内存，记录一次耗时只需几次原子加法，
+ * 不分配内存、不使用锁，可在消费者线程中直接调用。
+ * <p>
+ * 直方图只累加不清零，需要统计一段时间内的耗时分布时，用两次{@link #snapshot()}的结果相减，见{@link LatencySnapshot#minus(LatencySnapshot)}。
+ * 
+ * @see LatencySnapshot
+ * @author Hu Ruomin
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * 每个2的幂区间等分的桶数的位数
+	 */
+	private static final int SUB_BITS = 5;
+
+	/**
+	 * 每个2的幂区间等分的桶数
+	 */
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/**
+	 * 统计上限的指数
+	 */
+	private static final int MAX_EXPONENT = 44;
+
+	/**
+	 * 桶数
+	 */
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+
+	/**
+	 * 获取耗时所在的桶。
+	 * 
+	 * @param nanos
+	 *            耗时，单位：纳秒，小于0时按0计
+	 * @return 桶下标
+	 */
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_COUNT) {
+			return nanos < 0 ? 0 : (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) (nanos >>> shift) - SUB_COUNT;
+	}
+
+	/**
+	 * 获取桶所能记录的最小耗时。
+	 * 
+	 * @param bucket
+	 *            桶下标
+	 * @return 最小耗时，单位：纳秒
+	 */
+	static long lowerBoundOf(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int shift = (bucket >> SUB_BITS) - 1;
+		return ((long) ((bucket & (SUB_COUNT - 1)) + SUB_COUNT)) << shift;
+	}
+
+	/**
+	 * 获取桶所能记录的最大耗时。
+	 * 
+	 * @param bucket
+	 *            桶下标
+	 * @return 最大耗时，单位：纳秒，最后一个桶为{@link Long#MAX_VALUE}
+	 */
+	static long upperBoundOf(int bucket) {
+		return bucket >= BUCKETS - 1 ? Long.MAX_VALUE
+				: lowerBoundOf(bucket + 1) - 1;
+	}
+
+	/**
+	 * 各桶的计数
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * 记录过的最大耗时
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录过的耗时总和
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * 记录一次耗时。
+	 * 
+	 * @param nanos
+	 *            耗时，单位：纳秒，小于0时按0计
+	 */
+	public void record(long nanos) {
+		record(nanos, 1);
+	}
+
+	/**
+	 * 记录多次相同的耗时，例如同一批任务的执行耗时。
+	 * 
+	 * @param nanos
+	 *            耗时，单位：纳秒，小于0时按0计
+	 * @param count
+	 *            次数，小于1时不记录
+	 */
+	public void record(long nanos, long count) {
+		if (count < 1) {
+			return;
+		}
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.addAndGet(bucketOf(nanos), count);
+		sum.addAndGet(nanos * count);
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * 直接读取各桶的计数，统计耗时不超过各上限的累计记录次数，不分配内存，供指标导出等频繁读取的场景使用。
+	 * <p>
+	 * 各桶按其所能记录的最大耗时归入上限，因此边界附近的统计误差不超过边界值的1/32。
+	 * 
+	 * @param upperBounds
+	 *            升序排列的耗时上限，单位：纳秒
+	 * @param cumulativeCounts
+	 *            保存耗时不超过各上限的累计记录次数，长度不小于upperBounds
+	 * @return 总记录次数
+	 */
+	long cumulativeCounts(long[] upperBounds, long[] cumulativeCounts) {
+		Arrays.fill(cumulativeCounts, 0, upperBounds.length, 0L);
+		long total = 0;
+		int bound = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = buckets.get(i);
+			if (0 == count) {
+				continue;
+			}
+			total += count;
+			long upper = upperBoundOf(i);
+			while (bound < upperBounds.length && upperBounds[bound] < upper) {
+				bound++;
+			}
+			if (bound < upperBounds.length) {
+				cumulativeCounts[bound] += count;
+			}
+		}
+		for (int i = 1; i < upperBounds.length; i++) {
+			cumulativeCounts[i] += cumulativeCounts[i - 1];
+		}
+		return total;
+	}
+
+	/**
+	 * 获取记录过的耗时总和。
+	 * 
+	 * @return 耗时总和，单位：纳秒
+	 */
+	long sum() {
+		return sum.get();
+	}
+
+	/**
+	 * 获取直方图当前的快照。快照期间仍有耗时在记录时，快照中的计数、总和与最大值之间可能有微小的不一致。
+	 * 
+	 * @return 快照
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		int length = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			if (0 != counts[i]) {
+				length = i + 1;
+			}
+		}
+		return new LatencySnapshot(counts, length, sum.get(), max.get());
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 耗时直方图的快照，不可变对象，单位：纳秒。
+ * <p>
+ * 百分位数取所在桶能记录的最大耗时（不超过记录过的最大耗时），因此略偏大，误差不超过其自身的1/32。
+ * 
+ * @see LatencyHistogram
+ * @author Hu Ruomin
+ */
+public final class LatencySnapshot implements Serializable {
+
+	/**
+	 * 空快照
+	 */
+	public static final LatencySnapshot EMPTY = new LatencySnapshot(
+			new long[0], 0, 0, 0);
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -3085286429714011638L;
+
+	/**
+	 * 各桶的计数，最后一个不为0的桶之后的桶被截去
+	 */
+	private final long[] counts;
+
+	/**
+	 * 记录次数
+	 */
+	private final long count;
+
+	/**
+	 * 记录过的最大耗时
+	 */
+	private final long max;
+
+	/**
+	 * 记录过的耗时总和
+	 */
+	private final long sum;
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param counts
+	 *            各桶的计数
+	 * @param length
+	 *            需保留的桶数
+	 * @param sum
+	 *            耗时总和
+	 * @param max
+	 *            最大耗时
+	 */
+	LatencySnapshot(long[] counts, int length, long sum, long max) {
+		this.counts = counts.length == length ? counts : Arrays.copyOf(
+				counts, length);
+		long total = 0;
+		for (int i = 0; i < length; i++) {
+			total += counts[i];
+		}
+		this.count = total;
+		this.sum = sum;
+		this.max = max;
+	}
+
+	/**
+	 * 获取记录次数。
+	 * 
+	 * @return 记录次数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 获取最大耗时。
+	 * 
+	 * @return 最大耗时，没有记录时为0
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * 获取平均耗时。
+	 * 
+	 * @return 平均耗时，没有记录时为0
+	 */
+	public double getMean() {
+		return 0 == count ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * 获取指定的百分位数。
+	 * 
+	 * @param percent
+	 *            百分位，0至100之间，例如99.9
+	 * @return 百分位数，没有记录时为0
+	 * @throws IllegalArgumentException
+	 *             percent不在0至100之间
+	 */
+	public long getPercentile(double percent) {
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException();
+		}
+		if (0 == count) {
+			return 0;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percent / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(LatencyHistogram.upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * 获取中位数。
+	 * 
+	 * @return 中位数
+	 */
+	public long getP50() {
+		return getPercentile(50);
+	}
+
+	/**
+	 * 获取99百分位数。
+	 * 
+	 * @return 99百分位数
+	 */
+	public long getP99() {
+		return getPercentile(99);
+	}
+
+	/**
+	 * 获取99.9百分位数。
+	 * 
+	 * @return 99.9百分位数
+	 */
+	public long getP999() {
+		return getPercentile(99.9);
+	}
+
+	/**
+	 * 获取耗时总和。
+	 * 
+	 * @return 耗时总和
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * 计算从较早的快照到当前快照之间记录的耗时分布。
+	 * <p>
+	 * 区间内的最大耗时无法精确得知，取区间内最大的非空桶所能记录的最大耗时（不超过当前快照的最大耗时）。
+	 * 
+	 * @param earlier
+	 *            同一直方图较早的快照，为null时返回当前快照
+	 * @return 区间内的耗时分布
+	 */
+	public LatencySnapshot minus(LatencySnapshot earlier) {
+		if (null == earlier) {
+			return this;
+		}
+		long[] delta = new long[counts.length];
+		int length = 0;
+		for (int i = 0; i < counts.length; i++) {
+			delta[i] = counts[i]
+					- (i < earlier.counts.length ? earlier.counts[i] : 0);
+			if (delta[i] > 0) {
+				length = i + 1;
+			} else {
+				delta[i] = 0;
+			}
+		}
+		long intervalMax = 0 == length ? 0 : Math.min(
+				LatencyHistogram.upperBoundOf(length - 1), max);
+		return new LatencySnapshot(delta, length, Math.max(0, sum
+				- earlier.sum), intervalMax);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "count=" + count + ", mean=" + (long) getMean() + "ns, p50="
+				+ getP50() + "ns, p99=" + getP99() + "ns, p999=" + getP999()
+				+ "ns, max=" + max + "ns";
+	}
+}
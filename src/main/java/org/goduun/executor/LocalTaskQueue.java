@@ -16,6 +16,7 @@
 package org.goduun.executor;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -28,7 +29,7 @@ import java.util.concurrent.TimeUnit;
  *            任务类型
  * @author Hu Ruomin
  */
-public class LocalTaskQueue<T extends Task> implements TaskQueue<T> {
+public class LocalTaskQueue<T extends Task> implements BatchTaskQueue<T> {
 
 	/**
 	 * 任务队列
@@ -102,6 +103,37 @@ public class LocalTaskQueue<T extends Task> implements TaskQueue<T> {
 		queue.put(task);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		int offered = 0;
+		for (T task : tasks) {
+			if (!queue.offer(task)) {
+				break;
+			}
+			offered++;
+		}
+		return offered;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			queue.put(task);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -135,6 +167,14 @@ public class LocalTaskQueue<T extends Task> implements TaskQueue<T> {
 		return capacity;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		return queue.drainTo(c, maxTasks);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用普通线程的线程池，基于{@link ThreadPoolExecutor}实现，线程数上限即同时运行的任务数上限。
+ * 
+ * @see ThreadingMode#PLATFORM
+ * @author Hu Ruomin
+ */
+final class PlatformRunnerPool implements RunnerPool {
+
+	/**
+	 * 线程池
+	 */
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * 执行器终止后，空闲线程的存活时长，单位：毫秒
+	 */
+	private final long terminatingKeepAliveMillis;
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param size
+	 *            线程数上限
+	 * @param isQueued
+	 *            线程数达到上限后，新提交的任务是否排队
+	 * @param terminatingKeepAliveMillis
+	 *            执行器终止后，空闲线程的存活时长，单位：毫秒
+	 * @param exitListener
+	 *            线程退出后的回调，回调时该线程已不计入{@link #getPoolSize()}
+	 */
+	PlatformRunnerPool(int size, boolean isQueued,
+			long terminatingKeepAliveMillis, Runnable exitListener) {
+		BlockingQueue<Runnable> queue;
+		if (isQueued) {
+			queue = new LinkedBlockingQueue<Runnable>();
+		} else {
+			queue = new SynchronousQueue<Runnable>();
+		}
+		this.pool = new ThreadPoolExecutor(size, size, 0L,
+				TimeUnit.MILLISECONDS, queue, new ExitNotifyingThreadFactory(
+						exitListener));
+		this.terminatingKeepAliveMillis = terminatingKeepAliveMillis;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(Runnable runner) {
+		pool.execute(runner);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCompletedTaskCount() {
+		return pool.getCompletedTaskCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMaxSize(int size) {
+		// 调大时先调最大线程数，调小时先调核心线程数，避免核心线程数大于最大线程数
+		if (size > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(size);
+			pool.setCorePoolSize(size);
+		} else {
+			pool.setCorePoolSize(size);
+			pool.setMaximumPoolSize(size);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void terminate() {
+		pool.setKeepAliveTime(terminatingKeepAliveMillis,
+				TimeUnit.MILLISECONDS);
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 线程工厂，创建的线程在退出前调用指定的回调。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ExitNotifyingThreadFactory implements
+			ThreadFactory {
+
+		/**
+		 * 实际创建线程的工厂
+		 */
+		private final ThreadFactory defaultFactory = Executors
+				.defaultThreadFactory();
+
+		/**
+		 * 线程退出后的回调
+		 */
+		private final Runnable exitListener;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param exitListener
+		 *            线程退出后的回调
+		 */
+		ExitNotifyingThreadFactory(Runnable exitListener) {
+			this.exitListener = exitListener;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * 线程池的工作者运行结束时，已从线程池中移除，此时再调用回调。
+		 */
+		@Override
+		public Thread newThread(final Runnable worker) {
+			return defaultFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						worker.run();
+					} finally {
+						exitListener.run();
+					}
+				}
+			});
+		}
+	}
+}
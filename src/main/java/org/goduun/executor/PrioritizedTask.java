@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 带优先级的任务。
+ * <p>
+ * 放入{@link PriorityTaskQueue}时，按优先级进入对应的通道，优先级越高，被取出的机会越多；未实现该接口的任务按最低优先级处理。
+ * 
+ * @see PriorityTaskQueue
+ * @author Hu Ruomin
+ */
+public interface PrioritizedTask extends Task {
+
+	/**
+	 * 获取当前任务的优先级，0为最低优先级，数值越大优先级越高。
+	 * 
+	 * @return 当前任务的优先级
+	 */
+	int getPriority();
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多通道优先级任务队列。
+ * <p>
+ * 队列由固定数量的通道组成，每个通道是一个{@link RingTaskQueue}，任务按{@link PrioritizedTask#getPriority()}放入对应的通道：
+ * 优先级0进入最低的通道，超出通道数的优先级进入最高的通道，未实现{@link PrioritizedTask}的任务进入最低的通道。
+ * 放入与取出都只操作单个通道，不存在全局的锁或堆，时间复杂度为O(1)。
+ * <p>
+ * 取任务时按各通道的权重加权轮询，而不是严格按优先级取，避免低优先级的任务饿死：
+ * <ol>
+ * <li>构造时按平滑加权轮询算法生成一轮的通道顺序，每次取任务从该顺序中领取下一个通道，该通道为空时再从高到低依次尝试其他通道。</li>
+ * <li>批量取任务时，从高到低依次按权重占剩余名额的比例从各非空通道批量取出，通道任务不足时剩余名额留给后面的通道，最后从高到低补足。</li>
+ * </ol>
+ * 默认第i个通道的权重为2<sup>i</sup>，即优先级每高一级，被取出的机会翻倍。同一通道内的任务先进先出。
+ * 
+ * @param <T>
+ *            任务类型
+ * @see PrioritizedTask
+ * @author Hu Ruomin
+ */
+public class PriorityTaskQueue<T extends Task> implements BatchTaskQueue<T> {
+
+	/**
+	 * 允许的最大通道数
+	 */
+	private static final int MAX_LANES = 16;
+
+	/**
+	 * 一轮通道顺序允许的最大长度，即各通道权重之和的上限
+	 */
+	private static final int MAX_ROUND = 1 << 16;
+
+	/**
+	 * 各通道，下标即优先级
+	 */
+	private final RingTaskQueue<T>[] lanes;
+
+	/**
+	 * 各通道共用的队列非空通知，任一通道放入任务后发出
+	 */
+	private final WaitSignal notEmpty = new WaitSignal() {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		boolean isReady() {
+			return 0 < size();
+		}
+	};
+
+	/**
+	 * 一轮取任务的通道顺序
+	 */
+	private final int[] round;
+
+	/**
+	 * 下一次取任务在一轮通道顺序中的位置
+	 */
+	private final AtomicLong ticket = new AtomicLong();
+
+	/**
+	 * 队列满或空时的等待策略
+	 */
+	private final WaitStrategy waitStrategy;
+
+	/**
+	 * 各通道的权重
+	 */
+	private final int[] weights;
+
+	/**
+	 * 构造函数，第i个通道的权重为2<sup>i</sup>，等待策略默认为{@link WaitStrategy#PARK}。
+	 * 
+	 * @param lanes
+	 *            通道数，即优先级的级数
+	 * @param capacity
+	 *            每个通道的最大容量，实际容量为不小于该值的最小的2的幂
+	 * @throws IllegalArgumentException
+	 *             如果lanes小于1或大于16
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1或大于2<sup>30</sup>
+	 */
+	public PriorityTaskQueue(int lanes, int capacity) {
+		this(defaultWeights(lanes), capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param weights
+	 *            各通道的权重，数组长度即通道数，下标即优先级
+	 * @param capacity
+	 *            每个通道的最大容量，实际容量为不小于该值的最小的2的幂
+	 * @param waitStrategy
+	 *            队列满或空时的等待策略
+	 * @throws IllegalArgumentException
+	 *             如果weights为null、长度小于1或大于16、有小于1的权重，或权重之和大于2<sup>16</sup>
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1或大于2<sup>30</sup>
+	 * @throws IllegalArgumentException
+	 *             waitStrategy为null
+	 */
+	public PriorityTaskQueue(int[] weights, int capacity,
+			WaitStrategy waitStrategy) {
+		if (null == weights || weights.length < 1
+				|| weights.length > MAX_LANES) {
+			throw new IllegalArgumentException();
+		}
+		if (null == waitStrategy) {
+			throw new IllegalArgumentException();
+		}
+		int total = 0;
+		for (int weight : weights) {
+			if (weight < 1 || weight > MAX_ROUND - total) {
+				throw new IllegalArgumentException();
+			}
+			total += weight;
+		}
+		this.weights = weights.clone();
+		this.round = newRound(this.weights, total);
+		this.lanes = newLanes(weights.length, capacity, waitStrategy,
+				notEmpty);
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * 生成默认的各通道权重。
+	 * 
+	 * @param lanes
+	 *            通道数
+	 * @return 各通道的权重
+	 * @throws IllegalArgumentException
+	 *             如果lanes小于1或大于16
+	 */
+	private static int[] defaultWeights(int lanes) {
+		if (lanes < 1 || lanes > MAX_LANES) {
+			throw new IllegalArgumentException();
+		}
+		int[] weights = new int[lanes];
+		for (int i = 0; i < lanes; i++) {
+			weights[i] = 1 << i;
+		}
+		return weights;
+	}
+
+	/**
+	 * 创建各通道的环形任务队列。
+	 * 
+	 * @param count
+	 *            通道数
+	 * @param capacity
+	 *            每个通道的容量
+	 * @param waitStrategy
+	 *            各通道共用的等待策略
+	 * @param notEmpty
+	 *            各通道共用的队列非空通知
+	 * @return 各通道的环形任务队列
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T extends Task> RingTaskQueue<T>[] newLanes(int count,
+			int capacity, WaitStrategy waitStrategy, WaitSignal notEmpty) {
+		RingTaskQueue<T>[] lanes = new RingTaskQueue[count];
+		for (int i = 0; i < count; i++) {
+			lanes[i] = new RingTaskQueue<T>(capacity, waitStrategy, notEmpty);
+		}
+		return lanes;
+	}
+
+	/**
+	 * 按平滑加权轮询算法生成一轮的通道顺序，各通道在一轮中出现的次数等于其权重，且尽量均匀分布。
+	 * 
+	 * @param weights
+	 *            各通道的权重
+	 * @param total
+	 *            权重之和
+	 * @return 一轮的通道顺序
+	 */
+	private static int[] newRound(int[] weights, int total) {
+		int[] round = new int[total];
+		int[] current = new int[weights.length];
+		for (int i = 0; i < total; i++) {
+			int selected = 0;
+			for (int lane = 0; lane < weights.length; lane++) {
+				current[lane] += weights[lane];
+				if (current[lane] > current[selected]) {
+					selected = lane;
+				}
+			}
+			current[selected] -= total;
+			round[i] = selected;
+		}
+		return round;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 即各通道容量之和。
+	 */
+	@Override
+	public int capacity() {
+		long capacity = 0;
+		for (RingTaskQueue<T> lane : lanes) {
+			capacity += lane.capacity();
+		}
+		return capacity > Integer.MAX_VALUE ? Integer.MAX_VALUE
+				: (int) capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 取出的任务按通道从高到低排列，同一通道内先进先出。
+	 */
+	@Override
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		if (null == c) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxTasks < 1) {
+			return 0;
+		}
+		// 按权重占剩余名额的比例从高到低依次取，空通道不参与分配，通道任务不足时，剩余名额自然留给后面的通道
+		int drained = 0;
+		int remainingWeight = 0;
+		for (int lane = 0; lane < lanes.length; lane++) {
+			if (0 < lanes[lane].size()) {
+				remainingWeight += weights[lane];
+			}
+		}
+		for (int lane = lanes.length - 1; lane >= 0 && drained < maxTasks
+				&& 0 < remainingWeight; lane--) {
+			if (0 == lanes[lane].size()) {
+				continue;
+			}
+			int remaining = maxTasks - drained;
+			int share = (int) (((long) remaining * weights[lane]
+					+ remainingWeight - 1) / remainingWeight);
+			drained += lanes[lane].drainTo(c, share);
+			remainingWeight -= weights[lane];
+		}
+		// 低优先级的通道任务不足时，从高到低补足
+		for (int lane = lanes.length - 1; lane >= 0 && drained < maxTasks; lane--) {
+			drained += lanes[lane].drainTo(c, maxTasks - drained);
+		}
+		return drained;
+	}
+
+	/**
+	 * 获取通道数。
+	 * 
+	 * @return 通道数
+	 */
+	public int getLanes() {
+		return lanes.length;
+	}
+
+	/**
+	 * 获取当前队列的等待策略。
+	 * 
+	 * @return 当前队列的等待策略
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task) {
+		return laneOf(task).offer(task);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return laneOf(task).offer(task, timeout, unit);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 连续的同优先级任务整批放入同一通道，某个通道满时停止放入，保证放入的是列表中的前若干个任务。
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		checkTasks(tasks);
+		int size = tasks.size();
+		int offset = 0;
+		while (offset < size) {
+			int end = runEnd(tasks, offset);
+			int offered = lanes[indexOf(tasks.get(offset))].offerAll(tasks
+					.subList(offset, end));
+			offset += offered;
+			if (offset < end) {
+				break;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll() {
+		int first = round[(int) (ticket.getAndIncrement() % round.length)];
+		T task = lanes[first].poll();
+		if (null != task) {
+			return task;
+		}
+		// 轮到的通道为空时，从高到低依次尝试其他通道
+		for (int lane = lanes.length - 1; lane >= 0; lane--) {
+			if (lane != first && null != (task = lanes[lane].poll())) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int times = 0;
+		T task;
+		while (null == (task = poll())) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return null;
+			}
+			waitStrategy.idle(times++, notEmpty, nanos);
+		}
+		return task;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public void put(T task) throws InterruptedException {
+		laneOf(task).put(task);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		checkTasks(tasks);
+		int size = tasks.size();
+		int offset = 0;
+		while (offset < size) {
+			int end = runEnd(tasks, offset);
+			lanes[indexOf(tasks.get(offset))].putAll(tasks.subList(offset,
+					end));
+			offset = end;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 即各通道任务数之和，并发修改时为近似值。
+	 */
+	@Override
+	public int size() {
+		long size = 0;
+		for (RingTaskQueue<T> lane : lanes) {
+			size += lane.size();
+		}
+		return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+	}
+
+	/**
+	 * 获取指定通道中的任务数。
+	 * 
+	 * @param lane
+	 *            通道，即优先级
+	 * @return 指定通道中的任务数
+	 * @throws IndexOutOfBoundsException
+	 *             lane小于0或不小于通道数
+	 */
+	public int size(int lane) {
+		return lanes[lane].size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T take() throws InterruptedException {
+		int times = 0;
+		T task;
+		while (null == (task = poll())) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(times++, notEmpty, Long.MAX_VALUE);
+		}
+		return task;
+	}
+
+	/**
+	 * 检查待批量放入的任务，不允许有null元素。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	private void checkTasks(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			if (null == task) {
+				throw new NullPointerException();
+			}
+		}
+	}
+
+	/**
+	 * 获取任务应进入的通道下标。
+	 * 
+	 * @param task
+	 *            任务
+	 * @return 通道下标
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	private int indexOf(T task) {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		if (!(task instanceof PrioritizedTask)) {
+			return 0;
+		}
+		int priority = ((PrioritizedTask) task).getPriority();
+		if (priority <= 0) {
+			return 0;
+		}
+		return priority >= lanes.length ? lanes.length - 1 : priority;
+	}
+
+	/**
+	 * 获取任务应进入的通道。
+	 * 
+	 * @param task
+	 *            任务
+	 * @return 通道
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	private RingTaskQueue<T> laneOf(T task) {
+		return lanes[indexOf(task)];
+	}
+
+	/**
+	 * 获取从指定位置开始、进入同一通道的连续任务的结束位置。
+	 * 
+	 * @param tasks
+	 *            任务列表，调用者需保证没有null元素
+	 * @param offset
+	 *            开始位置
+	 * @return 结束位置（不包含）
+	 */
+	private int runEnd(List<? extends T> tasks, int offset) {
+		int lane = indexOf(tasks.get(offset));
+		int end = offset + 1;
+		while (end < tasks.size() && indexOf(tasks.get(end)) == lane) {
+			end++;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Prometheus指标导出器。
+ * <p>
+ * 启动一个内嵌的http服务器（JDK自带的{@link HttpServer}），在{@code /metrics}路径上以Prometheus文本格式输出所注册执行器的指标：
+ * <ol>
+ * <li>计数器：放入任务队列的任务数、处理完成的任务数、因已过截止时间而丢弃的任务数、生产者及消费者线程完成的次数。</li>
+ * <li>仪表：任务队列的大小及容量、生产者及消费者线程的活跃数及最大数、各数据源在调度缓存中积压的任务数及正在处理的批次数。</li>
+ * <li>直方图：各任务类型在排队、缓存、执行、唤醒各环节的耗时，单位为秒。</li>
+ * </ol>
+ * 指标直接读取执行器内部的原子计数器及耗时直方图的各个桶，不生成快照，每次抓取只复用同一个缓冲区输出文本。
+ * 由Prometheus负责计算速率，因此不导出{@link ExecutingState}中的各项速率。
+ * <p>
+ * 执行器终止后仍保留最后的指标，直到被注销为止。
+ * 
+ * @author Hu Ruomin
+ */
+public class PrometheusExporter {
+
+	/**
+	 * 指标名前缀
+	 */
+	private static final String PREFIX = "goduun_executor_";
+
+	/**
+	 * 输出的内容类型
+	 */
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * 耗时直方图的上限，单位：纳秒
+	 */
+	private static final long[] LATENCY_BOUNDS = { 1000L, 5000L, 10000L,
+			50000L, 100000L, 500000L, 1000000L, 5000000L, 10000000L,
+			50000000L, 100000000L, 500000000L, 1000000000L, 5000000000L,
+			10000000000L };
+
+	/**
+	 * 耗时直方图上限的文本，单位：秒
+	 */
+	private static final String[] LATENCY_LABELS = { "1.0E-6", "5.0E-6",
+			"1.0E-5", "5.0E-5", "1.0E-4", "5.0E-4", "0.001", "0.005", "0.01",
+			"0.05", "0.1", "0.5", "1.0", "5.0", "10.0" };
+
+	/**
+	 * 监听地址
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * 所注册的执行器，按名称排序
+	 */
+	private final Map<String, Executor<? extends Task>> executors = new ConcurrentSkipListMap<String, Executor<? extends Task>>();
+
+	/**
+	 * 输出缓冲区，每次抓取时复用
+	 */
+	private final StringBuilder buffer = new StringBuilder(1 << 14);
+
+	/**
+	 * 耗时直方图的累计计数，每次抓取时复用
+	 */
+	private final long[] cumulativeCounts = new long[LATENCY_BOUNDS.length];
+
+	/**
+	 * 内嵌的http服务器
+	 */
+	private HttpServer server;
+
+	/**
+	 * 构造函数，监听所有网卡的指定端口。
+	 * 
+	 * @param port
+	 *            监听端口，为0时由系统分配
+	 * @throws IllegalArgumentException
+	 *             port不在0~65535之间
+	 */
+	public PrometheusExporter(int port) {
+		this(new InetSocketAddress(port));
+	}
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param address
+	 *            监听地址
+	 * @throws IllegalArgumentException
+	 *             address为null
+	 */
+	public PrometheusExporter(InetSocketAddress address) {
+		if (null == address) {
+			throw new IllegalArgumentException();
+		}
+		this.address = address;
+	}
+
+	/**
+	 * 注册执行器，以执行器的名称作为指标的executor标签，同名的执行器将被替换。
+	 * 
+	 * @param executor
+	 *            执行器
+	 * @throws IllegalArgumentException
+	 *             executor为null
+	 */
+	public void register(AbstractExecutor<? extends Task> executor) {
+		if (null == executor) {
+			throw new IllegalArgumentException();
+		}
+		register(executor.getName(), executor);
+	}
+
+	/**
+	 * 以指定名称注册执行器，同名的执行器将被替换。
+	 * 
+	 * @param name
+	 *            指标的executor标签
+	 * @param executor
+	 *            执行器
+	 * @throws IllegalArgumentException
+	 *             name或executor为null
+	 */
+	public void register(String name, Executor<? extends Task> executor) {
+		if (null == name || null == executor) {
+			throw new IllegalArgumentException();
+		}
+		executors.put(name, executor);
+	}
+
+	/**
+	 * 注销指定名称的执行器。
+	 * 
+	 * @param name
+	 *            注册时的名称
+	 */
+	public void unregister(String name) {
+		if (null != name) {
+			executors.remove(name);
+		}
+	}
+
+	/**
+	 * 启动内嵌的http服务器，重复调用不做任何操作。
+	 * 
+	 * @throws IllegalStateException
+	 *             无法监听指定地址
+	 */
+	public synchronized void start() {
+		if (null != server) {
+			return;
+		}
+		try {
+			server = HttpServer.create(address, 0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		server.createContext("/metrics", new MetricsHandler());
+		server.start();
+	}
+
+	/**
+	 * 停止内嵌的http服务器，未启动时不做任何操作。
+	 */
+	public synchronized void stop() {
+		if (null == server) {
+			return;
+		}
+		server.stop(0);
+		server = null;
+	}
+
+	/**
+	 * 获取实际监听的端口，未启动时返回构造时指定的端口。
+	 * 
+	 * @return 监听端口
+	 */
+	public synchronized int getPort() {
+		return null == server ? address.getPort() : server.getAddress()
+				.getPort();
+	}
+
+	/**
+	 * 以Prometheus文本格式输出所注册执行器当前的指标，可用于将指标嵌入其他http服务中。
+	 * 
+	 * @return Prometheus文本格式的指标
+	 */
+	public synchronized String scrape() {
+		buffer.setLength(0);
+		writeMetrics();
+		return buffer.toString();
+	}
+
+	/**
+	 * 将所有指标写入输出缓冲区。
+	 */
+	private void writeMetrics() {
+		writeHeader("queued_tasks_total", "counter",
+				"Tasks put into the task queue.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("queued_tasks_total", entry.getKey(), entry.getValue()
+					.getQueuedTaskCount());
+		}
+		writeHeader("consumed_tasks_total", "counter",
+				"Tasks handled by consumers.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("consumed_tasks_total", entry.getKey(), entry
+					.getValue().getConsumedTaskCount());
+		}
+		writeHeader("expired_tasks_total", "counter",
+				"Tasks dropped after their deadline without reaching a consumer.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			if (entry.getValue() instanceof AbstractExecutor) {
+				writeSample("expired_tasks_total", entry.getKey(),
+						((AbstractExecutor<?>) entry.getValue())
+								.getExpiredTaskCount());
+			}
+		}
+		writeHeader("producer_runs_total", "counter",
+				"Producer runs completed.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("producer_runs_total", entry.getKey(), entry
+					.getValue().getProducerThreadCompletedCount());
+		}
+		writeHeader("consumer_runs_total", "counter",
+				"Consumer runs completed.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("consumer_runs_total", entry.getKey(), entry
+					.getValue().getConsumerThreadCompletedCount());
+		}
+		writeHeader("task_queue_size", "gauge", "Tasks waiting in the task queue.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("task_queue_size", entry.getKey(), entry.getValue()
+					.getTaskQueueSize());
+		}
+		writeHeader("task_queue_capacity", "gauge", "Capacity of the task queue.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("task_queue_capacity", entry.getKey(), entry
+					.getValue().getTaskQueueCapacity());
+		}
+		writeHeader("producer_threads_active", "gauge",
+				"Producer threads currently running.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("producer_threads_active", entry.getKey(), entry
+					.getValue().getProducerThreadActiveCount());
+		}
+		writeHeader("producer_threads_max", "gauge",
+				"Maximum number of producer threads.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("producer_threads_max", entry.getKey(), entry
+					.getValue().getProducerThreadMaxSize());
+		}
+		writeHeader("consumer_threads_active", "gauge",
+				"Consumer threads currently running.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("consumer_threads_active", entry.getKey(), entry
+					.getValue().getConsumerThreadActiveCount());
+		}
+		writeHeader("consumer_threads_max", "gauge",
+				"Maximum number of consumer threads.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			writeSample("consumer_threads_max", entry.getKey(), entry
+					.getValue().getConsumerThreadMaxSize());
+		}
+		writeCachedTasks();
+		writeLatencies();
+	}
+
+	/**
+	 * 写入各数据源在调度缓存中积压的任务数及正在处理的批次数。
+	 */
+	private void writeCachedTasks() {
+		writeHeader("cached_tasks", "gauge",
+				"Tasks waiting in the dispatch cache by data source.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			if (entry.getValue() instanceof AbstractExecutor) {
+				writeDataSourceCounts("cached_tasks", entry.getKey(),
+						((AbstractExecutor<?>) entry.getValue())
+								.getCachedTaskCounters());
+			}
+		}
+		writeHeader("in_flight_batches", "gauge",
+				"Batches being handled by consumers by data source.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			if (entry.getValue() instanceof AbstractExecutor) {
+				writeDataSourceCounts("in_flight_batches", entry.getKey(),
+						((AbstractExecutor<?>) entry.getValue())
+								.getInFlightBatchCounters());
+			}
+		}
+	}
+
+	/**
+	 * 写入按数据源分别计数的样本。
+	 * 
+	 * @param metric
+	 *            不含前缀的指标名
+	 * @param name
+	 *            执行器名称
+	 * @param counters
+	 *            按数据源分别计数的计数器组
+	 */
+	private void writeDataSourceCounts(final String metric, final String name,
+			DataSourceCounters counters) {
+		counters.forEach(new DataSourceCounters.Visitor() {
+			@Override
+			public void visit(String dataSourceKey, int count) {
+				buffer.append(PREFIX).append(metric);
+				writeLabel('{', "executor", name);
+				writeLabel(',', "data_source", dataSourceKey);
+				buffer.append("} ").append(count).append('\n');
+			}
+		});
+	}
+
+	/**
+	 * 写入各任务类型在各环节的耗时直方图，只读取{@link AbstractExecutor}内部的直方图，不生成快照。
+	 */
+	private void writeLatencies() {
+		String metric = "task_stage_latency_seconds";
+		writeHeader(metric, "histogram",
+				"Time spent by tasks in each stage.");
+		for (Map.Entry<String, Executor<? extends Task>> entry : executors
+				.entrySet()) {
+			if (!(entry.getValue() instanceof AbstractExecutor)) {
+				continue;
+			}
+			for (Map.Entry<Class<? extends Task>, LatencyHistogram[]> histograms : ((AbstractExecutor<?>) entry
+					.getValue()).getTaskLatencies().histograms().entrySet()) {
+				String taskClass = histograms.getKey().getName();
+				for (TaskStage stage : TaskStage.values()) {
+					LatencyHistogram histogram = histograms.getValue()[stage
+							.ordinal()];
+					long count = histogram.cumulativeCounts(LATENCY_BOUNDS,
+							cumulativeCounts);
+					for (int i = 0; i <= LATENCY_BOUNDS.length; i++) {
+						buffer.append(PREFIX).append(metric).append("_bucket");
+						writeLatencyLabels(entry.getKey(), taskClass, stage);
+						writeLabel(',', "le", i < LATENCY_BOUNDS.length ? LATENCY_LABELS[i]
+								: "+Inf");
+						buffer.append("} ").append(
+								i < LATENCY_BOUNDS.length ? cumulativeCounts[i]
+										: count).append('\n');
+					}
+					buffer.append(PREFIX).append(metric).append("_sum");
+					writeLatencyLabels(entry.getKey(), taskClass, stage);
+					buffer.append("} ").append(histogram.sum() / 1e9).append('\n');
+					buffer.append(PREFIX).append(metric).append("_count");
+					writeLatencyLabels(entry.getKey(), taskClass, stage);
+					buffer.append("} ").append(count).append('\n');
+				}
+			}
+		}
+	}
+
+	/**
+	 * 写入耗时直方图的公共标签，不包含结尾的右括号。
+	 * 
+	 * @param name
+	 *            执行器名称
+	 * @param taskClass
+	 *            任务类型名称
+	 * @param stage
+	 *            任务环节
+	 */
+	private void writeLatencyLabels(String name, String taskClass,
+			TaskStage stage) {
+		writeLabel('{', "executor", name);
+		writeLabel(',', "task_class", taskClass);
+		writeLabel(',', "stage", stage.name().toLowerCase());
+	}
+
+	/**
+	 * 写入指标的说明及类型。
+	 * 
+	 * @param metric
+	 *            不含前缀的指标名
+	 * @param type
+	 *            指标类型
+	 * @param help
+	 *            指标说明
+	 */
+	private void writeHeader(String metric, String type, String help) {
+		buffer.append("# HELP ").append(PREFIX).append(metric).append(' ')
+				.append(help).append('\n');
+		buffer.append("# TYPE ").append(PREFIX).append(metric).append(' ')
+				.append(type).append('\n');
+	}
+
+	/**
+	 * 写入只有executor标签的样本。
+	 * 
+	 * @param metric
+	 *            不含前缀的指标名
+	 * @param name
+	 *            执行器名称
+	 * @param value
+	 *            样本值
+	 */
+	private void writeSample(String metric, String name, long value) {
+		buffer.append(PREFIX).append(metric);
+		writeLabel('{', "executor", name);
+		buffer.append("} ").append(value).append('\n');
+	}
+
+	/**
+	 * 写入一个标签，按文本格式的要求转义标签值中的反斜杠、双引号及换行符。
+	 * 
+	 * @param separator
+	 *            标签前的分隔符
+	 * @param label
+	 *            标签名
+	 * @param value
+	 *            标签值
+	 */
+	private void writeLabel(char separator, String label, String value) {
+		buffer.append(separator).append(label).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ('\\' == c || '"' == c) {
+				buffer.append('\\').append(c);
+			} else if ('\n' == c) {
+				buffer.append("\\n");
+			} else {
+				buffer.append(c);
+			}
+		}
+		buffer.append('"');
+	}
+
+	/**
+	 * {@code /metrics}路径的处理器。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private class MetricsHandler implements HttpHandler {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				byte[] body;
+				try {
+					body = scrape().getBytes("UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				if ("HEAD".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.flush();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.List;
+
+/**
+ * 可恢复的任务队列。
+ * <p>
+ * 可恢复的任务队列会记录放入队列的任务，以及消费者对这些任务的处理结果，进程重启后，可恢复出上次尚未处理完的任务。执行器与可恢复的任务队列的配合方式为：
+ * <ol>
+ * <li>执行器在启动时调用{@link #recover()}获取尚未处理完的任务，并通过任务传送管道重新放入队列。</li>
+ * <li>消费者处理完一批任务后（无论成功与否），执行器调用{@link #acknowledge(List)}确认这批任务已处理完。</li>
+ * </ol>
+ * 
+ * @param <T>
+ *            任务类型
+ * @see JournaledTaskQueue
+ * @author Hu Ruomin
+ */
+public interface RecoverableTaskQueue<T extends Task> extends TaskQueue<T> {
+
+	/**
+	 * 确认一批从队列中取出的任务已处理完，进程重启后这些任务不会再被恢复。
+	 * 
+	 * @param tasks
+	 *            已处理完的任务
+	 * @throws NullPointerException
+	 *             tasks为null
+	 */
+	void acknowledge(List<? extends T> tasks);
+
+	/**
+	 * 获取上次进程退出时尚未处理完的任务，按放入队列的先后顺序排列。
+	 * <p>
+	 * 获取到的任务需通过任务传送管道重新放入队列，重新放入时不会被重复记录。每个队列对象只会返回一次，之后再调用将返回空列表。
+	 * 
+	 * @return 尚未处理完的任务，没有时返回空列表
+	 */
+	List<T> recover();
+}
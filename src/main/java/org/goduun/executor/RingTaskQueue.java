@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁任务队列。
+ * <p>
+ * 采用预分配的环形缓冲区来实现，支持多生产者、多消费者并发操作，放入和取出任务只使用CAS，不使用任何锁：
+ * <ol>
+ * <li>缓冲区的每个槽位都有一个序号，生产者和消费者通过比较槽位序号与自身游标来判断槽位是否可写或可读。</li>
+ * <li>生产者通过CAS推进写游标来抢占槽位，写入任务后发布槽位序号；消费者通过CAS推进读游标来抢占槽位，取出任务后将槽位序号推进一圈。</li>
+ * <li>读写游标均做了缓存行填充，避免生产者与消费者之间的伪共享。</li>
+ * </ol>
+ * 队列满或空时，阻塞方法按照构造时指定的{@link WaitStrategy}进行等待。使用{@link WaitStrategy#PARK}时，阻塞的线程在锁上等待，
+ * 放入或取出任务的线程只在有线程阻塞时才加锁唤醒。
+ * <p>
+ * 队列的实际容量为不小于指定容量的最小的2的幂。
+ *
+ * @param <T>
+ *            任务类型
+ * @see WaitStrategy
+ * @author Hu Ruomin
+ */
+public class RingTaskQueue<T extends Task> implements BatchTaskQueue<T> {
+
+	/**
+	 * 队列允许的最大容量
+	 */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/**
+	 * 环形缓冲区
+	 */
+	private final Object[] buffer;
+
+	/**
+	 * 任务队列最大容量
+	 */
+	private final int capacity;
+
+	/**
+	 * 读游标，即下一个待获取任务的位置
+	 */
+	private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+	/**
+	 * 槽位下标掩码
+	 */
+	private final int mask;
+
+	/**
+	 * 队列非空的通知，等待策略不阻塞时为null
+	 */
+	private final WaitSignal notEmpty;
+
+	/**
+	 * 队列未满的通知，等待策略不阻塞时为null
+	 */
+	private final WaitSignal notFull;
+
+	/**
+	 * 各槽位的序号
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * 写游标，即下一个待放入任务的位置
+	 */
+	private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+	/**
+	 * 队列满或空时的等待策略
+	 */
+	private final WaitStrategy waitStrategy;
+
+	/**
+	 * 构造函数，等待策略默认为{@link WaitStrategy#PARK}。
+	 *
+	 * @param capacity
+	 *            队列的最大容量，实际容量为不小于该值的最小的2的幂
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1或大于2<sup>30</sup>
+	 */
+	public RingTaskQueue(int capacity) {
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * 构造函数。
+	 *
+	 * @param capacity
+	 *            队列的最大容量，实际容量为不小于该值的最小的2的幂
+	 * @param waitStrategy
+	 *            队列满或空时的等待策略
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1或大于2<sup>30</sup>
+	 * @throws IllegalArgumentException
+	 *             waitStrategy为null
+	 */
+	public RingTaskQueue(int capacity, WaitStrategy waitStrategy) {
+		this(capacity, waitStrategy, null);
+	}
+
+	/**
+	 * 构造函数，供由多个环形任务队列组成的队列使用，各队列共用一个队列非空的通知。
+	 *
+	 * @param capacity
+	 *            队列的最大容量，实际容量为不小于该值的最小的2的幂
+	 * @param waitStrategy
+	 *            队列满或空时的等待策略
+	 * @param notEmpty
+	 *            放入任务后发出的队列非空通知，为null时使用当前队列自己的通知
+	 * @throws IllegalArgumentException
+	 *             如果capacity小于1或大于2<sup>30</sup>
+	 * @throws IllegalArgumentException
+	 *             waitStrategy为null
+	 */
+	RingTaskQueue(int capacity, WaitStrategy waitStrategy, WaitSignal notEmpty) {
+		if (capacity < 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException();
+		}
+		if (null == waitStrategy) {
+			throw new IllegalArgumentException();
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.waitStrategy = waitStrategy;
+		if (waitStrategy.isBlocking()) {
+			this.notEmpty = null == notEmpty ? new NotEmptySignal() : notEmpty;
+			this.notFull = new NotFullSignal();
+		} else {
+			this.notEmpty = null;
+			this.notFull = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 先确认从读游标开始连续可读的槽位数，再通过一次CAS抢占这些槽位。
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		if (null == c) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxTasks < 1) {
+			return 0;
+		}
+		while (true) {
+			long pos = head.get();
+			int n = 0;
+			while (n < maxTasks
+					&& sequences.get((int) (pos + n) & mask) == pos + n + 1) {
+				n++;
+			}
+			if (0 == n) {
+				if (head.get() == pos) {
+					return 0;
+				}
+				continue;
+			}
+			if (head.compareAndSet(pos, pos + n)) {
+				for (int i = 0; i < n; i++) {
+					int index = (int) (pos + i) & mask;
+					T task = (T) buffer[index];
+					buffer[index] = null;
+					if (i < n - 1) {
+						sequences.lazySet(index, pos + i + mask + 1);
+					} else {
+						publish(index, pos + i + mask + 1, notFull);
+					}
+					c.add(task);
+				}
+				return n;
+			}
+		}
+	}
+
+	/**
+	 * 获取当前队列的等待策略。
+	 *
+	 * @return 当前队列的等待策略
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task) {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		long pos = tail.get();
+		while (true) {
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (0 == diff) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					buffer[index] = task;
+					// 发布槽位，消费者读到该序号时必然能看到上面写入的任务
+					publish(index, pos + 1, notEmpty);
+					return true;
+				}
+			} else if (diff < 0) {
+				// 该槽位上一圈的任务尚未被取走，队列已满
+				return false;
+			}
+			pos = tail.get();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public boolean offer(T task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int times = 0;
+		while (!offer(task)) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return false;
+			}
+			waitStrategy.idle(times++, notFull, nanos);
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 先确认从写游标开始连续可写的槽位数，再通过一次CAS抢占这些槽位，整批写入。
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		checkTasks(tasks);
+		return offerFrom(tasks, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long pos = head.get();
+		while (true) {
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - (pos + 1);
+			if (0 == diff) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					T task = (T) buffer[index];
+					buffer[index] = null;
+					// 将槽位序号推进一圈，交还给生产者
+					publish(index, pos + mask + 1, notFull);
+					return task;
+				}
+			} else if (diff < 0) {
+				// 该槽位的任务尚未发布，队列为空
+				return null;
+			}
+			pos = head.get();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int times = 0;
+		T task;
+		while (null == (task = poll())) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return null;
+			}
+			waitStrategy.idle(times++, notEmpty, nanos);
+		}
+		return task;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws NullPointerException
+	 *             task为null
+	 */
+	@Override
+	public void put(T task) throws InterruptedException {
+		int times = 0;
+		while (!offer(task)) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(times++, notFull, Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		checkTasks(tasks);
+		int size = tasks.size();
+		int offset = 0;
+		int times = 0;
+		while (offset < size) {
+			int offered = offerFrom(tasks, offset);
+			if (0 < offered) {
+				offset += offered;
+				times = 0;
+				continue;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(times++, notFull, Long.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		// 先读读游标，再读写游标，保证结果不会小于0
+		long headPos = head.get();
+		long size = tail.get() - headPos;
+		if (size < 0) {
+			return 0;
+		}
+		return size > capacity ? capacity : (int) size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T take() throws InterruptedException {
+		int times = 0;
+		T task;
+		while (null == (task = poll())) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waitStrategy.idle(times++, notEmpty, Long.MAX_VALUE);
+		}
+		return task;
+	}
+
+	/**
+	 * 检查待批量放入的任务，不允许有null元素。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	private void checkTasks(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			if (null == task) {
+				throw new NullPointerException();
+			}
+		}
+	}
+
+	/**
+	 * 从指定位置开始，将任务列表中的任务按顺序放入队列，直到全部放入或队列满为止。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务，调用者需保证没有null元素
+	 * @param offset
+	 *            开始放入的位置
+	 * @return 实际放入队列的任务数
+	 */
+	private int offerFrom(List<? extends T> tasks, int offset) {
+		int size = tasks.size();
+		int offered = 0;
+		while (offset + offered < size) {
+			long pos = tail.get();
+			int n = 0;
+			while (offset + offered + n < size
+					&& sequences.get((int) (pos + n) & mask) == pos + n) {
+				n++;
+			}
+			if (0 == n) {
+				if (tail.get() == pos) {
+					break;
+				}
+				continue;
+			}
+			if (tail.compareAndSet(pos, pos + n)) {
+				for (int i = 0; i < n; i++) {
+					int index = (int) (pos + i) & mask;
+					buffer[index] = tasks.get(offset + offered + i);
+					if (i < n - 1) {
+						sequences.lazySet(index, pos + i + 1);
+					} else {
+						publish(index, pos + i + 1, notEmpty);
+					}
+				}
+				offered += n;
+			}
+		}
+		return offered;
+	}
+
+	/**
+	 * 发布槽位的新序号，需要通知时，以volatile写发布后再通知等待的线程。
+	 * 
+	 * @param index
+	 *            槽位下标
+	 * @param sequence
+	 *            槽位的新序号
+	 * @param signal
+	 *            发布后发出的通知，为null时不通知，以延迟写发布
+	 */
+	private void publish(int index, long sequence, WaitSignal signal) {
+		if (null == signal) {
+			sequences.lazySet(index, sequence);
+			return;
+		}
+		sequences.set(index, sequence);
+		signal.signal();
+	}
+
+	/**
+	 * 队列非空的通知。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private final class NotEmptySignal extends WaitSignal {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		boolean isReady() {
+			return 0 < size();
+		}
+	}
+
+	/**
+	 * 队列未满的通知。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private final class NotFullSignal extends WaitSignal {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		boolean isReady() {
+			return size() < capacity;
+		}
+	}
+
+	/**
+	 * 做了缓存行填充的AtomicLong，避免与相邻对象发生伪共享。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private static final class PaddedAtomicLong extends AtomicLong {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 1794383573839519342L;
+
+		/**
+		 * 填充字段
+		 */
+		@SuppressWarnings("unused")
+		private long p1, p2, p3, p4, p5, p6, p7 = 7L;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 执行器内部运行生产者或消费者的线程池。
+ * <p>
+ * 线程池有两种工作方式：
+ * <ol>
+ * <li>排队：同时运行的任务数达到上限后，新提交的任务排队等待，用于运行生产者。</li>
+ * <li>不排队：同时运行的任务数达到上限后，拒绝新提交的任务，用于运行消费者，由调度方决定何时重试。</li>
+ * </ol>
+ * 
+ * @see ThreadingMode
+ * @author Hu Ruomin
+ */
+interface RunnerPool {
+
+	/**
+	 * 提交任务执行。
+	 * 
+	 * @param runner
+	 *            待执行的任务
+	 * @throws RejectedExecutionException
+	 *             不排队的线程池中，同时运行的任务数已达到上限
+	 */
+	void execute(Runnable runner);
+
+	/**
+	 * 获取正在运行的任务数。
+	 * 
+	 * @return 正在运行的任务数
+	 */
+	int getActiveCount();
+
+	/**
+	 * 获取已运行完成的任务总数。
+	 * 
+	 * @return 已运行完成的任务总数
+	 */
+	long getCompletedTaskCount();
+
+	/**
+	 * 获取线程池当前持有的线程数。
+	 * 
+	 * @return 线程池当前持有的线程数
+	 */
+	int getPoolSize();
+
+	/**
+	 * 设置同时运行的任务数上限。
+	 * 
+	 * @param size
+	 *            同时运行的任务数上限，必须大于0
+	 */
+	void setMaxSize(int size);
+
+	/**
+	 * 执行器终止时调用，使空闲的线程尽快被回收。
+	 */
+	void terminate();
+}
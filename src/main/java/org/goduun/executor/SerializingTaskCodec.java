@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * 采用Java序列化的任务编解码器，是没有登记编解码器的任务类型的默认编解码器。
+ * <p>
+ * 编码结果为4字节的长度及序列化后的任务。序列化时任务状态被忽略，父任务以占位符代替，解码时还原为传入的父任务；任务引用的其他任务则被一并序列化，解码出的是副本。
+ * 
+ * @param <T>
+ *            任务类型
+ * @author Hu Ruomin
+ */
+public class SerializingTaskCodec<T extends Task> implements TaskCodec<T> {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T decode(ByteBuffer buffer, Task parent) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		try {
+			ObjectInputStream in = new ParentInputStream(
+					new ByteArrayInputStream(bytes), parent);
+			return (T) in.readObject();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void encode(T task, ByteBuffer buffer) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			ObjectOutputStream out = new ParentOutputStream(bytes,
+					task.getParent());
+			out.writeObject(task);
+			out.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		buffer.putInt(bytes.size());
+		buffer.put(bytes.toByteArray());
+	}
+
+	/**
+	 * 反序列化任务的输入流，将父任务的占位符还原为父任务。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ParentInputStream extends ObjectInputStream {
+
+		/**
+		 * 父任务
+		 */
+		private final Task parent;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param in
+		 *            输入流
+		 * @param parent
+		 *            父任务
+		 * @throws IOException
+		 *             读取流头部失败
+		 */
+		private ParentInputStream(InputStream in, Task parent)
+				throws IOException {
+			super(in);
+			this.parent = parent;
+			enableResolveObject(true);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Object resolveObject(Object obj) {
+			return obj instanceof ParentPlaceholder ? parent : obj;
+		}
+	}
+
+	/**
+	 * 序列化任务的输出流，将父任务替换为占位符，并忽略任务状态。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ParentOutputStream extends ObjectOutputStream {
+
+		/**
+		 * 父任务
+		 */
+		private final Task parent;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param out
+		 *            输出流
+		 * @param parent
+		 *            父任务，可以为null
+		 * @throws IOException
+		 *             写入流头部失败
+		 */
+		private ParentOutputStream(OutputStream out, Task parent)
+				throws IOException {
+			super(out);
+			this.parent = parent;
+			enableReplaceObject(true);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Object replaceObject(Object obj) {
+			if (obj instanceof TaskState) {
+				return null;
+			}
+			if (null != parent && obj == parent) {
+				return new ParentPlaceholder();
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * 父任务的占位符。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ParentPlaceholder implements Serializable {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 5148630027393413257L;
+	}
+}
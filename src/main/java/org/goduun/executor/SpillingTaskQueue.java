@@ -0,0 +1,732 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 可溢出到磁盘的任务队列。
+ * <p>
+ * 队列头部的任务保存在容量有限的内存中，内存满后，后续任务被编码后追加写入磁盘上的段文件，段文件采用内存映射的方式读写：
+ * <ol>
+ * <li>每个段文件只追加写入，写满后再新建下一个段文件，每条记录由4字节的长度、8字节的父任务编号、8字节的放入时间、8字节的任务日志序号及编码后的任务组成。</li>
+ * <li>内存中的任务被取空后，按写入顺序从段文件中读回任务，段文件中的任务全部读回后，该段文件被回收，后续需要新的段文件时从头开始重复使用，
+ * 不再重新创建及映射；最多回收两个段文件，多出的以及为超大任务单独创建的段文件直接丢弃。</li>
+ * <li>只要磁盘上还有未读回的任务，新放入的任务就会继续写入段文件，以保证任务的先进先出顺序。</li>
+ * </ol>
+ * 放入任务的操作永远不会因队列满而阻塞，生产者可以尽快完成生产并释放其占用的资源，消费者随后再慢慢处理。
+ * <p>
+ * 任务通过{@link TaskCodecs}中登记的编解码器编码，没有登记时采用Java序列化。任务状态不会被编码，读回时重新为其创建任务状态，只保留放入队列的时间及在任务日志中的序号（见{@link JournaledTaskQueue}）；父任务也不会被编码，
+ * 而是以编号代替，在内存中保留原对象，读回时再还原为原对象，以保证父任务的唤醒计数不受影响。
+ * <p>
+ * 该队列不保证持久化，段文件只在当前队列对象的生命周期内有效。映射内存无法被主动释放，丢弃的段文件在丢弃时即删除文件，
+ * 映射内存随后由垃圾回收释放，删除文件后磁盘空间也在此时才真正释放；不允许删除已映射文件的平台上（如Windows）删除会失败，
+ * 遗留的段文件与进程退出后遗留的段文件一样，会在下次于同一目录创建队列时删除。
+ * 段文件所在目录须由当前队列独占，不能与其他队列共用。
+ *
+ * @param <T>
+ *            任务类型
+ * @author Hu Ruomin
+ */
+public class SpillingTaskQueue<T extends Task> implements BatchTaskQueue<T> {
+
+	/**
+	 * 默认的段文件大小，单位：字节
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * 最多回收、等待重复使用的段文件数
+	 */
+	private static final int MAX_FREE_SEGMENTS = 2;
+
+	/**
+	 * 段文件名前缀
+	 */
+	private static final String SEGMENT_PREFIX = "spill-";
+
+	/**
+	 * 段文件名后缀
+	 */
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	/**
+	 * 段文件所在目录
+	 */
+	private final File directory;
+
+	/**
+	 * 队列锁
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 内存中的任务
+	 */
+	private final ArrayDeque<T> memory;
+
+	/**
+	 * 内存中最多保存的任务数
+	 */
+	private final int memoryCapacity;
+
+	/**
+	 * 队列非空条件
+	 */
+	private final Condition notEmpty = lock.newCondition();
+
+	/**
+	 * 溢出任务的父任务的编号
+	 */
+	private final Map<Task, Long> referenceIds = new IdentityHashMap<Task, Long>();
+
+	/**
+	 * 溢出任务的父任务，键为编号
+	 */
+	private final Map<Long, Reference> references = new HashMap<Long, Reference>();
+
+	/**
+	 * 下一个父任务编号
+	 */
+	private long nextReferenceId = 0;
+
+	/**
+	 * 编码缓冲区
+	 */
+	private ByteBuffer encoding = ByteBuffer
+			.allocate(TaskCodecs.INITIAL_BUFFER_SIZE);
+
+	/**
+	 * 段文件大小
+	 */
+	private final int segmentSize;
+
+	/**
+	 * 尚未读完的段文件，按写入顺序排列，最后一个为当前写入的段文件
+	 */
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+	/**
+	 * 已读完、等待重复使用的段文件，最多{@link #MAX_FREE_SEGMENTS}个
+	 */
+	private final LinkedList<Segment> freeSegments = new LinkedList<Segment>();
+
+	/**
+	 * 段文件中尚未读回的任务数
+	 */
+	private long spilled = 0;
+
+	/**
+	 * 累计溢出到磁盘的任务数
+	 */
+	private long totalSpilled = 0;
+
+	/**
+	 * 构造函数，段文件大小默认为{@link #DEFAULT_SEGMENT_SIZE}。
+	 *
+	 * @param memoryCapacity
+	 *            内存中最多保存的任务数
+	 * @param directory
+	 *            段文件所在目录，不存在时将自动创建，目录中之前遗留的段文件将被删除
+	 * @throws IllegalArgumentException
+	 *             memoryCapacity小于1
+	 * @throws IllegalArgumentException
+	 *             directory为null或无法创建
+	 */
+	public SpillingTaskQueue(int memoryCapacity, File directory) {
+		this(memoryCapacity, directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * 构造函数。
+	 *
+	 * @param memoryCapacity
+	 *            内存中最多保存的任务数
+	 * @param directory
+	 *            段文件所在目录，不存在时将自动创建，目录中之前遗留的段文件将被删除
+	 * @param segmentSize
+	 *            段文件大小，单位：字节，单个任务序列化后超过该大小时，将为其单独创建一个足够大的段文件
+	 * @throws IllegalArgumentException
+	 *             memoryCapacity小于1
+	 * @throws IllegalArgumentException
+	 *             directory为null或无法创建
+	 * @throws IllegalArgumentException
+	 *             segmentSize小于1024
+	 */
+	public SpillingTaskQueue(int memoryCapacity, File directory, int segmentSize) {
+		if (memoryCapacity < 1 || segmentSize < 1024) {
+			throw new IllegalArgumentException();
+		}
+		if (null == directory) {
+			throw new IllegalArgumentException();
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException();
+		}
+		this.memoryCapacity = memoryCapacity;
+		this.memory = new ArrayDeque<T>(memoryCapacity);
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		deleteStaleSegments();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 溢出到磁盘的任务数不受限制，因此返回{@link Integer#MAX_VALUE}。
+	 */
+	@Override
+	public int capacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int drainTo(Collection<? super T> c, int maxTasks) {
+		if (null == c) {
+			throw new NullPointerException();
+		}
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		if (maxTasks < 1) {
+			return 0;
+		}
+		lock.lock();
+		try {
+			int n = 0;
+			T task;
+			while (n < maxTasks && null != (task = dequeue())) {
+				c.add(task);
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 获取段文件所在目录。
+	 *
+	 * @return 段文件所在目录
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * 获取内存中最多保存的任务数。
+	 *
+	 * @return 内存中最多保存的任务数
+	 */
+	public int getMemoryCapacity() {
+		return memoryCapacity;
+	}
+
+	/**
+	 * 获取段文件中尚未读回的任务数。
+	 *
+	 * @return 段文件中尚未读回的任务数
+	 */
+	public long getSpilledCount() {
+		lock.lock();
+		try {
+			return spilled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 获取累计溢出到磁盘的任务数。
+	 *
+	 * @return 累计溢出到磁盘的任务数
+	 */
+	public long getTotalSpilledCount() {
+		lock.lock();
+		try {
+			return totalSpilled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 内存满时任务将溢出到磁盘，因此总是返回true。
+	 *
+	 * @throws NullPointerException
+	 *             task为null
+	 * @throws IllegalStateException
+	 *             任务无法序列化或写入段文件失败
+	 */
+	@Override
+	public boolean offer(T task) {
+		if (null == task) {
+			throw new NullPointerException();
+		}
+		lock.lock();
+		try {
+			enqueue(task);
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 不会阻塞，等同于{@link #offer(Task)}。
+	 */
+	@Override
+	public boolean offer(T task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return offer(task);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 内存满时任务将溢出到磁盘，因此总是放入全部任务。
+	 *
+	 * @throws IllegalStateException
+	 *             任务无法序列化或写入段文件失败，此时tasks中可能已有部分任务被放入队列
+	 */
+	@Override
+	public int offerAll(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			if (null == task) {
+				throw new NullPointerException();
+			}
+		}
+		lock.lock();
+		try {
+			for (T task : tasks) {
+				enqueue(task);
+			}
+			if (!tasks.isEmpty()) {
+				notEmpty.signalAll();
+			}
+			return tasks.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IllegalStateException
+	 *             读取段文件或反序列化任务失败
+	 */
+	@Override
+	public T poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IllegalStateException
+	 *             读取段文件或反序列化任务失败
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			T task;
+			while (null == (task = dequeue())) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 不会阻塞，等同于{@link #offer(Task)}。
+	 */
+	@Override
+	public void put(T task) throws InterruptedException {
+		offer(task);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 不会阻塞，等同于{@link #offerAll(List)}。
+	 */
+	@Override
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		offerAll(tasks);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			long size = memory.size() + spilled;
+			return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IllegalStateException
+	 *             读取段文件或反序列化任务失败
+	 */
+	@Override
+	public T take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			T task;
+			while (null == (task = dequeue())) {
+				notEmpty.await();
+			}
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 从队列头部取出一个任务，内存中的任务取空后，从段文件中读回任务。调用者需持有队列锁。
+	 *
+	 * @return 队列头部的任务，队列为空时返回null
+	 */
+	private T dequeue() {
+		if (memory.isEmpty() && spilled > 0) {
+			refill();
+		}
+		return memory.poll();
+	}
+
+	/**
+	 * 将任务放入队列尾部，内存满或段文件中还有未读回的任务时，将任务写入段文件。调用者需持有队列锁。
+	 *
+	 * @param task
+	 *            待放入队列的任务
+	 */
+	private void enqueue(T task) {
+		if (0 == spilled && memory.size() < memoryCapacity) {
+			memory.add(task);
+		} else {
+			spill(task);
+		}
+	}
+
+	/**
+	 * 删除段文件所在目录中之前的进程遗留的段文件。
+	 */
+	private void deleteStaleSegments() {
+		File[] files = directory.listFiles();
+		if (null == files) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(SEGMENT_PREFIX)
+					&& name.endsWith(SEGMENT_SUFFIX)) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * 获取一个空的段文件，并作为当前写入的段文件，优先重复使用已回收且足够大的段文件，没有时再新建。
+	 *
+	 * @param size
+	 *            段文件的最小大小
+	 * @return 空的段文件
+	 * @throws IOException
+	 *             创建或映射段文件失败
+	 */
+	private Segment newSegment(int size) throws IOException {
+		for (Iterator<Segment> it = freeSegments.iterator(); it.hasNext();) {
+			Segment segment = it.next();
+			if (segment.writer.capacity() >= size) {
+				it.remove();
+				segment.reset();
+				segments.add(segment);
+				return segment;
+			}
+		}
+		File file = File.createTempFile(SEGMENT_PREFIX, SEGMENT_SUFFIX, directory);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// 映射建立后即使关闭文件，映射依然有效
+			MappedByteBuffer mapped = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+			Segment segment = new Segment(file, mapped);
+			segments.add(segment);
+			return segment;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * 从段文件中按顺序读回任务，直到内存满或段文件中的任务全部读回为止，已读完的段文件将被回收。调用者需持有队列锁。
+	 *
+	 * @throws IllegalStateException
+	 *             读取段文件或反序列化任务失败
+	 */
+	private void refill() {
+		while (spilled > 0 && memory.size() < memoryCapacity) {
+			Segment segment = segments.getFirst();
+			if (segment.read == segment.written) {
+				// 已读完的段文件必然已写满，当前写入的段文件不会在此被回收
+				recycle(segments.removeFirst());
+				continue;
+			}
+			int length = segment.reader.getInt();
+			ByteBuffer record = segment.reader.slice();
+			record.limit(length);
+			segment.reader.position(segment.reader.position() + length);
+			segment.read++;
+			spilled--;
+			memory.add(decode(record));
+		}
+		if (0 == spilled) {
+			// 全部读回后回收所有段文件，包括当前写入的段文件，后续任务从回收的段文件开头开始写入
+			while (!segments.isEmpty()) {
+				recycle(segments.removeFirst());
+			}
+		}
+	}
+
+	/**
+	 * 回收已读完的段文件，等待重复使用的段文件已满{@link #MAX_FREE_SEGMENTS}个或该段文件是为超大任务单独创建的，直接丢弃：
+	 * 删除其文件，不再引用其映射内存，映射内存由垃圾回收释放。调用者需持有队列锁。
+	 *
+	 * @param segment
+	 *            已读完的段文件
+	 */
+	private void recycle(Segment segment) {
+		if (freeSegments.size() < MAX_FREE_SEGMENTS
+				&& segment.writer.capacity() <= segmentSize) {
+			freeSegments.add(segment);
+			return;
+		}
+		// 不允许删除已映射文件的平台上删除会失败，留待下次于同一目录创建队列时删除
+		segment.file.delete();
+	}
+
+	/**
+	 * 将任务编码后写入当前段文件，当前段文件剩余空间不足时，新建一个段文件。调用者需持有队列锁。
+	 *
+	 * @param task
+	 *            待写入的任务
+	 * @throws IllegalStateException
+	 *             任务无法编码或写入段文件失败
+	 */
+	private void spill(T task) {
+		Task parent = task.getParent();
+		Long parentId = null == parent ? null : referenceIds.get(parent);
+		if (null != parent && null == parentId) {
+			parentId = Long.valueOf(nextReferenceId++);
+			referenceIds.put(parent, parentId);
+			references.put(parentId, new Reference(parent));
+		}
+		encoding.clear();
+		encoding.putLong(null == parentId ? -1L : parentId.longValue());
+		TaskState state = task.getTaskState();
+		encoding.putLong(null == state ? 0L : state.getQueuedNanos());
+		encoding.putLong(null == state ? -1L : state.getJournalSequence());
+		encoding = TaskCodecs.encode(task, encoding);
+		encoding.flip();
+		try {
+			int recordSize = 4 + encoding.remaining();
+			Segment segment = segments.isEmpty() ? null : segments.getLast();
+			if (null == segment || segment.writer.remaining() < recordSize) {
+				segment = newSegment(Math.max(segmentSize, recordSize));
+			}
+			segment.writer.putInt(encoding.remaining());
+			segment.writer.put(encoding);
+			segment.written++;
+			spilled++;
+			totalSpilled++;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		if (null != parentId) {
+			references.get(parentId).count++;
+		}
+	}
+
+	/**
+	 * 解码一条记录，将父任务编号还原为原对象，并为解码出的任务创建新的任务状态。
+	 *
+	 * @param record
+	 *            记录，不含开头的长度
+	 * @return 任务
+	 * @throws IllegalStateException
+	 *             任务无法解码
+	 */
+	@SuppressWarnings("unchecked")
+	private T decode(ByteBuffer record) {
+		long parentId = record.getLong();
+		long queuedNanos = record.getLong();
+		long journalSequence = record.getLong();
+		Task parent = null;
+		if (parentId >= 0) {
+			Long id = Long.valueOf(parentId);
+			Reference reference = references.get(id);
+			if (null == reference) {
+				throw new IllegalStateException("unknown parent task: " + id);
+			}
+			if (0 == --reference.count) {
+				references.remove(id);
+				referenceIds.remove(reference.task);
+			}
+			parent = reference.task;
+		}
+		T task = (T) TaskCodecs.decode(record, parent);
+		TaskState state = new TaskState(task);
+		state.setQueuedNanos(queuedNanos);
+		state.setJournalSequence(journalSequence);
+		task.setTaskState(state);
+		return task;
+	}
+
+	/**
+	 * 溢出任务的父任务。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private static final class Reference {
+
+		/**
+		 * 以该任务为父任务且尚未读回的溢出任务数
+		 */
+		private int count = 0;
+
+		/**
+		 * 父任务
+		 */
+		private final Task task;
+
+		/**
+		 * 构造函数。
+		 *
+		 * @param task
+		 *            父任务
+		 */
+		private Reference(Task task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * 段文件。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private static final class Segment {
+
+		/**
+		 * 段文件
+		 */
+		private final File file;
+
+		/**
+		 * 已读回的任务数
+		 */
+		private long read = 0;
+
+		/**
+		 * 读缓冲区，与写缓冲区共享同一块映射内存
+		 */
+		private final ByteBuffer reader;
+
+		/**
+		 * 已写入的任务数
+		 */
+		private long written = 0;
+
+		/**
+		 * 写缓冲区
+		 */
+		private final MappedByteBuffer writer;
+
+		/**
+		 * 构造函数。
+		 *
+		 * @param file
+		 *            段文件
+		 * @param mapped
+		 *            段文件的映射内存
+		 */
+		private Segment(File file, MappedByteBuffer mapped) {
+			this.file = file;
+			this.writer = mapped;
+			this.reader = mapped.duplicate();
+		}
+
+		/**
+		 * 清空段文件，从头开始重复使用。
+		 */
+		private void reset() {
+			writer.clear();
+			reader.clear();
+			read = 0;
+			written = 0;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 任务批次，执行器每次交给消费者处理的一批任务。
+ * <p>
+ * 采用数组来实现，按下标获取任务的时间复杂度为O(1)，清空后可重复使用，避免每批任务都重新分配内存。
+ * <p>
+ * 注意：这不是个线程安全的类
+ *
+ * @author Hu Ruomin
+ * @param <T>
+ *            任务类型
+ */
+final class TaskBatch<T extends Task> {
+
+	/**
+	 * 任务数组
+	 */
+	private Object[] tasks;
+
+	/**
+	 * 当前批次的任务数
+	 */
+	private int size = 0;
+
+	/**
+	 * 当前批次的只读列表视图
+	 */
+	private final List<T> view = new View();
+
+	/**
+	 * 构造函数。
+	 *
+	 * @param initialCapacity
+	 *            初始容量，如小于1，将默认为1
+	 */
+	TaskBatch(int initialCapacity) {
+		tasks = new Object[initialCapacity < 1 ? 1 : initialCapacity];
+	}
+
+	/**
+	 * 向当前批次的末尾增加任务。
+	 *
+	 * @param task
+	 *            待增加的任务
+	 * @throws IllegalArgumentException
+	 *             task为null
+	 */
+	void add(T task) {
+		if (null == task) {
+			throw new IllegalArgumentException();
+		}
+		if (size == tasks.length) {
+			tasks = Arrays.copyOf(tasks, size << 1);
+		}
+		tasks[size++] = task;
+	}
+
+	/**
+	 * 获取当前批次的只读列表视图，视图不复制任何任务，随批次内容的变化而变化。
+	 *
+	 * @return 当前批次的只读列表视图
+	 */
+	List<T> asList() {
+		return view;
+	}
+
+	/**
+	 * 清空当前批次，清空后可重复使用。
+	 */
+	void clear() {
+		Arrays.fill(tasks, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * 获取指定下标的任务。
+	 *
+	 * @param index
+	 *            下标
+	 * @return 指定下标的任务
+	 * @throws IndexOutOfBoundsException
+	 *             下标越界
+	 */
+	@SuppressWarnings("unchecked")
+	T get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return (T) tasks[index];
+	}
+
+	/**
+	 * 获取当前批次的任务数。
+	 *
+	 * @return 当前批次的任务数
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * 任务批次的只读列表视图。
+	 *
+	 * @author Hu Ruomin
+	 */
+	private class View extends AbstractList<T> implements RandomAccess {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T get(int index) {
+			return TaskBatch.this.get(index);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
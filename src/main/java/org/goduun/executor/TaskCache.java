@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goduun.executor.datasource.DataSource;
+
+/**
+ * 任务缓存，按数据源分组缓存从任务队列中取出、尚未交给消费者的任务，用于凑齐同数据源的整批任务。
+ * <p>
+ * 构造时可传入执行器的积压计数器组，缓存会同步更新各数据源的缓存任务数，供其他线程无锁读取。
+ * <p>
+ * 缓存非空的数据源按缓存任务数组成一个大顶堆，获取缓存了任务数最多的数据源的时间复杂度为O(1)，缓存或取出任务后维护堆的时间复杂度为O(log n)；
+ * 下一批任务的数据源由构造时传入的调度选择器选出，并跳过并发批次名额已用尽的数据源。
+ * <p>
+ * 注意：这不是个线程安全的类<br>
+ * 注意：缓存使用了无界队列，如果数据源多的离谱，并且消费者的处理能力很大，可能导致内存占用过高
+ * 
+ * @author Hu Ruomin
+ * @param <T>
+ *            任务类型
+ */
+final class TaskCache<T extends Task> {
+
+	/**
+	 * 各数据源的任务缓存队列
+	 */
+	private final Map<DataSource, CacheList<T>> cachedTaskMap = new HashMap<DataSource, CacheList<T>>();
+
+	/**
+	 * 执行器的积压计数器组，可为null
+	 */
+	private final DataSourceCounters backlogs;
+
+	/**
+	 * 调度选择器
+	 */
+	private final DispatchSelector selector;
+
+	/**
+	 * 缓存非空的数据源的缓存队列，按缓存任务数组成的大顶堆
+	 */
+	private CacheList<?>[] heap = new CacheList<?>[8];
+
+	/**
+	 * 堆中的缓存队列数
+	 */
+	private int heapSize = 0;
+
+	/**
+	 * 缓存的任务总数
+	 */
+	private int size = 0;
+
+	/**
+	 * 构造函数。
+	 * 
+	 * @param backlogs
+	 *            执行器的积压计数器组，缓存任务时加1，取出任务时减少，为null时不统计
+	 * @param selector
+	 *            调度选择器
+	 * @throws IllegalArgumentException
+	 *             selector为null
+	 */
+	TaskCache(DataSourceCounters backlogs, DispatchSelector selector) {
+		if (null == selector) {
+			throw new IllegalArgumentException();
+		}
+		this.backlogs = backlogs;
+		this.selector = selector;
+	}
+
+	/**
+	 * 缓存任务。
+	 * 
+	 * @param task
+	 *            需缓存的任务
+	 * @return 该任务被缓存后，对应缓存队列的大小，task为null时返回0
+	 */
+	int add(T task) {
+		if (null == task) {
+			return 0;
+		}
+		DataSource dataSource = task.getDefaultDataSource();
+		CacheList<T> cacheList = cachedTaskMap.get(dataSource);
+		if (null == cacheList) {
+			cacheList = new CacheList<T>(dataSource, null == backlogs ? null
+					: backlogs.get(dataSource));
+			cachedTaskMap.put(dataSource, cacheList);
+		}
+		cacheList.add(task);
+		if (null != cacheList.backlog) {
+			cacheList.backlog.incrementAndGet();
+		}
+		size++;
+		if (1 == cacheList.size()) {
+			cacheList.cachedNanos = System.nanoTime();
+			offer(cacheList);
+			selector.activated(dataSource, task);
+		} else {
+			siftUp(cacheList.heapIndex, cacheList);
+		}
+		return cacheList.size();
+	}
+
+	/**
+	 * 获取指定数据源的缓存队列由空变为非空的时间，即该数据源开始凑批的时间。
+	 * <p>
+	 * 缓存队列只取走部分任务时，剩余任务沿用原来的时间，取空后再缓存任务才重新计时。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 * @return 开始凑批的时间，单位：纳秒，该数据源没有缓存时返回0
+	 */
+	long getCachedNanos(DataSource dataSource) {
+		CacheList<T> cacheList = cachedTaskMap.get(dataSource);
+		return null == cacheList || cacheList.isEmpty() ? 0
+				: cacheList.cachedNanos;
+	}
+
+	/**
+	 * 获取当前缓存了任务数最多的数据源。
+	 * 
+	 * @return 当前缓存了任务数最多的数据源，没有缓存时返回null
+	 */
+	DataSource getMaxCachedDataSource() {
+		return 0 == heapSize ? null : heap[0].dataSource;
+	}
+
+	/**
+	 * 获取缓存了任务数最多的数据源的缓存任务数。
+	 * 
+	 * @return 缓存了任务数最多的数据源的缓存任务数，没有缓存时返回0
+	 */
+	int getMaxCachedSize() {
+		return 0 == heapSize ? 0 : heap[0].size();
+	}
+
+	/**
+	 * 判断缓存是否为空。
+	 * 
+	 * @return 没有缓存任何任务时返回true
+	 */
+	boolean isEmpty() {
+		return 0 == size;
+	}
+
+	/**
+	 * 从指定数据源的缓存队列头部取出任务，按顺序放入任务批次，取出时剔除已过截止时间的任务。
+	 * <p>
+	 * 剔除的任务放入expiredTasks，不计入最多取出的任务数，因此缓存足够时，任务批次仍能凑满maxTasks个任务。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 * @param batch
+	 *            用于存放取出任务的任务批次
+	 * @param maxTasks
+	 *            最多取出的任务数
+	 * @param expiredTasks
+	 *            用于存放已过截止时间的任务，为null时不剔除
+	 * @return 实际放入任务批次的任务数
+	 * @see DeadlineTask
+	 */
+	int moveTo(DataSource dataSource, TaskBatch<T> batch, int maxTasks,
+			TaskBatch<T> expiredTasks) {
+		CacheList<T> from = cachedTaskMap.get(dataSource);
+		if (null == from || maxTasks <= 0 || from.isEmpty()) {
+			return 0;
+		}
+		int moved = 0;
+		int removed = 0;
+		long now = 0;
+		while (moved < maxTasks && !from.isEmpty()) {
+			T task = from.removeFirst();
+			removed++;
+			if (null != expiredTasks && task instanceof DeadlineTask) {
+				long deadline = ((DeadlineTask) task).getDeadline();
+				if (0 < deadline) {
+					if (0 == now) {
+						now = System.currentTimeMillis();
+					}
+					if (deadline < now) {
+						expiredTasks.add(task);
+						continue;
+					}
+				}
+			}
+			batch.add(task);
+			moved++;
+		}
+		if (null != from.backlog) {
+			from.backlog.addAndGet(-removed);
+		}
+		size -= removed;
+		if (from.isEmpty()) {
+			remove(from);
+		} else {
+			siftDown(from.heapIndex, from);
+		}
+		selector.dispatched(dataSource, removed, from.size(),
+				from.peekFirst());
+		return moved;
+	}
+
+	/**
+	 * 由调度选择器选出下一批任务的数据源，选出的数据源名额已用尽时，按堆中的顺序改选一个名额未用尽的数据源。
+	 * 
+	 * @param limits
+	 *            各数据源的并发批次上限，可为null
+	 * @return 下一批任务的数据源，所有数据源的名额都已用尽时返回调度选择器选出的数据源，没有缓存时返回null
+	 */
+	DataSource select(DataSourceLimits limits) {
+		if (0 == heapSize) {
+			return null;
+		}
+		DataSource largest = heap[0].dataSource;
+		DataSource selected = selector.select(largest);
+		if (selected != largest && 0 == size(selected)) {
+			selected = largest;
+		}
+		if (null == limits || !limits.isLimited()
+				|| !limits.isSaturated(selected)) {
+			return selected;
+		}
+		for (int i = 0; i < heapSize; i++) {
+			if (!limits.isSaturated(heap[i].dataSource)) {
+				return heap[i].dataSource;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * 获取缓存的任务总数。
+	 * 
+	 * @return 缓存的任务总数
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * 获取指定数据源缓存的任务数。
+	 * 
+	 * @param dataSource
+	 *            数据源
+	 * @return 指定数据源缓存的任务数
+	 */
+	int size(DataSource dataSource) {
+		CacheList<T> cacheList = cachedTaskMap.get(dataSource);
+		return null == cacheList ? 0 : cacheList.size();
+	}
+
+	/**
+	 * 将缓存队列加入堆。
+	 * 
+	 * @param cacheList
+	 *            由空变为非空的缓存队列
+	 */
+	private void offer(CacheList<?> cacheList) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize << 1);
+		}
+		siftUp(heapSize++, cacheList);
+	}
+
+	/**
+	 * 将缓存队列移出堆。
+	 * 
+	 * @param cacheList
+	 *            已变为空的缓存队列
+	 */
+	private void remove(CacheList<?> cacheList) {
+		int index = cacheList.heapIndex;
+		CacheList<?> last = heap[--heapSize];
+		heap[heapSize] = null;
+		cacheList.heapIndex = -1;
+		if (last != cacheList) {
+			siftDown(index, last);
+			if (last.heapIndex == index) {
+				siftUp(index, last);
+			}
+		}
+	}
+
+	/**
+	 * 将缓存队列从指定位置向堆顶方向调整。
+	 * 
+	 * @param index
+	 *            起始位置
+	 * @param cacheList
+	 *            缓存队列
+	 */
+	private void siftUp(int index, CacheList<?> cacheList) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			CacheList<?> parentList = heap[parent];
+			if (parentList.size() >= cacheList.size()) {
+				break;
+			}
+			heap[index] = parentList;
+			parentList.heapIndex = index;
+			index = parent;
+		}
+		heap[index] = cacheList;
+		cacheList.heapIndex = index;
+	}
+
+	/**
+	 * 将缓存队列从指定位置向堆底方向调整。
+	 * 
+	 * @param index
+	 *            起始位置
+	 * @param cacheList
+	 *            缓存队列
+	 */
+	private void siftDown(int index, CacheList<?> cacheList) {
+		int half = heapSize >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			int right = child + 1;
+			if (right < heapSize && heap[right].size() > heap[child].size()) {
+				child = right;
+			}
+			if (cacheList.size() >= heap[child].size()) {
+				break;
+			}
+			heap[index] = heap[child];
+			heap[index].heapIndex = index;
+			index = child;
+		}
+		heap[index] = cacheList;
+		cacheList.heapIndex = index;
+	}
+
+	/**
+	 * 一个数据源的任务缓存队列，附带该数据源在执行器中的积压计数器。
+	 * 
+	 * @author Hu Ruomin
+	 * @param <T>
+	 *            任务类型
+	 */
+	private static final class CacheList<T> extends LinkedList<T> {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 4379512160437418762L;
+
+		/**
+		 * 数据源
+		 */
+		private final DataSource dataSource;
+
+		/**
+		 * 该数据源在执行器中的积压计数器，不统计时为null
+		 */
+		private final AtomicInteger backlog;
+
+		/**
+		 * 在堆中的位置，不在堆中时为-1
+		 */
+		private int heapIndex = -1;
+
+		/**
+		 * 缓存队列由空变为非空的时间，单位：纳秒
+		 */
+		private long cachedNanos;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param dataSource
+		 *            数据源
+		 * @param backlog
+		 *            该数据源在执行器中的积压计数器，不统计时为null
+		 */
+		CacheList(DataSource dataSource, AtomicInteger backlog) {
+			this.dataSource = dataSource;
+			this.backlog = backlog;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务类型注册表，登记每个任务类型的下标及任务类型之间的父子关系。
+ * <ol>
+ * <li>下标：为每个任务类型分配一个从0开始连续编号的下标，任务状态以该下标存放各类型子任务的计数与标志位。</li>
+ * <li>父子关系：每个任务类型最多有一个父任务类型，但可以有多个子任务类型，即一个任务可以同时拆分出多种类型的子任务。
+ * 同一任务类型先后作为不同父任务类型的子任务登记时，以首次登记的父任务类型为准，之后登记的其他父任务类型被忽略：
+ * 唤醒检查沿父任务类型逐级向上，父任务类型须保持稳定；需要挂在多个父任务类型下的，请为每个父任务类型定义各自的子任务类型。</li>
+ * </ol>
+ * 注册表采用写时复制，所有登记信息都保存在一份不可变的快照中：
+ * <ol>
+ * <li>读取无锁，任何线程都能读到完整、一致的快照。</li>
+ * <li>登记时先在快照中查找，已登记过的直接返回，同样无锁；只有首次登记某个任务类型或父子关系时才需同步，并发布一份新的快照。</li>
+ * </ol>
+ * 
+ * @author Hu Ruomin
+ */
+final class TaskClassRegistry {
+
+	/**
+	 * 各任务类型的登记信息。 参数说明：Class - 任务类型， ClassInfo - 该任务类型的登记信息。
+	 */
+	private static volatile Map<Class<? extends Task>, ClassInfo> classes = Collections
+			.emptyMap();
+
+	/**
+	 * 获取指定任务类型的父任务类型。
+	 * 
+	 * @param taskClass
+	 *            指定的任务类型
+	 * @return 指定任务类型的父任务类型，未登记或taskClass为null时返回null
+	 */
+	static Class<? extends Task> getParentClass(Class<? extends Task> taskClass) {
+		ClassInfo info = null == taskClass ? null : classes.get(taskClass);
+		return null == info ? null : info.parentClass;
+	}
+
+	/**
+	 * 获取指定任务类型的所有子任务类型。
+	 * 
+	 * @param taskClass
+	 *            指定的任务类型
+	 * @return 指定任务类型的子任务类型的只读列表，按登记的先后顺序排列，没有子任务类型或taskClass为null时返回空列表
+	 */
+	static List<Class<? extends Task>> getSubClasses(
+			Class<? extends Task> taskClass) {
+		ClassInfo info = null == taskClass ? null : classes.get(taskClass);
+		if (null == info) {
+			return Collections.emptyList();
+		}
+		return info.subClasses;
+	}
+
+	/**
+	 * 获取指定任务类型的下标，如果该任务类型尚未登记，先登记再返回。
+	 * 
+	 * @param taskClass
+	 *            指定的任务类型
+	 * @return 指定任务类型的下标
+	 * @throws IllegalArgumentException
+	 *             taskClass为null
+	 */
+	static int indexOf(Class<? extends Task> taskClass) {
+		if (null == taskClass) {
+			throw new IllegalArgumentException();
+		}
+		ClassInfo info = classes.get(taskClass);
+		return null == info ? register(taskClass, null).index : info.index;
+	}
+
+	/**
+	 * 登记任务类型的父子关系，subclass已登记过父任务类型的直接返回，无需同步，也不会复制快照。
+	 * <p>
+	 * parentClass为null时只登记subclass本身，不会清除subclass已登记的父任务类型；
+	 * subclass已登记了其他父任务类型时，仍以首次登记的为准，本次登记被忽略。
+	 * 
+	 * @param subclass
+	 *            子任务类型，为null时该方法不起任何作用
+	 * @param parentClass
+	 *            父任务类型
+	 */
+	static void setRelation(Class<? extends Task> subclass,
+			Class<? extends Task> parentClass) {
+		if (null == subclass) {
+			return;
+		}
+		ClassInfo info = classes.get(subclass);
+		if (null != info && (null == parentClass || null != info.parentClass)) {
+			return;
+		}
+		register(subclass, parentClass);
+	}
+
+	/**
+	 * 在新的快照中登记任务类型，subclass尚未登记父任务类型时同时登记父子关系，再发布新的快照。
+	 * 
+	 * @param subclass
+	 *            任务类型
+	 * @param parentClass
+	 *            父任务类型，为null时只登记subclass本身
+	 * @return subclass的登记信息
+	 */
+	private static synchronized ClassInfo register(
+			Class<? extends Task> subclass, Class<? extends Task> parentClass) {
+		ClassInfo info = classes.get(subclass);
+		if (null != info && (null == parentClass || null != info.parentClass)) {
+			return info;
+		}
+
+		Map<Class<? extends Task>, ClassInfo> newClasses = new HashMap<Class<? extends Task>, ClassInfo>(
+				classes);
+		if (null == info) {
+			newClasses.put(subclass, new ClassInfo(newClasses.size(), null,
+					null));
+		}
+		if (null != parentClass) {
+			if (!newClasses.containsKey(parentClass)) {
+				newClasses.put(parentClass, new ClassInfo(newClasses.size(),
+						null, null));
+			}
+			newClasses.put(parentClass, newClasses.get(parentClass)
+					.withSubClass(subclass));
+			newClasses.put(subclass, newClasses.get(subclass).withParentClass(
+					parentClass));
+		}
+		classes = newClasses;
+		return newClasses.get(subclass);
+	}
+
+	/**
+	 * 不允许实例化
+	 */
+	private TaskClassRegistry() {
+	}
+
+	/**
+	 * 任务类型的登记信息，不可变。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class ClassInfo {
+
+		/**
+		 * 任务类型的下标
+		 */
+		final int index;
+
+		/**
+		 * 父任务类型
+		 */
+		final Class<? extends Task> parentClass;
+
+		/**
+		 * 子任务类型的只读列表
+		 */
+		final List<Class<? extends Task>> subClasses;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param index
+		 *            任务类型的下标
+		 * @param parentClass
+		 *            父任务类型
+		 * @param subClasses
+		 *            子任务类型，为null时表示没有子任务类型
+		 */
+		ClassInfo(int index, Class<? extends Task> parentClass,
+				List<Class<? extends Task>> subClasses) {
+			this.index = index;
+			this.parentClass = parentClass;
+			if (null == subClasses || subClasses.isEmpty()) {
+				this.subClasses = Collections.emptyList();
+			} else {
+				this.subClasses = Collections
+						.unmodifiableList(new ArrayList<Class<? extends Task>>(
+								subClasses));
+			}
+		}
+
+		/**
+		 * 复制一份登记信息，并替换父任务类型。
+		 * 
+		 * @param newParentClass
+		 *            新的父任务类型
+		 * @return 新的登记信息
+		 */
+		ClassInfo withParentClass(Class<? extends Task> newParentClass) {
+			return new ClassInfo(index, newParentClass, subClasses);
+		}
+
+		/**
+		 * 复制一份登记信息，并增加子任务类型。
+		 * 
+		 * @param subclass
+		 *            待增加的子任务类型
+		 * @return 新的登记信息，如果已有该子任务类型，返回当前登记信息
+		 */
+		ClassInfo withSubClass(Class<? extends Task> subclass) {
+			if (subClasses.contains(subclass)) {
+				return this;
+			}
+			List<Class<? extends Task>> newSubClasses = new ArrayList<Class<? extends Task>>(
+					subClasses);
+			newSubClasses.add(subclass);
+			return new ClassInfo(index, parentClass, newSubClasses);
+		}
+	}
+}
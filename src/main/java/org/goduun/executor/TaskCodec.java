@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 任务编解码器。
+ * <p>
+ * 任务需要离开堆内存时（例如溢出到磁盘、记入任务日志），由任务编解码器将任务编码为二进制格式。任务类型可以通过
+ * {@link TaskCodecs#register(Class, int, TaskCodec)}登记自己的编解码器及类型编号，只编码必要的属性（例如编号及少量业务数据），比Java序列化更快、更紧凑；
+ * 没有登记的任务类型采用{@link SerializingTaskCodec}，即Java序列化。
+ * <p>
+ * 编解码器不负责父任务及任务状态：父任务由调用者另行保存，解码时作为参数传入；任务状态由执行器重新创建。
+ * <p>
+ * 编解码器会被多个线程同时调用，必须是线程安全的。
+ * 
+ * @param <T>
+ *            任务类型
+ * @see TaskCodecs
+ * @author Hu Ruomin
+ */
+public interface TaskCodec<T extends Task> {
+
+	/**
+	 * 从缓冲区的当前位置开始读取并解码一个任务，读取后缓冲区的位置位于该任务的编码结果之后。
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 * @param parent
+	 *            解码出的任务的父任务，没有父任务时为null
+	 * @return 解码出的任务
+	 * @throws IllegalStateException
+	 *             缓冲区中的数据无法解码
+	 */
+	T decode(ByteBuffer buffer, Task parent);
+
+	/**
+	 * 将任务编码后从缓冲区的当前位置开始写入，写入后缓冲区的位置位于编码结果之后。
+	 * 
+	 * @param task
+	 *            待编码的任务
+	 * @param buffer
+	 *            缓冲区
+	 * @throws java.nio.BufferOverflowException
+	 *             缓冲区剩余空间不足，调用者会扩大缓冲区后重新编码
+	 * @throws IllegalStateException
+	 *             任务无法编码
+	 */
+	void encode(T task, ByteBuffer buffer);
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 任务编解码器的登记处。
+ * <p>
+ * 任务类型通过{@link #register(Class, int, TaskCodec)}登记自己的编解码器及类型编号，需离开堆内存的任务队列（如{@link SpillingTaskQueue}、
+ * {@link JournaledTaskQueue}）通过登记处对任务进行编解码。编码结果的开头为2字节的类型编号，解码时据此找到对应的编解码器；没有登记编解码器的任务类型采用
+ * {@link SerializingTaskCodec}，此时类型编号为0。
+ * <p>
+ * 类型编号会随编码结果一起写入磁盘，同一任务类型在不同的进程中必须登记相同的编号。编解码器需在使用对应任务类型的任务队列创建之前登记，
+ * 以便任务队列在启动时能解码之前留下的任务。
+ * 
+ * @see TaskCodec
+ * @author Hu Ruomin
+ */
+public final class TaskCodecs {
+
+	/**
+	 * 编码时缓冲区的初始大小，单位：字节
+	 */
+	static final int INITIAL_BUFFER_SIZE = 256;
+
+	/**
+	 * 类型编号的最大值
+	 */
+	public static final int MAX_TYPE_ID = 0xFFFF;
+
+	/**
+	 * 已登记的编解码器，键为任务类型
+	 */
+	private static final ConcurrentMap<Class<? extends Task>, Registration> REGISTRATIONS_BY_CLASS = new ConcurrentHashMap<Class<? extends Task>, Registration>();
+
+	/**
+	 * 已登记的编解码器，下标为类型编号
+	 */
+	private static volatile Registration[] registrationsById = new Registration[0];
+
+	/**
+	 * 默认的编解码器
+	 */
+	private static final TaskCodec<Task> SERIALIZING_CODEC = new SerializingTaskCodec<Task>();
+
+	/**
+	 * 构造函数。
+	 */
+	private TaskCodecs() {
+	}
+
+	/**
+	 * 获取指定任务类型的编解码器。
+	 * 
+	 * @param taskClass
+	 *            任务类型
+	 * @return 登记的编解码器，没有登记时返回{@link SerializingTaskCodec}
+	 * @throws IllegalArgumentException
+	 *             taskClass为null
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Task> TaskCodec<T> getCodec(Class<T> taskClass) {
+		if (null == taskClass) {
+			throw new IllegalArgumentException();
+		}
+		Registration registration = REGISTRATIONS_BY_CLASS.get(taskClass);
+		return (TaskCodec<T>) (null == registration ? SERIALIZING_CODEC
+				: registration.codec);
+	}
+
+	/**
+	 * 登记指定任务类型的编解码器及类型编号，只对该类型本身有效，对其子类无效。重复登记时，新的编解码器及编号将代替原有的编解码器及编号。
+	 * 
+	 * @param taskClass
+	 *            任务类型
+	 * @param typeId
+	 *            类型编号，取值范围为1至{@link #MAX_TYPE_ID}，编码时代替任务类名写入编码结果的开头
+	 * @param codec
+	 *            编解码器
+	 * @throws IllegalArgumentException
+	 *             taskClass或codec为null，或typeId超出取值范围，或typeId已被其他任务类型登记
+	 */
+	@SuppressWarnings("unchecked")
+	public static synchronized <T extends Task> void register(
+			Class<T> taskClass, int typeId, TaskCodec<T> codec) {
+		if (null == taskClass || null == codec || typeId < 1
+				|| typeId > MAX_TYPE_ID) {
+			throw new IllegalArgumentException();
+		}
+		Registration[] current = registrationsById;
+		if (typeId < current.length && null != current[typeId]
+				&& current[typeId].taskClass != taskClass) {
+			throw new IllegalArgumentException();
+		}
+		Registration registration = new Registration(taskClass, typeId,
+				(TaskCodec<Task>) codec);
+		Registration[] copy = new Registration[Math.max(typeId + 1,
+				current.length)];
+		System.arraycopy(current, 0, copy, 0, current.length);
+		Registration previous = REGISTRATIONS_BY_CLASS.get(taskClass);
+		if (null != previous) {
+			copy[previous.typeId] = null;
+		}
+		copy[typeId] = registration;
+		registrationsById = copy;
+		REGISTRATIONS_BY_CLASS.put(taskClass, registration);
+	}
+
+	/**
+	 * 从缓冲区的当前位置开始读取并解码一个由{@link #encode(Task, ByteBuffer)}编码的任务，读取后缓冲区的位置位于该任务的编码结果之后。
+	 * 
+	 * @param buffer
+	 *            缓冲区
+	 * @param parent
+	 *            解码出的任务的父任务，没有父任务时为null
+	 * @return 解码出的任务
+	 * @throws IllegalStateException
+	 *             任务类型没有登记编解码器，或缓冲区中的数据无法解码
+	 */
+	public static Task decode(ByteBuffer buffer, Task parent) {
+		int typeId = buffer.getShort() & MAX_TYPE_ID;
+		if (0 == typeId) {
+			return SERIALIZING_CODEC.decode(buffer, parent);
+		}
+		Registration[] current = registrationsById;
+		Registration registration = typeId < current.length ? current[typeId]
+				: null;
+		if (null == registration) {
+			throw new IllegalStateException("no codec registered for type "
+					+ typeId);
+		}
+		return registration.codec.decode(buffer, parent);
+	}
+
+	/**
+	 * 通过任务类型对应的编解码器编码任务，从缓冲区的当前位置开始写入，缓冲区剩余空间不足时，分配一个更大的缓冲区，复制已有内容后重新编码。
+	 * 
+	 * @param task
+	 *            待编码的任务
+	 * @param buffer
+	 *            缓冲区，须为堆内缓冲区
+	 * @return 写入了编码结果的缓冲区，可能是新分配的缓冲区，其位置位于编码结果之后
+	 * @throws IllegalStateException
+	 *             任务无法编码
+	 */
+	public static ByteBuffer encode(Task task, ByteBuffer buffer) {
+		Registration registration = REGISTRATIONS_BY_CLASS.get(task.getClass());
+		int start = buffer.position();
+		while (true) {
+			try {
+				if (null == registration) {
+					buffer.putShort((short) 0);
+					SERIALIZING_CODEC.encode(task, buffer);
+				} else {
+					buffer.putShort((short) registration.typeId);
+					registration.codec.encode(task, buffer);
+				}
+				return buffer;
+			} catch (BufferOverflowException e) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(
+						buffer.capacity() << 1, INITIAL_BUFFER_SIZE));
+				larger.put(buffer.array(), buffer.arrayOffset(), start);
+				buffer = larger;
+			}
+		}
+	}
+
+	/**
+	 * 编解码器的登记信息。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class Registration {
+
+		/**
+		 * 编解码器
+		 */
+		private final TaskCodec<Task> codec;
+
+		/**
+		 * 任务类型
+		 */
+		private final Class<? extends Task> taskClass;
+
+		/**
+		 * 类型编号
+		 */
+		private final int typeId;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param taskClass
+		 *            任务类型
+		 * @param typeId
+		 *            类型编号
+		 * @param codec
+		 *            编解码器
+		 */
+		private Registration(Class<? extends Task> taskClass, int typeId,
+				TaskCodec<Task> codec) {
+			this.taskClass = taskClass;
+			this.typeId = typeId;
+			this.codec = codec;
+		}
+	}
+}
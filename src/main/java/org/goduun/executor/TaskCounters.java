@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按任务类型下标存放的一组计数器，每个任务类型占用固定个数的long型字段，读取与更新字段均为无锁的原子操作。
+ * <p>
+ * 字段按任务类型下标分段存放，每段存放若干个任务类型，通过段目录按下标直接定位。段只在第一次被用到时分配，
+ * 未用到的段只占用目录中的一个空引用；分配段时加锁复制一份新的目录，目录只复制段的引用，不复制段中的字段，
+ * 因此不会丢失并发的更新。
+ * 
+ * @see TaskClassRegistry
+ * @author Hu Ruomin
+ */
+final class TaskCounters {
+
+	/**
+	 * 每段存放的任务类型数
+	 */
+	private static final int CLASSES_PER_SEGMENT = 8;
+
+	/**
+	 * 每个任务类型占用的字段数
+	 */
+	private final int fields;
+
+	/**
+	 * 段目录，第i个元素存放第i段，尚未分配的段为null，只在持有当前对象的锁时整体替换
+	 */
+	private volatile Segment[] segments = new Segment[1];
+
+	/**
+	 * 构造函数
+	 * 
+	 * @param fields
+	 *            每个任务类型占用的字段数
+	 * @throws IllegalArgumentException
+	 *             fields小于1
+	 */
+	TaskCounters(int fields) {
+		if (fields < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.fields = fields;
+	}
+
+	/**
+	 * 使指定字段增加指定值。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param field
+	 *            字段序号
+	 * @param delta
+	 *            增加的值
+	 * @return 增加后的值
+	 */
+	long addAndGet(int classIndex, int field, long delta) {
+		return segmentOf(classIndex, true).values.addAndGet(
+				slotOf(classIndex, field), delta);
+	}
+
+	/**
+	 * 获取指定字段的值。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param field
+	 *            字段序号
+	 * @return 指定字段的值，从未设置过时为0
+	 */
+	long get(int classIndex, int field) {
+		Segment segment = segmentOf(classIndex, false);
+		return null == segment ? 0L : segment.values.get(slotOf(classIndex,
+				field));
+	}
+
+	/**
+	 * 判断指定字段是否包含指定的位。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param field
+	 *            字段序号
+	 * @param bits
+	 *            指定的位
+	 * @return 指定的位是否全部为1
+	 */
+	boolean hasBits(int classIndex, int field, long bits) {
+		return bits == (get(classIndex, field) & bits);
+	}
+
+	/**
+	 * 将指定字段的指定位设置为1。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param field
+	 *            字段序号
+	 * @param bits
+	 *            指定的位
+	 * @return 如果指定的位此前未全部为1，返回true
+	 */
+	boolean setBits(int classIndex, int field, long bits) {
+		AtomicLongArray values = segmentOf(classIndex, true).values;
+		int slot = slotOf(classIndex, field);
+		while (true) {
+			long current = values.get(slot);
+			if (bits == (current & bits)) {
+				return false;
+			}
+			if (values.compareAndSet(slot, current, current | bits)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 获取指定任务类型所在的段。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param isCreating
+	 *            段不存在时是否创建
+	 * @return 指定任务类型所在的段，段不存在且不创建时返回null
+	 */
+	private Segment segmentOf(int classIndex, boolean isCreating) {
+		int index = classIndex / CLASSES_PER_SEGMENT;
+		Segment[] current = segments;
+		if (index < current.length && null != current[index]) {
+			return current[index];
+		}
+		return isCreating ? createSegment(index) : null;
+	}
+
+	/**
+	 * 分配指定段，已被其他线程分配时直接返回已有的段。
+	 * 
+	 * @param index
+	 *            段序号
+	 * @return 指定段
+	 */
+	private synchronized Segment createSegment(int index) {
+		Segment[] current = segments;
+		if (index < current.length && null != current[index]) {
+			return current[index];
+		}
+		Segment[] copy = new Segment[Math.max(index + 1, current.length)];
+		System.arraycopy(current, 0, copy, 0, current.length);
+		Segment segment = new Segment(fields);
+		copy[index] = segment;
+		segments = copy;
+		return segment;
+	}
+
+	/**
+	 * 获取指定字段在段内的位置。
+	 * 
+	 * @param classIndex
+	 *            任务类型下标
+	 * @param field
+	 *            字段序号
+	 * @return 指定字段在段内的位置
+	 */
+	private int slotOf(int classIndex, int field) {
+		return classIndex % CLASSES_PER_SEGMENT * fields + field;
+	}
+
+	/**
+	 * 计数器的一段，存放连续若干个任务类型的字段。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	private static final class Segment {
+
+		/**
+		 * 本段的字段值
+		 */
+		final AtomicLongArray values;
+
+		/**
+		 * 构造函数
+		 * 
+		 * @param fields
+		 *            每个任务类型占用的字段数
+		 */
+		Segment(int fields) {
+			this.values = new AtomicLongArray(CLASSES_PER_SEGMENT * fields);
+		}
+	}
+}
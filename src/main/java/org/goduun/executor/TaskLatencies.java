@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 执行器按任务类型、任务环节统计的耗时直方图。
+ * <p>
+ * 每个任务类型在首次记录时分配一组直方图，之后的记录无锁。
+ * 
+ * @see TaskStage
+ * @author Hu Ruomin
+ */
+final class TaskLatencies {
+
+	/**
+	 * 各任务类型各环节的耗时直方图，数组下标为{@link TaskStage#ordinal()}
+	 */
+	private final ConcurrentMap<Class<? extends Task>, LatencyHistogram[]> histograms = new ConcurrentHashMap<Class<? extends Task>, LatencyHistogram[]>();
+
+	/**
+	 * 获取指定任务类型各环节的耗时直方图，没有时新建。
+	 * 
+	 * @param taskClass
+	 *            任务类型
+	 * @return 各环节的耗时直方图，数组下标为{@link TaskStage#ordinal()}
+	 */
+	LatencyHistogram[] get(Class<? extends Task> taskClass) {
+		LatencyHistogram[] stages = histograms.get(taskClass);
+		if (null != stages) {
+			return stages;
+		}
+		stages = new LatencyHistogram[TaskStage.values().length];
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = new LatencyHistogram();
+		}
+		LatencyHistogram[] existing = histograms.putIfAbsent(taskClass,
+				stages);
+		return null == existing ? stages : existing;
+	}
+
+	/**
+	 * 获取各任务类型的耗时直方图，直接返回内部的并发映射表的只读视图，遍历时不复制。
+	 * 
+	 * @return 各任务类型各环节的耗时直方图，数组下标为{@link TaskStage#ordinal()}
+	 */
+	Map<Class<? extends Task>, LatencyHistogram[]> histograms() {
+		return Collections.unmodifiableMap(histograms);
+	}
+
+	/**
+	 * 获取所有耗时直方图当前的快照。
+	 * 
+	 * @return 按任务类型名称排序的快照，参数说明：String - 任务类型名称，TaskStage - 任务环节
+	 */
+	Map<String, Map<TaskStage, LatencySnapshot>> snapshot() {
+		Map<String, Map<TaskStage, LatencySnapshot>> result = new TreeMap<String, Map<TaskStage, LatencySnapshot>>();
+		for (Map.Entry<Class<? extends Task>, LatencyHistogram[]> entry : histograms
+				.entrySet()) {
+			Map<TaskStage, LatencySnapshot> stages = new EnumMap<TaskStage, LatencySnapshot>(
+					TaskStage.class);
+			for (TaskStage stage : TaskStage.values()) {
+				stages.put(stage, entry.getValue()[stage.ordinal()].snapshot());
+			}
+			result.put(entry.getKey().getName(), stages);
+		}
+		return result;
+	}
+}
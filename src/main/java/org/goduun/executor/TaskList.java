@@ -15,8 +15,9 @@
  */
 package org.goduun.executor;
 
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -28,7 +29,7 @@ import java.util.List;
  * <p>
  * 任务传送列表提供了两种获取任务的方式：
  * <ol>
- * <li>迭代获取：{@link #get()}</li>
+ * <li>迭代获取：{@link #get()}或{@link #iterator()}（即for-each语句）</li>
  * <li>一次性获取：{@link #toList()}</li>
  * </ol>
  * 两种方式是互斥的，如果使用了迭代方式，就不能使用一次性方式，反之亦然。
@@ -37,17 +38,19 @@ import java.util.List;
  * 执行器会自动记录任务的开始时间和结束时间，并且逐条输出任务的结束日志。
  * <p>
  * 当使用一次性获取方式时，执行器不会记录任务的开始时间和结束时间，需要调用者自行记录。并且在整批任务都处理完成后，执行器才会输出任务结束日志。
+ * <p>
+ * 任务列表基于数组实现，按下标获取任务的时间复杂度为O(1)，一次性获取方式返回的是只读视图，不会复制任务。
  * 
  * @author Hu Ruomin
  * @param <T>
  *            任务类型
  */
-public class TaskList<T extends Task> {
+public class TaskList<T extends Task> implements Iterable<T> {
 
 	/**
-	 * 任务列表
+	 * 任务批次
 	 */
-	private final List<T> tasks;
+	private final TaskBatch<T> tasks;
 
 	/**
 	 * 所属执行器
@@ -55,10 +58,15 @@ public class TaskList<T extends Task> {
 	private final Executor<? extends Task> executor;
 
 	/**
-	 * 迭代索引
+	 * 迭代索引，即已被获取的任务数
 	 */
 	private int index = 0;
 
+	/**
+	 * 已结束执行的任务数
+	 */
+	private int stopped = 0;
+
 	/**
 	 * 标识当前的任务列表对象是否调用过{@link #toList()}方法
 	 */
@@ -84,6 +92,34 @@ public class TaskList<T extends Task> {
 	 *             executor为null
 	 */
 	public TaskList(List<T> tasks, Executor<? extends Task> executor) {
+		if (null == tasks || null == executor) {
+			throw new IllegalArgumentException();
+		}
+		if (0 == tasks.size()) {
+			throw new IllegalArgumentException();
+		}
+		this.tasks = new TaskBatch<T>(tasks.size());
+		for (T task : tasks) {
+			this.tasks.add(task);
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * 构造函数，直接使用指定的任务批次，不复制任务。
+	 * 
+	 * @param tasks
+	 *            任务批次
+	 * @param executor
+	 *            所属执行器
+	 * @throws IllegalArgumentException
+	 *             tasks为null
+	 * @throws IllegalArgumentException
+	 *             tasks.size()为0
+	 * @throws IllegalArgumentException
+	 *             executor为null
+	 */
+	TaskList(TaskBatch<T> tasks, Executor<? extends Task> executor) {
 		if (null == tasks || null == executor) {
 			throw new IllegalArgumentException();
 		}
@@ -128,6 +164,64 @@ public class TaskList<T extends Task> {
 		return isGetInvoked;
 	}
 
+	/**
+	 * 迭代获取任务，与{@link #get()}属于同一种获取方式，两者共享迭代进度。
+	 * <p>
+	 * 示例：
+	 * 
+	 * <pre>
+	 * for (T task : taskList) {
+	 * 	// handle task
+	 * }
+	 * </pre>
+	 * 
+	 * 用此方式获取任务时，执行器将自动记录任务的开始和结束时间，并逐条输出日志。最后一个任务在迭代器的hasNext()返回false时结束。
+	 * 
+	 * @return 任务迭代器，不支持remove操作
+	 * @throws IllegalStateException
+	 *             如果已使用过{@link #toList()}方法获取任务
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		if (isToListInvoked) {
+			throw new IllegalStateException();
+		}
+		isGetInvoked = true;
+		return new Iterator<T>() {
+
+			@Override
+			public boolean hasNext() {
+				if (index < tasks.size()) {
+					return true;
+				}
+				stopPreviousTask();
+				return false;
+			}
+
+			@Override
+			public T next() {
+				if (index >= tasks.size()) {
+					throw new NoSuchElementException();
+				}
+				return getTask();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * 结束迭代获取方式下最后一个被获取、尚未结束的任务，消费者中途退出迭代或抛出异常时，由执行器在消费者执行完后调用，保证每个被获取的任务都被结束一次。
+	 */
+	void finish() {
+		if (isGetInvoked) {
+			stopPreviousTask();
+		}
+	}
+
 	/**
 	 * 获取列表的任务总数。
 	 * 
@@ -140,6 +234,9 @@ public class TaskList<T extends Task> {
 	/**
 	 * 一次性获取任务，该方法只能调用一次，第一次调用时返回所有的任务列表（不会为null且size()>0），之后再次调用时永远返回null。
 	 * <p>
+	 * 返回的任务列表是一个只读视图，不会复制任务，任何修改操作都将抛出UnsupportedOperationException。
+	 * 执行器为每批任务分配独立的任务批次、不会复用，因此消费者执行完后该视图仍然有效，内容保持不变，可以保留；需要修改时，请复制一份，如{@code new ArrayList<T>(list)}。
+	 * <p>
 	 * 用此方式获取任务时，执行器不会自动记录任务开始和结束时间，需要手工记录。在整批任务全部处理完之后，才会进行日志输出。
 	 * 
 	 * @return 任务列表，如果列表已被获取过，返回null
@@ -154,16 +251,8 @@ public class TaskList<T extends Task> {
 			return null;
 		}
 		isToListInvoked = true;
-		List<T> list = new LinkedList<T>();
-		T task;
-		while (null != (task = getTask())) {
-			try {
-				list.add(task);
-			} catch (Exception e) {
-				continue;
-			}
-		}
-		return list;
+		index = tasks.size();
+		return tasks.asList();
 	}
 
 	/**
@@ -176,29 +265,31 @@ public class TaskList<T extends Task> {
 	}
 
 	/**
-	 * 迭代获取获取，并根据情况记录任务开始时间和任务结束时间、日志输出。
+	 * 迭代获取任务，自动结束上一个任务、开始当前任务，并输出上一个任务的结束日志。
 	 * 
-	 * @return 获取到的任务
+	 * @return 获取到的任务，如果整个迭代过程已完成，返回null
 	 */
 	private T getTask() {
-		T task = null;
-		if (index <= tasks.size()) {
-			// 如果是通过调用get()方法来获取任务，那么自动记录所有任务的开始和结束时间，并输出结束日志
-			if (0 < index && isGetInvoked) {
-				T preTask = tasks.get(index - 1);
-				preTask.stopExecuting();
-				if (executor instanceof AbstractExecutor) {
-					((AbstractExecutor<?>) executor).logTaskCompletion(preTask);
-				}
-			}
-			// 获取任务并返回
-			if (index < tasks.size()) {
-				task = tasks.get(index++);
-				if (!toListInvoked()) {
-					task.startExecuting();
-				}
+		stopPreviousTask();
+		if (index < tasks.size()) {
+			T task = tasks.get(index++);
+			task.startExecuting();
+			return task;
+		}
+		return null;
+	}
+
+	/**
+	 * 结束上一个被获取的任务，记录结束时间并输出结束日志，每个任务只会被结束一次。
+	 */
+	private void stopPreviousTask() {
+		if (stopped < index) {
+			T preTask = tasks.get(index - 1);
+			preTask.stopExecuting();
+			stopped = index;
+			if (executor instanceof AbstractExecutor) {
+				((AbstractExecutor<?>) executor).logTaskCompletion(preTask);
 			}
 		}
-		return task;
 	}
 }
@@ -15,6 +15,9 @@
  */
 package org.goduun.executor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -98,6 +101,25 @@ public class TaskPipe<T extends Task> {
 		return success;
 	}
 
+	/**
+	 * 尝试将一批任务通过管道放入任务队列，非阻塞方法，调用后会立刻返回。任务按列表顺序放入，直到全部放入或队列满为止。
+	 * <p>
+	 * 与循环调用{@link #offer(Task)}相比，该方法对同一类型的任务只登记一次任务类型关系，对同父同类的连续任务只遍历一次祖先任务并一次性更新计数，
+	 * 并将整批任务一次性放入任务队列，适合一次生产大量任务的生产者。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @return 实际放入队列的任务数，即tasks中的前若干个任务已被放入队列
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	public int offerAll(List<? extends T> tasks) {
+		List<? extends T> taskList = doBeforeTasksQueued(tasks);
+		int offered = TaskQueues.offerAll(taskQueue, taskList);
+		doAfterTasksQueued(taskList, 0, offered);
+		return offered;
+	}
+
 	/**
 	 * 尝试将任务通过管道放入任务队列，阻塞方法，如果当前任务队列满，线程将阻塞，等待队列有空位出现，当任务成功放入队列或线程阻塞超过指定时长后，
 	 * 方法将返回。
@@ -150,6 +172,35 @@ public class TaskPipe<T extends Task> {
 		doAfterTaskQueued(task);
 	}
 
+	/**
+	 * 将一批任务按列表顺序通过管道放入任务队列，阻塞方法，当任务队列满时，当前线程将阻塞，直到所有任务都被放入队列后，方法才会返回。
+	 * <p>
+	 * 批量处理的方式同{@link #offerAll(List)}。
+	 * 
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 * @throws InterruptedException
+	 *             阻塞过程中线程被中断，此时tasks中可能已有部分任务被放入队列，这部分任务已完成计数及日志输出
+	 */
+	public void putAll(List<? extends T> tasks) throws InterruptedException {
+		List<? extends T> taskList = doBeforeTasksQueued(tasks);
+		int size = taskList.size();
+		int offset = 0;
+		while (offset < size) {
+			int offered = TaskQueues.offerAll(taskQueue,
+					taskList.subList(offset, size));
+			// 队列已满，阻塞放入一个任务，等队列腾出空位后再继续批量放入
+			if (0 == offered) {
+				taskQueue.put(taskList.get(offset));
+				offered = 1;
+			}
+			doAfterTasksQueued(taskList, offset, offset + offered);
+			offset += offered;
+		}
+	}
+
 	/**
 	 * 当任务放入任务队列前需处理的逻辑。
 	 * 
@@ -164,6 +215,7 @@ public class TaskPipe<T extends Task> {
 		TaskState taskState = new TaskState(task);
 		Class<? extends Task> parentClass = null == task.getParent() ? null : task.getParent().getClass();
 		TaskState.setTaskClassRelation(task.getClass(), parentClass);
+		taskState.setQueuedNanos(queuedNanos());
 		task.setTaskState(taskState);
 	}
 	
@@ -179,30 +231,135 @@ public class TaskPipe<T extends Task> {
 		}
 		
 		// 更新任务状态
-		Task parent = task.getParent();
-		if (null != parent) {
-			TaskState parentState = parent.getTaskState();
-			if (null != parentState) {
-				while (null != parentState) {
-					parentState.increaseUnExecutedSubtask(task.getClass());
-					parentState.increaseUnAwakedSubtask(task.getClass());
-					
-					parent = parent.getParent();
-					try {
-						parentState = parent.getTaskState();
-					} catch (Exception e) {
-						parentState = null;
-					}
-				}
-			}
-		}
+		increaseAncestorSubtask(task, 1L);
 
 		// 通过任务管道成功放入任务队列的任务总数加1
 		count.incrementAndGet();
 
-		// 输出任务生成日志
+		// 输出任务生成日志，通知调度线程
 		if (executor instanceof AbstractExecutor) {
 			((AbstractExecutor<?>) executor).logTaskGeneration(task);
+			((AbstractExecutor<?>) executor).signalTaskQueued();
+		}
+	}
+
+	/**
+	 * 当一批任务放入任务队列前需处理的逻辑。
+	 * 
+	 * @param tasks
+	 *            即将放入任务队列的任务
+	 * @return 可按下标高效访问的任务列表
+	 * @throws NullPointerException
+	 *             tasks为null或tasks中有null元素
+	 */
+	private List<? extends T> doBeforeTasksQueued(List<? extends T> tasks) {
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		List<? extends T> taskList = tasks instanceof RandomAccess ? tasks
+				: new ArrayList<T>(tasks);
+
+		// 连续的同类任务只登记一次任务类型关系，整批任务只取一次时间
+		long queuedNanos = queuedNanos();
+		Class<? extends Task> lastClass = null;
+		Class<? extends Task> lastParentClass = null;
+		for (T task : taskList) {
+			if (null == task) {
+				throw new NullPointerException();
+			}
+			Class<? extends Task> taskClass = task.getClass();
+			Class<? extends Task> parentClass = null == task.getParent() ? null
+					: task.getParent().getClass();
+			if (taskClass != lastClass || parentClass != lastParentClass) {
+				TaskState.setTaskClassRelation(taskClass, parentClass);
+				lastClass = taskClass;
+				lastParentClass = parentClass;
+			}
+			TaskState taskState = new TaskState(task);
+			taskState.setQueuedNanos(queuedNanos);
+			task.setTaskState(taskState);
+		}
+		return taskList;
+	}
+
+	/**
+	 * 当一批任务成功放入任务队列后需处理的逻辑。
+	 * 
+	 * @param tasks
+	 *            任务列表
+	 * @param from
+	 *            成功放入任务队列的第一个任务的下标（包含）
+	 * @param to
+	 *            成功放入任务队列的最后一个任务的下标（不包含）
+	 */
+	private void doAfterTasksQueued(List<? extends T> tasks, int from, int to) {
+		if (from >= to) {
+			return;
+		}
+
+		// 更新任务状态，同父同类的连续任务只遍历一次祖先
+		int i = from;
+		while (i < to) {
+			T first = tasks.get(i);
+			int j = i + 1;
+			while (j < to && tasks.get(j).getParent() == first.getParent()
+					&& tasks.get(j).getClass() == first.getClass()) {
+				j++;
+			}
+			increaseAncestorSubtask(first, j - i);
+			i = j;
+		}
+
+		// 通过任务管道成功放入任务队列的任务总数增加
+		count.addAndGet(to - from);
+
+		// 输出任务生成日志
+		if (executor instanceof AbstractExecutor
+				&& executor.isLoggingTask()) {
+			for (i = from; i < to; i++) {
+				((AbstractExecutor<?>) executor).logTaskGeneration(tasks
+						.get(i));
+			}
+		}
+
+		// 通知调度线程
+		if (executor instanceof AbstractExecutor) {
+			((AbstractExecutor<?>) executor).signalTaskQueued();
+		}
+	}
+
+	/**
+	 * 获取任务放入任务队列的时间，所属执行器不记录耗时时为0。
+	 * 
+	 * @return 任务放入任务队列的时间
+	 */
+	private long queuedNanos() {
+		if (executor instanceof AbstractExecutor
+				&& !((AbstractExecutor<?>) executor).isRecordingLatency()) {
+			return 0;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * 使指定任务所有祖先针对该任务类型的未过执行环节及未过唤醒环节的子任务数增加指定值。
+	 * 
+	 * @param task
+	 *            指定任务
+	 * @param delta
+	 *            增加的子任务数
+	 */
+	private void increaseAncestorSubtask(Task task, long delta) {
+		Class<? extends Task> taskClass = task.getClass();
+		Task parent = task.getParent();
+		while (null != parent) {
+			TaskState parentState = parent.getTaskState();
+			if (null == parentState) {
+				break;
+			}
+			parentState.increaseUnExecutedSubtask(taskClass, delta);
+			parentState.increaseUnAwakedSubtask(taskClass, delta);
+			parent = parent.getParent();
 		}
 	}
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 任务队列的工具方法，任务队列实现了{@link BatchTaskQueue}时整批存取，否则逐个存取。
+ * 
+ * @author Hu Ruomin
+ */
+final class TaskQueues {
+
+	/**
+	 * 不允许实例化
+	 */
+	private TaskQueues() {
+	}
+
+	/**
+	 * 从任务队列中非阻塞地批量获取任务。
+	 * 
+	 * @param queue
+	 *            任务队列
+	 * @param c
+	 *            用于存放获取到的任务的集合
+	 * @param maxTasks
+	 *            最多获取的任务数
+	 * @return 实际获取到的任务数
+	 * @see BatchTaskQueue#drainTo(Collection, int)
+	 */
+	static <T extends Task> int drainTo(TaskQueue<T> queue,
+			Collection<? super T> c, int maxTasks) {
+		if (queue instanceof BatchTaskQueue) {
+			return ((BatchTaskQueue<T>) queue).drainTo(c, maxTasks);
+		}
+		if (null == c) {
+			throw new NullPointerException();
+		}
+		int drained = 0;
+		T task;
+		while (drained < maxTasks && null != (task = queue.poll())) {
+			c.add(task);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * 非阻塞地将一批任务按列表顺序放入任务队列，直到全部放入或队列满为止。
+	 * 
+	 * @param queue
+	 *            任务队列
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @return 实际放入队列的任务数
+	 * @see BatchTaskQueue#offerAll(List)
+	 */
+	static <T extends Task> int offerAll(TaskQueue<T> queue,
+			List<? extends T> tasks) {
+		if (queue instanceof BatchTaskQueue) {
+			return ((BatchTaskQueue<T>) queue).offerAll(tasks);
+		}
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		int offered = 0;
+		for (T task : tasks) {
+			if (!queue.offer(task)) {
+				break;
+			}
+			offered++;
+		}
+		return offered;
+	}
+
+	/**
+	 * 阻塞地将一批任务按列表顺序放入任务队列，直到全部放入为止。
+	 * 
+	 * @param queue
+	 *            任务队列
+	 * @param tasks
+	 *            待放入队列的任务
+	 * @throws InterruptedException
+	 *             阻塞过程中线程被中断
+	 * @see BatchTaskQueue#putAll(List)
+	 */
+	static <T extends Task> void putAll(TaskQueue<T> queue,
+			List<? extends T> tasks) throws InterruptedException {
+		if (queue instanceof BatchTaskQueue) {
+			((BatchTaskQueue<T>) queue).putAll(tasks);
+			return;
+		}
+		if (null == tasks) {
+			throw new NullPointerException();
+		}
+		for (T task : tasks) {
+			queue.put(task);
+		}
+	}
+}
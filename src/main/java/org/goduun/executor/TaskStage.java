@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 任务在执行器中经历的环节，执行器按环节分别统计任务的耗时：
+ * <ol>
+ * <li>{@link #QUEUEING}：从放入任务队列到被调度线程（或直接调度模式下的消费者线程）从队列中取出。</li>
+ * <li>{@link #CACHING}：从被取出到交给消费者执行，即在调度缓存中凑批、等待消费者线程的时间。</li>
+ * <li>{@link #EXECUTING}：消费者执行任务所在批次的时间。</li>
+ * <li>{@link #AWAKING}：祖先任务从自身执行完成到被子孙任务唤醒的时间，由执行唤醒的执行器按祖先任务的类型统计。</li>
+ * </ol>
+ * 
+ * @see LatencyHistogram
+ * @author Hu Ruomin
+ */
+public enum TaskStage {
+
+	/**
+	 * 在任务队列中等待
+	 */
+	QUEUEING,
+
+	/**
+	 * 在调度缓存中等待
+	 */
+	CACHING,
+
+	/**
+	 * 执行
+	 */
+	EXECUTING,
+
+	/**
+	 * 等待唤醒
+	 */
+	AWAKING
+}
@@ -19,25 +19,62 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * 任务状态，执行器用该状态对任务做唤醒同步控制。
  * <p>
  * 执行器会为每个任务赋予一个任务状态实例，使用者请勿操作该实例，也勿对该实例做synchronized操作。
+ * <p>
+ * 各类型子任务的计数与标志位按任务类型下标存放在原子的long型数组中，增减计数、读写标志位均无锁，
+ * 且只有当前任务真正有了子任务时才会分配；等待列表等复合状态仍通过同步来保护。
  * 
  * @author Hu Ruomin
  */
 public final class TaskState {
 
 	/**
-	 * 父任务关系。 参数说明：Class - 指定的任务类型， Class - 指定任务类型的父任务类型。
+	 * 计数器的原子更新器
+	 */
+	private static final AtomicReferenceFieldUpdater<TaskState, TaskCounters> COUNTERS = AtomicReferenceFieldUpdater
+			.newUpdater(TaskState.class, TaskCounters.class, "counters");
+
+	/**
+	 * 每个子任务类型占用的计数器字段数
+	 */
+	private static final int FIELDS = 3;
+
+	/**
+	 * 计数器字段：标志位
 	 */
-	private static Map<Class<? extends Task>, Class<? extends Task>> parentclassHolder = new HashMap<Class<? extends Task>, Class<? extends Task>>();
+	private static final int FLAGS = 2;
 
 	/**
-	 * 子任务关系。 参数说明：Class - 指定的任务类型， Class - 指定任务类型的子任务类型。
+	 * 标志位：已完成了该类型子任务的全部生产
 	 */
-	private static Map<Class<? extends Task>, Class<? extends Task>> subclassHolder = new HashMap<Class<? extends Task>, Class<? extends Task>>();
+	private static final long FLAG_ALL_SUBTASK_GENERATED = 1L;
+
+	/**
+	 * 标志位：已被该类型子任务唤醒过
+	 */
+	private static final long FLAG_BEEN_AWAKED = 1L << 1;
+
+	/**
+	 * 计数器字段：未过唤醒环节的子任务数
+	 */
+	private static final int UN_AWAKED = 1;
+
+	/**
+	 * 计数器字段：未过执行环节的子任务数
+	 */
+	private static final int UN_EXECUTED = 0;
+
+	/**
+	 * 等待唤醒的祖先任务数的原子更新器
+	 */
+	private static final AtomicIntegerFieldUpdater<TaskState> WAITING_FOR_AWAKABLE_ANCESTOR = AtomicIntegerFieldUpdater
+			.newUpdater(TaskState.class, "countOfWaitingForAwakableAncestor");
 
 	/**
 	 * 获取指定任务类型的父任务类型。
@@ -48,43 +85,49 @@ public final class TaskState {
 	 */
 	public static Class<? extends Task> getParentClass(
 			Class<? extends Task> taskClass) {
-		return null == taskClass ? null : parentclassHolder.get(taskClass);
+		return TaskClassRegistry.getParentClass(taskClass);
 	}
 
 	/**
-	 * 获取指定任务类型的子任务类型。
+	 * 获取指定任务类型的子任务类型，如果有多个子任务类型，返回最早登记的一个。
 	 * 
 	 * @param taskClass
 	 *            指定的任务类型
-	 * @return 指定任务类型的子任务类型，当taskClass为null时返回null
+	 * @return 指定任务类型的子任务类型，当taskClass为null或没有子任务类型时返回null
+	 * @see #getSubClasses(Class)
 	 */
 	public static Class<? extends Task> getSubClass(
 			Class<? extends Task> taskClass) {
-		return null == taskClass ? null : subclassHolder.get(taskClass);
+		List<Class<? extends Task>> subClasses = TaskClassRegistry
+				.getSubClasses(taskClass);
+		return subClasses.isEmpty() ? null : subClasses.get(0);
 	}
 
 	/**
-	 * 设置任务类型的父子关系。
+	 * 获取指定任务类型的所有子任务类型。
+	 * 
+	 * @param taskClass
+	 *            指定的任务类型
+	 * @return 指定任务类型的子任务类型的只读列表，按登记的先后顺序排列，当taskClass为null或没有子任务类型时返回空列表
+	 */
+	public static List<Class<? extends Task>> getSubClasses(
+			Class<? extends Task> taskClass) {
+		return TaskClassRegistry.getSubClasses(taskClass);
+	}
+
+	/**
+	 * 设置任务类型的父子关系，一个父任务类型可以有多个子任务类型，一个子任务类型只有一个父任务类型，以首次设置的为准。
+	 * <p>
+	 * 子任务类型已设置过父任务类型的，直接返回，无需同步，可在每次放入任务时调用。
 	 * 
 	 * @param subclass
 	 *            子任务类型
 	 * @param parentclass
-	 *            父任务类型
+	 *            父任务类型，为null时不会清除subclass已设置的父任务类型
 	 */
 	public static void setTaskClassRelation(Class<? extends Task> subclass,
 			Class<? extends Task> parentclass) {
-		//if (null != subclass && !parentclassHolder.containsKey(subclass)) {
-		if (null != subclass) {
-			synchronized (parentclassHolder) {
-				parentclassHolder.put(subclass, parentclass);
-			}
-		}
-		//if (null != parentclass && !subclassHolder.containsKey(parentclass)) {
-		if (null != parentclass) {
-			synchronized (subclassHolder) {
-				subclassHolder.put(parentclass, subclass);
-			}
-		}
+		TaskClassRegistry.setRelation(subclass, parentclass);
 	}
 
 	/**
@@ -93,14 +136,10 @@ public final class TaskState {
 	private final Task belongTask;
 
 	/**
-	 * 当前任务的未过唤醒环节的子任务数。 参数说明：Class - 子任务类型， Long - 未过唤醒环节的该类型的子任务数。
+	 * 各类型子任务的计数与标志位，每个子任务类型占用3个字段：未过执行环节的子任务数、未过唤醒环节的子任务数、标志位。
+	 * 当前任务没有子任务时为null。
 	 */
-	private final Map<Class<? extends Task>, Long> countOfUnAwakedSubtask = new HashMap<Class<? extends Task>, Long>();
-
-	/**
-	 * 当前任务的未过执行环节的子任务数。 参数说明：Class - 子任务类型， Long - 未过执行环节的该类型的子任务数。
-	 */
-	private final Map<Class<? extends Task>, Long> countOfUnExecutedSubtask = new HashMap<Class<? extends Task>, Long>();
+	private volatile TaskCounters counters;
 
 	/**
 	 * 等待唤醒的祖先任务数。 当前任务执行完成时，执行器会做2个判断：
@@ -116,7 +155,7 @@ public final class TaskState {
 	 * 如果1满足但2不满足，表示当前任务需等待该祖先任务完成子任务生产后才可能被唤醒，此时，
 	 * countOfWaitingForAwakableAncestor值加1.
 	 */
-	private int countOfWaitingForAwakableAncestor = 0;
+	private volatile int countOfWaitingForAwakableAncestor = 0;
 
 	/**
 	 * 当前任务被执行的消费者对象。
@@ -124,17 +163,39 @@ public final class TaskState {
 	private TaskProcessor<? extends Task> executedConsumer;
 
 	/**
-	 * 当前任务是否已完成了子任务的全部生产。 参数说明：Class - 子任务类型， Boolean - 是否完成了该类型子任务的全部生产。
+	 * 当前任务在任务日志中的序号，未记入任务日志时为-1，见{@link JournaledTaskQueue}。
+	 */
+	private long journalSequence = -1L;
+
+	/**
+	 * 当前任务放入任务队列的时间，单位：纳秒，未记录时为0，下同。
+	 * <p>
+	 * 各时间点依次由不同的线程写入，写入与读取之间已通过任务队列、线程池或唤醒计数建立了先后关系，因此无需volatile。
+	 */
+	private long queuedNanos;
+
+	/**
+	 * 当前任务从任务队列中被取出的时间
 	 */
-	private final Map<Class<? extends Task>, Boolean> isAllSubtaskGenerated = new HashMap<Class<? extends Task>, Boolean>();
+	private long dispatchedNanos;
 
 	/**
-	 * 当前任务是否已被子任务唤醒过。 参数说明：Class - 子任务类型， Boolean - 是否被该类型子任务唤醒过。
+	 * 当前任务所在批次开始执行的时间
 	 */
-	private final Map<Class<? extends Task>, Boolean> isBeenAwaked = new HashMap<Class<? extends Task>, Boolean>();
+	private long startedNanos;
 
 	/**
-	 * 待检查的子任务类型。
+	 * 当前任务所在批次执行完成的时间
+	 */
+	private long stoppedNanos;
+
+	/**
+	 * 当前任务最近一次被唤醒的时间
+	 */
+	private long awakedNanos;
+
+	/**
+	 * 待检查的子任务类型，需要时才分配。
 	 * <p>
 	 * 如果当前任务的某子类型isAllSubtaskGenerated为true时，
 	 * 可能触发其他子类型的isAllSubtaskGenerated变为true。
@@ -143,10 +204,10 @@ public final class TaskState {
 	 * <p>
 	 * 参数说明：Class - 当前任务的某子类型，List - 需重新检查的子类型列表。
 	 */
-	private final Map<Class<? extends Task>, List<Class<? extends Task>>> subclassesOfWaitingForRecheck = new HashMap<Class<? extends Task>, List<Class<? extends Task>>>();
+	private Map<Class<? extends Task>, List<Class<? extends Task>>> subclassesOfWaitingForRecheck;
 
 	/**
-	 * 等待唤醒当前任务的子任务列表。
+	 * 等待唤醒当前任务的子任务列表，需要时才分配。
 	 * <p>
 	 * 如果当前某子类型isAllSubtaskGenerated为true时，可能触发某个该类型的子任务对当前任务进行唤醒。
 	 * <p>
@@ -154,7 +215,7 @@ public final class TaskState {
 	 * <p>
 	 * 参数说明：Class - 当前任务的某子类型，Task - 需对当前任务进行唤醒的子任务。
 	 */
-	private final Map<Class<? extends Task>, Task> subtasksOfWaitingForAwakeSelf = new HashMap<Class<? extends Task>, Task>();
+	private Map<Class<? extends Task>, Task> subtasksOfWaitingForAwakeSelf;
 
 	/**
 	 * 构造函数
@@ -192,6 +253,9 @@ public final class TaskState {
 			throw new IllegalArgumentException();
 		}
 
+		if (null == subclassesOfWaitingForRecheck) {
+			subclassesOfWaitingForRecheck = new HashMap<Class<? extends Task>, List<Class<? extends Task>>>();
+		}
 		List<Class<? extends Task>> recheckList = subclassesOfWaitingForRecheck
 				.get(subclass);
 		if (null == recheckList) {
@@ -216,6 +280,9 @@ public final class TaskState {
 		if (null == subtask) {
 			throw new IllegalArgumentException();
 		}
+		if (null == subtasksOfWaitingForAwakeSelf) {
+			subtasksOfWaitingForAwakeSelf = new HashMap<Class<? extends Task>, Task>();
+		}
 		if (subtasksOfWaitingForAwakeSelf.containsKey(subtask.getClass())) {
 			return false;
 		} else {
@@ -231,18 +298,8 @@ public final class TaskState {
 	 *            待减1的子任务类型
 	 * @return 减1后的值
 	 */
-	public synchronized long decreaseUnAwakedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long sum = countOfUnAwakedSubtask.get(subclass);
-		sum = null == sum ? Long.valueOf(-1L) : Long
-				.valueOf(sum.longValue() - 1L);
-		countOfUnAwakedSubtask.put(subclass, sum);
-
-		return sum;
+	public long decreaseUnAwakedSubtask(Class<? extends Task> subclass) {
+		return add(subclass, UN_AWAKED, -1L);
 	}
 
 	/**
@@ -252,18 +309,8 @@ public final class TaskState {
 	 *            待减1的子任务类型
 	 * @return 减1后的值
 	 */
-	public synchronized long decreaseUnExecutedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long sum = countOfUnExecutedSubtask.get(subclass);
-		sum = null == sum ? Long.valueOf(-1L) : Long
-				.valueOf(sum.longValue() - 1L);
-		countOfUnExecutedSubtask.put(subclass, sum);
-
-		return sum;
+	public long decreaseUnExecutedSubtask(Class<? extends Task> subclass) {
+		return add(subclass, UN_EXECUTED, -1L);
 	}
 
 	/**
@@ -271,8 +318,8 @@ public final class TaskState {
 	 * 
 	 * @return 减1后的值
 	 */
-	public synchronized int decreaseWaitingForAwakeAncestor() {
-		return --countOfWaitingForAwakableAncestor;
+	public int decreaseWaitingForAwakeAncestor() {
+		return WAITING_FOR_AWAKABLE_ANCESTOR.decrementAndGet(this);
 	}
 
 	/**
@@ -282,15 +329,8 @@ public final class TaskState {
 	 *            子任务类型
 	 * @return 前任务的未过唤醒环节的子任务数
 	 */
-	public synchronized long getCountOfUnAwakedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long count = countOfUnAwakedSubtask.get(subclass);
-
-		return null == count ? 0L : count.longValue();
+	public long getCountOfUnAwakedSubtask(Class<? extends Task> subclass) {
+		return get(subclass, UN_AWAKED);
 	}
 
 	/**
@@ -300,15 +340,8 @@ public final class TaskState {
 	 *            子任务类型
 	 * @return 前任务的未过执行环节的子任务数
 	 */
-	public synchronized long getCountOfUnExecutedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long count = countOfUnExecutedSubtask.get(subclass);
-
-		return null == count ? 0L : count.longValue();
+	public long getCountOfUnExecutedSubtask(Class<? extends Task> subclass) {
+		return get(subclass, UN_EXECUTED);
 	}
 
 	/**
@@ -316,7 +349,7 @@ public final class TaskState {
 	 * 
 	 * @return 当前任务等待唤醒的祖先任务数
 	 */
-	public synchronized int getCountOfWaitingForAwakeAncestor() {
+	public int getCountOfWaitingForAwakeAncestor() {
 		return countOfWaitingForAwakableAncestor;
 	}
 
@@ -329,22 +362,86 @@ public final class TaskState {
 		return executedConsumer;
 	}
 
+	/**
+	 * 获取当前任务最近一次被唤醒的时间。
+	 * 
+	 * @return System.nanoTime()形式的时间，未被唤醒或执行器未记录耗时时为0
+	 */
+	public long getAwakedNanos() {
+		return awakedNanos;
+	}
+
+	/**
+	 * 获取当前任务从任务队列中被取出的时间。
+	 * 
+	 * @return System.nanoTime()形式的时间，未记录时为0
+	 */
+	public long getDispatchedNanos() {
+		return dispatchedNanos;
+	}
+
+	/**
+	 * 获取当前任务放入任务队列的时间。
+	 * 
+	 * @return System.nanoTime()形式的时间，未记录时为0
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * 获取当前任务所在批次开始执行的时间。
+	 * 
+	 * @return System.nanoTime()形式的时间，未记录时为0
+	 */
+	public long getStartedNanos() {
+		return startedNanos;
+	}
+
+	/**
+	 * 获取当前任务所在批次执行完成的时间。
+	 * 
+	 * @return System.nanoTime()形式的时间，未记录时为0
+	 */
+	public long getStoppedNanos() {
+		return stoppedNanos;
+	}
+
+	/**
+	 * 获取当前任务在任务日志中的序号。
+	 * 
+	 * @return 当前任务在任务日志中的序号，未记入任务日志时为-1
+	 */
+	long getJournalSequence() {
+		return journalSequence;
+	}
+
 	/**
 	 * 获取当前任务的父任务类型。
 	 * 
 	 * @return 当前任务的父任务类型
 	 */
 	public Class<? extends Task> getParentClass() {
-		return parentclassHolder.get(belongTask.getClass());
+		return getParentClass(belongTask.getClass());
 	}
 
 	/**
-	 * 获取当前任务的子任务类型。
+	 * 获取当前任务的子任务类型，如果有多个子任务类型，返回最早登记的一个。
 	 * 
 	 * @return 当前任务的子任务类型
+	 * @see #getSubClasses()
 	 */
 	public Class<? extends Task> getSubClass() {
-		return subclassHolder.get(belongTask.getClass());
+		return getSubClass(belongTask.getClass());
+	}
+
+	/**
+	 * 获取当前任务的所有子任务类型。
+	 * 
+	 * @return 当前任务的子任务类型的只读列表
+	 */
+	public List<Class<? extends Task>> getSubClasses() {
+		return getSubClasses(belongTask.getClass());
 	}
 
 	/**
@@ -363,18 +460,22 @@ public final class TaskState {
 	 *            待加1的子任务类型
 	 * @return 加1后的值
 	 */
-	public synchronized long increaseUnAwakedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long sum = countOfUnAwakedSubtask.get(subclass);
-		sum = null == sum ? Long.valueOf(1L) : Long
-				.valueOf(sum.longValue() + 1L);
-		countOfUnAwakedSubtask.put(subclass, sum);
+	public long increaseUnAwakedSubtask(Class<? extends Task> subclass) {
+		return increaseUnAwakedSubtask(subclass, 1L);
+	}
 
-		return sum;
+	/**
+	 * 使当前任务的未过唤醒环节的子任务数增加指定值。
+	 * 
+	 * @param subclass
+	 *            待增加的子任务类型
+	 * @param delta
+	 *            增加的子任务数
+	 * @return 增加后的值
+	 */
+	public long increaseUnAwakedSubtask(Class<? extends Task> subclass,
+			long delta) {
+		return add(subclass, UN_AWAKED, delta);
 	}
 
 	/**
@@ -384,18 +485,22 @@ public final class TaskState {
 	 *            待加1的子任务类型
 	 * @return 加1后的值
 	 */
-	public synchronized long increaseUnExecutedSubtask(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Long sum = countOfUnExecutedSubtask.get(subclass);
-		sum = null == sum ? Long.valueOf(1L) : Long
-				.valueOf(sum.longValue() + 1L);
-		countOfUnExecutedSubtask.put(subclass, sum);
+	public long increaseUnExecutedSubtask(Class<? extends Task> subclass) {
+		return increaseUnExecutedSubtask(subclass, 1L);
+	}
 
-		return sum;
+	/**
+	 * 使当前任务的未过执行环节的子任务数增加指定值。
+	 * 
+	 * @param subclass
+	 *            待增加的子任务类型
+	 * @param delta
+	 *            增加的子任务数
+	 * @return 增加后的值
+	 */
+	public long increaseUnExecutedSubtask(Class<? extends Task> subclass,
+			long delta) {
+		return add(subclass, UN_EXECUTED, delta);
 	}
 
 	/**
@@ -403,8 +508,8 @@ public final class TaskState {
 	 * 
 	 * @return 加1后的值
 	 */
-	public synchronized int increaseWaitingForAwakeAncestor() {
-		return ++countOfWaitingForAwakableAncestor;
+	public int increaseWaitingForAwakeAncestor() {
+		return WAITING_FOR_AWAKABLE_ANCESTOR.incrementAndGet(this);
 	}
 
 	/**
@@ -415,26 +520,8 @@ public final class TaskState {
 	 *            指定的子任务类型
 	 * @return 已完成返回true，否则false
 	 */
-	public synchronized boolean isAllSubtaskGenerated(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Boolean result = isAllSubtaskGenerated.get(subclass);
-
-		return null == result ? false : result.booleanValue();
-
-		// if (null == result) {
-		// if (isAwaked && TaskState.getParentClass(subclass) == getTaskClass())
-		// {
-		// return true;
-		// } else {
-		// return false;
-		// }
-		// } else {
-		// return result.booleanValue();
-		// }
+	public boolean isAllSubtaskGenerated(Class<? extends Task> subclass) {
+		return hasFlag(subclass, FLAG_ALL_SUBTASK_GENERATED);
 	}
 
 	/**
@@ -444,14 +531,8 @@ public final class TaskState {
 	 *            指定的子任务类型
 	 * @return 已被唤醒过返回true，否则false
 	 */
-	public synchronized boolean isBeenAwaked(Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		Boolean result = isBeenAwaked.get(subclass);
-
-		return null == result ? false : result.booleanValue();
+	public boolean isBeenAwaked(Class<? extends Task> subclass) {
+		return hasFlag(subclass, FLAG_BEEN_AWAKED);
 	}
 
 	/**
@@ -479,8 +560,8 @@ public final class TaskState {
 		List<Class<? extends Task>> resule = new LinkedList<Class<? extends Task>>();
 
 		// 取出待检查的任务类型列表
-		List<Class<? extends Task>> recheckClasses = subclassesOfWaitingForRecheck
-				.remove(subclass);
+		List<Class<? extends Task>> recheckClasses = null == subclassesOfWaitingForRecheck ? null
+				: subclassesOfWaitingForRecheck.remove(subclass);
 
 		if (null == recheckClasses) {
 			return null;
@@ -521,7 +602,7 @@ public final class TaskState {
 			}
 			
 			// 检查成功，保存结果
-			isAllSubtaskGenerated.put(recheckClass, Boolean.valueOf(true));
+			setAllSubtaskGenerated(recheckClass);
 			resule.add(recheckClass);
 			// 递归再检查刚才检查成功的子任务类型
 			List<Class<? extends Task>> recursiveCheckResults = recheckSubtaskGeneration(recheckClass);
@@ -546,8 +627,8 @@ public final class TaskState {
 	 * @return 如果存在指定任务类型的正在等待唤醒当前任务的子任务，返回该子任务，否则null，如果subclass为null，返回null
 	 */
 	public synchronized Task removeWaitingSubtask(Class<? extends Task> subclass) {
-		return null == subclass ? null : subtasksOfWaitingForAwakeSelf
-				.remove(subclass);
+		return null == subclass || null == subtasksOfWaitingForAwakeSelf ? null
+				: subtasksOfWaitingForAwakeSelf.remove(subclass);
 	}
 
 	/**
@@ -556,13 +637,8 @@ public final class TaskState {
 	 * @param subclass
 	 *            指定的子任务类型
 	 */
-	public synchronized void setAllSubtaskGenerated(
-			Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		isAllSubtaskGenerated.put(subclass, Boolean.valueOf(true));
+	public void setAllSubtaskGenerated(Class<? extends Task> subclass) {
+		setFlag(subclass, FLAG_ALL_SUBTASK_GENERATED);
 	}
 
 	/**
@@ -571,13 +647,8 @@ public final class TaskState {
 	 * @param subclass
 	 *            指定的子任务类型
 	 */
-	public synchronized void setBeenAwaked(Class<? extends Task> subclass) {
-		if (null == subclass) {
-			throw new IllegalArgumentException();
-		}
-
-		isBeenAwaked.put(subclass, Boolean.valueOf(true));
-
+	public void setBeenAwaked(Class<? extends Task> subclass) {
+		setFlag(subclass, FLAG_BEEN_AWAKED);
 	}
 
 	/**
@@ -593,4 +664,138 @@ public final class TaskState {
 		}
 		this.executedConsumer = executedConsumer;
 	}
+
+	/**
+	 * 设置当前任务最近一次被唤醒的时间。
+	 * 
+	 * @param awakedNanos
+	 *            System.nanoTime()形式的时间
+	 */
+	void setAwakedNanos(long awakedNanos) {
+		this.awakedNanos = awakedNanos;
+	}
+
+	/**
+	 * 设置当前任务从任务队列中被取出的时间。
+	 * 
+	 * @param dispatchedNanos
+	 *            System.nanoTime()形式的时间
+	 */
+	void setDispatchedNanos(long dispatchedNanos) {
+		this.dispatchedNanos = dispatchedNanos;
+	}
+
+	/**
+	 * 设置当前任务所在批次的执行时间。
+	 * 
+	 * @param startedNanos
+	 *            开始执行的时间，System.nanoTime()形式
+	 * @param stoppedNanos
+	 *            执行完成的时间，System.nanoTime()形式
+	 */
+	void setExecutedNanos(long startedNanos, long stoppedNanos) {
+		this.startedNanos = startedNanos;
+		this.stoppedNanos = stoppedNanos;
+	}
+
+	/**
+	 * 设置当前任务在任务日志中的序号。
+	 * 
+	 * @param journalSequence
+	 *            当前任务在任务日志中的序号
+	 */
+	void setJournalSequence(long journalSequence) {
+		this.journalSequence = journalSequence;
+	}
+
+	/**
+	 * 设置当前任务放入任务队列的时间。
+	 * 
+	 * @param queuedNanos
+	 *            System.nanoTime()形式的时间
+	 */
+	void setQueuedNanos(long queuedNanos) {
+		this.queuedNanos = queuedNanos;
+	}
+
+	/**
+	 * 使指定子任务类型的指定计数增加指定值。
+	 * 
+	 * @param subclass
+	 *            子任务类型
+	 * @param field
+	 *            计数器字段
+	 * @param delta
+	 *            增加的值
+	 * @return 增加后的值
+	 * @throws IllegalArgumentException
+	 *             subclass为null
+	 */
+	private long add(Class<? extends Task> subclass, int field, long delta) {
+		return getCounters().addAndGet(TaskClassRegistry.indexOf(subclass),
+				field, delta);
+	}
+
+	/**
+	 * 获取指定子任务类型的指定计数。
+	 * 
+	 * @param subclass
+	 *            子任务类型
+	 * @param field
+	 *            计数器字段
+	 * @return 指定子任务类型的指定计数
+	 * @throws IllegalArgumentException
+	 *             subclass为null
+	 */
+	private long get(Class<? extends Task> subclass, int field) {
+		int classIndex = TaskClassRegistry.indexOf(subclass);
+		TaskCounters current = counters;
+		return null == current ? 0L : current.get(classIndex, field);
+	}
+
+	/**
+	 * 获取计数器，尚未分配时分配。
+	 * 
+	 * @return 计数器
+	 */
+	private TaskCounters getCounters() {
+		TaskCounters current = counters;
+		if (null == current) {
+			COUNTERS.compareAndSet(this, null, new TaskCounters(FIELDS));
+			current = counters;
+		}
+		return current;
+	}
+
+	/**
+	 * 判断指定子任务类型是否具有指定标志位。
+	 * 
+	 * @param subclass
+	 *            子任务类型
+	 * @param flag
+	 *            标志位
+	 * @return 是否具有指定标志位
+	 * @throws IllegalArgumentException
+	 *             subclass为null
+	 */
+	private boolean hasFlag(Class<? extends Task> subclass, long flag) {
+		int classIndex = TaskClassRegistry.indexOf(subclass);
+		TaskCounters current = counters;
+		return null != current && current.hasBits(classIndex, FLAGS, flag);
+	}
+
+	/**
+	 * 为指定子任务类型设置指定标志位。
+	 * 
+	 * @param subclass
+	 *            子任务类型
+	 * @param flag
+	 *            标志位
+	 * @throws IllegalArgumentException
+	 *             subclass为null
+	 */
+	private void setFlag(Class<? extends Task> subclass, long flag) {
+		getCounters().setBits(TaskClassRegistry.indexOf(subclass), FLAGS,
+				flag);
+	}
 }
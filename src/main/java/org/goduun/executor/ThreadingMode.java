@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 执行器运行生产者与消费者所使用的线程类型。
+ * <ol>
+ * <li>{@link #PLATFORM}：使用固定大小的线程池，同时运行的生产者或消费者数即线程数，线程可复用。</li>
+ * <li>{@link #VIRTUAL}：每个生产者或消费者都运行在一个新的虚拟线程上，同时运行的数量由信号量控制，
+ * 适合消费者大多阻塞在数据库等IO操作上的场景，此时可将消费者线程数上限设置得远大于cpu个数。
+ * 需要Java 21及以上的运行时，不支持时退化为普通线程。</li>
+ * </ol>
+ * 无论哪种线程类型，{@link Executor#setConsumerThreadMaxSize(int)}与
+ * {@link Executor#setProducerThreadMaxSize(int)}都用于设置同时运行的消费者与生产者数上限。
+ * <p>
+ * 线程类型需在执行器启动之前设置，默认为{@link #PLATFORM}。
+ * 
+ * @see AbstractExecutor#setThreadingMode(ThreadingMode)
+ * @author Hu Ruomin
+ */
+public enum ThreadingMode {
+
+	/**
+	 * 普通线程
+	 */
+	PLATFORM,
+
+	/**
+	 * 虚拟线程
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程启动器，每次提交都新建一个虚拟线程来运行任务。
+ * <p>
+ * 虚拟线程需要Java 21及以上的运行时，执行器本身仍按低版本编译，因此通过反射创建虚拟线程；
+ * 如果当前运行时不支持虚拟线程，将退化为每个任务一个普通的守护线程。
+ * 
+ * @see ThreadingMode#VIRTUAL
+ * @author Hu Ruomin
+ */
+final class VirtualThreadLauncher implements java.util.concurrent.Executor {
+
+	/**
+	 * 虚拟线程工厂，当前运行时不支持虚拟线程时为null
+	 */
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = newVirtualThreadFactory();
+
+	/**
+	 * 判断当前运行时是否支持虚拟线程。
+	 * 
+	 * @return 当前运行时是否支持虚拟线程
+	 */
+	static boolean isVirtualThreadSupported() {
+		return null != VIRTUAL_THREAD_FACTORY;
+	}
+
+	/**
+	 * 通过反射调用Thread.ofVirtual().factory()，获取虚拟线程工厂。
+	 * 
+	 * @return 虚拟线程工厂，当前运行时不支持虚拟线程时返回null
+	 */
+	private static ThreadFactory newVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 新建线程运行指定任务。
+	 * 
+	 * @param runner
+	 *            待运行的任务
+	 */
+	@Override
+	public void execute(Runnable runner) {
+		Thread thread;
+		if (null != VIRTUAL_THREAD_FACTORY) {
+			thread = VIRTUAL_THREAD_FACTORY.newThread(runner);
+		} else {
+			thread = new Thread(runner);
+			thread.setDaemon(true);
+		}
+		thread.start();
+	}
+}
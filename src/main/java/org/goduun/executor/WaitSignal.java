@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 无锁任务队列的等待通知，{@link WaitStrategy#PARK}忙等待、让出cpu之后，通过它阻塞当前线程，直到等待的条件满足时被唤醒。
+ * <p>
+ * 通知方在没有等待方时只读一次等待方计数，不加锁。为保证通知不丢失：
+ * <ol>
+ * <li>等待方先登记（原子自增等待方计数）、读取通知代数，再检查条件，条件不满足时才在锁内等待通知代数变化。</li>
+ * <li>通知方须先以volatile写发布状态的变化，再调用{@link #signal()}检查等待方计数。</li>
+ * </ol>
+ * 两者至少有一方能看到对方：要么通知方看到了等待方，在锁内推进通知代数并唤醒；要么等待方检查条件时已能看到发布的变化。
+ *
+ * @author Hu Ruomin
+ */
+abstract class WaitSignal {
+
+	/**
+	 * 通知代数，只在持有锁时修改
+	 */
+	private volatile long generation;
+
+	/**
+	 * 通知锁
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 通知条件
+	 */
+	private final Condition signalled = lock.newCondition();
+
+	/**
+	 * 正在等待的线程数
+	 */
+	private final AtomicInteger waiterCount = new AtomicInteger();
+
+	/**
+	 * 阻塞当前线程，直到等待的条件满足、被通知或超时。
+	 * <p>
+	 * 返回并不代表条件一定满足，调用者需重新尝试。
+	 *
+	 * @param nanos
+	 *            最长等待时长，单位：纳秒
+	 * @throws InterruptedException
+	 *             如果等待时线程被中断
+	 */
+	void await(long nanos) throws InterruptedException {
+		waiterCount.incrementAndGet();
+		try {
+			long observed = generation;
+			if (isReady()) {
+				return;
+			}
+			lock.lockInterruptibly();
+			try {
+				while (observed == generation && nanos > 0) {
+					nanos = signalled.awaitNanos(nanos);
+				}
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			waiterCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * 等待的条件是否已满足，如队列非空或队列未满。
+	 *
+	 * @return 条件已满足时返回true
+	 */
+	abstract boolean isReady();
+
+	/**
+	 * 有线程正在等待时，唤醒所有等待的线程，调用前须已以volatile写发布了状态的变化。
+	 */
+	void signal() {
+		if (0 == waiterCount.get()) {
+			return;
+		}
+		lock.lock();
+		try {
+			generation++;
+			signalled.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+/**
+ * 无锁任务队列的等待策略。
+ * <p>
+ * 当无锁任务队列满（放入任务时）或空（获取任务时）时，阻塞方法通过等待策略来决定当前线程如何等待：
+ * <ol>
+ * <li>{@link #SPIN}：忙等待，延迟最低，但会一直占用cpu，只适合线程数不超过cpu个数的场景。</li>
+ * <li>{@link #YIELD}：先忙等待一小段时间，之后让出cpu，延迟较低，cpu占用较高。</li>
+ * <li>{@link #PARK}：先忙等待、再让出cpu，最后阻塞当前线程，直到队列有新任务（或空位）时被唤醒，延迟稍高，但空闲时不占用cpu。</li>
+ * </ol>
+ * 只有{@link #PARK}需要队列在放入或取出任务后发出通知，通知前需要一次volatile写，其余两种策略没有这部分开销。
+ *
+ * @see RingTaskQueue
+ * @author Hu Ruomin
+ */
+public enum WaitStrategy {
+
+	/**
+	 * 忙等待
+	 */
+	SPIN {
+		@Override
+		void idle(int times, WaitSignal signal, long nanos) {
+			return;
+		}
+	},
+
+	/**
+	 * 忙等待后让出cpu
+	 */
+	YIELD {
+		@Override
+		void idle(int times, WaitSignal signal, long nanos) {
+			if (times > SPIN_TIMES) {
+				Thread.yield();
+			}
+		}
+	},
+
+	/**
+	 * 忙等待、让出cpu后阻塞，直到被通知
+	 */
+	PARK {
+		@Override
+		boolean isBlocking() {
+			return true;
+		}
+
+		@Override
+		void idle(int times, WaitSignal signal, long nanos)
+				throws InterruptedException {
+			if (times > SPIN_TIMES + YIELD_TIMES) {
+				signal.await(nanos);
+			} else if (times > SPIN_TIMES) {
+				Thread.yield();
+			}
+		}
+	};
+
+	/**
+	 * 开始让出cpu之前的忙等待次数
+	 */
+	private static final int SPIN_TIMES = 100;
+
+	/**
+	 * 开始阻塞之前的让出cpu次数
+	 */
+	private static final int YIELD_TIMES = 100;
+
+	/**
+	 * 判断该策略是否会阻塞线程，会阻塞时，队列需在放入或取出任务后通过{@link WaitSignal#signal()}唤醒等待的线程。
+	 *
+	 * @return 会阻塞线程时返回true
+	 */
+	boolean isBlocking() {
+		return false;
+	}
+
+	/**
+	 * 等待一次。
+	 *
+	 * @param times
+	 *            本次等待之前已连续等待的次数，从0开始计数
+	 * @param signal
+	 *            阻塞时所等待的通知，策略不阻塞时可为null
+	 * @param nanos
+	 *            最长阻塞时长，单位：纳秒
+	 * @throws InterruptedException
+	 *             如果阻塞时线程被中断
+	 */
+	abstract void idle(int times, WaitSignal signal, long nanos)
+			throws InterruptedException;
+}
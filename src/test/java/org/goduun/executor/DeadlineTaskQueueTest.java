@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.TaskQueueStress.NumberedTask;
+import org.goduun.executor.TaskQueueStress.TaskFactory;
+import org.junit.Test;
+
+/**
+ * {@link DeadlineTaskQueue}的测试。
+ *
+ * @author Hu Ruomin
+ */
+public class DeadlineTaskQueueTest {
+
+	/**
+	 * 同一生产者的任务截止时间相同，不同生产者的截止时间不同，部分生产者的任务没有截止时间
+	 */
+	private static final TaskFactory DEADLINE_TASKS = new TaskFactory() {
+		@Override
+		public NumberedTask newTask(int producer, int number) {
+			NumberedTask task = new NumberedTask(producer, number);
+			task.setDeadline(0 == producer % 3 ? 0 : 1000L * producer);
+			return task;
+		}
+	};
+
+	/**
+	 * 截止时间早的任务先取出，截止时间相同的先进先出，没有截止时间的排在最后。
+	 */
+	@Test
+	public void pollOrdersByDeadline() {
+		DeadlineTaskQueue<NumberedTask> queue = new DeadlineTaskQueue<NumberedTask>(
+				8);
+		queue.offer(newTask(0, 0));
+		queue.offer(newTask(1, 300));
+		queue.offer(newTask(2, 100));
+		queue.offer(newTask(3, 300));
+		queue.offer(newTask(4, 0));
+		queue.offer(newTask(5, 200));
+		int[] expected = { 2, 5, 1, 3, 0, 4 };
+		for (int number : expected) {
+			assertEquals(number, queue.poll().number);
+		}
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * 整批取出时同样按截止时间排列。
+	 */
+	@Test
+	public void drainToOrdersByDeadline() {
+		DeadlineTaskQueue<NumberedTask> queue = new DeadlineTaskQueue<NumberedTask>(
+				8);
+		List<NumberedTask> tasks = new ArrayList<NumberedTask>();
+		tasks.add(newTask(0, 500));
+		tasks.add(newTask(1, 0));
+		tasks.add(newTask(2, 100));
+		assertEquals(3, queue.offerAll(tasks));
+		List<NumberedTask> drained = new ArrayList<NumberedTask>();
+		assertEquals(2, queue.drainTo(drained, 2));
+		assertEquals(2, drained.get(0).number);
+		assertEquals(0, drained.get(1).number);
+		assertEquals(1, queue.size());
+	}
+
+	/**
+	 * 空队列取不到任务，满队列放不进任务，整批放入时只放入能放下的前若干个任务。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void emptyAndFullQueue() throws InterruptedException {
+		DeadlineTaskQueue<NumberedTask> queue = new DeadlineTaskQueue<NumberedTask>(
+				3);
+		assertNull(queue.poll());
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		assertEquals(0, queue.drainTo(new ArrayList<NumberedTask>(), 3));
+
+		List<NumberedTask> tasks = new ArrayList<NumberedTask>();
+		for (int i = 0; i < 5; i++) {
+			tasks.add(newTask(i, 100));
+		}
+		assertEquals(3, queue.offerAll(tasks));
+		assertEquals(3, queue.size());
+		assertFalse(queue.offer(newTask(5, 50)));
+		assertFalse(queue.offer(newTask(5, 50), 10, TimeUnit.MILLISECONDS));
+
+		assertEquals(0, queue.poll().number);
+		assertTrue(queue.offer(newTask(5, 50)));
+		assertEquals(5, queue.poll().number);
+	}
+
+	/**
+	 * 容量小于1时构造失败。
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroCapacityIsRejected() {
+		new DeadlineTaskQueue<NumberedTask>(0);
+	}
+
+	/**
+	 * 队列空时阻塞取任务的线程，放入任务后被唤醒。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void takeWaitsForOffer() throws InterruptedException {
+		DeadlineTaskQueue<NumberedTask> queue = new DeadlineTaskQueue<NumberedTask>(
+				4);
+		NumberedTask task = newTask(0, 100);
+		RingTaskQueueTest.offerLater(queue, task);
+		assertSame(task, queue.take());
+	}
+
+	/**
+	 * 多生产者多消费者并发读写，容量小，生产者经常因队列满而阻塞。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void concurrentProducersAndConsumers() throws InterruptedException {
+		TaskQueueStress.run(new DeadlineTaskQueue<NumberedTask>(32), 4, 4,
+				10000, DEADLINE_TASKS);
+	}
+
+	/**
+	 * 创建指定截止时间的任务。
+	 *
+	 * @param number
+	 *            编号
+	 * @param deadline
+	 *            截止时间，为0表示没有截止时间
+	 * @return 任务
+	 */
+	private static NumberedTask newTask(int number, long deadline) {
+		NumberedTask task = new NumberedTask(0, number);
+		task.setDeadline(deadline);
+		return task;
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link JournaledTaskQueue}的测试，实际的任务队列为{@link SpillingTaskQueue}，且任务会溢出到磁盘。
+ * 
+ * @author Hu Ruomin
+ */
+public class JournaledTaskQueueTest {
+
+	/**
+	 * 内存中最多保存的任务数
+	 */
+	private static final int MEMORY_CAPACITY = 16;
+
+	/**
+	 * 段文件大小，单位：字节，使任务分布在多个段文件中
+	 */
+	private static final int SEGMENT_SIZE = 4096;
+
+	/**
+	 * 放入队列的任务数
+	 */
+	private static final int TASKS = 500;
+
+	/**
+	 * 临时目录
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * 从段文件读回的任务被确认后，重新打开任务日志时不应再被恢复。
+	 * 
+	 * @throws IOException
+	 *             读写任务日志失败
+	 */
+	@Test
+	public void acknowledgedSpilledTasksAreNotRecovered() throws IOException {
+		File journal = folder.newFolder("journal");
+		File spill = folder.newFolder("spill");
+
+		JournaledTaskQueue<SampleTask> queue = newQueue(journal, spill);
+		offerTasks(queue);
+		List<SampleTask> polled = pollTasks(queue);
+		assertEquals(TASKS, polled.size());
+		queue.acknowledge(polled);
+		queue.close();
+
+		JournaledTaskQueue<SampleTask> reopened = newQueue(journal, spill);
+		try {
+			assertTrue(reopened.recover().isEmpty());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	/**
+	 * 只确认部分从段文件读回的任务时，重新打开任务日志后只恢复出未确认的任务。
+	 * 
+	 * @throws IOException
+	 *             读写任务日志失败
+	 */
+	@Test
+	public void unacknowledgedSpilledTasksAreRecovered() throws IOException {
+		File journal = folder.newFolder("journal");
+		File spill = folder.newFolder("spill");
+
+		JournaledTaskQueue<SampleTask> queue = newQueue(journal, spill);
+		offerTasks(queue);
+		List<SampleTask> polled = pollTasks(queue);
+		assertEquals(TASKS, polled.size());
+		queue.acknowledge(polled.subList(0, TASKS / 2));
+		queue.close();
+
+		JournaledTaskQueue<SampleTask> reopened = newQueue(journal, spill);
+		try {
+			Set<Integer> recovered = new TreeSet<Integer>();
+			for (SampleTask task : reopened.recover()) {
+				recovered.add(Integer.valueOf(task.number));
+			}
+			Set<Integer> expected = new TreeSet<Integer>();
+			for (int i = TASKS / 2; i < TASKS; i++) {
+				expected.add(Integer.valueOf(i));
+			}
+			assertEquals(expected, recovered);
+		} finally {
+			reopened.close();
+		}
+	}
+
+	/**
+	 * 创建以可溢出到磁盘的任务队列为实际任务队列的记录任务日志的任务队列。
+	 * 
+	 * @param journal
+	 *            任务日志所在目录
+	 * @param spill
+	 *            段文件所在目录
+	 * @return 任务队列
+	 */
+	private JournaledTaskQueue<SampleTask> newQueue(File journal, File spill) {
+		return new JournaledTaskQueue<SampleTask>(
+				new SpillingTaskQueue<SampleTask>(MEMORY_CAPACITY, spill,
+						SEGMENT_SIZE), journal);
+	}
+
+	/**
+	 * 放入任务，超出内存容量的任务将溢出到磁盘。
+	 * 
+	 * @param queue
+	 *            任务队列
+	 */
+	private void offerTasks(JournaledTaskQueue<SampleTask> queue) {
+		for (int i = 0; i < TASKS; i++) {
+			SampleTask task = new SampleTask(i);
+			task.setTaskState(new TaskState(task));
+			assertTrue(queue.offer(task));
+		}
+	}
+
+	/**
+	 * 取出队列中的所有任务。
+	 * 
+	 * @param queue
+	 *            任务队列
+	 * @return 取出的任务
+	 */
+	private List<SampleTask> pollTasks(JournaledTaskQueue<SampleTask> queue) {
+		List<SampleTask> tasks = new ArrayList<SampleTask>();
+		SampleTask task;
+		while (null != (task = queue.poll())) {
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	/**
+	 * 测试用的任务。
+	 * 
+	 * @author Hu Ruomin
+	 */
+	public static class SampleTask extends AbstractTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = 6281930476152873590L;
+
+		/**
+		 * 编号
+		 */
+		private final int number;
+
+		/**
+		 * 构造函数。
+		 * 
+		 * @param number
+		 *            编号
+		 */
+		public SampleTask(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getId() {
+			return String.valueOf(number);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.TaskQueueStress.NumberedTask;
+import org.goduun.executor.TaskQueueStress.TaskFactory;
+import org.junit.Test;
+
+/**
+ * {@link PriorityTaskQueue}的测试。
+ *
+ * @author Hu Ruomin
+ */
+public class PriorityTaskQueueTest {
+
+	/**
+	 * 任务的优先级按生产者轮流取0到3，同一生产者的任务进入同一通道
+	 */
+	private static final TaskFactory PRIORITIZED_TASKS = new TaskFactory() {
+		@Override
+		public NumberedTask newTask(int producer, int number) {
+			NumberedTask task = new NumberedTask(producer, number);
+			task.setPriority(producer % 4);
+			return task;
+		}
+	};
+
+	/**
+	 * 任务按优先级进入通道，超出最高优先级的进入最高通道。
+	 */
+	@Test
+	public void tasksGoToTheirLanes() {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				3, 4);
+		assertTrue(queue.offer(newTask(0, 0)));
+		assertTrue(queue.offer(newTask(1, 1)));
+		assertTrue(queue.offer(newTask(2, 2)));
+		assertTrue(queue.offer(newTask(3, 9)));
+		assertEquals(1, queue.size(0));
+		assertEquals(1, queue.size(1));
+		assertEquals(2, queue.size(2));
+		assertEquals(4, queue.size());
+		assertEquals(12, queue.capacity());
+	}
+
+	/**
+	 * 整批取出时按通道从高到低排列，同一通道内先进先出。
+	 */
+	@Test
+	public void drainToOrdersByLane() {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				2, 8);
+		queue.offer(newTask(0, 0));
+		queue.offer(newTask(1, 1));
+		queue.offer(newTask(2, 0));
+		queue.offer(newTask(3, 1));
+		List<NumberedTask> drained = new ArrayList<NumberedTask>();
+		assertEquals(4, queue.drainTo(drained, 8));
+		assertEquals(1, drained.get(0).number);
+		assertEquals(3, drained.get(1).number);
+		assertEquals(0, drained.get(2).number);
+		assertEquals(2, drained.get(3).number);
+	}
+
+	/**
+	 * 各通道都有任务时，逐个取出的任务数之比等于权重之比。
+	 */
+	@Test
+	public void pollFollowsWeights() {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				new int[] { 1, 3 }, 16, WaitStrategy.PARK);
+		for (int i = 0; i < 16; i++) {
+			queue.offer(newTask(i, 0));
+			queue.offer(newTask(i, 1));
+		}
+		int[] polled = new int[2];
+		for (int i = 0; i < 8; i++) {
+			polled[queue.poll().getPriority()]++;
+		}
+		assertEquals(2, polled[0]);
+		assertEquals(6, polled[1]);
+	}
+
+	/**
+	 * 轮到的通道为空时，改从其他通道取任务，所有通道都空时返回null。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void pollFallsBackToOtherLanes() throws InterruptedException {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				4, 4);
+		for (int i = 0; i < 3; i++) {
+			queue.offer(newTask(i, 0));
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, queue.poll().number);
+		}
+		assertNull(queue.poll());
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		assertEquals(0, queue.drainTo(new ArrayList<NumberedTask>(), 4));
+	}
+
+	/**
+	 * 某个通道满时只拒绝该通道的任务，其他通道仍可放入，整批放入在满的通道处停止。
+	 */
+	@Test
+	public void fullLaneRejectsOnlyItsTasks() {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				2, 2);
+		assertTrue(queue.offer(newTask(0, 1)));
+		assertTrue(queue.offer(newTask(1, 1)));
+		assertFalse(queue.offer(newTask(2, 1)));
+		assertTrue(queue.offer(newTask(3, 0)));
+
+		List<NumberedTask> tasks = new ArrayList<NumberedTask>();
+		tasks.add(newTask(4, 0));
+		tasks.add(newTask(5, 1));
+		tasks.add(newTask(6, 0));
+		assertEquals(1, queue.offerAll(tasks));
+		assertEquals(4, queue.size());
+	}
+
+	/**
+	 * 所有通道都空时阻塞取任务的线程，任一通道放入任务后被唤醒。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void takeWaitsForAnyLane() throws InterruptedException {
+		PriorityTaskQueue<NumberedTask> queue = new PriorityTaskQueue<NumberedTask>(
+				4, 4);
+		NumberedTask task = newTask(0, 2);
+		RingTaskQueueTest.offerLater(queue, task);
+		assertSame(task, queue.take());
+	}
+
+	/**
+	 * 多生产者多消费者并发读写，任务分布在各通道中。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void concurrentProducersAndConsumers() throws InterruptedException {
+		TaskQueueStress.run(new PriorityTaskQueue<NumberedTask>(4, 16), 4, 4,
+				20000, PRIORITIZED_TASKS);
+	}
+
+	/**
+	 * 创建指定优先级的任务。
+	 *
+	 * @param number
+	 *            编号
+	 * @param priority
+	 *            优先级
+	 * @return 任务
+	 */
+	private static NumberedTask newTask(int number, int priority) {
+		NumberedTask task = new NumberedTask(0, number);
+		task.setPriority(priority);
+		return task;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.goduun.executor.TaskQueueStress.NumberedTask;
+import org.goduun.executor.TaskQueueStress.TaskFactory;
+import org.junit.Test;
+
+/**
+ * {@link RingTaskQueue}的测试。
+ *
+ * @author Hu Ruomin
+ */
+public class RingTaskQueueTest {
+
+	/**
+	 * 创建没有优先级与截止时间的任务
+	 */
+	private static final TaskFactory PLAIN_TASKS = new TaskFactory() {
+		@Override
+		public NumberedTask newTask(int producer, int number) {
+			return new NumberedTask(producer, number);
+		}
+	};
+
+	/**
+	 * 容量取不小于指定值的最小的2的幂。
+	 */
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(1, new RingTaskQueue<NumberedTask>(1).capacity());
+		assertEquals(8, new RingTaskQueue<NumberedTask>(5).capacity());
+		assertEquals(8, new RingTaskQueue<NumberedTask>(8).capacity());
+	}
+
+	/**
+	 * 容量小于1时构造失败。
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroCapacityIsRejected() {
+		new RingTaskQueue<NumberedTask>(0);
+	}
+
+	/**
+	 * 空队列取不到任务，限时等待超时后返回null。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void emptyQueueReturnsNothing() throws InterruptedException {
+		RingTaskQueue<NumberedTask> queue = new RingTaskQueue<NumberedTask>(4);
+		assertNull(queue.poll());
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		assertEquals(0, queue.drainTo(new ArrayList<NumberedTask>(), 4));
+		assertEquals(0, queue.size());
+	}
+
+	/**
+	 * 满队列放不进任务，整批放入时只放入能放下的前若干个任务，取出一个后又能放入。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void fullQueueRejectsTasks() throws InterruptedException {
+		RingTaskQueue<NumberedTask> queue = new RingTaskQueue<NumberedTask>(4);
+		assertEquals(3, queue.offerAll(newTasks(0, 3)));
+		assertEquals(1, queue.offerAll(newTasks(3, 3)));
+		assertEquals(4, queue.size());
+		assertFalse(queue.offer(new NumberedTask(0, 4)));
+		assertFalse(queue.offer(new NumberedTask(0, 4), 10,
+				TimeUnit.MILLISECONDS));
+		assertEquals(0, queue.offerAll(newTasks(4, 1)));
+
+		assertEquals(0, queue.poll().number);
+		assertTrue(queue.offer(new NumberedTask(0, 4)));
+		assertEquals(4, queue.size());
+	}
+
+	/**
+	 * 读写游标多次越过环的末尾后，任务仍按放入的顺序取出，整批放入与取出都跨越环的末尾。
+	 */
+	@Test
+	public void wrapsAroundInOrder() {
+		RingTaskQueue<NumberedTask> queue = new RingTaskQueue<NumberedTask>(4);
+		List<NumberedTask> drained = new ArrayList<NumberedTask>();
+		int next = 0;
+		int expected = 0;
+		for (int round = 0; round < 10; round++) {
+			assertEquals(3, queue.offerAll(newTasks(next, 3)));
+			next += 3;
+			drained.clear();
+			assertEquals(2, queue.drainTo(drained, 2));
+			for (NumberedTask task : drained) {
+				assertEquals(expected++, task.number);
+			}
+			assertEquals(expected++, queue.poll().number);
+			assertEquals(0, queue.size());
+		}
+	}
+
+	/**
+	 * 队列空时阻塞取任务的线程，放入任务后被唤醒。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void takeWaitsForOffer() throws InterruptedException {
+		final RingTaskQueue<NumberedTask> queue = new RingTaskQueue<NumberedTask>(
+				4);
+		NumberedTask task = new NumberedTask(0, 0);
+		offerLater(queue, task);
+		assertSame(task, queue.take());
+	}
+
+	/**
+	 * 队列满时阻塞放入任务的线程，取出任务后被唤醒。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void putWaitsForPoll() throws InterruptedException {
+		final RingTaskQueue<NumberedTask> queue = new RingTaskQueue<NumberedTask>(
+				2);
+		queue.offerAll(newTasks(0, 2));
+		Thread poller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					TimeUnit.MILLISECONDS.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.poll();
+			}
+		});
+		poller.start();
+		queue.put(new NumberedTask(0, 2));
+		poller.join();
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.poll().number);
+		assertEquals(2, queue.poll().number);
+	}
+
+	/**
+	 * 多生产者多消费者并发读写，等待策略为{@link WaitStrategy#PARK}，容量小，读写游标多次越过环的末尾。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void concurrentProducersAndConsumersWithPark()
+			throws InterruptedException {
+		TaskQueueStress.run(new RingTaskQueue<NumberedTask>(64,
+				WaitStrategy.PARK), 4, 4, 20000, PLAIN_TASKS);
+	}
+
+	/**
+	 * 多生产者多消费者并发读写，等待策略为{@link WaitStrategy#YIELD}。
+	 *
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	@Test
+	public void concurrentProducersAndConsumersWithYield()
+			throws InterruptedException {
+		TaskQueueStress.run(new RingTaskQueue<NumberedTask>(16,
+				WaitStrategy.YIELD), 3, 3, 10000, PLAIN_TASKS);
+	}
+
+	/**
+	 * 创建编号连续的一组任务。
+	 *
+	 * @param first
+	 *            第一个任务的编号
+	 * @param count
+	 *            任务数
+	 * @return 任务
+	 */
+	static List<NumberedTask> newTasks(int first, int count) {
+		List<NumberedTask> tasks = new ArrayList<NumberedTask>();
+		for (int i = 0; i < count; i++) {
+			tasks.add(new NumberedTask(0, first + i));
+		}
+		return tasks;
+	}
+
+	/**
+	 * 稍后在另一个线程中放入任务。
+	 *
+	 * @param queue
+	 *            任务队列
+	 * @param task
+	 *            任务
+	 */
+	static void offerLater(final TaskQueue<NumberedTask> queue,
+			final NumberedTask task) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					TimeUnit.MILLISECONDS.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.offer(task);
+			}
+		}).start();
+	}
+}
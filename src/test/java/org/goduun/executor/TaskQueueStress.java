@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 The Goduun Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.goduun.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 任务队列的多生产者多消费者压力测试，供各任务队列的测试共用。
+ * <p>
+ * 每个生产者放入编号连续的一组任务，一半生产者逐个放入，另一半整批放入；一半消费者逐个取出，另一半整批取出。全部取完后检查：
+ * <ol>
+ * <li>每个任务恰好被取出一次，没有丢失，也没有重复。</li>
+ * <li>每个消费者取到的同一生产者的任务，编号递增，即队列对同一生产者先进先出。</li>
+ * </ol>
+ *
+ * @author Hu Ruomin
+ */
+final class TaskQueueStress {
+
+	/**
+	 * 整批放入或取出的任务数
+	 */
+	private static final int BATCH_SIZE = 7;
+
+	/**
+	 * 等待生产者与消费者结束的最长时长，单位：秒
+	 */
+	private static final long JOIN_SECONDS = 60L;
+
+	/**
+	 * 不允许实例化
+	 */
+	private TaskQueueStress() {
+	}
+
+	/**
+	 * 运行压力测试。
+	 *
+	 * @param queue
+	 *            任务队列，须为空
+	 * @param producers
+	 *            生产者数
+	 * @param consumers
+	 *            消费者数
+	 * @param tasksPerProducer
+	 *            每个生产者放入的任务数
+	 * @param factory
+	 *            按生产者与编号创建任务，同一生产者的任务须有相同的优先级及截止时间
+	 * @throws InterruptedException
+	 *             等待时当前线程被中断
+	 */
+	static void run(final BatchTaskQueue<NumberedTask> queue,
+			final int producers, int consumers, final int tasksPerProducer,
+			final TaskFactory factory) throws InterruptedException {
+		final int total = producers * tasksPerProducer;
+		final AtomicIntegerArray seen = new AtomicIntegerArray(total);
+		final AtomicInteger consumed = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int number = 0;
+						while (number < tasksPerProducer) {
+							if (0 == producer % 2) {
+								queue.put(factory.newTask(producer, number++));
+								continue;
+							}
+							List<NumberedTask> batch = new ArrayList<NumberedTask>();
+							while (batch.size() < BATCH_SIZE
+									&& number < tasksPerProducer) {
+								batch.add(factory.newTask(producer, number++));
+							}
+							queue.putAll(batch);
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}, "producer-" + p));
+		}
+
+		for (int c = 0; c < consumers; c++) {
+			final boolean isBatch = 1 == c % 2;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int[] lastNumbers = new int[producers];
+					for (int i = 0; i < producers; i++) {
+						lastNumbers[i] = -1;
+					}
+					List<NumberedTask> batch = new ArrayList<NumberedTask>();
+					try {
+						while (consumed.get() < total && null == failure.get()) {
+							batch.clear();
+							if (isBatch) {
+								if (0 == queue.drainTo(batch, BATCH_SIZE)) {
+									Thread.yield();
+								}
+							} else {
+								NumberedTask task = queue.poll(1,
+										TimeUnit.MILLISECONDS);
+								if (null != task) {
+									batch.add(task);
+								}
+							}
+							for (NumberedTask task : batch) {
+								if (task.number <= lastNumbers[task.producer]) {
+									throw new AssertionError("producer "
+											+ task.producer + " task "
+											+ task.number + " after "
+											+ lastNumbers[task.producer]);
+								}
+								lastNumbers[task.producer] = task.number;
+								int index = task.producer * tasksPerProducer
+										+ task.number;
+								if (1 != seen.incrementAndGet(index)) {
+									throw new AssertionError("duplicated task "
+											+ index);
+								}
+								consumed.incrementAndGet();
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}, "consumer-" + c));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long deadline = System.nanoTime()
+				+ TimeUnit.SECONDS.toNanos(JOIN_SECONDS);
+		for (Thread thread : threads) {
+			thread.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline
+					- System.nanoTime())));
+			assertFalse(thread.getName() + " is still running",
+					thread.isAlive());
+		}
+		if (null != failure.get()) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(total, consumed.get());
+		for (int i = 0; i < total; i++) {
+			assertEquals("task " + i, 1, seen.get(i));
+		}
+		assertEquals(0, queue.size());
+		assertNull(queue.poll());
+	}
+
+	/**
+	 * 测试用的任务工厂。
+	 *
+	 * @author Hu Ruomin
+	 */
+	interface TaskFactory {
+
+		/**
+		 * 创建任务。
+		 *
+		 * @param producer
+		 *            生产者
+		 * @param number
+		 *            任务在该生产者中的编号
+		 * @return 任务
+		 */
+		NumberedTask newTask(int producer, int number);
+	}
+
+	/**
+	 * 测试用的任务，记录生产者与编号。
+	 *
+	 * @author Hu Ruomin
+	 */
+	static class NumberedTask extends AbstractTask {
+
+		/**
+		 * serialVersionUID
+		 */
+		private static final long serialVersionUID = -2305327513890167614L;
+
+		/**
+		 * 任务在该生产者中的编号
+		 */
+		final int number;
+
+		/**
+		 * 生产者
+		 */
+		final int producer;
+
+		/**
+		 * 构造函数。
+		 *
+		 * @param producer
+		 *            生产者
+		 * @param number
+		 *            任务在该生产者中的编号
+		 */
+		NumberedTask(int producer, int number) {
+			this.producer = producer;
+			this.number = number;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getId() {
+			return producer + "-" + number;
+		}
+	}
+}